@@ -0,0 +1,56 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+
+import java.io.IOException;
+
+/**
+ * Sends requests with a commons-httpclient {@link HttpClient}.
+ * <p>
+ * This is the default transport. Authentication uses the state of the
+ * HttpClient, which {@link AGHTTPClient#setUsernameAndPassword(String, String)}
+ * sets up.
+ * </p>
+ */
+public class AGCommonsHttpTransport implements AGHttpTransport {
+
+    private final HttpClient httpClient;
+
+    /**
+     * @param httpClient the client sending the requests
+     */
+    public AGCommonsHttpTransport(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * @return the client sending the requests
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public HttpMethod execute(HttpMethod request) throws IOException {
+        httpClient.executeMethod(request);
+        return request;
+    }
+
+    /**
+     * Does nothing: the connection manager of the client
+     * belongs to whoever created it.
+     */
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return httpClient.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses another request entity with gzip while it is being sent.
+ * <p>
+ * The compressed size is not known in advance, so the request is sent
+ * with chunked transfer encoding. The request must carry a
+ * <code>Content-Encoding: gzip</code> header.
+ * </p>
+ *
+ * @see AGHttpRepoClient#setUploadCompressionThreshold(long)
+ */
+public class AGGzipRequestEntity implements RequestEntity {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RequestEntity entity;
+    private final int level;
+    private volatile long uncompressedLength = -1;
+
+    /**
+     * @param entity the uncompressed entity
+     */
+    public AGGzipRequestEntity(RequestEntity entity) {
+        this(entity, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param entity the uncompressed entity
+     * @param level  the compression level, see {@link Deflater}
+     */
+    public AGGzipRequestEntity(RequestEntity entity, int level) {
+        this.entity = entity;
+        this.level = level;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return entity.isRepeatable();
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+        LevelGZIPOutputStream gzip = new LevelGZIPOutputStream(out, level);
+        try {
+            entity.writeRequest(gzip);
+            // Do not close out, it belongs to the connection.
+            gzip.finish();
+            uncompressedLength = gzip.getBytesRead();
+        } finally {
+            gzip.end();
+        }
+    }
+
+    /**
+     * @return the number of bytes compressed the last time the entity
+     *         was written, -1 if it has not been written
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public String getContentType() {
+        return entity.getContentType();
+    }
+
+    private static final class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+
+        long getBytesRead() {
+            return def.getBytesRead();
+        }
+
+        /**
+         * Releases the native memory of the deflater, which close() would
+         * only do by closing the underlying stream as well.
+         */
+        void end() {
+            def.end();
+        }
+    }
+}
@@ -12,12 +12,14 @@ import com.franz.agraph.http.handler.AGStringHandler;
 import com.franz.agraph.http.handler.AGTQRHandler;
 import com.franz.agraph.repository.AGValueFactory;
 
+import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.SimpleHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.DeleteMethod;
@@ -41,6 +43,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.franz.agraph.http.AGProtocol.AMOUNT_PARAM_NAME;
 import static com.franz.agraph.http.AGProtocol.OVERRIDE_PARAM_NAME;
@@ -49,7 +52,9 @@ import static org.eclipse.rdf4j.http.protocol.Protocol.ACCEPT_PARAM_NAME;
 /**
  * Class responsible for handling HTTP connections.
  * <p>
- * Uses an unlimited pool of connections to allow safe, concurrent access.</p>
+ * Requests are sent by an {@link AGHttpTransport}. The default transport
+ * uses commons-httpclient with an unlimited pool of connections to allow
+ * safe, concurrent access.</p>
  * <p>
  * Also contains methods for accessing AG services that operate above
  * the repository level - such as managing repositories.</p>
@@ -70,8 +75,16 @@ public class AGHTTPClient implements AutoCloseable {
     public static final String PROP_HTTP_NUM_RETRIES = "com.franz.agraph.http.numRetries";
     private static final int DEFAULT_HTTP_NUM_RETRIES = 1;
 
+    /**
+     * Transport used by clients that are not given one explicitly:
+     * "commons" (the default) for {@link AGCommonsHttpTransport},
+     * "jdk" for AGJdkHttpTransport (requires Java 11).
+     */
+    public static final String PROP_HTTP_TRANSPORT = "com.franz.agraph.http.transport";
+
     private final String serverURL;
     private final HttpClient httpClient;
+    private final AGHttpTransport transport;
 
     private AuthScope authScope;
     private String masqueradeAsUser;
@@ -83,34 +96,101 @@ public class AGHTTPClient implements AutoCloseable {
 
     private final int httpNumRetries;
 
-    private AGHTTPClient(String serverURL, HttpClient client) {
+    private final List<AGHttpListener> listeners = new CopyOnWriteArrayList<>();
+    // Whether the server can send binary tuple results, null until asked.
+    private volatile Boolean binaryTQRSupported;
+
+    private AGHTTPClient(String serverURL, HttpClient client, AGHttpTransport transport) {
         this.serverURL = serverURL.replaceAll("/$", "");
         this.httpClient = client;
+        this.transport = transport;
         this.httpNumRetries = Integer.parseInt(
             System.getProperty(PROP_HTTP_NUM_RETRIES, "" + DEFAULT_HTTP_NUM_RETRIES));
+        final AGHttpMetrics metrics = AGHttpMetrics.getShared();
+        if (metrics != null) {
+            listeners.add(metrics);
+        }
         if (logger.isDebugEnabled()) {
-            logger.debug("connect: " + serverURL + " " + client);
+            logger.debug("connect: " + serverURL + " " + transport);
         }
     }
 
+    /**
+     * Creates a client sending requests with the given transport.
+     * <p>
+     * The transport is closed with this client.</p>
+     *
+     * @param serverURL the URL of the server
+     * @param transport sends the requests
+     */
+    public AGHTTPClient(String serverURL, AGHttpTransport transport) {
+        // The HttpClient of other transports only holds the credentials.
+        this(serverURL, transport instanceof AGCommonsHttpTransport
+                        ? ((AGCommonsHttpTransport) transport).getHttpClient()
+                        : new HttpClient(new SimpleHttpConnectionManager()),
+                transport);
+    }
+
     public AGHTTPClient(String serverURL) {
         this(serverURL, (MultiThreadedHttpConnectionManager) null);
     }
 
+    /**
+     * Creates a client with the default transport.
+     *
+     * @param serverURL the URL of the server
+     * @param manager   the connection manager of the commons transport,
+     *                  null to create one that is shut down with this client;
+     *                  not used by other transports
+     */
     public AGHTTPClient(String serverURL, HttpConnectionManager manager) {
-        this(serverURL, new HttpClient(manager == null ? createManager() : manager));
-        if (manager == null) {
+        this(serverURL, createDefaultTransport(manager, null));
+        if (manager == null && transport instanceof AGCommonsHttpTransport) {
             mManager = this.getHttpClient().getHttpConnectionManager();
         }
     }
 
     // This is used for clients created by the connection pool.
     public AGHTTPClient(String serverURL, HttpConnectionManagerParams params) {
-        this(serverURL, createManager(params));
+        this(serverURL, createDefaultTransport(null, params));
     }
 
-    private static HttpConnectionManager createManager() {
-        return createManager(null);
+    /**
+     * Creates the transport selected by {@link #PROP_HTTP_TRANSPORT}. The
+     * connection manager is only created for the commons transport.
+     */
+    private static AGHttpTransport createDefaultTransport(HttpConnectionManager manager,
+                                                          HttpConnectionManagerParams params) {
+        final String name = System.getProperty(PROP_HTTP_TRANSPORT, "commons");
+        switch (name) {
+            case "commons":
+                return new AGCommonsHttpTransport(
+                        new HttpClient(manager != null ? manager : createManager(params)));
+            case "jdk":
+                return createJdkTransport();
+            default:
+                throw new IllegalArgumentException("Unknown " + PROP_HTTP_TRANSPORT + ": " + name);
+        }
+    }
+
+    /**
+     * Creates an AGJdkHttpTransport with its default settings.
+     * <p>
+     * The class is loaded reflectively because it is only compiled
+     * when building with Java 11 or later.
+     * </p>
+     *
+     * @return the new transport
+     * @throws UnsupportedOperationException if the transport is not available
+     */
+    public static AGHttpTransport createJdkTransport() {
+        try {
+            return (AGHttpTransport) Class.forName("com.franz.agraph.http.AGJdkHttpTransport")
+                    .getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new UnsupportedOperationException(
+                    "The jdk HTTP transport requires Java 11 and a client built with it", e);
+        }
     }
 
     private static HttpConnectionManager createManager(HttpConnectionManagerParams params) {
@@ -134,7 +214,7 @@ public class AGHTTPClient implements AutoCloseable {
     public String toString() {
         return "{" + super.toString()
                 + " " + serverURL
-                + " " + httpClient
+                + " " + transport
                 + "}";
     }
 
@@ -142,12 +222,63 @@ public class AGHTTPClient implements AutoCloseable {
         return serverURL;
     }
 
+    /**
+     * @return whether the server can send binary tuple results,
+     * or null if it has not been asked yet
+     */
+    Boolean getBinaryTQRSupported() {
+        return binaryTQRSupported;
+    }
+
+    void setBinaryTQRSupported(Boolean binaryTQRSupported) {
+        this.binaryTQRSupported = binaryTQRSupported;
+    }
+
+    /**
+     * @return the commons-httpclient object holding the credentials, which
+     *         also sends the requests if the transport is an {@link AGCommonsHttpTransport}
+     */
     public HttpClient getHttpClient() {
         return httpClient;
     }
 
+    /**
+     * @return the transport sending the requests
+     */
+    public AGHttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Starts sending a measurement of each request to a listener.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(AGHttpListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops sending measurements to a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(AGHttpListener listener) {
+        listeners.remove(listener);
+    }
+
     public void post(String url, Header[] headers, NameValuePair[] params,
                      RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
+        post(url, headers, params, requestEntity, handler, null);
+    }
+
+    /**
+     * @param operation the operation of the request for the listeners,
+     *                  null to classify it by its URL
+     */
+    void post(String url, Header[] headers, NameValuePair[] params,
+              RequestEntity requestEntity, AGResponseHandler handler,
+              AGHttpOperation operation) throws AGHttpException {
         PostMethod post = new PostMethod(url);
         setDoAuthentication(post);
         for (Header header : headers) {
@@ -166,7 +297,7 @@ public class AGHTTPClient implements AutoCloseable {
             post.setQueryString(params);
             post.setRequestEntity(requestEntity);
         }
-        executeMethod(url, post, handler);
+        executeMethod(url, post, handler, operation, 0, false);
     }
 
     /**
@@ -197,7 +328,7 @@ public class AGHTTPClient implements AutoCloseable {
                 get.setQueryString(params);
             }
             boolean mightRetry = (i < numTries - 1);
-            if (executeMethod(url, get, handler, mightRetry) == ExecuteResult.SUCCESS) {
+            if (executeMethod(url, get, handler, null, i, mightRetry) == ExecuteResult.SUCCESS) {
                 return;
             }
         }
@@ -217,7 +348,7 @@ public class AGHTTPClient implements AutoCloseable {
         if (params != null) {
             delete.setQueryString(params);
         }
-        executeMethod(url, delete, handler);
+        executeMethod(url, delete, handler, null, 0, false);
     }
 
     public void put(String url, Header[] headers, NameValuePair[] params, RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
@@ -234,13 +365,7 @@ public class AGHTTPClient implements AutoCloseable {
         if (requestEntity != null) {
             put.setRequestEntity(requestEntity);
         }
-        executeMethod(url, put, handler);
-    }
-
-    private void executeMethod(String url,
-                               HttpMethod method,
-                               AGResponseHandler handler) {
-      executeMethod(url, method, handler, false);
+        executeMethod(url, put, handler, null, 0, false);
     }
 
     private enum ExecuteResult { SUCCESS, RETRY };
@@ -252,6 +377,8 @@ public class AGHTTPClient implements AutoCloseable {
      * @param handler in case of 200 response status, it will be called on the method
      *        (note that it will NOT be called for other 2xx success status responses,
      *        which might be debatable)
+     * @param operation of the request for the listeners, null to classify it by its URL
+     * @param attempt number of previous attempts at the request
      * @param returnRetryOn408 if true and server replied 408, then RETRY is returned
      *
      * @return either SUCCESS (for 2xx response), RETRY (for 408 response + returnRetryOn408),
@@ -260,6 +387,8 @@ public class AGHTTPClient implements AutoCloseable {
     private ExecuteResult executeMethod(String url,
                                         HttpMethod method,
                                         AGResponseHandler handler,
+                                        AGHttpOperation operation,
+                                        int attempt,
                                         boolean returnRetryOn408) throws AGHttpException {
         // A note about retrying requests:
         // a difficuty with HttpMethod is that once the request is attempted, you can't
@@ -269,15 +398,26 @@ public class AGHTTPClient implements AutoCloseable {
         // This retry handler takes care of retrying the HTTP request in case of
         // connection problems. It does not deal with retrying in case of HTTP error codes.
         method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, retryHandler);
+        // Measured for the listeners, if any.
+        final AGHttpExchange exchange = listeners.isEmpty() ? null
+                : new AGHttpExchange(listeners,
+                        operation != null ? operation : AGHttpOperation.classify(method.getName(), url),
+                        method, url, attempt);
         // Will be set to false if the handler takes ownership of the method object.
         // Otherwise we must close the method by the end of this procedure.
         boolean release = true;
+        // The transport may return the response in another object.
+        HttpMethod response = method;
         try {
-            int httpCode = getHttpClient().executeMethod(method);
+            response = transport.execute(method);
+            int httpCode = response.getStatusCode();
+            if (exchange != null) {
+                exchange.responseReceived(httpCode);
+            }
             if (httpCode == HttpURLConnection.HTTP_OK) {
                 if (handler != null) {
                     release = handler.releaseConnection();
-                    handler.handleResponse(method);
+                    handler.handleResponse(response);
                 }
                 return ExecuteResult.SUCCESS;
             } else if (httpCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
@@ -293,16 +433,30 @@ public class AGHTTPClient implements AutoCloseable {
             } else {
                 AGErrorHandler errHandler = new AGErrorHandler();
                 release = errHandler.releaseConnection();
-                errHandler.handleResponse(method);
+                errHandler.handleResponse(response);
                 throw errHandler.getResult();
             }
         } catch (IOException e) {
+            if (exchange != null) {
+                exchange.failed(e);
+            }
             throw new AGHttpException(e);
+        } catch (RuntimeException e) {
+            if (exchange != null) {
+                exchange.failed(e);
+            }
+            throw e;
         } finally {
             if (release) {
                 // Note: this will read the response body if necessary
                 // to allow connection reuse.
-                method.releaseConnection();
+                response.releaseConnection();
+            }
+            // Otherwise the exchange completes when the handler releases
+            // the response (see AGResponseHandler#release), unless the
+            // handler has failed.
+            if (exchange != null && (release || exchange.getFailure() != null)) {
+                exchange.complete();
             }
         }
     }
@@ -327,6 +481,7 @@ public class AGHTTPClient implements AutoCloseable {
                 httpClient.getState().setCredentials(authScope,
                         new UsernamePasswordCredentials(username, password));
                 httpClient.getParams().setAuthenticationPreemptive(true);
+                transport.setCredentials(username, password);
             } catch (MalformedURLException e) {
                 logger.warn("Unable to set username and password for malformed URL " + serverURL, e);
             }
@@ -334,6 +489,7 @@ public class AGHTTPClient implements AutoCloseable {
             authScope = null;
             httpClient.getState().clearCredentials();
             httpClient.getParams().setAuthenticationPreemptive(false);
+            transport.setCredentials(null, null);
         }
     }
 
@@ -356,6 +512,20 @@ public class AGHTTPClient implements AutoCloseable {
         return res;
     }
 
+    /**
+     * @return the credentials set by setUsernameAndPassword, or null
+     */
+    public Credentials getCredentials() {
+        return authScope == null ? null : httpClient.getState().getCredentials(authScope);
+    }
+
+    /**
+     * @return the user set by setMasqueradeAsUser, or null
+     */
+    public String getMasqueradeAsUser() {
+        return masqueradeAsUser;
+    }
+
     /**
      * Sets the AG user for X-Masquerade-As-User requests.
      * <p>
@@ -480,6 +650,7 @@ public class AGHTTPClient implements AutoCloseable {
             ((MultiThreadedHttpConnectionManager) mManager).shutdown();
             mManager = null;
         }
+        transport.close();
         isClosed = true;
     }
 
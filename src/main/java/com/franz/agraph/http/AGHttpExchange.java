@@ -0,0 +1,408 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The measurement of one HTTP request attempt, passed to the
+ * {@link AGHttpListener}s of a client once the request has completed.
+ * <p>
+ * Times are measured from the start of the attempt, before waiting for
+ * a connection. Byte counts are those of the request and response bodies
+ * on the wire, headers excluded. The measurement is attached to the
+ * request while it runs, so that the transport and the response handler
+ * can add to it with the static methods of this class.
+ * </p>
+ */
+public final class AGHttpExchange {
+    private static final Logger logger = LoggerFactory.getLogger(AGHttpExchange.class);
+
+    /**
+     * Parameter of the request holding its measurement.
+     */
+    private static final String PARAM = AGHttpExchange.class.getName();
+
+    private final List<AGHttpListener> listeners;
+    private final AGHttpOperation operation;
+    private final String method;
+    private final String url;
+    private final int attempt;
+    private final long start = System.nanoTime();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile long responseNanos = -1;
+    private volatile long latencyNanos = -1;
+    private volatile int statusCode = -1;
+    private volatile Throwable failure;
+    private volatile long poolWaitNanos;
+    private volatile int retries;
+    private volatile long bytesSent;
+    private volatile long uncompressedBytesSent = -1;
+    private volatile long bytesReceived;
+    private volatile long decodedBytesReceived = -1;
+    private RequestEntity compressedEntity;
+
+    AGHttpExchange(List<AGHttpListener> listeners, AGHttpOperation operation,
+                   HttpMethod method, String url, int attempt) {
+        this.listeners = listeners;
+        this.operation = operation;
+        this.method = method.getName();
+        this.url = url;
+        this.attempt = attempt;
+        method.getParams().setParameter(PARAM, this);
+        if (method instanceof EntityEnclosingMethod) {
+            final EntityEnclosingMethod enclosing = (EntityEnclosingMethod) method;
+            final RequestEntity entity = enclosing.getRequestEntity();
+            if (entity instanceof AGGzipRequestEntity) {
+                compressedEntity = entity;
+            }
+            if (entity != null && entity.getContentLength() >= 0) {
+                bytesSent = entity.getContentLength();
+            } else if (entity != null) {
+                enclosing.setRequestEntity(new CountingEntity(entity));
+            }
+        }
+    }
+
+    /**
+     * @param method a request or response
+     * @return the measurement of the request, or null if it is not measured
+     */
+    public static AGHttpExchange of(HttpMethod method) {
+        final Object exchange = method.getParams().getParameter(PARAM);
+        return exchange instanceof AGHttpExchange ? (AGHttpExchange) exchange : null;
+    }
+
+    /**
+     * Counts the bytes of a response body as received.
+     *
+     * @param method the response
+     * @param in     the body of the response, possibly null
+     * @return the stream to read the body from
+     */
+    public static InputStream countReceived(HttpMethod method, InputStream in) {
+        final AGHttpExchange exchange = in == null ? null : of(method);
+        return exchange == null ? in : exchange.new CountingInput(in, false);
+    }
+
+    /**
+     * Counts the bytes of a compressed response body after decompression.
+     *
+     * @param method the response
+     * @param in     the decompressed body of the response
+     * @return the stream to read the body from
+     */
+    public static InputStream countDecoded(HttpMethod method, InputStream in) {
+        final AGHttpExchange exchange = of(method);
+        if (exchange == null) {
+            return in;
+        }
+        exchange.decodedBytesReceived = 0;
+        return exchange.new CountingInput(in, true);
+    }
+
+    /**
+     * Records a connection-level retry of a request.
+     *
+     * @param method the request
+     */
+    public static void retried(HttpMethod method) {
+        final AGHttpExchange exchange = of(method);
+        if (exchange != null) {
+            exchange.retries++;
+        }
+    }
+
+    /**
+     * Records the time a request waited for a connection.
+     *
+     * @param method the request
+     * @param nanos  the time waited
+     */
+    static void waitedForConnection(HttpMethod method, long nanos) {
+        final AGHttpExchange exchange = of(method);
+        if (exchange != null) {
+            exchange.poolWaitNanos += nanos;
+        }
+    }
+
+    /**
+     * Completes the measurement of a request whose response is released
+     * by its handler rather than by the client.
+     *
+     * @param method the request or response
+     */
+    public static void released(HttpMethod method) {
+        final AGHttpExchange exchange = of(method);
+        if (exchange != null) {
+            exchange.complete();
+        }
+    }
+
+    void responseReceived(int status) {
+        statusCode = status;
+        responseNanos = System.nanoTime() - start;
+    }
+
+    void failed(Throwable e) {
+        failure = e;
+    }
+
+    /**
+     * Notifies the listeners, the first time only.
+     */
+    void complete() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        latencyNanos = System.nanoTime() - start;
+        if (compressedEntity != null) {
+            uncompressedBytesSent = ((AGGzipRequestEntity) compressedEntity).getUncompressedLength();
+        }
+        for (AGHttpListener listener : listeners) {
+            try {
+                listener.requestCompleted(this);
+            } catch (RuntimeException e) {
+                logger.warn("HTTP listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the logical operation of the request
+     */
+    public AGHttpOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the HTTP method of the request
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the URL of the request, without parameters
+     */
+    public String getURL() {
+        return url;
+    }
+
+    /**
+     * @return 0 for the first attempt at a request, 1 for the first retry
+     *         after an HTTP 408 response, and so on
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * @return the number of times the request was resent after
+     *         a connection error, within this attempt
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the HTTP status of the response, -1 if there was none
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the error the request failed with, null if it succeeded
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return the time until the response headers were received,
+     *         in nanoseconds, -1 if there was no response
+     */
+    public long getResponseNanos() {
+        return responseNanos;
+    }
+
+    /**
+     * @return the time until the response was released, in nanoseconds;
+     *         this includes reading the response body
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * Transports that bound the number of connections or requests in
+     * flight report how long a request waited for one. The default pool
+     * of {@link AGCommonsHttpTransport} is unbounded and reports no wait.
+     *
+     * @return the time spent waiting for a connection, in nanoseconds
+     */
+    public long getPoolWaitNanos() {
+        return poolWaitNanos;
+    }
+
+    /**
+     * @return the number of bytes of the request body sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes of the request body before compression,
+     *         the same as {@link #getBytesSent()} if it was not compressed
+     */
+    public long getUncompressedBytesSent() {
+        final long uncompressed = uncompressedBytesSent;
+        return uncompressed >= 0 ? uncompressed : bytesSent;
+    }
+
+    /**
+     * @return true if the request body was compressed
+     */
+    public boolean isRequestCompressed() {
+        return uncompressedBytesSent >= 0;
+    }
+
+    /**
+     * @return the number of bytes of the response body received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return the number of bytes of the response body after decompression,
+     *         the same as {@link #getBytesReceived()} if it was not compressed
+     */
+    public long getDecodedBytesReceived() {
+        final long decoded = decodedBytesReceived;
+        return decoded >= 0 ? decoded : bytesReceived;
+    }
+
+    /**
+     * @return true if the response body was compressed
+     */
+    public boolean isResponseCompressed() {
+        return decodedBytesReceived >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "{AGHttpExchange " + operation
+                + " " + method + " " + url
+                + " status=" + statusCode
+                + " attempt=" + attempt
+                + " latency=" + latencyNanos
+                + " sent=" + bytesSent
+                + " received=" + bytesReceived
+                + "}";
+    }
+
+    /**
+     * Counts the bytes read from a response body. Only the thread
+     * reading the response updates the counts.
+     */
+    private final class CountingInput extends FilterInputStream {
+        private final boolean decoded;
+
+        CountingInput(InputStream in, boolean decoded) {
+            super(in);
+            this.decoded = decoded;
+        }
+
+        private void count(long n) {
+            if (n > 0) {
+                if (decoded) {
+                    decodedBytesReceived += n;
+                } else {
+                    bytesReceived += n;
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            count(b < 0 ? 0 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+    }
+
+    /**
+     * Counts the bytes of a request body of unknown length as it is sent.
+     */
+    private final class CountingEntity implements RequestEntity {
+        private final RequestEntity entity;
+
+        CountingEntity(RequestEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return entity.isRepeatable();
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            bytesSent = 0;
+            entity.writeRequest(new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytesSent++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    bytesSent += len;
+                }
+            });
+        }
+
+        @Override
+        public long getContentLength() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return entity.getContentType();
+        }
+    }
+}
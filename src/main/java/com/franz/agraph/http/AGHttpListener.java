@@ -0,0 +1,30 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+/**
+ * Receives a measurement of each HTTP request sent by an {@link AGHTTPClient},
+ * for instance to feed a metrics system.
+ * <p>
+ * Requests are only measured while a client has listeners, so there
+ * is no cost otherwise. {@link AGHttpMetrics} is a listener keeping
+ * latency histograms and transport totals.
+ * </p>
+ *
+ * @see AGHTTPClient#addListener(AGHttpListener)
+ */
+@FunctionalInterface
+public interface AGHttpListener {
+
+    /**
+     * Called once per request attempt, when it has completed: its response
+     * has been read and released, or it has failed. The call is made by the
+     * thread that completed the request, so it should return quickly.
+     * Exceptions thrown by a listener are logged and otherwise ignored.
+     *
+     * @param exchange the completed request
+     */
+    void requestCompleted(AGHttpExchange exchange);
+}
@@ -0,0 +1,357 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link AGHttpListener} keeping a latency histogram per
+ * {@link AGHttpOperation} and transport totals: bytes sent and received,
+ * compression ratios, connection waits, retries and HTTP 408 responses.
+ * <p>
+ * Latencies are counted in power-of-two buckets of microseconds, so
+ * percentiles are upper bounds within a factor of two. Recording a request
+ * does not lock, and metrics may be shared by any number of clients.
+ * </p>
+ * <pre>{@code
+ * AGHttpMetrics metrics = new AGHttpMetrics();
+ * metrics.registerMBean("myapp");
+ * server.getHTTPClient().addListener(metrics);
+ * }</pre>
+ * <p>
+ * Setting <code>-Dcom.franz.agraph.http.metrics=true</code> adds
+ * {@link #getShared() shared metrics}, registered with JMX, to all clients.
+ * </p>
+ */
+public class AGHttpMetrics implements AGHttpListener, AGHttpMetricsMBean {
+    private static final Logger logger = LoggerFactory.getLogger(AGHttpMetrics.class);
+
+    /**
+     * Name of the system property that, when true, makes all clients
+     * record their requests in the {@link #getShared() shared metrics}.
+     */
+    public static final String PROP_HTTP_METRICS = "com.franz.agraph.http.metrics";
+
+    private static final int BUCKETS = 64;
+
+    private static AGHttpMetrics shared;
+    private static boolean sharedInitialized;
+
+    private final Histogram[] histograms = new Histogram[AGHttpOperation.values().length];
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder clientTimeouts = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder compressedSent = new LongAdder();
+    private final LongAdder uncompressedSent = new LongAdder();
+    private final LongAdder compressedReceived = new LongAdder();
+    private final LongAdder decompressedReceived = new LongAdder();
+    private final LongAdder poolWaitNanos = new LongAdder();
+    private volatile ObjectName mbeanName;
+
+    public AGHttpMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Returns the metrics all clients record their requests in when
+     * the {@link #PROP_HTTP_METRICS} system property is true. They are
+     * registered with JMX under the name "shared".
+     *
+     * @return the shared metrics, or null if the property is not set
+     */
+    public static synchronized AGHttpMetrics getShared() {
+        if (!sharedInitialized) {
+            if (Boolean.getBoolean(PROP_HTTP_METRICS)) {
+                shared = new AGHttpMetrics();
+                try {
+                    shared.registerMBean("shared");
+                } catch (JMException e) {
+                    logger.warn("Could not register the HTTP metrics with JMX", e);
+                }
+            }
+            sharedInitialized = true;
+        }
+        return shared;
+    }
+
+    @Override
+    public void requestCompleted(AGHttpExchange exchange) {
+        requests.increment();
+        final int status = exchange.getStatusCode();
+        final boolean failed = exchange.getFailure() != null || status < 200 || status >= 300;
+        if (failed) {
+            failures.increment();
+        }
+        if (status == HttpURLConnection.HTTP_CLIENT_TIMEOUT) {
+            clientTimeouts.increment();
+        }
+        retries.add(exchange.getRetries() + (exchange.getAttempt() > 0 ? 1 : 0));
+        bytesSent.add(exchange.getBytesSent());
+        bytesReceived.add(exchange.getBytesReceived());
+        if (exchange.isRequestCompressed()) {
+            compressedSent.add(exchange.getBytesSent());
+            uncompressedSent.add(exchange.getUncompressedBytesSent());
+        }
+        if (exchange.isResponseCompressed()) {
+            compressedReceived.add(exchange.getBytesReceived());
+            decompressedReceived.add(exchange.getDecodedBytesReceived());
+        }
+        poolWaitNanos.add(exchange.getPoolWaitNanos());
+        histograms[exchange.getOperation().ordinal()].record(exchange.getLatencyNanos(), failed);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     *
+     * @param name distinguishes these metrics from others
+     * @return the name under which the metrics were registered
+     * @throws JMException if the metrics could not be registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        final ObjectName objectName = new ObjectName("com.franz.agraph:type=AGHttpMetrics,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if registered.
+     *
+     * @throws JMException if the metrics could not be unregistered
+     */
+    public void unregisterMBean() throws JMException {
+        final ObjectName objectName = mbeanName;
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            mbeanName = null;
+        }
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getClientTimeouts() {
+        return clientTimeouts.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public double getRequestCompressionRatio() {
+        final long compressed = compressedSent.sum();
+        return compressed == 0 ? 0 : (double) uncompressedSent.sum() / compressed;
+    }
+
+    @Override
+    public double getResponseCompressionRatio() {
+        final long compressed = compressedReceived.sum();
+        return compressed == 0 ? 0 : (double) decompressedReceived.sum() / compressed;
+    }
+
+    @Override
+    public double getPoolWaitMillis() {
+        return toMillis(poolWaitNanos.sum());
+    }
+
+    @Override
+    public String[] getOperations() {
+        final AGHttpOperation[] operations = AGHttpOperation.values();
+        final String[] names = new String[operations.length];
+        for (int i = 0; i < operations.length; i++) {
+            names[i] = operations[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public long getOperationCount(String operation) {
+        return getCount(AGHttpOperation.valueOf(operation));
+    }
+
+    @Override
+    public long getOperationFailures(String operation) {
+        return getFailures(AGHttpOperation.valueOf(operation));
+    }
+
+    @Override
+    public double getOperationMeanMillis(String operation) {
+        return toMillis(getMeanNanos(AGHttpOperation.valueOf(operation)));
+    }
+
+    @Override
+    public double getOperationPercentileMillis(String operation, double percentile) {
+        return toMillis(getPercentileNanos(AGHttpOperation.valueOf(operation), percentile));
+    }
+
+    @Override
+    public double getOperationMaxMillis(String operation) {
+        return toMillis(getMaxNanos(AGHttpOperation.valueOf(operation)));
+    }
+
+    /**
+     * @param operation an operation
+     * @return the number of request attempts of the operation
+     */
+    public long getCount(AGHttpOperation operation) {
+        return histograms[operation.ordinal()].count.sum();
+    }
+
+    /**
+     * @param operation an operation
+     * @return the number of failed request attempts of the operation
+     */
+    public long getFailures(AGHttpOperation operation) {
+        return histograms[operation.ordinal()].failures.sum();
+    }
+
+    /**
+     * @param operation an operation
+     * @return the mean latency of the operation, in nanoseconds
+     */
+    public long getMeanNanos(AGHttpOperation operation) {
+        final Histogram histogram = histograms[operation.ordinal()];
+        final long count = histogram.count.sum();
+        return count == 0 ? 0 : histogram.totalNanos.sum() / count;
+    }
+
+    /**
+     * @param operation  an operation
+     * @param percentile between 0 and 100
+     * @return an upper bound of the latency percentile of the
+     *         operation, in nanoseconds, 0 if there was no request
+     */
+    public long getPercentileNanos(AGHttpOperation operation, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        final AtomicLongArray buckets = histograms[operation.ordinal()].buckets;
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return TimeUnit.MICROSECONDS.toNanos(i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param operation an operation
+     * @return the highest latency of the operation, in nanoseconds
+     */
+    public long getMaxNanos(AGHttpOperation operation) {
+        return histograms[operation.ordinal()].maxNanos.get();
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (LongAdder adder : new LongAdder[]{requests, failures, retries, clientTimeouts,
+                bytesSent, bytesReceived, compressedSent, uncompressedSent,
+                compressedReceived, decompressedReceived, poolWaitNanos}) {
+            adder.reset();
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder("{AGHttpMetrics requests=").append(getRequests())
+                .append(" failures=").append(getFailures())
+                .append(" retries=").append(getRetries())
+                .append(" timeouts=").append(getClientTimeouts())
+                .append(" sent=").append(getBytesSent())
+                .append(" received=").append(getBytesReceived());
+        for (AGHttpOperation operation : AGHttpOperation.values()) {
+            final long count = getCount(operation);
+            if (count > 0) {
+                s.append(' ').append(operation).append("=").append(count)
+                        .append("/p50:").append(toMillis(getPercentileNanos(operation, 50)))
+                        .append("/p99:").append(toMillis(getPercentileNanos(operation, 99)));
+            }
+        }
+        return s.append('}').toString();
+    }
+
+    /**
+     * Latencies of one operation. Bucket i counts latencies below
+     * 2^i microseconds and not counted by bucket i - 1.
+     */
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean failed) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(micros)));
+            count.increment();
+            if (failed) {
+                failures.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            failures.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+        }
+    }
+}
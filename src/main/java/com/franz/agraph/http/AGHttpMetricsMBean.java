@@ -0,0 +1,106 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+/**
+ * JMX view of an {@link AGHttpMetrics}.
+ * <p>
+ * Per-operation values take the name of an {@link AGHttpOperation}.
+ * </p>
+ *
+ * @see AGHttpMetrics#registerMBean(String)
+ */
+public interface AGHttpMetricsMBean {
+
+    /**
+     * @return the number of request attempts completed
+     */
+    long getRequests();
+
+    /**
+     * @return the number of request attempts that failed
+     */
+    long getFailures();
+
+    /**
+     * @return the number of requests resent after a connection
+     *         error or an HTTP 408 response
+     */
+    long getRetries();
+
+    /**
+     * @return the number of HTTP 408 (client timeout) responses
+     */
+    long getClientTimeouts();
+
+    /**
+     * @return the number of request body bytes sent
+     */
+    long getBytesSent();
+
+    /**
+     * @return the number of response body bytes received
+     */
+    long getBytesReceived();
+
+    /**
+     * @return uncompressed size over sent size of the compressed
+     *         request bodies, 0 if none was compressed
+     */
+    double getRequestCompressionRatio();
+
+    /**
+     * @return decompressed size over received size of the compressed
+     *         response bodies, 0 if none was compressed
+     */
+    double getResponseCompressionRatio();
+
+    /**
+     * @return the total time requests waited for a connection, in milliseconds
+     */
+    double getPoolWaitMillis();
+
+    /**
+     * @return the names of the operations
+     */
+    String[] getOperations();
+
+    /**
+     * @param operation name of an operation
+     * @return the number of request attempts of the operation
+     */
+    long getOperationCount(String operation);
+
+    /**
+     * @param operation name of an operation
+     * @return the number of failed request attempts of the operation
+     */
+    long getOperationFailures(String operation);
+
+    /**
+     * @param operation name of an operation
+     * @return the mean latency of the operation, in milliseconds
+     */
+    double getOperationMeanMillis(String operation);
+
+    /**
+     * @param operation  name of an operation
+     * @param percentile between 0 and 100
+     * @return an upper bound of the latency percentile of the
+     *         operation, in milliseconds
+     */
+    double getOperationPercentileMillis(String operation, double percentile);
+
+    /**
+     * @param operation name of an operation
+     * @return the highest latency of the operation, in milliseconds
+     */
+    double getOperationMaxMillis(String operation);
+
+    /**
+     * Resets all counts.
+     */
+    void reset();
+}
@@ -0,0 +1,104 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+/**
+ * The logical operations HTTP requests are grouped by in metrics.
+ *
+ * @see AGHttpExchange#getOperation()
+ */
+public enum AGHttpOperation {
+    /**
+     * Query evaluation, including saved queries and getting statements.
+     */
+    QUERY,
+    /**
+     * SPARQL update.
+     */
+    UPDATE,
+    /**
+     * Adding statements or loading data.
+     */
+    ADD,
+    /**
+     * Deleting statements.
+     */
+    DELETE,
+    /**
+     * Committing a transaction.
+     */
+    COMMIT,
+    /**
+     * Rolling back a transaction.
+     */
+    ROLLBACK,
+    /**
+     * Opening a dedicated session.
+     */
+    SESSION_OPEN,
+    /**
+     * Closing a dedicated session.
+     */
+    SESSION_CLOSE,
+    /**
+     * Keeping a dedicated session alive.
+     */
+    PING,
+    /**
+     * Any other request.
+     */
+    OTHER;
+
+    /**
+     * Classifies a request by its method and the last segments of its URL.
+     * Queries posted to the root of a repository cannot be told from other
+     * requests this way and are classified by the caller.
+     *
+     * @param method the HTTP method
+     * @param url    the request URL
+     * @return the operation of the request
+     */
+    static AGHttpOperation classify(String method, String url) {
+        int end = url.indexOf('?');
+        if (end < 0) {
+            end = url.length();
+        }
+        while (end > 0 && url.charAt(end - 1) == '/') {
+            end--;
+        }
+        final int lastSlash = url.lastIndexOf('/', end - 1);
+        final String last = url.substring(lastSlash + 1, end);
+        final String previous = lastSlash > 0
+                ? url.substring(url.lastIndexOf('/', lastSlash - 1) + 1, lastSlash) : "";
+        switch (last) {
+            case AGProtocol.SESSION:
+                return "POST".equals(method) ? SESSION_OPEN : OTHER;
+            case AGProtocol.CLOSE:
+                return AGProtocol.SESSION.equals(previous) ? SESSION_CLOSE : OTHER;
+            case AGProtocol.PING:
+                return AGProtocol.SESSION.equals(previous) ? PING : OTHER;
+            case AGProtocol.COMMIT:
+                return COMMIT;
+            case AGProtocol.ROLLBACK:
+                return ROLLBACK;
+            case "statements":
+                switch (method) {
+                    case "GET":
+                        return QUERY;
+                    case "DELETE":
+                        return DELETE;
+                    default:
+                        return ADD;
+                }
+            case AGProtocol.DELETE:
+                return "statements".equals(previous) ? DELETE : OTHER;
+            case AGProtocol.RUNNING:
+                // Cancelling a query is not a query.
+                return OTHER;
+            default:
+                return AGProtocol.QUERIES.equals(previous) ? QUERY : OTHER;
+        }
+    }
+}
@@ -6,6 +6,7 @@ package com.franz.agraph.http;
 
 import com.franz.agraph.http.exception.AGCustomStoredProcException;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.exception.AGQueryTimeoutException;
 import com.franz.agraph.http.handler.AGJSONArrayHandler;
 import com.franz.agraph.http.handler.AGJSONHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
@@ -19,6 +20,7 @@ import com.franz.agraph.http.storedproc.AGSerializer;
 import com.franz.agraph.repository.AGAbstractRepository;
 import com.franz.agraph.repository.AGMaterializer;
 import com.franz.agraph.repository.AGQuery;
+import com.franz.agraph.repository.AGQueryResultCache;
 import com.franz.agraph.repository.AGServerVersion;
 import com.franz.agraph.repository.AGSpinFunction;
 import com.franz.agraph.repository.AGSpinMagicProperty;
@@ -31,6 +33,7 @@ import com.franz.agraph.repository.repl.DurabilityVisitor;
 import com.franz.agraph.repository.repl.TransactionSettings;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.RequestEntity;
@@ -78,7 +81,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import javax.transaction.xa.Xid;
 
@@ -87,6 +89,32 @@ import javax.transaction.xa.Xid;
  */
 public class AGHttpRepoClient implements AutoCloseable {
 
+    /**
+     * System property that can be set to false to keep tuple query
+     * results from being requested in the binary format.
+     * Default is true.
+     *
+     * @see #getPreferredTQRFormat()
+     */
+    public static final String PROP_BINARY_RESULTS = "com.franz.agraph.http.binaryResults";
+
+    /**
+     * System property setting the default
+     * {@link #setUploadCompressionThreshold(long) upload compression threshold}
+     * of new clients. Default is {@link #UPLOAD_COMPRESSION_NEVER}.
+     */
+    public static final String PROP_UPLOAD_COMPRESSION_THRESHOLD = "com.franz.agraph.http.uploadCompressionThreshold";
+
+    /**
+     * Upload compression threshold that disables compression.
+     */
+    public static final long UPLOAD_COMPRESSION_NEVER = -1;
+
+    /**
+     * Upload compression threshold that compresses all request bodies.
+     */
+    public static final long UPLOAD_COMPRESSION_ALWAYS = 0;
+
     /**
      * Used when constructing distributed transaction headers, to turn a durability
      * level into a string that can be included in the header.
@@ -118,15 +146,32 @@ public class AGHttpRepoClient implements AutoCloseable {
     private static int defaultSessionLifetimeInSeconds = 3600;
     private static NameValuePair[] emptyParams = new NameValuePair[0];
     private static AGServerVersion supportedTSVTQRVersion = new AGServerVersion("6.4.2");
+    private static final String BINARY_TQR_PROBE_QUERY = "SELECT ?x WHERE {} LIMIT 0";
     final Logger logger = LoggerFactory.getLogger(this.getClass());
-    // Used to create the pinger task
+    // Runs the session heartbeat
     private final ScheduledExecutorService executor;
+    /**
+     * Names of saved queries to delete before the next prepared query.
+     *
+     * @deprecated saved queries are managed by the
+     * {@link #getSavedQueryCache() saved query cache}, or deleted
+     * with {@link #deleteSavedQuery(String)}
+     */
+    @Deprecated
     public ConcurrentLinkedQueue<String> savedQueryDeleteQueue;
+    private final AGSavedQueryCache savedQueries = new AGSavedQueryCache(
+            Integer.getInteger(AGSavedQueryCache.PROP_SAVED_QUERY_CACHE_SIZE,
+                    AGSavedQueryCache.DEFAULT_CAPACITY));
+    private final AGNamespaceCache namespaceCache = new AGNamespaceCache(this,
+            Long.getLong(AGNamespaceCache.PROP_NAMESPACE_CACHE_TTL,
+                    AGNamespaceCache.DEFAULT_TIME_TO_LIVE_MILLIS));
     private int lifetimeInSeconds = defaultSessionLifetimeInSeconds;
     // delay using a dedicated session until necessary
     private boolean usingDedicatedSession = false;
     private boolean autoCommit = true;
     private int uploadCommitPeriod = 0;
+    private long uploadCompressionThreshold =
+            Long.getLong(PROP_UPLOAD_COMPRESSION_THRESHOLD, UPLOAD_COMPRESSION_NEVER);
     // If sessionRoot is set, this is a dedicated session client
     // repoRoot just points to the main SD port URL.
     private String sessionRoot, repoRoot;
@@ -139,8 +184,8 @@ public class AGHttpRepoClient implements AutoCloseable {
     private AGHTTPClient client;
     private AGAbstractRepository repo;
     private boolean allowExternalBlankNodeIds = false;
-    // Pinger task handle
-    private ScheduledFuture<?> pinger;
+    // Keeps the session alive, if any
+    private AGSessionHeartbeat heartbeat;
     /**
      * When set, pass the contents of this field in the x-user-attributes Header of any request.
      * Assumes that AGHttpRepoClient only delivers requests to repo-based REST services in AG.
@@ -158,6 +203,16 @@ public class AGHttpRepoClient implements AutoCloseable {
     private TransactionSettings transactionSettings;
     // When true, any request made by this instance will include an `x-rollback' header.
     private boolean sendRollbackHeader = false;
+    // When true, the next request will include an `x-rollback' header.
+    private volatile boolean rollbackPending = false;
+    // Has a request been made since the last commit or rollback?
+    private volatile boolean usedSinceRollback = false;
+    private volatile long lastRollbackNanos = System.nanoTime();
+    // Used by the session heartbeat.
+    private volatile long lastRequestNanos = System.nanoTime();
+    // Has a request that may change the repository been made since the last commit or rollback?
+    private volatile boolean uncommittedWrites = false;
+    private volatile AGQueryResultCache queryResultCache;
 
     // Cached to avoid querying the server each time.
     private Boolean hasWarmupBug = null;
@@ -348,12 +403,19 @@ public class AGHttpRepoClient implements AutoCloseable {
 
     /**
      * Fetch the preferred {@link TupleQueryResultFormat}.
+     * <p>
+     * Unless set explicitly, this is {@link TupleQueryResultFormat#BINARY}
+     * if the server can send it (see {@link #PROP_BINARY_RESULTS}),
+     * otherwise TSV or SPARQL XML depending on the server version.
+     * </p>
      *
      * @return TupleQueryResultFormat  the current preferred format
      */
     public TupleQueryResultFormat getPreferredTQRFormat() {
         if (preferredTQRFormat == null) {
-            if (repo.getServer().getComparableVersion().compareTo(supportedTSVTQRVersion) >= 0) {
+            if (isBinaryTQRSupported()) {
+                preferredTQRFormat = TupleQueryResultFormat.BINARY;
+            } else if (repo.getServer().getComparableVersion().compareTo(supportedTSVTQRVersion) >= 0) {
                 preferredTQRFormat = TupleQueryResultFormat.TSV;
             } else {
                 preferredTQRFormat = TupleQueryResultFormat.SPARQL;
@@ -362,6 +424,56 @@ public class AGHttpRepoClient implements AutoCloseable {
         return preferredTQRFormat;
     }
 
+    /**
+     * Whether binary tuple results can be requested from the server.
+     * The server is asked once per {@link AGHTTPClient}, with a query
+     * returning no results.
+     */
+    private boolean isBinaryTQRSupported() {
+        if (!Boolean.parseBoolean(System.getProperty(PROP_BINARY_RESULTS, "true"))) {
+            return false;
+        }
+        AGHTTPClient httpClient = getHTTPClient();
+        Boolean supported = httpClient.getBinaryTQRSupported();
+        if (supported == null) {
+            if (repoRoot == null) {
+                return false;
+            }
+            supported = probeBinaryTQR();
+            httpClient.setBinaryTQRSupported(supported);
+        }
+        return supported;
+    }
+
+    /**
+     * Sends the probe query to the repository rather than to the session,
+     * and without {@link #beginRequest()}, so it neither counts as a use
+     * of a dedicated session nor consumes a pending rollback.
+     */
+    private boolean probeBinaryTQR() {
+        final String mimeType = TupleQueryResultFormat.BINARY.getDefaultMIMEType();
+        final boolean[] supported = {false};
+        List<Header> headers = new ArrayList<>(2);
+        headers.add(new Header("Content-Type", Protocol.FORM_MIME_TYPE + "; charset=utf-8"));
+        headers.add(new Header(Protocol.ACCEPT_PARAM_NAME, mimeType));
+        List<NameValuePair> params = new ArrayList<>(2);
+        params.add(new NameValuePair(Protocol.QUERY_LANGUAGE_PARAM_NAME, QueryLanguage.SPARQL.getName()));
+        params.add(new NameValuePair(Protocol.QUERY_PARAM_NAME, BINARY_TQR_PROBE_QUERY));
+        try {
+            getHTTPClient().post(repoRoot, headers.toArray(new Header[headers.size()]), prepareParams(params),
+                    null, new AGResponseHandler(mimeType) {
+                        @Override
+                        public void handleResponse(HttpMethod method) throws IOException {
+                            supported[0] = mimeType.equals(getResponseMIMEType(method));
+                        }
+                    });
+        } catch (AGHttpException e) {
+            logger.debug("Binary tuple results are not available from " + getServerURL(), e);
+        }
+        logger.debug("Binary tuple results supported by {}: {}", getServerURL(), supported[0]);
+        return supported[0];
+    }
+
     /**
      * Set the preferred {@link TupleQueryResultFormat}
      *
@@ -446,7 +558,7 @@ public class AGHttpRepoClient implements AutoCloseable {
      * @param headers, a List<Header> of headers
      * @return headers[], the headers converted to an array
      */
-    private Header[] prepareHeaders(List<Header> headers) {
+    private Header[] prepareHeaders(List<Header> headers, boolean rollback) {
 
         if (headers == null) {
             headers = new ArrayList<>(0);
@@ -455,7 +567,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         if (userAttributes != null) {
             headers.add(new Header(AGProtocol.USER_ATTRIBUTE_HEADER, userAttributes));
         }
-        if (sendRollbackHeader) {
+        if (rollback) {
             headers.add(new Header(AGProtocol.X_ROLLBACK_HEADER, "yes"));
         }
         addReplHeader(headers);
@@ -519,32 +631,221 @@ public class AGHttpRepoClient implements AutoCloseable {
                        Collection<? extends NameValuePair> params,
                        AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().get(url, prepareHeaders(headers), prepareParams(params),
+        final boolean rollback = beginRequest();
+        getHTTPClient().get(url, prepareHeaders(headers, rollback), prepareParams(params),
                 handler);
+        endRequest(rollback);
     }
 
     protected void post(String url, List<Header> headers,
                         Collection<? extends NameValuePair> params,
                         RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
+        post(url, headers, params, requestEntity, handler, true);
+    }
 
-        getHTTPClient().post(url, prepareHeaders(headers), prepareParams(params),
-                requestEntity, handler);
+    /**
+     * @param write false if the request cannot change the repository
+     */
+    private void post(String url, List<Header> headers,
+                      Collection<? extends NameValuePair> params,
+                      RequestEntity requestEntity, AGResponseHandler handler,
+                      boolean write) throws AGHttpException {
+        post(url, headers, params, requestEntity, handler, write, null);
+    }
+
+    /**
+     * @param write     false if the request cannot change the repository
+     * @param operation the operation of the request for the listeners
+     *                  of the HTTP client, null to classify it by its URL
+     */
+    private void post(String url, List<Header> headers,
+                      Collection<? extends NameValuePair> params,
+                      RequestEntity requestEntity, AGResponseHandler handler,
+                      boolean write, AGHttpOperation operation) throws AGHttpException {
+
+        final boolean rollback = beginRequest();
+        try {
+            getHTTPClient().post(url, prepareHeaders(headers, rollback), prepareParams(params),
+                    requestEntity, handler, operation);
+            endRequest(rollback);
+        } finally {
+            if (write) {
+                endWrite();
+            }
+        }
     }
 
     protected void put(String url, List<Header> headers,
                        Collection<? extends NameValuePair> params,
                        RequestEntity requestEntity, AGResponseHandler handler) throws AGHttpException {
 
-        getHTTPClient().put(url, prepareHeaders(headers), prepareParams(params),
-                requestEntity, handler);
+        final boolean rollback = beginRequest();
+        try {
+            getHTTPClient().put(url, prepareHeaders(headers, rollback), prepareParams(params),
+                    requestEntity, handler);
+            endRequest(rollback);
+        } finally {
+            endWrite();
+        }
     }
 
     protected void delete(String url, List<Header> headers,
                           Collection<? extends NameValuePair> params,
                           AGResponseHandler handler) throws AGHttpException {
+        delete(url, headers, params, handler, true);
+    }
 
-        getHTTPClient().delete(url, prepareHeaders(headers), prepareParams(params),
-                handler);
+    /**
+     * @param write false if the request cannot change the repository
+     */
+    private void delete(String url, List<Header> headers,
+                        Collection<? extends NameValuePair> params,
+                        AGResponseHandler handler, boolean write) throws AGHttpException {
+
+        final boolean rollback = beginRequest();
+        try {
+            getHTTPClient().delete(url, prepareHeaders(headers, rollback), prepareParams(params),
+                    handler);
+            endRequest(rollback);
+        } finally {
+            if (write) {
+                endWrite();
+            }
+        }
+    }
+
+    /**
+     * Records that a request is about to be made.
+     *
+     * @return true if the request must include an x-rollback header
+     */
+    private boolean beginRequest() {
+        usedSinceRollback = true;
+        touch();
+        return sendRollbackHeader || rollbackPending;
+    }
+
+    /**
+     * Records that a request has succeeded.
+     *
+     * @param rollback whether it included an x-rollback header
+     */
+    private void endRequest(boolean rollback) {
+        if (rollback) {
+            rollbackPending = false;
+            uncommittedWrites = false;
+            lastRollbackNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records that a request that may have changed the repository has
+     * completed, successfully or not. In autocommit mode the change is
+     * committed, so cached query results are dropped.
+     */
+    private void endWrite() {
+        if (autoCommit) {
+            invalidateQueryResults();
+        } else {
+            uncommittedWrites = true;
+        }
+    }
+
+    /**
+     * Records the start of a new transaction, that no request has used yet.
+     */
+    private void markRolledBack() {
+        rollbackPending = false;
+        usedSinceRollback = false;
+        uncommittedWrites = false;
+        lastRollbackNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns true if requests that may change the repository have been
+     * made in the current transaction, so queries may see uncommitted changes.
+     *
+     * @return true if the transaction may hold uncommitted changes
+     */
+    public boolean hasUncommittedWrites() {
+        return uncommittedWrites;
+    }
+
+    /**
+     * @return the URL of the repository, even when a dedicated session is used
+     */
+    public String getRepositoryRoot() {
+        return repoRoot;
+    }
+
+    /**
+     * Gets the query result cache that this client keeps up to date
+     * in addition to the cache of its repository.
+     *
+     * @return the cache, or null
+     */
+    public AGQueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Sets the query result cache that this client keeps up to date
+     * in addition to the cache of its repository.
+     *
+     * @param queryResultCache the cache, or null
+     * @see com.franz.agraph.repository.AGRepositoryConnection#setQueryResultCache(AGQueryResultCache)
+     */
+    public void setQueryResultCache(AGQueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    /**
+     * Drops the cached query results of the repository, after changes
+     * have been committed through this client.
+     */
+    private void invalidateQueryResults() {
+        if (repoRoot == null) {
+            return;
+        }
+        final AGQueryResultCache cache = queryResultCache;
+        final AGQueryResultCache repoCache = repo == null ? null : repo.getQueryResultCache();
+        if (cache != null) {
+            cache.invalidate(repoRoot);
+        }
+        if (repoCache != null && repoCache != cache) {
+            repoCache.invalidate(repoRoot);
+        }
+    }
+
+    /**
+     * Returns true if the current transaction may hold changes or a view
+     * of the repository that is too old: if any request has been made since
+     * the last commit or rollback, or if that was more than maxAgeMillis ago.
+     * <p>
+     * Reads and writes are not told apart, since queries can update
+     * the repository as well.
+     * </p>
+     *
+     * @param maxAgeMillis age after which an unused transaction is stale
+     * @return true if the transaction should be rolled back before reuse
+     * @see #rollbackBeforeNextRequest()
+     */
+    public boolean needsRollback(long maxAgeMillis) {
+        return usedSinceRollback
+                || System.nanoTime() - lastRollbackNanos > TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    /**
+     * Has the server roll back the current transaction when it receives
+     * the next request of this client, by including an x-rollback header
+     * in that request, instead of sending a rollback request now.
+     * <p>
+     * Session pings do not count as requests. If the next request fails,
+     * the header is sent again with the one after it.
+     * </p>
+     */
+    public void rollbackBeforeNextRequest() {
+        rollbackPending = true;
     }
 
     private void useDedicatedSession(boolean autoCommit)
@@ -564,9 +865,11 @@ public class AGHttpRepoClient implements AutoCloseable {
                 }
             }
             AGStringHandler handler = new AGStringHandler();
-            post(url, null, params, null, handler);
+            post(url, null, params, null, handler, false);
             usingDedicatedSession = true;
+            savedQueries.clear();
             sessionRoot = adjustSessionUrlIfUsingMainPort(handler.getResult());
+            markRolledBack();
             startPinger();
             if (logger.isDebugEnabled()) {
                 logger.debug("openSession: {}", sessionRoot);
@@ -575,45 +878,47 @@ public class AGHttpRepoClient implements AutoCloseable {
     }
 
     /**
-     * Starts the periodic pinger task.
+     * Registers the session with the heartbeat of the executor,
+     * which is owned by the server.
      * This must be invoked at most once.
      */
     private void startPinger() {
-        assert pinger == null;
+        assert heartbeat == null;
 
         // Exit if disabled.
         if (executor == null) {
             return;
         }
 
-        // Convert to ms, cut in half to avoid timeouts if the task
-        // is executed a bit later than expected.
-        final long delay = getSessionLifetime() * 1000 / 2;
-        // Randomize the initial delay
-        final long initialDelay = (long) (Math.random() * delay);
-        pinger = executor.scheduleWithFixedDelay(() -> {
-            try {
-                // Note - this will execute concurrently with other
-                // connection activity. This is ok, since
-                // AGHttpClient uses a connection pool to allow
-                // concurrent access.
-                ping();
-            } catch (final AGHttpException e) {
-                // Pinger errors are normal when shutting down...
-                logger.debug("Pinger exception", e);
-            }
-        }, initialDelay, delay, TimeUnit.MILLISECONDS);
+        heartbeat = repo.getServer().getSessionHeartbeat(executor);
+        heartbeat.register(this);
     }
 
     /**
-     * Cancel the periodic pinger task if it exists.
+     * Stops keeping the session alive.
      */
     private void stopPinger() {
-        if (pinger != null) {
-            pinger.cancel(false);
+        if (heartbeat != null) {
+            heartbeat.unregister(this);
+            heartbeat = null;
         }
     }
 
+    /**
+     * @return the value of {@link System#nanoTime()} when the last request
+     *         to the session (including pings) was made
+     */
+    long getLastRequestNanos() {
+        return lastRequestNanos;
+    }
+
+    /**
+     * Records that the session has just been sent a request.
+     */
+    void touch() {
+        lastRequestNanos = System.nanoTime();
+    }
+
     /**
      * Returns an appropriate session url to use.
      * <p>
@@ -678,7 +983,7 @@ public class AGHttpRepoClient implements AutoCloseable {
             stopPinger();
             String url = AGProtocol.getSessionCloseLocation(sessionRoot);
             try {
-                post(url, null, null, null, null);
+                post(url, null, null, null, null, false);
                 if (logger.isDebugEnabled()) {
                     logger.debug("closeSession: {}", url);
                 }
@@ -686,6 +991,8 @@ public class AGHttpRepoClient implements AutoCloseable {
                 // Assume that the session was already closed.
             } finally {
                 sessionRoot = null;
+                savedQueries.clear();
+                markRolledBack();
             }
         }
     }
@@ -703,11 +1010,34 @@ public class AGHttpRepoClient implements AutoCloseable {
                               String includeInferred,
                               AGResponseHandler handler, Resource... contexts)
             throws AGHttpException {
+        getStatements(subj, pred, obj, includeInferred, -1, handler, contexts);
+    }
+
+    /**
+     * Gets the statements matching a pattern, at most <code>limit</code> of them.
+     * <p>
+     * A limit lets the server stop early when only the first statements
+     * are needed, as when checking whether any statement matches.
+     * </p>
+     *
+     * @param subj            the subject, or null for any
+     * @param pred            the predicate, or null for any
+     * @param obj             the object, or null for any
+     * @param includeInferred "false", "true" or the name of an entailment regime
+     * @param limit           the maximum number of statements, or a negative value for no limit
+     * @param handler         receives the response
+     * @param contexts        the contexts to search, or all contexts if none are given
+     * @throws AGHttpException if the request fails
+     */
+    public void getStatements(Resource subj, IRI pred, Value obj,
+                              String includeInferred, int limit,
+                              AGResponseHandler handler, Resource... contexts)
+            throws AGHttpException {
         String uri = Protocol.getStatementsLocation(getRoot());
         List<Header> headers = new ArrayList<>(1);
 
         headers.add(new Header(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+                getStatementsMIMEType(handler)));
 
 
         AGValueFactory vf = getValueFactory();
@@ -733,6 +1063,10 @@ public class AGHttpRepoClient implements AutoCloseable {
         }
         params.add(new NameValuePair(Protocol.INCLUDE_INFERRED_PARAM_NAME,
                 includeInferred));
+        if (limit >= 0) {
+            params.add(new NameValuePair(AGProtocol.LIMIT_PARAM_NAME,
+                    Integer.toString(limit)));
+        }
 
         get(uri, headers, params, handler);
     }
@@ -752,7 +1086,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         List<Header> headers = new ArrayList<>(1);
 
         headers.add(new Header(Protocol.ACCEPT_PARAM_NAME,
-                getPreferredRDFFormat().getDefaultMIMEType()));
+                getStatementsMIMEType(handler)));
 
         List<NameValuePair> params = new ArrayList<>(5);
         for (String id : ids) {
@@ -762,6 +1096,21 @@ public class AGHttpRepoClient implements AutoCloseable {
         get(uri, headers, params, handler);
     }
 
+    /**
+     * Returns the MIME type to request for a statements query.
+     * <p>
+     * Handlers that parse a specific format (such as the streaming
+     * handlers) must get that format; otherwise the preferred RDF
+     * format is requested.
+     * </p>
+     */
+    private String getStatementsMIMEType(AGResponseHandler handler) {
+        if (handler != null && handler.getRequestMIMEType() != null) {
+            return handler.getRequestMIMEType();
+        }
+        return getPreferredRDFFormat().getDefaultMIMEType();
+    }
+
     public void addStatements(Resource subj, IRI pred, Value obj,
                               Resource... contexts) throws AGHttpException {
         String uri = Protocol.getStatementsLocation(getRoot());
@@ -844,6 +1193,48 @@ public class AGHttpRepoClient implements AutoCloseable {
         return uploadCommitPeriod;
     }
 
+    /**
+     * Gets the size above which request bodies sent by the upload methods are compressed.
+     *
+     * @return the current threshold in bytes
+     * @see #setUploadCompressionThreshold(long)
+     */
+    public long getUploadCompressionThreshold() {
+        return uploadCompressionThreshold;
+    }
+
+    /**
+     * Sets the size above which request bodies sent by the upload methods
+     * (adding and deleting statements, loading data) are compressed with gzip.
+     * <p>
+     * Compression costs CPU time on both sides but reduces the data sent
+     * several times for RDF, which pays off on links where uploads are
+     * limited by bandwidth. Bodies whose size is not known in advance
+     * (streamed statements, input streams of unknown length) are
+     * compressed unless compression is disabled. Data that is already
+     * compressed (e.g. a gzipped file) is sent as it is.
+     * </p>
+     * <p>
+     * The default is {@link #UPLOAD_COMPRESSION_NEVER}, or the value of the
+     * {@link #PROP_UPLOAD_COMPRESSION_THRESHOLD} system property.
+     * </p>
+     *
+     * @param threshold {@link #UPLOAD_COMPRESSION_NEVER} (negative) to never compress,
+     *                  {@link #UPLOAD_COMPRESSION_ALWAYS} to always compress, otherwise the
+     *                  size in bytes above which bodies are compressed
+     */
+    public void setUploadCompressionThreshold(long threshold) {
+        uploadCompressionThreshold = threshold;
+    }
+
+    private boolean shouldCompressUpload(RequestEntity entity) {
+        if (entity == null || uploadCompressionThreshold < 0) {
+            return false;
+        }
+        long length = entity.getContentLength();
+        return length < 0 || length > uploadCompressionThreshold;
+    }
+
     /**
      * Sets the commit period to use when uploading statements.
      * <p>
@@ -904,18 +1295,24 @@ public class AGHttpRepoClient implements AutoCloseable {
         params.add(new NameValuePair(AGProtocol.XID, new AGXid(xid).toString()));
 
         post(url, null, params, (RequestEntity) null, null);
+        if (phase == CommitPhase.COMMIT) {
+            invalidateQueryResults();
+        }
     }
 
     public void commit() throws AGHttpException {
         String url = getRoot() + "/" + AGProtocol.COMMIT;
 
-        post(url, null, null, null, null);
+        post(url, null, null, null, null, false);
+        markRolledBack();
+        invalidateQueryResults();
     }
 
     public void rollback() throws AGHttpException {
         String url = getRoot() + "/" + AGProtocol.ROLLBACK;
 
-        post(url, null, null, null, null);
+        post(url, null, null, null, null, false);
+        markRolledBack();
     }
 
     /**
@@ -973,7 +1370,11 @@ public class AGHttpRepoClient implements AutoCloseable {
     public void clearNamespaces() throws AGHttpException {
         String url = Protocol.getNamespacesLocation(getRoot());
 
-        delete(url, null, null, null);
+        try {
+            delete(url, null, null, null);
+        } finally {
+            namespaceCache.invalidate();
+        }
     }
 
     public void upload(final Reader contents, String baseURI,
@@ -1061,6 +1462,66 @@ public class AGHttpRepoClient implements AutoCloseable {
         }
     }
 
+    /**
+     * Adds statements, writing them to the request as they are produced.
+     *
+     * @param statements the statements to add
+     * @param contexts   passed to the server as context parameters
+     * @throws AGHttpException if the request fails
+     * @see AGStatementsRequestEntity
+     */
+    public void uploadStatements(AGStatementsRequestEntity statements, Resource... contexts)
+            throws AGHttpException {
+        String url = Protocol.getStatementsLocation(getRoot());
+        upload(url, statements, null, false, null, null, null, contexts);
+    }
+
+    /**
+     * Adds statements from a request entity holding JSON rows,
+     * committing every commitPeriod statements.
+     * <p>
+     * Unlike the other upload methods, this does not use the
+     * {@link #getUploadCommitPeriod() commit period} of this client and
+     * can be called from several threads at once.
+     * </p>
+     *
+     * @param statements   JSON rows, see {@link AGStatementsRequestEntity}
+     * @param commitPeriod commit after this many statements, if positive
+     * @throws AGHttpException if the request fails
+     */
+    public void uploadStatements(RequestEntity statements, int commitPeriod)
+            throws AGHttpException {
+        upload(Protocol.getStatementsLocation(getRoot()), statements, null, false, null, null,
+                null, null, null, commitPeriod);
+    }
+
+    /**
+     * Deletes statements, writing them to the request as they are produced.
+     *
+     * @param statements the statements to delete
+     * @throws AGHttpException if the request fails
+     * @see AGStatementsRequestEntity
+     */
+    public void deleteStatements(AGStatementsRequestEntity statements)
+            throws AGHttpException {
+        upload(AGProtocol.getStatementsDeleteLocation(getRoot()), statements,
+                null, false, null, null, null);
+    }
+
+    /**
+     * Creates a request entity for {@link #uploadStatements(AGStatementsRequestEntity, Resource...)}
+     * using the value factory and blank node settings of this client.
+     *
+     * @param rows       produces the statements
+     * @param repeatable whether rows can be written more than once
+     * @return a new request entity
+     */
+    public AGStatementsRequestEntity createStatementsEntity(AGStatementsRequestEntity.Rows rows,
+                                                            boolean repeatable) {
+        return new AGStatementsRequestEntity(rows, repeatable, getValueFactory(),
+                getAllowExternalBlankNodeIds());
+    }
+
     public void deleteJSON(JSONArray rows, Resource... contexts)
             throws AGHttpException {
         uploadJSON(AGProtocol.getStatementsDeleteLocation(getRoot()), rows, contexts);
@@ -1132,7 +1593,43 @@ public class AGHttpRepoClient implements AutoCloseable {
                        boolean overwrite, String serverSideFile, IRI serverSideURL,
                        RDFFormat dataFormat, JSONObject attributes, String contentEncoding,
                        Resource... contexts) throws AGHttpException {
+        upload(url, reqEntity, baseURI, overwrite, serverSideFile, serverSideURL,
+                dataFormat, attributes, contentEncoding, uploadCommitPeriod, contexts);
+    }
+
+    /**
+     * Uploads RDF data, committing every commitPeriod statements.
+     * <p>
+     * Unlike the other upload methods, this does not use the
+     * {@link #getUploadCommitPeriod() commit period} of this client and
+     * can be called from several threads at once.
+     * </p>
+     *
+     * @param reqEntity       the data
+     * @param baseURI         used to resolve relative URIs, may be null
+     * @param dataFormat      the format of the data
+     * @param contentEncoding the content encoding of the data (e.g. "gzip"), may be null
+     * @param commitPeriod    commit after this many statements, if positive
+     * @param attributes      attributes added to each statement, may be null
+     * @param contexts        the contexts to add the data to
+     * @throws AGHttpException if the request fails
+     */
+    public void upload(RequestEntity reqEntity, String baseURI, RDFFormat dataFormat,
+                       String contentEncoding, int commitPeriod, JSONObject attributes,
+                       Resource... contexts) throws AGHttpException {
+        upload(Protocol.getStatementsLocation(getRoot()), reqEntity, baseURI, false, null, null,
+                dataFormat, attributes, contentEncoding, commitPeriod, contexts);
+    }
+
+    private void upload(String url, RequestEntity reqEntity, String baseURI,
+                        boolean overwrite, String serverSideFile, IRI serverSideURL,
+                        RDFFormat dataFormat, JSONObject attributes, String contentEncoding,
+                        int commitPeriod, Resource... contexts) throws AGHttpException {
         OpenRDFUtil.verifyContextNotNull(contexts);
+        if (contentEncoding == null && shouldCompressUpload(reqEntity)) {
+            reqEntity = new AGGzipRequestEntity(reqEntity);
+            contentEncoding = "gzip";
+        }
         List<Header> headers = new ArrayList<>(1);
         if (dataFormat != null) {
             String format = dataFormat.getDefaultMIMEType();
@@ -1151,8 +1648,8 @@ public class AGHttpRepoClient implements AutoCloseable {
             params.add(new NameValuePair(Protocol.BASEURI_PARAM_NAME,
                     encodedBaseURI));
         }
-        if (uploadCommitPeriod > 0) {
-            params.add(new NameValuePair("commit", Integer.toString(uploadCommitPeriod)));
+        if (commitPeriod > 0) {
+            params.add(new NameValuePair("commit", Integer.toString(commitPeriod)));
         }
         if (serverSideFile != null && serverSideFile.trim().length() != 0) {
             params.add(new NameValuePair(AGProtocol.FILE_PARAM_NAME,
@@ -1265,6 +1762,8 @@ public class AGHttpRepoClient implements AutoCloseable {
                     new StringRequestEntity(name, "text/plain", "UTF-8"), null);
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
+        } finally {
+            namespaceCache.invalidate();
         }
     }
 
@@ -1272,7 +1771,19 @@ public class AGHttpRepoClient implements AutoCloseable {
         String url = Protocol.getNamespacePrefixLocation(getRoot(),
                 prefix);
 
-        delete(url, null, null, null);
+        try {
+            delete(url, null, null, null);
+        } finally {
+            namespaceCache.invalidate();
+        }
+    }
+
+    /**
+     * @return the namespaces of the repository, as last downloaded by this client
+     * @see AGNamespaceCache
+     */
+    public AGNamespaceCache getNamespaceCache() {
+        return namespaceCache;
     }
 
     public void query(AGQuery q, boolean analyzeOnly, AGResponseHandler handler) throws
@@ -1293,8 +1804,13 @@ public class AGHttpRepoClient implements AutoCloseable {
         List<NameValuePair> queryParams = getQueryMethodParameters(q);
         if (analyzeOnly) {
             queryParams.add(new NameValuePair("analyzeIndicesUsed", "true"));
+        } else if (sessionRoot != null && !q.isPrepared() && q.getName() == null
+                && !(q instanceof AGUpdate) && savedQueries.getCapacity() > 0) {
+            querySaved(headers, queryParams, handler);
+            return;
         }
-        post(url, headers, queryParams, null, handler);
+        post(url, headers, queryParams, null, handler, q instanceof AGUpdate,
+                q instanceof AGUpdate ? AGHttpOperation.UPDATE : AGHttpOperation.QUERY);
         if (sessionRoot != null && q.getName() != null) {
             q.setPrepared(true);
         }
@@ -1395,12 +1911,113 @@ public class AGHttpRepoClient implements AutoCloseable {
             queryParams.add(new NameValuePair(paramName, paramValue));
         }
 
+        if (q.getQueryId() != null) {
+            queryParams.add(new NameValuePair(AGProtocol.QUERY_ID_PARAM_NAME, q.getQueryId()));
+        }
+
         return queryParams;
     }
 
     /**
-     * Free up any no-longer-needed saved queries as reported
-     * by AGQuery finalizer.
+     * Asks the server to stop evaluating a query sent by this client.
+     * <p>
+     * The request is sent to the repository rather than to the dedicated
+     * session, if any: a session serves one request at a time, so there
+     * it would wait for the query it cancels. It may be sent from any
+     * thread and does not affect the transaction state of this client.
+     * </p>
+     * <p>
+     * Only servers that accept a {@link AGProtocol#QUERY_ID_PARAM_NAME}
+     * with queries and a DELETE of the running queries of a repository
+     * can cancel queries; older servers answer with an error status.
+     * Check {@link com.franz.agraph.repository.AGServer#getComparableVersion()}
+     * and the HTTP protocol documentation of the server before enabling
+     * cancellation.
+     * </p>
+     *
+     * @param queryId the ID the query was sent with
+     * @throws AGHttpException if the request fails, for example because
+     *                         the query has already finished
+     * @see AGQuery#getQueryId()
+     */
+    public void cancelQuery(String queryId) throws AGHttpException {
+        NameValuePair[] params = {new NameValuePair(AGProtocol.QUERY_ID_PARAM_NAME, queryId)};
+        getHTTPClient().delete(AGProtocol.getRunningQueriesLocation(getRepositoryRoot()),
+                new Header[0], params, null);
+    }
+
+    /**
+     * Runs a query through the saved query cache: a saved query is run
+     * from its saved plan, and a query run recently is saved.
+     */
+    private void querySaved(List<Header> headers, List<NameValuePair> queryParams,
+                            AGResponseHandler handler) throws AGHttpException {
+        final String key = AGSavedQueryCache.key(queryParams);
+        final String name = savedQueries.get(key);
+        if (name != null) {
+            final ResponseTracker tracker = new ResponseTracker(handler);
+            try {
+                post(AGProtocol.getSavedQueryLocation(getRoot(), name), headers,
+                        AGSavedQueryCache.bindings(queryParams), null, tracker, false,
+                        AGHttpOperation.QUERY);
+                return;
+            } catch (AGHttpException e) {
+                // An error status for a saved query normally means that the
+                // server no longer has it: forget it and run the whole query.
+                // Timeouts and errors reading the results are not retried.
+                if (tracker.responded || e instanceof AGQueryTimeoutException
+                        || e.getCause() instanceof IOException) {
+                    throw e;
+                }
+                logger.debug("Saved query {} failed, running the query", name, e);
+                savedQueries.remove(key, name);
+            }
+        }
+        final String save = savedQueries.nameToSave(key);
+        if (save != null) {
+            queryParams.add(new NameValuePair(AGProtocol.SAVE_PARAM_NAME, save));
+        }
+        post(getRoot(), headers, queryParams, null, handler, false, AGHttpOperation.QUERY);
+        if (save != null) {
+            for (String evicted : savedQueries.put(key, save)) {
+                deleteSavedQueryQuietly(evicted);
+            }
+        }
+    }
+
+    private void deleteSavedQueryQuietly(String queryName) {
+        try {
+            deleteSavedQuery(queryName);
+        } catch (AGHttpException e) {
+            // The server drops the saved query with the session anyway.
+            logger.debug("Deleting saved query {} failed", queryName, e);
+        }
+    }
+
+    /**
+     * @return the queries saved by the dedicated session of this client
+     */
+    public AGSavedQueryCache getSavedQueryCache() {
+        return savedQueries;
+    }
+
+    /**
+     * Sets the largest number of queries the dedicated session of
+     * this client keeps saved on the server. Saved queries beyond
+     * the new size are deleted.
+     *
+     * @param size number of saved queries, 0 to save none
+     * @see AGSavedQueryCache
+     */
+    public void setSavedQueryCacheSize(int size) {
+        for (String evicted : savedQueries.setCapacity(size)) {
+            deleteSavedQueryQuietly(evicted);
+        }
+    }
+
+    /**
+     * Free up any no-longer-needed saved queries listed in
+     * the {@link #savedQueryDeleteQueue}.
      *
      * @throws AGHttpException if there is an error during the request
      */
@@ -1414,7 +2031,7 @@ public class AGHttpRepoClient implements AutoCloseable {
     public void deleteSavedQuery(String queryName) throws AGHttpException {
         String url = AGProtocol.getSavedQueryLocation(getRoot(), queryName);
 
-        delete(url, null, null, null);
+        delete(url, null, null, null, false);
     }
 
     public synchronized void close() throws AGHttpException {
@@ -1595,7 +2212,7 @@ public class AGHttpRepoClient implements AutoCloseable {
         if (offset > 0) {
             queryParams.add(new NameValuePair("offset", Integer.toString(offset)));
         }
-        post(url, headers, queryParams, null, handler);
+        post(url, headers, queryParams, null, handler, false);
     }
 
     public void registerPredicateMapping(IRI predicate, IRI primitiveType)
@@ -1726,10 +2343,31 @@ public class AGHttpRepoClient implements AutoCloseable {
         if (usingDedicatedSession) {
             String url = AGProtocol.getSessionPingLocation(getRoot());
 
-            get(url, null, null, null);
+            // Not a use of the transaction: a pending rollback must
+            // not run concurrently with the next real request.
+            getHTTPClient().get(url, prepareHeaders(null, false), emptyParams, null);
         }
     }
 
+    /**
+     * Pings the dedicated session and has the server roll back its
+     * transaction in the same request, by including an x-rollback header.
+     * <p>
+     * Unlike {@link #ping()}, this is a request of this client, which must
+     * not run concurrently with its other requests. If it fails, the
+     * rollback is still made by the next request.
+     * </p>
+     *
+     * @throws AGHttpException if the session is gone, for example
+     *                         because it expired or its repository was deleted
+     * @see #rollbackBeforeNextRequest()
+     */
+    public void pingAndRollback() throws AGHttpException {
+        rollbackBeforeNextRequest();
+        get(AGProtocol.getSessionPingLocation(getRoot()), null, null, null);
+        markRolledBack();
+    }
+
     public String[] getGeoTypes() throws AGHttpException {
         String url = AGProtocol.getGeoTypesLocation(getRoot());
 
@@ -2766,4 +3404,28 @@ public class AGHttpRepoClient implements AutoCloseable {
             }
         }
     }
+
+    /**
+     * Passes a response to a handler, recording whether there was one.
+     */
+    private static final class ResponseTracker extends AGResponseHandler {
+        private final AGResponseHandler handler;
+        private boolean responded;
+
+        ResponseTracker(AGResponseHandler handler) {
+            super(handler.getRequestMIMEType());
+            this.handler = handler;
+        }
+
+        @Override
+        public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+            responded = true;
+            handler.handleResponse(method);
+        }
+
+        @Override
+        public boolean releaseConnection() {
+            return handler.releaseConnection();
+        }
+    }
 }
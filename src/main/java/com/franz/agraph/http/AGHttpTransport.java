@@ -0,0 +1,62 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.commons.httpclient.HttpMethod;
+
+import java.io.IOException;
+
+/**
+ * Sends the HTTP requests of an {@link AGHTTPClient}.
+ * <p>
+ * Requests are described by commons-httpclient {@link HttpMethod} objects
+ * (method name, URI with query string, request headers and, for
+ * {@link org.apache.commons.httpclient.methods.EntityEnclosingMethod}s,
+ * the request entity). The response is returned as an {@link HttpMethod}
+ * as well, so that the response handlers work with any transport.
+ * </p>
+ * <p>
+ * The default transport is {@link AGCommonsHttpTransport}.
+ * AGJdkHttpTransport uses the HTTP client of Java 11 and later, see
+ * {@link AGHTTPClient#createJdkTransport()}.
+ * </p>
+ *
+ * @see AGHTTPClient#AGHTTPClient(String, AGHttpTransport)
+ */
+public interface AGHttpTransport extends AutoCloseable {
+
+    /**
+     * Sends a request and waits for the response headers.
+     * <p>
+     * The caller reads the response body (if any) from the returned object
+     * and must call {@link HttpMethod#releaseConnection()} on it when done.
+     * </p>
+     *
+     * @param request the request to send
+     * @return the response, which may be the request object itself
+     * @throws IOException if the request could not be sent
+     *                     or no response was received
+     */
+    HttpMethod execute(HttpMethod request) throws IOException;
+
+    /**
+     * Sets the credentials used for Basic authentication.
+     * <p>
+     * The default implementation does nothing, for transports that use the
+     * state of {@link AGHTTPClient#getHttpClient()}.
+     * </p>
+     *
+     * @param username the user name, or null to stop authenticating
+     * @param password the password, or null to stop authenticating
+     */
+    default void setCredentials(String username, String password) {
+    }
+
+    /**
+     * Releases the resources held by this transport.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,422 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpMethodRetryHandler;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests with the {@link HttpClient} of Java 11 and later.
+ * <p>
+ * The JDK client negotiates HTTP/2 when the server supports it, so that
+ * concurrent requests are multiplexed over a single connection, and
+ * falls back to HTTP/1.1 with a pool of persistent connections otherwise.
+ * The number of requests in flight (sent, with a response body not yet
+ * released) is bounded; further requests wait for a permit.
+ * </p>
+ * <p>
+ * Failed requests are retried by the
+ * {@link HttpMethodParams#RETRY_HANDLER retry handler} of the request,
+ * as with commons-httpclient. The JDK client does not tell whether a
+ * failed request had been sent, so only GET and HEAD requests, and
+ * requests that could not connect, are passed to the handler; request
+ * bodies that cannot be written twice are never retried.
+ * </p>
+ * <p>
+ * This class requires Java 11, and is left out of the client when it is
+ * built with Java 8. It is only loaded when selected, either explicitly:
+ * </p>
+ * <pre>{@code
+ * AGServer server = new AGServer(user, password,
+ *         new AGHTTPClient(url, AGHTTPClient.createJdkTransport()));
+ * }</pre>
+ * <p>
+ * or for all clients with <code>-Dcom.franz.agraph.http.transport=jdk</code>.
+ * </p>
+ *
+ * @see AGHTTPClient#PROP_HTTP_TRANSPORT
+ */
+public class AGJdkHttpTransport implements AGHttpTransport {
+
+    /**
+     * Default maximum number of requests in flight.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 100;
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    /**
+     * Headers set by the JDK client itself.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    private static final AtomicInteger transportCount = new AtomicInteger();
+
+    private final HttpClient client;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    private final ExecutorService writers;
+    private volatile Duration requestTimeout;
+    private volatile String authorization;
+
+    /**
+     * Creates a transport with a new HTTP/2 client and
+     * {@link #DEFAULT_MAX_CONCURRENT_REQUESTS}.
+     */
+    public AGJdkHttpTransport() {
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build(),
+                DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param client                the client sending the requests, configured with
+     *                              the desired protocol version, timeouts and SSL context
+     * @param maxConcurrentRequests maximum number of requests in flight
+     */
+    public AGJdkHttpTransport(HttpClient client, int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive: " + maxConcurrentRequests);
+        }
+        this.client = client;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        final int id = transportCount.incrementAndGet();
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable,
+                    "agraph-http-writer-" + id + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the client sending the requests
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return the maximum number of requests in flight
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @return the number of requests sent whose response has not been released
+     */
+    public int getRequestsInFlight() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    /**
+     * @return the time to wait for response headers, null if unlimited
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Sets how long to wait for the response headers of a request.
+     *
+     * @param requestTimeout the timeout, or null to wait indefinitely (the default)
+     */
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public void setCredentials(String username, String password) {
+        if (username != null && password != null) {
+            authorization = "Basic " + Base64.getEncoder().encodeToString(
+                    (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        } else {
+            authorization = null;
+        }
+    }
+
+    @Override
+    public HttpMethod execute(HttpMethod request) throws IOException {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(
+                URI.create(request.getURI().getEscapedURI()));
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        for (Header header : request.getRequestHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        if (authorization != null && request.getRequestHeader("Authorization") == null) {
+            builder.header("Authorization", authorization);
+        }
+        final RequestEntity entity = request instanceof EntityEnclosingMethod
+                ? ((EntityEnclosingMethod) request).getRequestEntity() : null;
+        if (entity != null && entity.getContentType() != null
+                && request.getRequestHeader("Content-Type") == null) {
+            builder.header("Content-Type", entity.getContentType());
+        }
+        int executionCount = 0;
+        while (true) {
+            executionCount++;
+            final EntityWriter writer = entity == null ? null : new EntityWriter(entity);
+            builder.method(request.getName(), writer == null
+                    ? HttpRequest.BodyPublishers.noBody() : writer.publisher());
+            try {
+                return send(request, builder.build());
+            } catch (IOException e) {
+                if (writer != null && writer.failure != null) {
+                    throw writer.failure;
+                }
+                if (!retry(request, entity, e, executionCount)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private HttpMethod send(HttpMethod request, HttpRequest jdkRequest) throws IOException {
+        final long waitStart = System.nanoTime();
+        try {
+            permits.acquire();
+            AGHttpExchange.waitedForConnection(request, System.nanoTime() - waitStart);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request permit");
+        }
+        final CompletableFuture<HttpResponse<InputStream>> future =
+                client.sendAsync(jdkRequest, HttpResponse.BodyHandlers.ofInputStream());
+        try {
+            return new Response(request, future.get(), future, permits);
+        } catch (ExecutionException e) {
+            permits.release();
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        }
+    }
+
+    /**
+     * Applies the retry handler of a request to a failure, if the request
+     * can safely be sent again.
+     */
+    private static boolean retry(HttpMethod request, RequestEntity entity, IOException e,
+                                 int executionCount) {
+        if (e instanceof HttpTimeoutException || (entity != null && !entity.isRepeatable())) {
+            return false;
+        }
+        final String name = request.getName();
+        if (!(e instanceof ConnectException || name.equals("GET") || name.equals("HEAD"))) {
+            return false;
+        }
+        final Object handler = request.getParams().getParameter(HttpMethodParams.RETRY_HANDLER);
+        return handler instanceof HttpMethodRetryHandler
+                && ((HttpMethodRetryHandler) handler).retryMethod(request, e, executionCount);
+    }
+
+    /**
+     * Stops the threads writing request bodies. The JDK client releases
+     * its connections when it is no longer referenced.
+     */
+    @Override
+    public void close() {
+        writers.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "{" + super.toString() + " " + client.version() + "}";
+    }
+
+    /**
+     * Writes a request entity to the JDK client through a pipe.
+     */
+    private final class EntityWriter {
+        private final RequestEntity entity;
+        private volatile IOException failure;
+
+        EntityWriter(RequestEntity entity) {
+            this.entity = entity;
+        }
+
+        HttpRequest.BodyPublisher publisher() {
+            final long length = entity.getContentLength();
+            if (length == 0) {
+                return HttpRequest.BodyPublishers.noBody();
+            }
+            if (entity instanceof ByteArrayRequestEntity) {
+                return HttpRequest.BodyPublishers.ofByteArray(((ByteArrayRequestEntity) entity).getContent());
+            }
+            final HttpRequest.BodyPublisher streamed = HttpRequest.BodyPublishers.ofInputStream(this::open);
+            return length > 0 ? HttpRequest.BodyPublishers.fromPublisher(streamed, length) : streamed;
+        }
+
+        private InputStream open() {
+            final PipedInputStream in = new PipedInputStream(PIPE_SIZE) {
+                @Override
+                public synchronized int read() throws IOException {
+                    return checkFailure(super.read());
+                }
+
+                @Override
+                public synchronized int read(byte[] b, int off, int len) throws IOException {
+                    return checkFailure(super.read(b, off, len));
+                }
+            };
+            final PipedOutputStream out;
+            try {
+                out = new PipedOutputStream(in);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            writers.execute(() -> {
+                try {
+                    entity.writeRequest(out);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // The request has been abandoned.
+                    }
+                }
+            });
+            return in;
+        }
+
+        /**
+         * The end of a body whose writer failed must not look like
+         * the end of a complete request body.
+         */
+        private int checkFailure(int n) throws IOException {
+            if (n < 0 && failure != null) {
+                throw failure;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Presents a JDK response to the response handlers.
+     */
+    private static final class Response extends HttpMethodBase {
+        private final String name;
+        private final HttpResponse<InputStream> response;
+        private final CompletableFuture<HttpResponse<InputStream>> future;
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Response(HttpMethod request, HttpResponse<InputStream> response,
+                 CompletableFuture<HttpResponse<InputStream>> future, Semaphore permits) throws IOException {
+            super(request.getURI().getEscapedURI());
+            this.name = request.getName();
+            this.response = response;
+            this.future = future;
+            this.permits = permits;
+            // Shares the measurement of the request, if any.
+            setParams(request.getParams());
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                for (String value : header.getValue()) {
+                    getResponseHeaderGroup().addHeader(new Header(header.getKey(), value));
+                }
+            }
+            setResponseStream(response.body());
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            final String text = HttpStatus.getStatusText(response.statusCode());
+            return text == null ? "" : text;
+        }
+
+        @Override
+        public void releaseConnection() {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    // The stream is discarded anyway.
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+
+        /**
+         * Cancels the exchange, so that the JDK client stops receiving
+         * the body, then releases the response.
+         */
+        @Override
+        public void abort() {
+            future.cancel(true);
+            releaseConnection();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The namespaces of the repository of a client, downloaded in one request
+ * and kept for lookups by prefix and by namespace name, as done by the
+ * Jena {@link com.franz.agraph.jena.AGPrefixMapping} for every IRI a
+ * writer abbreviates.
+ * <p>
+ * Changes made through {@link AGHttpRepoClient#setNamespacePrefix(String, String)},
+ * {@link AGHttpRepoClient#removeNamespacePrefix(String)} and
+ * {@link AGHttpRepoClient#clearNamespaces()} empty the cache. Changes made
+ * by other clients are seen once the namespaces are older than
+ * {@link #getTimeToLiveMillis()}, set for new clients by the
+ * {@link #PROP_NAMESPACE_CACHE_TTL} system property.
+ * </p>
+ *
+ * @see AGHttpRepoClient#getNamespaceCache()
+ */
+public final class AGNamespaceCache {
+
+    /**
+     * Name of the system property holding how long, in milliseconds,
+     * the namespaces of new clients are used before being downloaded
+     * again, default {@link #DEFAULT_TIME_TO_LIVE_MILLIS}.
+     */
+    public static final String PROP_NAMESPACE_CACHE_TTL = "com.franz.agraph.http.namespaceCacheTimeToLive";
+
+    /**
+     * Default time to live of the namespaces, in milliseconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 10000;
+
+    private final AGHttpRepoClient client;
+    private final AtomicLong loads = new AtomicLong();
+    private volatile long ttlNanos;
+    private volatile Namespaces namespaces;
+    // Number of invalidations, guarded by this.
+    private long generation;
+
+    AGNamespaceCache(AGHttpRepoClient client, long timeToLiveMillis) {
+        this.client = client;
+        setTimeToLiveMillis(timeToLiveMillis);
+    }
+
+    /**
+     * @return the namespace names of the repository by prefix, in the
+     * order they were received
+     * @throws AGHttpException if the namespaces cannot be downloaded
+     */
+    public Map<String, String> getNamespaces() throws AGHttpException {
+        return namespaces().byPrefix;
+    }
+
+    /**
+     * @param prefix a namespace prefix
+     * @return the namespace name of the prefix, or null if it is not defined
+     * @throws AGHttpException if the namespaces cannot be downloaded
+     */
+    public String getNamespace(String prefix) throws AGHttpException {
+        return namespaces().byPrefix.get(prefix);
+    }
+
+    /**
+     * @param name a namespace name, compared ignoring case
+     * @return the first prefix of the namespace, or null if it has none
+     * @throws AGHttpException if the namespaces cannot be downloaded
+     */
+    public String getPrefix(String name) throws AGHttpException {
+        return namespaces().byName.get(name);
+    }
+
+    /**
+     * Drops the namespaces, so that the next lookup downloads them again.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        namespaces = null;
+    }
+
+    /**
+     * @return how long the namespaces are used before being downloaded again,
+     * 0 meaning until the cache is invalidated
+     */
+    public long getTimeToLiveMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    /**
+     * @param timeToLiveMillis how long the namespaces are used before being
+     *                         downloaded again, 0 meaning until the cache is
+     *                         invalidated
+     */
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        if (timeToLiveMillis < 0) {
+            throw new IllegalArgumentException("Invalid namespace cache time to live: " + timeToLiveMillis);
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+    }
+
+    /**
+     * @return the number of times the namespaces were downloaded
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    private Namespaces namespaces() throws AGHttpException {
+        Namespaces current = namespaces;
+        if (current != null && (ttlNanos == 0 || System.nanoTime() - current.received < ttlNanos)) {
+            return current;
+        }
+        final long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+        }
+        current = load();
+        synchronized (this) {
+            // Keep namespaces downloaded before a change out of the cache.
+            if (generation == loadGeneration) {
+                namespaces = current;
+            }
+        }
+        return current;
+    }
+
+    private Namespaces load() throws AGHttpException {
+        loads.incrementAndGet();
+        final Map<String, String> byPrefix = new LinkedHashMap<>();
+        final Map<String, String> byName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (TupleQueryResult result = client.getNamespaces()) {
+            while (result.hasNext()) {
+                BindingSet bindingSet = result.next();
+                Value prefix = bindingSet.getValue("prefix");
+                Value name = bindingSet.getValue("namespace");
+                if (prefix instanceof Literal && name instanceof Literal) {
+                    byPrefix.put(prefix.stringValue(), name.stringValue());
+                    byName.putIfAbsent(name.stringValue(), prefix.stringValue());
+                }
+            }
+        } catch (QueryEvaluationException e) {
+            throw new AGHttpException(e);
+        }
+        return new Namespaces(byPrefix, byName);
+    }
+
+    @Override
+    public String toString() {
+        final Namespaces current = namespaces;
+        return "{" + getClass().getSimpleName()
+                + " size=" + (current == null ? 0 : current.byPrefix.size())
+                + " loads=" + getLoadCount()
+                + " timeToLiveMillis=" + getTimeToLiveMillis()
+                + "}";
+    }
+
+    private static final class Namespaces {
+        final Map<String, String> byPrefix;
+        final Map<String, String> byName;
+        final long received = System.nanoTime();
+
+        Namespaces(Map<String, String> byPrefix, Map<String, String> byName) {
+            this.byPrefix = Collections.unmodifiableMap(byPrefix);
+            this.byName = Collections.unmodifiableMap(byName);
+        }
+    }
+}
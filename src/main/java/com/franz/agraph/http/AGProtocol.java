@@ -100,6 +100,12 @@ public class AGProtocol extends Protocol {
      */
     public static final String QUERIES = "queries";
 
+    /**
+     * Relative location of the running queries service, under {@link #QUERIES}
+     * of a repository.
+     */
+    public static final String RUNNING = "running";
+
     /**
      * Relative location of the blank nodes service.
      */
@@ -230,6 +236,13 @@ public class AGProtocol extends Protocol {
      */
     public static final String SAVE_PARAM_NAME = "save";
 
+    /**
+     * Parameter name for the client-generated ID of a query, by which
+     * the running query can be cancelled. Not understood by all server
+     * versions, so only sent for cancellable queries.
+     */
+    public static final String QUERY_ID_PARAM_NAME = "queryId";
+
     /**
      * Relative location of the Geo service.
      */
@@ -583,6 +596,10 @@ public class AGProtocol extends Protocol {
         return getQueriesLocation(sessionRoot) + "/" + encode(queryName);
     }
 
+    public static final String getRunningQueriesLocation(String repositoryRoot) {
+        return getQueriesLocation(repositoryRoot) + "/" + RUNNING;
+    }
+
     public static final String getAutoCommitLocation(String sessionRoot) {
         return getSessionURL(sessionRoot) + "/" + AUTOCOMMIT;
     }
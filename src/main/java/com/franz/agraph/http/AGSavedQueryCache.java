@@ -0,0 +1,272 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import org.apache.commons.httpclient.NameValuePair;
+import org.eclipse.rdf4j.http.protocol.Protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queries a dedicated session has saved on the server, so that
+ * running the same query again reuses the server's parsed and planned
+ * query and only sends the bindings.
+ * <p>
+ * Queries are keyed by their text and every request parameter other than
+ * the bindings. A query is saved the second time it is run, so one-off
+ * queries never cost a saved query on the server. At most
+ * {@link #getCapacity()} queries are kept; the least recently used one is
+ * deleted from the server when another needs its place. Saved queries
+ * belong to the session, so the cache is emptied when the session ends.
+ * </p>
+ * <p>
+ * The capacity of new clients is set by the
+ * {@link #PROP_SAVED_QUERY_CACHE_SIZE} system property, 0 disables
+ * the cache.
+ * </p>
+ *
+ * @see AGHttpRepoClient#getSavedQueryCache()
+ * @see AGHttpRepoClient#setSavedQueryCacheSize(int)
+ */
+public final class AGSavedQueryCache {
+
+    /**
+     * Name of the system property holding the number of queries each
+     * dedicated session keeps saved, default {@link #DEFAULT_CAPACITY}.
+     */
+    public static final String PROP_SAVED_QUERY_CACHE_SIZE = "com.franz.agraph.http.savedQueryCacheSize";
+
+    /**
+     * Default number of saved queries per session.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    // Queries run once are remembered, without being saved, among this
+    // many times the capacity of recently run queries.
+    private static final int SEEN_FACTOR = 4;
+
+    private final String prefix = "agq" + Integer.toHexString(System.identityHashCode(this)) + "-";
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // All guarded by this.
+    private final LinkedHashMap<String, String> saved = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> seen = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity;
+    private long nextName;
+
+    AGSavedQueryCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Returns the key of a query from its request parameters.
+     *
+     * @param params the parameters of the query, bindings included
+     * @return the key of the query, bindings and query ID excluded
+     */
+    static String key(List<NameValuePair> params) {
+        final StringBuilder key = new StringBuilder();
+        for (NameValuePair param : params) {
+            if (!isPerRun(param)) {
+                final String value = param.getValue();
+                key.append(param.getName()).append('=')
+                        .append(value.length()).append(':').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param params the parameters of a query
+     * @return the bindings and query ID among them, the only parameters
+     * of a saved query
+     */
+    static List<NameValuePair> bindings(List<NameValuePair> params) {
+        final List<NameValuePair> bindings = new ArrayList<>(params.size());
+        for (NameValuePair param : params) {
+            if (isPerRun(param)) {
+                bindings.add(param);
+            }
+        }
+        return bindings;
+    }
+
+    private static boolean isPerRun(NameValuePair param) {
+        return param.getName().startsWith(Protocol.BINDING_PREFIX)
+                || AGProtocol.QUERY_ID_PARAM_NAME.equals(param.getName());
+    }
+
+    /**
+     * @param key key of a query
+     * @return the name the query is saved under, or null
+     */
+    synchronized String get(String key) {
+        final String name = saved.get(key);
+        if (name != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return name;
+    }
+
+    /**
+     * Decides whether a query that is not saved should be saved now.
+     *
+     * @param key key of the query
+     * @return the name to save the query under, or null if it has not
+     *         been run recently and should just be run
+     */
+    synchronized String nameToSave(String key) {
+        if (capacity == 0) {
+            return null;
+        }
+        if (seen.remove(key) == null) {
+            seen.put(key, Boolean.TRUE);
+            trim(seen, capacity * SEEN_FACTOR, null);
+            return null;
+        }
+        return prefix + nextName++;
+    }
+
+    /**
+     * Records that the server has saved a query.
+     *
+     * @param key  key of the query
+     * @param name name of the saved query
+     * @return the names of the saved queries evicted to make room,
+     *         which the caller must delete from the server
+     */
+    synchronized List<String> put(String key, String name) {
+        saves.incrementAndGet();
+        final String previous = saved.put(key, name);
+        final List<String> evicted = new ArrayList<>(1);
+        if (previous != null && !previous.equals(name)) {
+            evicted.add(previous);
+        }
+        trim(saved, capacity, evicted);
+        evictions.addAndGet(evicted.size());
+        return evicted;
+    }
+
+    /**
+     * Forgets a saved query, typically because the server no longer has it.
+     */
+    synchronized void remove(String key, String name) {
+        saved.remove(key, name);
+    }
+
+    /**
+     * Forgets all queries, once the session that saved them has ended.
+     * Statistics are kept.
+     */
+    synchronized void clear() {
+        saved.clear();
+        seen.clear();
+    }
+
+    /**
+     * @return the largest number of saved queries
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the largest number of saved queries.
+     *
+     * @param capacity the largest number of saved queries, 0 to save none
+     * @return the names of the saved queries evicted to fit the new capacity,
+     *         which the caller must delete from the server
+     */
+    synchronized List<String> setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid saved query cache capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        trim(seen, capacity * SEEN_FACTOR, null);
+        if (saved.size() <= capacity) {
+            return Collections.emptyList();
+        }
+        final List<String> evicted = new ArrayList<>();
+        trim(saved, capacity, evicted);
+        evictions.addAndGet(evicted.size());
+        return evicted;
+    }
+
+    private static <V> void trim(Map<String, V> map, int size, List<V> removed) {
+        final Iterator<V> eldest = map.values().iterator();
+        while (map.size() > size) {
+            final V value = eldest.next();
+            eldest.remove();
+            if (removed != null) {
+                removed.add(value);
+            }
+        }
+    }
+
+    /**
+     * @return the number of queries currently saved
+     */
+    public synchronized int getSize() {
+        return saved.size();
+    }
+
+    /**
+     * @return the number of queries run from their saved plan
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of queries that were not saved when run
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of queries run from their saved plan, 0 if none was run
+     */
+    public double getHitRate() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of queries saved on the server
+     */
+    public long getSaves() {
+        return saves.get();
+    }
+
+    /**
+     * @return the number of saved queries deleted to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "{AGSavedQueryCache capacity=" + getCapacity()
+                + " size=" + getSize()
+                + " hits=" + getHits()
+                + " misses=" + getMisses()
+                + " saves=" + getSaves()
+                + " evictions=" + getEvictions()
+                + "}";
+    }
+}
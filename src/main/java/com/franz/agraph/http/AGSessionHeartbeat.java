@@ -0,0 +1,215 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the dedicated sessions of all connections using an executor alive.
+ * <p>
+ * A session expires on the server when it has received no request for
+ * its lifetime. Rather than each connection pinging its session every
+ * half lifetime, a single task periodically looks at all live sessions
+ * and pings, in one batch, only those that have been idle for more than
+ * half their lifetime. Sessions in active use are never pinged.
+ * </p>
+ * <p>
+ * Heartbeats are owned by the servers using their executor, and the one
+ * of the shared default executor is shared by all servers, so there is
+ * normally one for the whole application
+ * (see {@link com.franz.agraph.repository.AGServer#getExecutor()}).
+ * No task is scheduled while there are no sessions to keep alive.
+ * </p>
+ *
+ * @see com.franz.agraph.repository.AGServer#getSessionHeartbeat()
+ */
+public final class AGSessionHeartbeat {
+    private static final Logger logger = LoggerFactory.getLogger(AGSessionHeartbeat.class);
+
+    /**
+     * Longest time between two checks of the idle sessions, in milliseconds.
+     */
+    private static final long MAX_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+    private static final long MIN_CHECK_INTERVAL = 100;
+
+    private final ScheduledExecutorService executor;
+    private final Set<AGHttpRepoClient> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong expiredSessions = new AtomicLong();
+    private volatile int idleSessions;
+    // Guarded by this, read without lock by the check.
+    private ScheduledFuture<?> check;
+    private volatile long checkInterval = Long.MAX_VALUE;
+
+    /**
+     * @param executor runs the checks and pings
+     * @see com.franz.agraph.repository.AGServer#getSessionHeartbeat()
+     */
+    public AGSessionHeartbeat(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts keeping the session of a client alive.
+     */
+    synchronized void register(AGHttpRepoClient session) {
+        sessions.add(session);
+        final long interval = checkInterval(session);
+        if (check == null || interval < checkInterval) {
+            schedule(interval);
+        }
+    }
+
+    /**
+     * Stops keeping the session of a client alive.
+     */
+    void unregister(AGHttpRepoClient session) {
+        if (sessions.remove(session) && sessions.isEmpty()) {
+            adjustCheckInterval();
+        }
+    }
+
+    /**
+     * Reschedules the check for the sessions left, after sessions with
+     * a short lifetime are gone, or cancels it when none are left.
+     */
+    private synchronized void adjustCheckInterval() {
+        long interval = Long.MAX_VALUE;
+        for (AGHttpRepoClient session : sessions) {
+            interval = Math.min(interval, checkInterval(session));
+        }
+        if (interval == Long.MAX_VALUE) {
+            if (check != null) {
+                check.cancel(false);
+                check = null;
+            }
+            checkInterval = Long.MAX_VALUE;
+        } else if (check == null || interval != checkInterval) {
+            schedule(interval);
+        }
+    }
+
+    // Must hold the lock.
+    private void schedule(long interval) {
+        if (check != null) {
+            check.cancel(false);
+        }
+        try {
+            check = executor.scheduleWithFixedDelay(this::checkSessions,
+                    interval, interval, TimeUnit.MILLISECONDS);
+            checkInterval = interval;
+        } catch (RejectedExecutionException e) {
+            logger.debug("Heartbeat executor shut down", e);
+            check = null;
+            checkInterval = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return the number of sessions kept alive
+     */
+    public int getLiveSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of sessions that needed a ping at the last check
+     */
+    public int getIdleSessions() {
+        return idleSessions;
+    }
+
+    /**
+     * @return the number of sessions dropped because a ping failed,
+     *         usually because they had already expired on the server
+     */
+    public long getExpiredSessions() {
+        return expiredSessions.get();
+    }
+
+    /**
+     * @return the number of pings sent
+     */
+    public long getPingsSent() {
+        return pingsSent.get();
+    }
+
+    /**
+     * Sessions are checked at least four times per lifetime, so that an idle
+     * session is pinged between one half and three quarters of its lifetime.
+     */
+    private static long checkInterval(AGHttpRepoClient session) {
+        final long quarter = TimeUnit.SECONDS.toMillis(session.getSessionLifetime()) / 4;
+        return Math.max(MIN_CHECK_INTERVAL, Math.min(MAX_CHECK_INTERVAL, quarter));
+    }
+
+    private void checkSessions() {
+        final long now = System.nanoTime();
+        final List<AGHttpRepoClient> idle = new ArrayList<>();
+        long interval = Long.MAX_VALUE;
+        for (AGHttpRepoClient session : sessions) {
+            interval = Math.min(interval, checkInterval(session));
+            final long halfLifetime = TimeUnit.SECONDS.toNanos(session.getSessionLifetime()) / 2;
+            if (now - session.getLastRequestNanos() > halfLifetime) {
+                idle.add(session);
+            }
+        }
+        idleSessions = idle.size();
+        if (interval != checkInterval) {
+            adjustCheckInterval();
+        }
+        for (AGHttpRepoClient session : idle) {
+            // Counts as a request, so the session is not pinged
+            // again while the ping is in flight.
+            session.touch();
+            pingsSent.incrementAndGet();
+            try {
+                executor.execute(() -> ping(session));
+            } catch (RejectedExecutionException e) {
+                logger.debug("Heartbeat executor shut down", e);
+                return;
+            }
+        }
+    }
+
+    private void ping(AGHttpRepoClient session) {
+        if (!sessions.contains(session)) {
+            return;
+        }
+        try {
+            session.ping();
+        } catch (AGHttpException e) {
+            // Pinger errors are normal when shutting down...
+            logger.debug("Heartbeat ping failed", e);
+            // Keep trying after network errors, but not once
+            // the server has answered that the session is gone.
+            if (!(e.getCause() instanceof IOException) && sessions.remove(session)) {
+                expiredSessions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{AGSessionHeartbeat live=" + getLiveSessions()
+                + " idle=" + getIdleSessions()
+                + " expired=" + getExpiredSessions()
+                + " pings=" + getPingsSent()
+                + "}";
+    }
+}
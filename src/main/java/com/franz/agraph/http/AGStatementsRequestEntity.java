@@ -0,0 +1,204 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http;
+
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A request entity that writes statements to the server as JSON rows
+ * while they are being produced, instead of building a JSONArray and
+ * its string form in memory first.
+ * <p>
+ * Each statement is written as a row of N-Triples encoded values
+ * <code>[subj, pred, obj, context, attributes]</code>, the format
+ * accepted by the statements service for <code>application/json</code>.
+ * The memory used does not depend on the number of statements.
+ * </p>
+ * <p>
+ * The content length is not known in advance, so the request is sent
+ * with chunked transfer encoding.
+ * </p>
+ *
+ * @see AGHttpRepoClient#uploadStatements(AGStatementsRequestEntity, Resource...)
+ */
+public class AGStatementsRequestEntity implements RequestEntity {
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    /**
+     * Produces the statements of a request by passing them to a {@link RowWriter}.
+     */
+    @FunctionalInterface
+    public interface Rows {
+        /**
+         * Writes all rows of the request.
+         *
+         * @param out receives the rows
+         * @throws IOException if writing to the request fails
+         * @throws Exception   if the statements can not be produced
+         */
+        void writeTo(RowWriter out) throws Exception;
+    }
+
+    private final Rows rows;
+    private final boolean repeatable;
+    private final AGValueFactory vf;
+    private final boolean allowExternalBlankNodeIds;
+    private boolean written = false;
+    private Exception sourceException;
+
+    /**
+     * @param rows                      produces the statements
+     * @param repeatable                whether rows can be written more than once,
+     *                                  which allows the request to be retried
+     * @param vf                        the value factory of the connection
+     * @param allowExternalBlankNodeIds see {@link AGHttpRepoClient#getAllowExternalBlankNodeIds()}
+     */
+    public AGStatementsRequestEntity(Rows rows, boolean repeatable,
+                                     AGValueFactory vf, boolean allowExternalBlankNodeIds) {
+        this.rows = rows;
+        this.repeatable = repeatable;
+        this.vf = vf;
+        this.allowExternalBlankNodeIds = allowExternalBlankNodeIds;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return repeatable;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+        if (written && !repeatable) {
+            throw new IOException("Statements can not be sent more than once");
+        }
+        written = true;
+        sourceException = null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        RowWriter rowWriter = new RowWriter(writer);
+        writer.write('[');
+        try {
+            rows.writeTo(rowWriter);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Abort the request, the caller will find the original
+            // exception with getSourceException().
+            sourceException = e;
+            throw new IOException("Error producing statements: " + e, e);
+        }
+        writer.write(']');
+        writer.flush();
+    }
+
+    /**
+     * @return the exception thrown by the statement source if it
+     * made the request fail, or null
+     */
+    public Exception getSourceException() {
+        return sourceException;
+    }
+
+    /**
+     * Writes JSON rows to the request body.
+     */
+    public final class RowWriter {
+        private final Writer out;
+        // Reused to build the N-Triples form of each value.
+        private final StringBuilder value = new StringBuilder(128);
+        private boolean first = true;
+
+        private RowWriter(Writer out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes the rows for one statement.
+         *
+         * @param st         the statement
+         * @param attributes attributes of the statement, or null
+         * @param contexts   if not empty, a row is written for each context
+         *                   (null meaning the default graph) instead of using
+         *                   the context of the statement
+         * @throws IOException if writing to the request fails
+         */
+        public void write(Statement st, JSONObject attributes, Resource... contexts) throws IOException {
+            write(st, attributes == null ? null : attributes.toString(), contexts);
+        }
+
+        /**
+         * Writes the rows for one statement.
+         *
+         * @param st         the statement
+         * @param attributes attributes of the statement in JSON, or null
+         * @param contexts   if not empty, a row is written for each context
+         *                   (null meaning the default graph) instead of using
+         *                   the context of the statement
+         * @throws IOException if writing to the request fails
+         */
+        public void write(Statement st, String attributes, Resource... contexts) throws IOException {
+            if (contexts.length == 0) {
+                writeRow(st, st.getContext(), attributes);
+            } else {
+                for (Resource c : contexts) {
+                    writeRow(st, c, attributes);
+                }
+            }
+        }
+
+        private void writeRow(Statement st, Resource context, String attributes) throws IOException {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write('[');
+            writeValue(st.getSubject());
+            out.write(',');
+            writeValue(st.getPredicate());
+            out.write(',');
+            writeValue(st.getObject());
+            out.write(',');
+            if (context == null) {
+                out.write("null");
+            } else {
+                writeValue(context);
+            }
+            if (attributes != null) {
+                out.write(',');
+                JSONObject.quote(attributes, out);
+            }
+            out.write(']');
+        }
+
+        private void writeValue(Value v) throws IOException {
+            value.setLength(0);
+            NTriplesUtil.append(AGHttpRepoClient.getStorableValue(v, vf, allowExternalBlankNodeIds), value);
+            JSONObject.quote(value.toString(), out);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps a streaming result so that closing it before it is exhausted
+ * runs an abort action instead of reading the rest of the response.
+ * <p>
+ * Releasing the HTTP connection of a streaming result reads the
+ * response to its end, which takes as long as the server needs to
+ * finish the query. This is what {@link AGPrefetchIteration} does for
+ * results read in the background.
+ * </p>
+ *
+ * @param <E> the element type
+ */
+public class AGAbortingIteration<E> implements CloseableIteration<E, QueryEvaluationException> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AGAbortingIteration.class);
+
+    private final CloseableIteration<? extends E, QueryEvaluationException> source;
+    private final Runnable abort;
+    private volatile boolean exhausted = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param source the streaming result
+     * @param abort  called by {@link #close()} if source is not exhausted
+     */
+    public AGAbortingIteration(CloseableIteration<? extends E, QueryEvaluationException> source,
+                               Runnable abort) {
+        this.source = source;
+        this.abort = abort;
+    }
+
+    /**
+     * Wraps a streaming tuple result.
+     *
+     * @param result the streaming result
+     * @param abort  called when result is closed before it is exhausted
+     * @return a result running abort when closed early
+     */
+    public static TupleQueryResult abortOnClose(TupleQueryResult result, Runnable abort) {
+        return new AbortingTupleQueryResult(result, abort);
+    }
+
+    /**
+     * Wraps a streaming graph result.
+     *
+     * @param result the streaming result
+     * @param abort  called when result is closed before it is exhausted
+     * @return a result running abort when closed early
+     */
+    public static GraphQueryResult abortOnClose(GraphQueryResult result, Runnable abort) {
+        return new AbortingGraphQueryResult(result, abort);
+    }
+
+    @Override
+    public boolean hasNext() throws QueryEvaluationException {
+        if (closed) {
+            return false;
+        }
+        if (source.hasNext()) {
+            return true;
+        }
+        exhausted = true;
+        close();
+        return false;
+    }
+
+    @Override
+    public E next() throws QueryEvaluationException {
+        return source.next();
+    }
+
+    @Override
+    public void remove() throws QueryEvaluationException {
+        source.remove();
+    }
+
+    @Override
+    public void close() throws QueryEvaluationException {
+        if (!closed) {
+            closed = true;
+            if (!exhausted && abort != null) {
+                try {
+                    abort.run();
+                } catch (RuntimeException e) {
+                    logger.debug("Error aborting streaming request", e);
+                }
+            }
+            source.close();
+        }
+    }
+
+    private static class AbortingTupleQueryResult extends AGAbortingIteration<BindingSet>
+            implements TupleQueryResult {
+        private final TupleQueryResult source;
+
+        AbortingTupleQueryResult(TupleQueryResult source, Runnable abort) {
+            super(source, abort);
+            this.source = source;
+        }
+
+        @Override
+        public List<String> getBindingNames() {
+            return source.getBindingNames();
+        }
+    }
+
+    private static class AbortingGraphQueryResult extends AGAbortingIteration<Statement>
+            implements GraphQueryResult {
+        private final GraphQueryResult source;
+
+        AbortingGraphQueryResult(GraphQueryResult source, Runnable abort) {
+            super(source, abort);
+            this.source = source;
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return source.getNamespaces();
+        }
+    }
+}
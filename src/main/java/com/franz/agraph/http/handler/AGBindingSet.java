@@ -0,0 +1,149 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.AbstractBindingSet;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.impl.SimpleBinding;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact {@link org.eclipse.rdf4j.query.BindingSet} for streamed
+ * tuple results.
+ * <p>
+ * Each row only holds an array of values; the binding names and the
+ * name to position index are kept in a {@link Names} object shared
+ * by every row of the result. Values that are not bound are null.
+ * </p>
+ */
+public class AGBindingSet extends AbstractBindingSet {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Names names;
+    private final Value[] values;
+
+    /**
+     * Creates a binding set; values is used directly, not copied.
+     *
+     * @param names  the binding names of the result
+     * @param values one value (or null) per binding name
+     */
+    public AGBindingSet(Names names, Value[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    @Override
+    public Iterator<Binding> iterator() {
+        return new Iterator<Binding>() {
+            private int index = nextBound(0);
+
+            @Override
+            public boolean hasNext() {
+                return index < values.length;
+            }
+
+            @Override
+            public Binding next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Binding binding = new SimpleBinding(names.get(index), values[index]);
+                index = nextBound(index + 1);
+                return binding;
+            }
+        };
+    }
+
+    private int nextBound(int index) {
+        while (index < values.length && values[index] == null) {
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public Set<String> getBindingNames() {
+        return names.nameSet;
+    }
+
+    @Override
+    public Binding getBinding(String bindingName) {
+        Value value = getValue(bindingName);
+        return value == null ? null : new SimpleBinding(bindingName, value);
+    }
+
+    @Override
+    public boolean hasBinding(String bindingName) {
+        return getValue(bindingName) != null;
+    }
+
+    @Override
+    public Value getValue(String bindingName) {
+        Integer index = names.index.get(bindingName);
+        if (index == null || index >= values.length) {
+            return null;
+        }
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Value value : values) {
+            if (value != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The binding names of a result and their positions,
+     * shared by all the {@link AGBindingSet}s of the result.
+     */
+    public static class Names implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] names;
+        private final Set<String> nameSet;
+        private final Map<String, Integer> index;
+
+        public Names(List<String> bindingNames) {
+            names = bindingNames.toArray(new String[bindingNames.size()]);
+            nameSet = Collections.unmodifiableSet(new LinkedHashSet<>(bindingNames));
+            index = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                index.put(names[i], i);
+            }
+        }
+
+        /**
+         * @return the number of binding names
+         */
+        public int size() {
+            return names.length;
+        }
+
+        /**
+         * @param i position of a binding
+         * @return the name of the binding at position i
+         */
+        public String get(int i) {
+            return names[i];
+        }
+    }
+}
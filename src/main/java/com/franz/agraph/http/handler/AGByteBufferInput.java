@@ -0,0 +1,112 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the big-endian binary result formats from a response stream
+ * through a reusable {@link ByteBuffer}.
+ * <p>
+ * The response is read into the buffer in large chunks and numbers
+ * and strings are decoded directly from it, without the per-call
+ * overhead and intermediate copies of a DataInputStream.
+ * </p>
+ */
+final class AGByteBufferInput {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    // Always in read mode (flipped) between calls.
+    private ByteBuffer buf;
+
+    AGByteBufferInput(InputStream in) {
+        this.in = in;
+        buf = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        buf.flip();
+    }
+
+    /**
+     * Makes sure at least n bytes can be read from the buffer,
+     * reading more of the stream as needed.
+     */
+    private void require(int n) throws IOException {
+        if (buf.remaining() >= n) {
+            return;
+        }
+        if (buf.capacity() < n) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(n, buf.capacity() * 2));
+            larger.put(buf);
+            buf = larger;
+        } else {
+            buf.compact();
+        }
+        while (buf.position() < n) {
+            int read = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            if (read < 0) {
+                buf.flip();
+                throw new EOFException("Unexpected end of binary result, expected "
+                        + (n - buf.remaining()) + " more bytes");
+            }
+            buf.position(buf.position() + read);
+        }
+        buf.flip();
+    }
+
+    int readByte() throws IOException {
+        require(1);
+        return buf.get();
+    }
+
+    int readInt() throws IOException {
+        require(4);
+        return buf.getInt();
+    }
+
+    void readFully(byte[] bytes) throws IOException {
+        require(bytes.length);
+        buf.get(bytes);
+    }
+
+    /**
+     * Reads a string encoded as UTF-8 bytes.
+     *
+     * @param length the number of bytes
+     */
+    String readUTF8(int length) throws IOException {
+        checkLength(length);
+        require(length);
+        int start = buf.arrayOffset() + buf.position();
+        String s = new String(buf.array(), start, length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    /**
+     * Reads a string encoded as big-endian UTF-16 chars.
+     *
+     * @param length the number of chars
+     */
+    String readUTF16(int length) throws IOException {
+        checkLength(length);
+        require(length * 2);
+        CharBuffer chars = buf.asCharBuffer();
+        chars.limit(length);
+        String s = chars.toString();
+        buf.position(buf.position() + length * 2);
+        return s;
+    }
+
+    private void checkLength(int length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE / 2) {
+            throw new IOException("Illegal string length in binary result: " + length);
+        }
+    }
+}
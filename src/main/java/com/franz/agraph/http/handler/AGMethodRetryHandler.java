@@ -1,5 +1,6 @@
 package com.franz.agraph.http.handler;
 
+import com.franz.agraph.http.AGHttpExchange;
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.HttpMethod;
 
@@ -12,6 +13,7 @@ public class AGMethodRetryHandler extends DefaultHttpMethodRetryHandler {
         // Retry the method if either:
         //  1) By default it would be retried (e.g. if server dropped our connection):
         if (super.retryMethod(method, exception, executionCount)) {
+            AGHttpExchange.retried(method);
             return true;
         }
         //  2) This is an idempotent method that has only been tried once,
@@ -23,6 +25,7 @@ public class AGMethodRetryHandler extends DefaultHttpMethodRetryHandler {
                 switch (method.getName()) {
                 case "GET":
                 case "HEAD":
+                        AGHttpExchange.retried(method);
                         return true;
                 default:
                         break;
@@ -0,0 +1,300 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a streaming result on a background thread into a bounded
+ * buffer, so network I/O and parsing overlap with the work the
+ * application does on each element.
+ * <p>
+ * The reader blocks when the buffer is full, so at most
+ * <code>prefetchSize</code> parsed elements are held in memory.
+ * When the whole result fits in the buffer, the reader reaches the end
+ * of the response and releases the HTTP connection without waiting
+ * for the application.
+ * </p>
+ * <p>
+ * {@link #close()} stops the reader and aborts the request if the
+ * response has not been fully read yet.
+ * </p>
+ *
+ * @param <E> the element type
+ * @see AGTQRStreamer
+ * @see AGRDFStreamer
+ */
+public class AGPrefetchIteration<E> implements CloseableIteration<E, QueryEvaluationException> {
+
+    /**
+     * Default number of elements read ahead of the application.
+     */
+    public static final int DEFAULT_PREFETCH_SIZE = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(AGPrefetchIteration.class);
+
+    // Marks the end of the result (or a failure) in the buffer.
+    private static final Object END = new Object();
+
+    private static final AtomicInteger readerCount = new AtomicInteger();
+
+    // Readers block on the network, so they do not share the
+    // AGServer executor that runs session pingers.
+    private static final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "agraph-prefetch-" + readerCount.incrementAndGet());
+        // Do not prevent the JVM from exiting.
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CloseableIteration<? extends E, QueryEvaluationException> source;
+    private final Runnable abort;
+    private final BlockingQueue<Object> buffer;
+    private volatile boolean closed = false;
+    private volatile boolean finished = false;
+    private volatile Throwable failure;
+
+    // Only used by the consuming thread.
+    private Object next;
+    private boolean done = false;
+
+    /**
+     * Starts reading from source in the background.
+     *
+     * @param source       the result to read; it is only accessed by the reader
+     *                     thread from now on
+     * @param prefetchSize maximum number of elements to read ahead, must be positive
+     * @param abort        called by {@link #close()} to interrupt a read in progress,
+     *                     may be null
+     */
+    public AGPrefetchIteration(CloseableIteration<? extends E, QueryEvaluationException> source,
+                               int prefetchSize, Runnable abort) {
+        if (prefetchSize <= 0) {
+            throw new IllegalArgumentException("prefetchSize must be positive: " + prefetchSize);
+        }
+        this.source = source;
+        this.abort = abort;
+        this.buffer = new ArrayBlockingQueue<>(prefetchSize);
+        readers.execute(this::read);
+    }
+
+    /**
+     * Wraps a streaming tuple result in a prefetching result.
+     *
+     * @param result       the streaming result
+     * @param prefetchSize maximum number of solutions to read ahead
+     * @param streamer     the handler that produced result, used to abort the request
+     * @return a result reading ahead in the background
+     * @throws QueryEvaluationException if the binding names can not be read
+     */
+    public static TupleQueryResult prefetch(TupleQueryResult result, int prefetchSize,
+                                            AGTQRStreamer streamer) throws QueryEvaluationException {
+        return prefetch(result, prefetchSize, (Runnable) streamer::abort);
+    }
+
+    /**
+     * Wraps a streaming tuple result in a prefetching result.
+     *
+     * @param result       the streaming result
+     * @param prefetchSize maximum number of solutions to read ahead
+     * @param abort        called when the result is closed before the
+     *                     response was read to the end
+     * @return a result reading ahead in the background
+     * @throws QueryEvaluationException if the binding names can not be read
+     */
+    public static TupleQueryResult prefetch(TupleQueryResult result, int prefetchSize,
+                                            Runnable abort) throws QueryEvaluationException {
+        // Read the header before the reader thread takes over the stream.
+        List<String> bindingNames = result.getBindingNames();
+        return new PrefetchTupleQueryResult(result, bindingNames, prefetchSize, abort);
+    }
+
+    /**
+     * Wraps a streaming graph result in a prefetching result.
+     *
+     * @param result       the streaming result
+     * @param prefetchSize maximum number of statements to read ahead
+     * @param streamer     the handler that produced result, used to abort the request
+     * @return a result reading ahead in the background
+     * @throws QueryEvaluationException if the namespaces can not be read
+     */
+    public static GraphQueryResult prefetch(GraphQueryResult result, int prefetchSize,
+                                            AGRDFStreamer streamer) throws QueryEvaluationException {
+        return prefetch(result, prefetchSize, (Runnable) streamer::abort);
+    }
+
+    /**
+     * Wraps a streaming graph result in a prefetching result.
+     *
+     * @param result       the streaming result
+     * @param prefetchSize maximum number of statements to read ahead
+     * @param abort        called when the result is closed before the
+     *                     response was read to the end
+     * @return a result reading ahead in the background
+     * @throws QueryEvaluationException if the namespaces can not be read
+     */
+    public static GraphQueryResult prefetch(GraphQueryResult result, int prefetchSize,
+                                            Runnable abort) throws QueryEvaluationException {
+        // Namespaces precede the statements, read them before the reader thread takes over.
+        Map<String, String> namespaces = result.getNamespaces();
+        return new PrefetchGraphQueryResult(result, namespaces, prefetchSize, abort);
+    }
+
+    private void read() {
+        try {
+            while (!closed && source.hasNext()) {
+                // Blocks while the buffer is full.
+                buffer.put(source.next());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            if (!closed) {
+                failure = e;
+            }
+        } finally {
+            try {
+                source.close();
+            } catch (QueryEvaluationException e) {
+                if (failure == null && !closed) {
+                    failure = e;
+                }
+            }
+            finished = true;
+            if (!closed) {
+                try {
+                    buffer.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws QueryEvaluationException {
+        if (next == null && !done) {
+            if (closed) {
+                done = true;
+                return false;
+            }
+            try {
+                next = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new QueryEvaluationException(e);
+            }
+            if (next == END) {
+                next = null;
+                done = true;
+                Throwable e = failure;
+                if (e != null) {
+                    throw rethrow(e);
+                }
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() throws QueryEvaluationException {
+        if (hasNext()) {
+            E curr = (E) next;
+            next = null;
+            return curr;
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public void remove() throws QueryEvaluationException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops reading. If the response has not been fully read,
+     * the request is aborted so the reader thread does not
+     * have to drain the rest of the response.
+     */
+    @Override
+    public void close() throws QueryEvaluationException {
+        if (!closed) {
+            closed = true;
+            done = true;
+            next = null;
+            // Unblocks the reader if it is waiting for space.
+            buffer.clear();
+            if (!finished && abort != null) {
+                try {
+                    abort.run();
+                } catch (RuntimeException e) {
+                    logger.debug("Error aborting streaming request", e);
+                }
+            }
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            // Includes QueryEvaluationException.
+            return (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else {
+            return new QueryEvaluationException(e);
+        }
+    }
+
+    private static class PrefetchTupleQueryResult extends AGPrefetchIteration<BindingSet>
+            implements TupleQueryResult {
+        private final List<String> bindingNames;
+
+        PrefetchTupleQueryResult(TupleQueryResult source, List<String> bindingNames,
+                                 int prefetchSize, Runnable abort) {
+            super(source, prefetchSize, abort);
+            this.bindingNames = bindingNames;
+        }
+
+        @Override
+        public List<String> getBindingNames() {
+            return bindingNames;
+        }
+    }
+
+    private static class PrefetchGraphQueryResult extends AGPrefetchIteration<Statement>
+            implements GraphQueryResult {
+        private final Map<String, String> namespaces;
+
+        PrefetchGraphQueryResult(GraphQueryResult source, Map<String, String> namespaces,
+                                 int prefetchSize, Runnable abort) {
+            super(source, prefetchSize, abort);
+            this.namespaces = namespaces;
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return namespaces;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.httpclient.HttpMethod;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Similar to {@link org.eclipse.rdf4j.rio.binary.BinaryRDFParser}
+ * but reads one record at a time so the statements
+ * streaming in the http response can be processed in a
+ * {@link GraphQueryResult} pulling from the binary stream.
+ * <p>
+ * The binary format declares frequently used values once and
+ * refers to them by id afterwards, so repeated IRIs and literals
+ * are neither transferred nor allocated more than once.
+ * </p>
+ */
+public class AGRDFBinaryStreamer extends AGRDFStreamer {
+    // Record and value type markers, see org.eclipse.rdf4j.rio.binary.BinaryRDFConstants
+    private static final byte[] MAGIC_NUMBER = {'B', 'R', 'D', 'F'};
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NAMESPACE_DECL = 0;
+    private static final int STATEMENT = 1;
+    private static final int COMMENT = 2;
+    private static final int VALUE_DECL = 3;
+    private static final int END_OF_DATA = 127;
+
+    private static final int NULL_VALUE = 0;
+    private static final int URI_VALUE = 1;
+    private static final int BNODE_VALUE = 2;
+    private static final int PLAIN_LITERAL_VALUE = 3;
+    private static final int LANG_LITERAL_VALUE = 4;
+    private static final int DATATYPE_LITERAL_VALUE = 5;
+    private static final int VALUE_REF = 6;
+
+    private InputStream in;
+
+    public AGRDFBinaryStreamer(AGValueFactory vf) {
+        super(RDFFormat.BINARY.getDefaultMIMEType());
+        this.vf = vf;
+    }
+
+    @Override
+    public String getRequestMIMEType() {
+        return RDFFormat.BINARY.getDefaultMIMEType();
+    }
+
+    @Override
+    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+        this.method = method;
+        in = AGResponseHandler.getInputStream(method);
+    }
+
+    @Override
+    public GraphQueryResult getResult() {
+        return new Result();
+    }
+
+    private class Result implements GraphQueryResult {
+        private final AGByteBufferInput input;
+        private final Map<String, String> namespaces = new HashMap<>();
+        private final List<Value> declaredValues = new ArrayList<>();
+        private Statement next;
+        private boolean headerRead = false;
+        private boolean closed = false;
+
+        public Result() {
+            input = new AGByteBufferInput(in);
+        }
+
+        /**
+         * Returns the namespaces declared in the response up to
+         * the first statement, which is read ahead if necessary.
+         * Namespaces are normally sent before any statements.
+         */
+        @Override
+        public Map<String, String> getNamespaces() throws QueryEvaluationException {
+            hasNext();
+            return namespaces;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (next == null && !closed) {
+                try {
+                    readHeader();
+                    next = parse();
+                } catch (IOException e) {
+                    throw new QueryEvaluationException(e);
+                }
+                if (next == null) {
+                    // Exhausted: give the connection back right away.
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            if (hasNext()) {
+                Statement curr = next;
+                next = null;
+                return curr;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            if (!closed) {
+                closed = true;
+                release(method);
+            }
+        }
+
+        private void readHeader() throws QueryEvaluationException {
+            if (headerRead || closed) {
+                return;
+            }
+            try {
+                byte[] magic = new byte[MAGIC_NUMBER.length];
+                input.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC_NUMBER)) {
+                    throw parseError("File does not contain a binary RDF document");
+                }
+                int version = input.readInt();
+                if (version != FORMAT_VERSION) {
+                    throw parseError("Incompatible format version: " + version);
+                }
+                headerRead = true;
+            } catch (IOException e) {
+                throw new QueryEvaluationException(e);
+            }
+        }
+
+        private Statement parse() throws IOException {
+            while (true) {
+                int recordType = input.readByte();
+                switch (recordType) {
+                    case STATEMENT:
+                        return readStatement();
+                    case NAMESPACE_DECL:
+                        String prefix = readString();
+                        namespaces.put(prefix, readString());
+                        break;
+                    case VALUE_DECL:
+                        int id = input.readInt();
+                        Value value = readValue();
+                        while (declaredValues.size() <= id) {
+                            declaredValues.add(null);
+                        }
+                        declaredValues.set(id, value);
+                        break;
+                    case COMMENT:
+                        readString();
+                        break;
+                    case END_OF_DATA:
+                        return null;
+                    default:
+                        throw parseError("Invalid record type: " + recordType);
+                }
+            }
+        }
+
+        private Statement readStatement() throws IOException {
+            Value subj = readValue();
+            Value pred = readValue();
+            Value obj = readValue();
+            Value ctx = readValue();
+            if (!(subj instanceof Resource)) {
+                throw parseError("Illegal subject: " + subj);
+            }
+            if (!(pred instanceof IRI)) {
+                throw parseError("Illegal predicate: " + pred);
+            }
+            if (ctx != null && !(ctx instanceof Resource)) {
+                throw parseError("Illegal context: " + ctx);
+            }
+
+            Resource s = AGHttpRepoClient.getApplicationResource((Resource) subj, vf);
+            Value o = AGHttpRepoClient.getApplicationValue(obj, vf);
+            if (ctx == null) {
+                return vf.createStatement(s, (IRI) pred, o);
+            }
+            Resource c = AGHttpRepoClient.getApplicationResource((Resource) ctx, vf);
+            return vf.createStatement(s, (IRI) pred, o, c);
+        }
+
+        private Value readValue() throws IOException {
+            int valueType = input.readByte();
+            switch (valueType) {
+                case NULL_VALUE:
+                    return null;
+                case URI_VALUE:
+                    return vf.createIRI(readString());
+                case BNODE_VALUE:
+                    return vf.createBNode(readString());
+                case PLAIN_LITERAL_VALUE:
+                    return vf.createLiteral(readString());
+                case LANG_LITERAL_VALUE:
+                    String label = readString();
+                    return vf.createLiteral(label, readString());
+                case DATATYPE_LITERAL_VALUE:
+                    String dtLabel = readString();
+                    return vf.createLiteral(dtLabel, vf.createIRI(readString()));
+                case VALUE_REF:
+                    int id = input.readInt();
+                    if (id < 0 || id >= declaredValues.size() || declaredValues.get(id) == null) {
+                        throw parseError("Unknown value id: " + id);
+                    }
+                    return declaredValues.get(id);
+                default:
+                    throw parseError("Unknown value type: " + valueType);
+            }
+        }
+
+        private String readString() throws IOException {
+            return input.readUTF16(input.readInt());
+        }
+
+        private QueryEvaluationException parseError(String msg) {
+            return new QueryEvaluationException(new RDFParseException(msg));
+        }
+    }
+}
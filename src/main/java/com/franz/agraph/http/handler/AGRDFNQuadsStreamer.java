@@ -0,0 +1,264 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.httpclient.HttpMethod;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Similar to {@link org.eclipse.rdf4j.rio.nquads.NQuadsParser}
+ * but parses one line at a time so the statements
+ * streaming in the http response can be processed in a
+ * {@link GraphQueryResult} pulling from the N-Quads stream.
+ * <p>
+ * N-Triples is a subset of N-Quads, so this class handles both formats.
+ * </p>
+ */
+public class AGRDFNQuadsStreamer extends AGRDFStreamer {
+    private final RDFFormat format;
+    private InputStream in;
+
+    public AGRDFNQuadsStreamer(RDFFormat format, AGValueFactory vf) {
+        super(format.getDefaultMIMEType());
+        this.format = format;
+        this.vf = vf;
+    }
+
+    @Override
+    public String getRequestMIMEType() {
+        return format.getDefaultMIMEType();
+    }
+
+    @Override
+    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+        this.method = method;
+        in = AGResponseHandler.getInputStream(method);
+    }
+
+    @Override
+    public GraphQueryResult getResult() {
+        return new Result();
+    }
+
+    private class Result implements GraphQueryResult {
+        private final BufferedReader reader;
+        private Statement next;
+        private boolean closed = false;
+        private String line;
+        private int pos;
+        private long lineNo = 0;
+
+        public Result() {
+            reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Map<String, String> getNamespaces() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (next == null && !closed) {
+                next = parse();
+                if (next == null) {
+                    // Exhausted: give the connection back right away.
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Statement next() throws QueryEvaluationException {
+            if (hasNext()) {
+                Statement curr = next;
+                next = null;
+                return curr;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            if (!closed) {
+                closed = true;
+                release(method);
+            }
+        }
+
+        private String readNextLine() {
+            try {
+                lineNo++;
+                return reader.readLine();
+            } catch (IOException e) {
+                throw new QueryEvaluationException(e);
+            }
+        }
+
+        private Statement parse() {
+            while ((line = readNextLine()) != null) {
+                pos = 0;
+                skipWhitespace();
+                if (pos == line.length() || line.charAt(pos) == '#') {
+                    continue;
+                }
+
+                Value subj = parseTerm();
+                skipWhitespace();
+                Value pred = parseTerm();
+                skipWhitespace();
+                Value obj = parseTerm();
+                skipWhitespace();
+                Value ctx = null;
+                if (pos < line.length() && line.charAt(pos) != '.') {
+                    ctx = parseTerm();
+                    skipWhitespace();
+                }
+                if (pos == line.length() || line.charAt(pos) != '.') {
+                    throw parseError("Expected '.'");
+                }
+
+                if (!(subj instanceof Resource)) {
+                    throw parseError("Illegal subject: " + subj);
+                }
+                if (!(pred instanceof IRI)) {
+                    throw parseError("Illegal predicate: " + pred);
+                }
+                if (ctx != null && !(ctx instanceof Resource)) {
+                    throw parseError("Illegal context: " + ctx);
+                }
+
+                Resource s = AGHttpRepoClient.getApplicationResource((Resource) subj, vf);
+                Value o = AGHttpRepoClient.getApplicationValue(obj, vf);
+                if (ctx == null) {
+                    return vf.createStatement(s, (IRI) pred, o);
+                }
+                Resource c = AGHttpRepoClient.getApplicationResource((Resource) ctx, vf);
+                return vf.createStatement(s, (IRI) pred, o, c);
+            }
+            return null;
+        }
+
+        private void skipWhitespace() {
+            while (pos < line.length() && (line.charAt(pos) == ' ' || line.charAt(pos) == '\t')) {
+                pos++;
+            }
+        }
+
+        private Value parseTerm() {
+            if (pos >= line.length()) {
+                throw parseError("Unexpected end of line");
+            }
+            char c = line.charAt(pos);
+            if (c == '<') {
+                return vf.createIRI(parseIRIString());
+            } else if (c == '_' && pos + 1 < line.length() && line.charAt(pos + 1) == ':') {
+                int start = pos + 2;
+                int end = start;
+                while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != '\t') {
+                    end++;
+                }
+                // A label may not end with '.', so that must be the statement terminator.
+                if (end > start && line.charAt(end - 1) == '.') {
+                    end--;
+                }
+                pos = end;
+                return vf.createBNode(line.substring(start, end));
+            } else if (c == '"') {
+                return parseLiteral();
+            } else {
+                throw parseError("Unexpected character '" + c + "'");
+            }
+        }
+
+        private String parseIRIString() {
+            int end = line.indexOf('>', pos + 1);
+            if (end < 0) {
+                throw parseError("Unterminated IRI");
+            }
+            String iri = line.substring(pos + 1, end);
+            pos = end + 1;
+            return unescape(iri);
+        }
+
+        private Value parseLiteral() {
+            int end = pos + 1;
+            while (end < line.length()) {
+                char c = line.charAt(end);
+                if (c == '\\') {
+                    end += 2;
+                } else if (c == '"') {
+                    break;
+                } else {
+                    end++;
+                }
+            }
+            if (end >= line.length()) {
+                throw parseError("Unterminated literal");
+            }
+            String label = unescape(line.substring(pos + 1, end));
+            pos = end + 1;
+
+            if (pos < line.length() && line.charAt(pos) == '@') {
+                int start = pos + 1;
+                end = start;
+                while (end < line.length() && (Character.isLetterOrDigit(line.charAt(end)) || line.charAt(end) == '-')) {
+                    end++;
+                }
+                pos = end;
+                return vf.createLiteral(label, line.substring(start, end));
+            } else if (line.startsWith("^^", pos)) {
+                pos += 2;
+                if (pos >= line.length() || line.charAt(pos) != '<') {
+                    throw parseError("Expected datatype IRI");
+                }
+                return vf.createLiteral(label, vf.createIRI(parseIRIString()));
+            }
+            return vf.createLiteral(label);
+        }
+
+        private String unescape(String s) {
+            if (s.indexOf('\\') < 0) {
+                return s;
+            }
+            try {
+                return NTriplesUtil.unescapeString(s);
+            } catch (IllegalArgumentException e) {
+                throw parseError(e.getMessage());
+            }
+        }
+
+        private QueryEvaluationException parseError(String msg) {
+            return new QueryEvaluationException(new RDFParseException(msg, lineNo, pos + 1));
+        }
+    }
+}
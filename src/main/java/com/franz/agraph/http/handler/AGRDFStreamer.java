@@ -0,0 +1,99 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.httpclient.HttpMethod;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Base class for handlers that parse RDF statements lazily from
+ * the http response, the same way {@link AGTQRStreamer} does for
+ * tuple results.
+ * <p>
+ * Statements are only read from the response stream when they are
+ * requested from the {@link GraphQueryResult} returned by
+ * {@link #getResult()}, so memory use does not depend on the size
+ * of the result. The HTTP connection is held until that result is
+ * closed or exhausted.
+ * </p>
+ */
+public abstract class AGRDFStreamer extends AGResponseHandler {
+    protected final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected AGValueFactory vf;
+    protected HttpMethod method;
+
+    public AGRDFStreamer(String mimeType) {
+        super(mimeType);
+    }
+
+    @Override
+    public abstract String getRequestMIMEType();
+
+    /**
+     * False because the Result will release the HTTP resources.
+     * For most responses, AGHTTPClient releases resources after
+     * calling {@link #handleResponse(HttpMethod)},
+     * but here the statements are pulled when needed from the Result class,
+     * which is an inner class of child classes.
+     */
+    @Override
+    public boolean releaseConnection() {
+        return false;
+    }
+
+    @Override
+    public abstract void handleResponse(HttpMethod method) throws IOException, AGHttpException;
+
+    public abstract GraphQueryResult getResult();
+
+    /**
+     * Aborts the request, closing the HTTP connection, so that a read
+     * blocked on the response fails instead of waiting for more data.
+     * Used to cancel a result that is being read in the background.
+     *
+     * @see AGPrefetchIteration#close()
+     */
+    public void abort() {
+        if (method != null) {
+            method.abort();
+        }
+    }
+
+    /**
+     * Returns the format that streaming statement requests should use.
+     * <p>
+     * N-Triples, N-Quads and binary RDF can be parsed one statement
+     * at a time, so other formats fall back to N-Quads.
+     * </p>
+     *
+     * @param preferred the format preferred by the caller
+     * @return a format for which {@link #createStreamer(RDFFormat, AGValueFactory)} succeeds
+     */
+    public static RDFFormat getStreamingFormat(RDFFormat preferred) {
+        if (RDFFormat.NQUADS.equals(preferred) || RDFFormat.NTRIPLES.equals(preferred)
+                || RDFFormat.BINARY.equals(preferred)) {
+            return preferred;
+        }
+        return RDFFormat.NQUADS;
+    }
+
+    public static AGRDFStreamer createStreamer(RDFFormat format, AGValueFactory vf) {
+        if (format.equals(RDFFormat.NQUADS) || format.equals(RDFFormat.NTRIPLES)) {
+            return new AGRDFNQuadsStreamer(format, vf);
+        } else if (format.equals(RDFFormat.BINARY)) {
+            return new AGRDFBinaryStreamer(vf);
+        } else {
+            throw new IllegalArgumentException("Unable to find AGRDFStreamer for format " + format);
+        }
+    }
+}
@@ -86,7 +86,7 @@ public class AGRawStreamer extends AGResponseHandler {
                     if (!closed) {
                         super.close();
                         closed = true;
-                        method.releaseConnection();
+                        release(method);
                     }
                 }
             };
@@ -4,6 +4,7 @@
 
 package com.franz.agraph.http.handler;
 
+import com.franz.agraph.http.AGHttpExchange;
 import com.franz.agraph.http.exception.AGHttpException;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HeaderElement;
@@ -24,10 +25,10 @@ public abstract class AGResponseHandler {
     }
 
     protected static InputStream getInputStream(HttpMethod method) throws IOException {
-        InputStream is = method.getResponseBodyAsStream();
+        InputStream is = AGHttpExchange.countReceived(method, method.getResponseBodyAsStream());
         Header h = method.getResponseHeader("Content-Encoding");
         if (h != null && h.getValue().equals("gzip")) {
-            is = new GZIPInputStream(is);
+            is = AGHttpExchange.countDecoded(method, new GZIPInputStream(is));
         }
         return is;
     }
@@ -54,6 +55,17 @@ public abstract class AGResponseHandler {
         return true;
     }
 
+    /**
+     * Releases the response of a handler that has taken ownership of it,
+     * see {@link #releaseConnection()}, and completes its measurement.
+     *
+     * @param method the response
+     */
+    protected static void release(HttpMethod method) {
+        method.releaseConnection();
+        AGHttpExchange.released(method);
+    }
+
     /**
      * Gets the MIME type specified in the response headers of the supplied
      * method, if any. For example, if the response headers contain
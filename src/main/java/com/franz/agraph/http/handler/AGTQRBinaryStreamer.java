@@ -0,0 +1,283 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.http.handler;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.httpclient.HttpMethod;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Similar to {@link org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultParser}
+ * but decodes one row at a time so the results streaming in the
+ * http response can be processed in a {@link TupleQueryResult}
+ * pulling from the binary stream.
+ * <p>
+ * The binary format is dictionary encoded: IRIs are sent as a namespace
+ * id and a local name, each namespace being sent once, and a value equal
+ * to the one in the same column of the previous row is sent as a one
+ * byte repeat marker and shared rather than allocated again.
+ * </p>
+ */
+public class AGTQRBinaryStreamer extends AGTQRStreamer {
+    // Record markers, see org.eclipse.rdf4j.query.resultio.binary.BinaryQueryResultConstants
+    private static final byte[] MAGIC_NUMBER = {'B', 'R', 'T', 'R'};
+    private static final int MIN_FORMAT_VERSION = 2;
+    private static final int MAX_FORMAT_VERSION = 4;
+
+    private static final int NULL_RECORD_MARKER = 0;
+    private static final int REPEAT_RECORD_MARKER = 1;
+    private static final int NAMESPACE_RECORD_MARKER = 2;
+    private static final int QNAME_RECORD_MARKER = 3;
+    private static final int URI_RECORD_MARKER = 4;
+    private static final int BNODE_RECORD_MARKER = 5;
+    private static final int PLAIN_LITERAL_RECORD_MARKER = 6;
+    private static final int LANG_LITERAL_RECORD_MARKER = 7;
+    private static final int DATATYPE_LITERAL_RECORD_MARKER = 8;
+    private static final int EMPTY_ROW_RECORD_MARKER = 9;
+    private static final int ERROR_RECORD_MARKER = 126;
+    private static final int TABLE_END_RECORD_MARKER = 127;
+
+    private static final int MALFORMED_QUERY_ERROR = 1;
+
+    private InputStream in;
+
+    public AGTQRBinaryStreamer(AGValueFactory vf) {
+        super(TupleQueryResultFormat.BINARY.getDefaultMIMEType());
+        this.vf = vf;
+    }
+
+    @Override
+    public String getRequestMIMEType() {
+        return TupleQueryResultFormat.BINARY.getDefaultMIMEType();
+    }
+
+    @Override
+    public void handleResponse(HttpMethod method) throws IOException, AGHttpException {
+        this.method = method;
+        in = AGResponseHandler.getInputStream(method);
+    }
+
+    @Override
+    public TupleQueryResult getResult() {
+        return new Result();
+    }
+
+    private class Result implements TupleQueryResult {
+        private final AGByteBufferInput input;
+        private List<String> bindingNames;
+        private AGBindingSet.Names names;
+        private String[] namespaces = new String[32];
+        private Value[] previous;
+        private BindingSet next;
+        private boolean closed = false;
+
+        public Result() {
+            input = new AGByteBufferInput(in);
+        }
+
+        @Override
+        public List<String> getBindingNames() throws QueryEvaluationException {
+            readHeader();
+            return bindingNames;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (next == null && !closed) {
+                readHeader();
+                try {
+                    next = parse();
+                } catch (IOException e) {
+                    throw new QueryEvaluationException(e);
+                }
+                if (next == null) {
+                    // Exhausted: give the connection back right away.
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            if (hasNext()) {
+                BindingSet curr = next;
+                next = null;
+                return curr;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            if (!closed) {
+                closed = true;
+                release(method);
+            }
+        }
+
+        private void readHeader() throws QueryEvaluationException {
+            if (bindingNames != null) {
+                return;
+            }
+            if (closed) {
+                bindingNames = Collections.emptyList();
+                names = new AGBindingSet.Names(bindingNames);
+                return;
+            }
+            try {
+                byte[] magic = new byte[MAGIC_NUMBER.length];
+                input.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC_NUMBER)) {
+                    throw parseError("Response does not contain a binary RDF table result");
+                }
+                int version = input.readInt();
+                if (version < MIN_FORMAT_VERSION || version > MAX_FORMAT_VERSION) {
+                    throw parseError("Incompatible format version: " + version);
+                }
+                if (version == 2) {
+                    // Unused flags byte.
+                    input.readByte();
+                }
+                int columnCount = input.readInt();
+                if (columnCount < 0) {
+                    throw parseError("Illegal column count specified: " + columnCount);
+                }
+                List<String> columns = new ArrayList<>(columnCount);
+                for (int i = 0; i < columnCount; i++) {
+                    columns.add(readString());
+                }
+                names = new AGBindingSet.Names(columns);
+                bindingNames = Collections.unmodifiableList(columns);
+            } catch (IOException e) {
+                throw new QueryEvaluationException(e);
+            }
+        }
+
+        private BindingSet parse() throws IOException {
+            int columnCount = names.size();
+            Value[] values = new Value[columnCount];
+            int column = 0;
+            while (true) {
+                int marker = input.readByte();
+                switch (marker) {
+                    case TABLE_END_RECORD_MARKER:
+                        if (column > 0) {
+                            throw parseError("Unexpected end of table in the middle of a row");
+                        }
+                        return null;
+                    case ERROR_RECORD_MARKER:
+                        int errorType = input.readByte();
+                        String message = readString();
+                        throw parseError((errorType == MALFORMED_QUERY_ERROR
+                                ? "MALFORMED_QUERY_ERROR: " : "QUERY_EVALUATION_ERROR: ") + message);
+                    case NAMESPACE_RECORD_MARKER:
+                        readNamespace();
+                        continue;
+                    case EMPTY_ROW_RECORD_MARKER:
+                        return new AGBindingSet(names, values);
+                    case REPEAT_RECORD_MARKER:
+                        if (previous == null) {
+                            throw parseError("Repeat marker in the first row");
+                        }
+                        values[column] = previous[column];
+                        break;
+                    default:
+                        Value value = readValue(marker);
+                        values[column] = AGHttpRepoClient.getApplicationValue(value, vf);
+                        break;
+                }
+                column++;
+                if (column == columnCount) {
+                    previous = values;
+                    return new AGBindingSet(names, values);
+                }
+            }
+        }
+
+        private Value readValue(int marker) throws IOException {
+            switch (marker) {
+                case NULL_RECORD_MARKER:
+                    return null;
+                case QNAME_RECORD_MARKER:
+                    return readQName();
+                case URI_RECORD_MARKER:
+                    return vf.createIRI(readString());
+                case BNODE_RECORD_MARKER:
+                    return vf.createBNode(readString());
+                case PLAIN_LITERAL_RECORD_MARKER:
+                    return vf.createLiteral(readString());
+                case LANG_LITERAL_RECORD_MARKER:
+                    String label = readString();
+                    return vf.createLiteral(label, readString());
+                case DATATYPE_LITERAL_RECORD_MARKER:
+                    String dtLabel = readString();
+                    int dtMarker = input.readByte();
+                    IRI datatype;
+                    if (dtMarker == QNAME_RECORD_MARKER) {
+                        datatype = readQName();
+                    } else if (dtMarker == URI_RECORD_MARKER) {
+                        datatype = vf.createIRI(readString());
+                    } else {
+                        throw parseError("Illegal record type marker for literal's datatype");
+                    }
+                    return vf.createLiteral(dtLabel, datatype);
+                default:
+                    throw parseError("Unknown record type: " + marker);
+            }
+        }
+
+        private void readNamespace() throws IOException {
+            int id = input.readInt();
+            String namespace = readString();
+            if (id < 0) {
+                throw parseError("Illegal namespace id: " + id);
+            }
+            if (id >= namespaces.length) {
+                namespaces = Arrays.copyOf(namespaces, Math.max(id + 1, namespaces.length * 2));
+            }
+            namespaces[id] = namespace;
+        }
+
+        private IRI readQName() throws IOException {
+            int id = input.readInt();
+            String localName = readString();
+            if (id < 0 || id >= namespaces.length || namespaces[id] == null) {
+                throw parseError("Unknown namespace id: " + id);
+            }
+            return vf.createIRI(namespaces[id], localName);
+        }
+
+        private String readString() throws IOException {
+            return input.readUTF8(input.readInt());
+        }
+
+        private QueryEvaluationException parseError(String msg) {
+            return new QueryEvaluationException(new QueryResultParseException(msg));
+        }
+    }
+}
@@ -124,7 +124,7 @@ public class AGTQRJSONStreamer extends AGTQRStreamer {
 
         @Override
         public void close() throws QueryEvaluationException {
-            method.releaseConnection();
+            release(method);
         }
 
         private void parseBindingNames() throws IOException {
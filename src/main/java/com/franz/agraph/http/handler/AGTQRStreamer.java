@@ -40,6 +40,19 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
 
     public abstract TupleQueryResult getResult();
 
+    /**
+     * Aborts the request, closing the HTTP connection, so that a read
+     * blocked on the response fails instead of waiting for more data.
+     * Used to cancel a result that is being read in the background.
+     *
+     * @see AGPrefetchIteration#close()
+     */
+    public void abort() {
+        if (method != null) {
+            method.abort();
+        }
+    }
+
     public static AGTQRStreamer createStreamer(TupleQueryResultFormat format, AGValueFactory vf) {
         if (format.equals(TupleQueryResultFormat.TSV)) {
             return new AGTQRTSVStreamer(vf);
@@ -47,6 +60,8 @@ public abstract class AGTQRStreamer extends AGResponseHandler {
             return new AGTQRXMLStreamer(vf);
         } else if (format.equals(TupleQueryResultFormat.JSON)) {
             return new AGTQRJSONStreamer(vf);
+        } else if (format.equals(TupleQueryResultFormat.BINARY)) {
+            return new AGTQRBinaryStreamer(vf);
         } else {
             throw new IllegalArgumentException("Unable to find AGTQRStreamer for format " + format);
         }
@@ -2,6 +2,7 @@ package com.franz.agraph.http.handler;
 
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGValueCache;
 import com.franz.agraph.repository.AGValueFactory;
 import org.apache.commons.httpclient.HttpMethod;
 import org.eclipse.rdf4j.model.IRI;
@@ -13,17 +14,17 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
-import org.eclipse.rdf4j.query.impl.ListBindingSet;
 import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -32,10 +33,18 @@ import java.util.NoSuchElementException;
  * but uses rdf4j-like TSV parsing instead of SAXParser so the results
  * streaming in the http response can be processed in a
  * {@link TupleQueryResult} pulling from the TSV stream.
+ * <p>
+ * Rows are scanned in place in a character buffer, so the only
+ * objects created per row are the values and an {@link AGBindingSet}
+ * sharing the binding names with all other rows. Values are looked up
+ * in the buffer in the {@link AGValueCache} of the value factory, if any.
+ * </p>
  *
  * @since v2.1.0
  */
 public class AGTQRTSVStreamer extends AGTQRStreamer {
+    private static final int BUFFER_SIZE = 8192;
+
     private InputStream in;
 
     public AGTQRTSVStreamer(AGValueFactory vf) {
@@ -60,14 +69,25 @@ public class AGTQRTSVStreamer extends AGTQRStreamer {
     }
 
     private class Result implements TupleQueryResult {
+        private final Reader reader;
         private BindingSet next;
-        private InputStreamReader r;
-        private BufferedReader reader;
         private List<String> bindingNames;
+        private AGBindingSet.Names names;
+
+        // Characters read from the response; the current line is buf[lineStart, lineEnd).
+        private char[] buf = new char[BUFFER_SIZE];
+        private int bufEnd = 0;
+        private int lineStart = 0;
+        private int lineEnd = 0;
+        private int nextLineStart = 0;
+        private boolean eof = false;
+
+        // Field boundaries of the current line, reused for every row.
+        private int[] fieldStarts = new int[16];
+        private int[] fieldEnds = new int[16];
 
         public Result() {
-            r = new InputStreamReader(in, Charset.forName("UTF-8"));
-            reader = new BufferedReader(r);
+            reader = new InputStreamReader(in, StandardCharsets.UTF_8);
         }
 
         @Override
@@ -102,82 +122,256 @@ public class AGTQRTSVStreamer extends AGTQRStreamer {
 
         @Override
         public void close() throws QueryEvaluationException {
-            method.releaseConnection();
+            release(method);
         }
 
         private void parseBindingNames() {
             if (bindingNames == null) {
-                String nextLine = readNextLine();
-                String[] lineTokens = nextLine.split("\t", -1);
-                bindingNames = new ArrayList<>(lineTokens.length);
-                for (String name : lineTokens) {
-                    if ('?' == name.charAt(0)) {
-                        bindingNames.add(name.substring(1));
-                    } else {
-                        bindingNames.add(name);
+                bindingNames = new ArrayList<>();
+                if (nextLine()) {
+                    int count = splitLine();
+                    for (int i = 0; i < count; i++) {
+                        int start = fieldStarts[i];
+                        if (start < fieldEnds[i] && buf[start] == '?') {
+                            start++;
+                        }
+                        bindingNames.add(new String(buf, start, fieldEnds[i] - start));
+                    }
+                }
+                names = new AGBindingSet.Names(bindingNames);
+            }
+        }
+
+        /**
+         * Finds the next line in the buffer, reading more of the
+         * response as needed.
+         *
+         * @return false at the end of the response
+         */
+        private boolean nextLine() {
+            int pos = nextLineStart;
+            int scan = pos;
+            while (true) {
+                for (; scan < bufEnd; scan++) {
+                    char c = buf[scan];
+                    if (c == '\n') {
+                        setLine(pos, scan, scan + 1);
+                        return true;
+                    }
+                    if (c == '\r') {
+                        // A line ends with \r\n or a lone \r.
+                        if (scan + 1 < bufEnd) {
+                            setLine(pos, scan, buf[scan + 1] == '\n' ? scan + 2 : scan + 1);
+                            return true;
+                        }
+                        if (eof) {
+                            setLine(pos, scan, scan + 1);
+                            return true;
+                        }
+                        // Read on to see whether \n follows.
+                        break;
+                    }
+                }
+                if (eof) {
+                    if (pos < bufEnd) {
+                        setLine(pos, bufEnd, bufEnd);
+                        return true;
                     }
+                    return false;
                 }
+                // Move the partial line to the front of the buffer,
+                // growing it if the line does not fit.
+                int partial = bufEnd - pos;
+                if (partial == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                } else if (pos > 0) {
+                    System.arraycopy(buf, pos, buf, 0, partial);
+                }
+                scan -= pos;
+                pos = 0;
+                bufEnd = partial;
+                fill();
             }
         }
 
-        private String readNextLine() {
+        private void setLine(int start, int end, int next) {
+            lineStart = start;
+            lineEnd = end;
+            nextLineStart = next;
+        }
+
+        private void fill() {
             try {
-                return reader.readLine();
+                int n = reader.read(buf, bufEnd, buf.length - bufEnd);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    bufEnd += n;
+                }
             } catch (IOException e) {
                 throw new UnsupportedQueryResultFormatException(e);
             }
         }
 
+        /**
+         * Records the tab separated fields of the current line
+         * in fieldStarts and fieldEnds.
+         *
+         * @return the number of fields
+         */
+        private int splitLine() {
+            int count = 0;
+            int start = lineStart;
+            for (int i = lineStart; i <= lineEnd; i++) {
+                if (i == lineEnd || buf[i] == '\t') {
+                    if (count == fieldStarts.length) {
+                        fieldStarts = Arrays.copyOf(fieldStarts, count * 2);
+                        fieldEnds = Arrays.copyOf(fieldEnds, count * 2);
+                    }
+                    fieldStarts[count] = start;
+                    fieldEnds[count] = i;
+                    count++;
+                    start = i + 1;
+                }
+            }
+            return count;
+        }
+
         public BindingSet parse() throws QueryResultParseException, TupleQueryResultHandlerException {
             parseBindingNames();
 
-            String nextLine = readNextLine();
-            if (nextLine == null) return null;
-
-            String[] lineTokens;
-            lineTokens = nextLine.split("\t", -1);
-            List<Value> values = new ArrayList<>();
-
-            for (String valueString : lineTokens) {
-                Value v = null;
-                if (valueString.startsWith("_:")) {
-                    v = vf.createBNode(valueString.substring(2));
-                } else if (valueString.startsWith("<") && valueString.endsWith(">")) {
-                    try {
-                        v = vf.createIRI(valueString.substring(1, valueString.length() - 1));
-                    } catch (IllegalArgumentException var14) {
-                        v = vf.createLiteral(valueString);
+            if (!nextLine()) {
+                return null;
+            }
+            int count = Math.min(splitLine(), names.size());
+            Value[] values = new Value[names.size()];
+            AGValueCache cache = vf.getValueCache();
+            for (int i = 0; i < count; i++) {
+                Value v = cache == null ? null : cache.getTerm(buf, fieldStarts[i], fieldEnds[i]);
+                if (v == null) {
+                    v = parseValue(fieldStarts[i], fieldEnds[i]);
+                    if (cache != null && v != null) {
+                        cache.putTerm(buf, fieldStarts[i], fieldEnds[i], v);
                     }
-                } else if (valueString.startsWith("\"")) {
-                    v = this.parseLiteral(valueString);
-                } else if (!"".equals(valueString)) {
-                    if (valueString.matches("^[+\\-]?[\\d.].*")) {
-                        IRI datatype = null;
-                        if (XMLDatatypeUtil.isValidInteger(valueString)) {
-                            if (XMLDatatypeUtil.isValidNegativeInteger(valueString)) {
-                                datatype = XMLSchema.NEGATIVE_INTEGER;
-                            } else {
-                                datatype = XMLSchema.INTEGER;
-                            }
-                        } else if (XMLDatatypeUtil.isValidDecimal(valueString)) {
-                            datatype = XMLSchema.DECIMAL;
-                        } else if (XMLDatatypeUtil.isValidDouble(valueString)) {
-                            datatype = XMLSchema.DOUBLE;
-                        }
+                }
+                values[i] = AGHttpRepoClient.getApplicationValue(v, vf);
+            }
+            return new AGBindingSet(names, values);
+        }
 
-                        if (datatype != null) {
-                            v = vf.createLiteral(valueString, datatype);
-                        } else {
-                            v = vf.createLiteral(valueString);
-                        }
-                    } else {
-                        v = vf.createLiteral(valueString);
-                    }
+        private Value parseValue(int start, int end) {
+            int length = end - start;
+            if (length == 0) {
+                return null;
+            }
+            char first = buf[start];
+            if (first == '_' && length > 1 && buf[start + 1] == ':') {
+                return vf.createBNode(new String(buf, start + 2, length - 2));
+            } else if (first == '<' && length > 1 && buf[end - 1] == '>') {
+                try {
+                    return vf.createIRI(new String(buf, start + 1, length - 2));
+                } catch (IllegalArgumentException e) {
+                    return vf.createLiteral(new String(buf, start, length));
+                }
+            } else if (first == '"') {
+                return parseLiteral(new String(buf, start, length));
+            }
+
+            String valueString = new String(buf, start, length);
+            if (looksNumeric(start, end)) {
+                IRI datatype = numericDatatype(start, end);
+                if (datatype == null) {
+                    // Not in canonical form, let XMLDatatypeUtil decide.
+                    datatype = validatedDatatype(valueString);
+                }
+                if (datatype != null) {
+                    return vf.createLiteral(valueString, datatype);
+                }
+            }
+            return vf.createLiteral(valueString);
+        }
+
+        /**
+         * True if the value starts with an optional sign followed by a digit
+         * or a '.', so it may be an unquoted number.
+         */
+        private boolean looksNumeric(int start, int end) {
+            int i = start;
+            if (buf[i] == '+' || buf[i] == '-') {
+                i++;
+            }
+            return i < end && (isDigit(buf[i]) || buf[i] == '.');
+        }
+
+        /**
+         * Classifies an unquoted number in the forms used by the server:
+         * <code>[+-]digits</code> (integer),
+         * <code>[+-]digits.digits</code> (decimal) and
+         * <code>[+-]digits[.digits](e|E)[+-]digits</code> (double).
+         *
+         * @return the datatype, or null if the value is not one of these forms
+         */
+        private IRI numericDatatype(int start, int end) {
+            int i = start;
+            boolean negative = buf[i] == '-';
+            if (negative || buf[i] == '+') {
+                i++;
+            }
+            int intStart = i;
+            boolean nonZero = false;
+            while (i < end && isDigit(buf[i])) {
+                nonZero |= buf[i] != '0';
+                i++;
+            }
+            if (i == intStart) {
+                return null;
+            }
+            if (i == end) {
+                return negative && nonZero ? XMLSchema.NEGATIVE_INTEGER : XMLSchema.INTEGER;
+            }
+            if (buf[i] == '.') {
+                int fractionStart = ++i;
+                while (i < end && isDigit(buf[i])) {
+                    i++;
+                }
+                if (i == fractionStart) {
+                    return null;
                 }
-                values.add(AGHttpRepoClient.getApplicationValue(v, vf));
+                if (i == end) {
+                    return XMLSchema.DECIMAL;
+                }
+            }
+            if (buf[i] != 'e' && buf[i] != 'E') {
+                return null;
             }
+            i++;
+            if (i < end && (buf[i] == '+' || buf[i] == '-')) {
+                i++;
+            }
+            int expStart = i;
+            while (i < end && isDigit(buf[i])) {
+                i++;
+            }
+            return i == end && i > expStart ? XMLSchema.DOUBLE : null;
+        }
 
-            return new ListBindingSet(bindingNames, values.toArray(new Value[values.size()]));
+        private boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private IRI validatedDatatype(String valueString) {
+            if (XMLDatatypeUtil.isValidInteger(valueString)) {
+                if (XMLDatatypeUtil.isValidNegativeInteger(valueString)) {
+                    return XMLSchema.NEGATIVE_INTEGER;
+                } else {
+                    return XMLSchema.INTEGER;
+                }
+            } else if (XMLDatatypeUtil.isValidDecimal(valueString)) {
+                return XMLSchema.DECIMAL;
+            } else if (XMLDatatypeUtil.isValidDouble(valueString)) {
+                return XMLSchema.DOUBLE;
+            }
+            return null;
         }
 
         private Literal parseLiteral(String literal) throws IllegalArgumentException {
@@ -230,7 +230,7 @@ public class AGTQRXMLStreamer extends AGTQRStreamer {
                 closed = true;
                 try {
                     method.getResponseBodyAsStream().close();
-                    method.releaseConnection();
+                    release(method);
                 } catch (IOException e) {
                     throw new QueryEvaluationException("I/O error closing resources", e);
                 }
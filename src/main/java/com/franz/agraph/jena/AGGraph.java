@@ -4,43 +4,52 @@
 
 package com.franz.agraph.jena;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.repository.AGBooleanQuery;
 import com.franz.agraph.repository.AGRepositoryConnection;
 import com.franz.agraph.repository.AGValueFactory;
 import org.apache.jena.graph.Capabilities;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphEventManager;
 import org.apache.jena.graph.GraphEvents;
 import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.TransactionHandler;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.graph.impl.GraphBase;
-import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.graph.impl.SimpleEventManager;
 import org.apache.jena.shared.DeleteDeniedException;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.util.iterator.ClosableIterator;
 import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
 import org.eclipse.rdf4j.http.protocol.UnauthorizedException;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
-import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.Dataset;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.impl.DatasetImpl;
 import org.eclipse.rdf4j.repository.RepositoryException;
-import org.eclipse.rdf4j.repository.RepositoryResult;
-import org.eclipse.rdf4j.rio.RDFHandlerException;
-import org.eclipse.rdf4j.rio.helpers.StatementCollector;
 
 import java.io.Closeable;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 
 /**
  * Implements the Jena Graph interface for AllegroGraph.
+ * <p>
+ * Added and deleted triples are collected in the {@link AGStatementBuffer}
+ * of the graph maker and sent when Jena has finished the operation, so
+ * bulk adds and deletes such as <code>Model.add(List)</code> or
+ * <code>Model.remove(Model)</code> make a single request. Inside a
+ * transaction of the {@link AGTransactionHandler} they are held until
+ * the commit or the next read through the graph.
  */
 public class AGGraph extends GraphBase implements Graph, Closeable {
 
@@ -120,10 +129,22 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
         return contexts;
     }
 
+    /**
+     * @return the connection of this graph, after sending buffered adds and deletes
+     */
     AGRepositoryConnection getConnection() {
+        flushPendingWrites();
         return conn;
     }
 
+    /**
+     * Sends the adds and deletes buffered by the graphs of this graph's
+     * maker, so that they are seen by the following requests.
+     */
+    void flushPendingWrites() {
+        maker.getStatementBuffer().flush();
+    }
+
     String getEntailmentRegime() {
         return entailmentRegime;
     }
@@ -146,6 +167,20 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
         return new AGTransactionHandler(this);
     }
 
+    @Override
+    public GraphEventManager getEventManager() {
+        if (gem == null) {
+            gem = new AGEventManager();
+        }
+        return gem;
+    }
+
+    @Override
+    public void close() {
+        flushPendingWrites();
+        super.close();
+    }
+
     /*@Override
     public String toString() {
         if (graphNode == null)
@@ -185,51 +220,80 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
      *
      *================*/
 
+    /**
+     * Returns the triples matching <code>m</code>, parsed one at a time
+     * from the response as the iterator is advanced.
+     * <p>
+     * The HTTP connection is held until the iterator is exhausted or
+     * closed, so close iterators that are not read to the end.
+     */
     @Override
     protected ExtendedIterator<Triple> graphBaseFind(Triple m) {
-        RepositoryResult<Statement> result;
+        return find(m, -1);
+    }
+
+    /**
+     * Asks the server for one matching triple at most, rather than
+     * streaming every match only to look at the first. That response
+     * is read to the end, so the HTTP connection can be reused.
+     */
+    @Override
+    protected boolean graphBaseContains(Triple t) {
+        return !find(t, 1).toList().isEmpty();
+    }
+
+    /**
+     * @param m     the pattern to match
+     * @param limit the maximum number of triples, or a negative value for all of them
+     * @return an iterator over the matching triples
+     */
+    private ExtendedIterator<Triple> find(Triple m, int limit) {
+        flushPendingWrites();
+        // TODO: allow arbitrary values in subject and predicate positions?
+        Node s = m.getMatchSubject();
+        Node p = m.getMatchPredicate();
+        Node o = m.getMatchObject();
+        // quickly return no results if RDF constraints for subject and predicate
+        // are violated, as occurs in the Jena test suite for Graph.
+        if ((s != null && s.isLiteral())
+                || (p != null && (p.isLiteral() || p.isBlank()))) {
+            return NiceIterator.emptyIterator();
+        }
+        AGHttpRepoClient client = conn.prepareHttpRepoClient();
+        AGRDFStreamer streamer = AGRDFStreamer.createStreamer(
+                AGRDFStreamer.getStreamingFormat(client.getPreferredRDFFormat()), vf);
         try {
-            // TODO: allow arbitrary values in subject and predicate positions?
-            Node s = m.getMatchSubject();
-            Node p = m.getMatchPredicate();
-            Node o = m.getMatchObject();
-            // quickly return no results if RDF constraints for subject and predicate
-            // are violated, as occurs in the Jena test suite for Graph.
-            if ((s != null && s.isLiteral())
-                    || (p != null && (p.isLiteral() || p.isBlank()))) {
-                result = conn.createRepositoryResult(new ArrayList<Statement>());
-            } else {
-                StatementCollector collector = new StatementCollector();
-                conn.prepareHttpRepoClient().getStatements(
-                        vf.asResource(s), vf.asURI(p), vf.asValue(o),
-                        entailmentRegime, collector, contexts);
-                result = conn.createRepositoryResult(collector.getStatements());
-            }
-        } catch (AGHttpException | RDFHandlerException e) {
+            client.getStatements(vf.asResource(s), vf.asURI(p), vf.asValue(o),
+                    entailmentRegime, limit, streamer, contexts);
+        } catch (AGHttpException e) {
             throw new RuntimeException(e);
         }
-        return new AGTripleIterator(this, result);
+        return new AGTripleIteratorStreamer(this, streamer);
     }
 
     @Override
     public void performAdd(Triple t) {
-        try {
-            AGRepositoryConnection conn = maker.getRepositoryConnection();
-            AGValueFactory vf = conn.getValueFactory();
-            conn.add(vf.asResource(t.getSubject()), vf.asURI(t.getPredicate()),
-                    vf.asValue(t.getObject()), context);
-        } catch (UnauthorizedException e) {
-            throw new AddDeniedException(e.getMessage());
-        } catch (RepositoryException e) {
-            throw new RuntimeException(e);
-        }
+        AGValueFactory vf = maker.getRepositoryConnection().getValueFactory();
+        maker.getStatementBuffer().add(vf.createStatement(vf.asResource(t.getSubject()),
+                vf.asURI(t.getPredicate()), vf.asValue(t.getObject()), context));
     }
 
     @Override
     public void performDelete(Triple t) {
+        Resource s = vf.asResource(t.getSubject());
+        IRI p = vf.asURI(t.getPredicate());
+        Value o = vf.asValue(t.getObject());
+        // No contexts means all graphs, which a buffered statement cannot
+        // express; an inferred graph deletes through its own connection.
+        if (contexts.length > 0 && conn == maker.getRepositoryConnection()) {
+            for (Resource c : contexts) {
+                maker.getStatementBuffer().delete(vf.createStatement(s, p, o, c));
+            }
+            return;
+        }
+        flushPendingWrites();
         try {
-            conn.remove(vf.asResource(t.getSubject()), vf.asURI(t
-                    .getPredicate()), vf.asValue(t.getObject()), contexts);
+            conn.remove(s, p, o, contexts);
         } catch (UnauthorizedException e) {
             throw new DeleteDeniedException(e.getMessage());
         } catch (RepositoryException e) {
@@ -237,10 +301,34 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
         }
     }
 
+    /**
+     * Deletes the triples of src from this graph, reading src once and
+     * sending the deletes in one request (or with the transaction).
+     * <p>
+     * Unlike {@link GraphUtil#deleteFrom(Graph, Graph)}, this never
+     * checks the triples of this graph one by one against src, which
+     * costs a request per triple when src is an AllegroGraph graph.
+     *
+     * @param src the graph whose triples are deleted
+     */
+    void deleteFrom(Graph src) {
+        checkOpen();
+        ExtendedIterator<Triple> it = GraphUtil.findAll(src);
+        try {
+            while (it.hasNext()) {
+                performDelete(it.next());
+            }
+        } finally {
+            it.close();
+        }
+        getEventManager().notifyDeleteGraph(this, src);
+    }
+
     @Override
     protected int graphBaseSize() {
         // TODO deal with graphs bigger than int's.
         int size;
+        flushPendingWrites();
         try {
             size = (int) conn.size(contexts);
         } catch (RepositoryException e) {
@@ -260,7 +348,7 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
     @Override
     public boolean isEmpty() {
         String queryString = "ask {?s ?p ?o}";
-        AGBooleanQuery bq = conn.prepareBooleanQuery(QueryLanguage.SPARQL, queryString);
+        AGBooleanQuery bq = getConnection().prepareBooleanQuery(QueryLanguage.SPARQL, queryString);
         bq.setDataset(getDataset());
         try {
             return !bq.evaluate();
@@ -277,7 +365,7 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
      */
     @Override
     public void clear() {
-        conn.remove((Resource) null, null, null);
+        getConnection().remove((Resource) null, null, null);
         this.getEventManager().notifyEvent(this, GraphEvents.removeAll);
     }
 
@@ -286,7 +374,91 @@ public class AGGraph extends GraphBase implements Graph, Closeable {
      */
     @Override
     public void remove(final Node s, final Node p, final Node o) {
-        conn.remove(vf.asResource(s), vf.asURI(p), vf.asValue(o));
+        getConnection().remove(vf.asResource(s), vf.asURI(p), vf.asValue(o));
         this.getEventManager().notifyEvent(this, GraphEvents.remove(s, p, o));
     }
+
+    /**
+     * Sends the buffered adds and deletes once Jena has finished an add
+     * or delete, unless a transaction is active, before telling the
+     * listeners of this graph.
+     */
+    private class AGEventManager extends SimpleEventManager {
+
+        private void flush() {
+            maker.getStatementBuffer().flushUnlessInTransaction();
+        }
+
+        @Override
+        public void notifyAddTriple(Graph g, Triple t) {
+            flush();
+            super.notifyAddTriple(g, t);
+        }
+
+        @Override
+        public void notifyAddArray(Graph g, Triple[] triples) {
+            flush();
+            super.notifyAddArray(g, triples);
+        }
+
+        @Override
+        public void notifyAddList(Graph g, List<Triple> triples) {
+            flush();
+            super.notifyAddList(g, triples);
+        }
+
+        @Override
+        public void notifyAddIterator(Graph g, List<Triple> triples) {
+            flush();
+            super.notifyAddIterator(g, triples);
+        }
+
+        @Override
+        public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+            flush();
+            super.notifyAddIterator(g, it);
+        }
+
+        @Override
+        public void notifyAddGraph(Graph g, Graph added) {
+            flush();
+            super.notifyAddGraph(g, added);
+        }
+
+        @Override
+        public void notifyDeleteTriple(Graph g, Triple t) {
+            flush();
+            super.notifyDeleteTriple(g, t);
+        }
+
+        @Override
+        public void notifyDeleteArray(Graph g, Triple[] triples) {
+            flush();
+            super.notifyDeleteArray(g, triples);
+        }
+
+        @Override
+        public void notifyDeleteList(Graph g, List<Triple> triples) {
+            flush();
+            super.notifyDeleteList(g, triples);
+        }
+
+        @Override
+        public void notifyDeleteIterator(Graph g, List<Triple> triples) {
+            flush();
+            super.notifyDeleteIterator(g, triples);
+        }
+
+        @Override
+        public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+            flush();
+            super.notifyDeleteIterator(g, it);
+        }
+
+        @Override
+        public void notifyDeleteGraph(Graph g, Graph removed) {
+            flush();
+            super.notifyDeleteGraph(g, removed);
+        }
+    }
 }
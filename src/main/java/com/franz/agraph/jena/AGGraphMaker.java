@@ -30,9 +30,11 @@ public class AGGraphMaker implements GraphMaker, Closeable {
     protected Map<String, AGGraph> created = CollectionFactory.createHashedMap();
     private AGRepositoryConnection conn;
     private AGGraph defaultGraph;
+    private final AGStatementBuffer statementBuffer;
 
     public AGGraphMaker(AGRepositoryConnection conn) {
         this.conn = conn;
+        this.statementBuffer = new AGStatementBuffer(conn);
         // It's common enough for Jena applications to use ResourceFactory to
         // create new blank nodes, so experimentally enable this by default
         conn.prepareHttpRepoClient().setAllowExternalBlankNodeIds(true);
@@ -42,8 +44,16 @@ public class AGGraphMaker implements GraphMaker, Closeable {
         return conn;
     }
 
+    /**
+     * @return the adds and deletes of this maker's graphs not yet sent to the server
+     */
+    AGStatementBuffer getStatementBuffer() {
+        return statementBuffer;
+    }
+
     @Override
     public void close() {
+        statementBuffer.flush();
     }
 
     @Override
@@ -172,6 +172,16 @@ public class AGModel extends ModelCom implements Model, Closeable {
         return this;
     }
 
+    /**
+     * Removes the statements of m from this model in one request,
+     * reading m once.
+     */
+    @Override
+    public AGModel remove(Model m) {
+        getGraph().deleteFrom(m.getGraph());
+        return this;
+    }
+
     @Override
     public AGStatement createStatement(Resource r, Property p, RDFNode o) {
         return new AGStatement(r, p, o, this);
@@ -4,12 +4,11 @@
 
 package com.franz.agraph.jena;
 
+import com.franz.agraph.http.AGNamespaceCache;
 import org.apache.jena.rdf.model.impl.Util;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.xerces.util.XMLChar;
-import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.repository.RepositoryException;
-import org.eclipse.rdf4j.repository.RepositoryResult;
 
 import java.util.HashMap;
 import java.util.Iterator;
@@ -43,19 +42,24 @@ public class AGPrefixMapping implements PrefixMapping {
         }
     }
 
+    /**
+     * Returns the namespaces of the connection, which are downloaded once
+     * and kept until changed through the connection or until they expire.
+     *
+     * @return the namespace cache of the connection of the graph
+     * @see AGNamespaceCache
+     */
+    AGNamespaceCache getNamespaceCache() {
+        return getGraph().getConnection().prepareHttpRepoClient().getNamespaceCache();
+    }
+
     @Override
     public Map<String, String> getNsPrefixMap() {
-        Map<String, String> map = new HashMap<>();
         try {
-            RepositoryResult<Namespace> result = getGraph().getConnection().getNamespaces();
-            while (result.hasNext()) {
-                Namespace ns = result.next();
-                map.put(ns.getPrefix(), ns.getName());
-            }
+            return new HashMap<>(getNamespaceCache().getNamespaces());
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
-        return map;
     }
 
     @Override
@@ -63,7 +67,7 @@ public class AGPrefixMapping implements PrefixMapping {
         String uri = null;
         try {
             if (prefix != null) {
-                uri = getGraph().getConnection().getNamespace(prefix);
+                uri = getNamespaceCache().getNamespace(prefix);
             }
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
@@ -73,20 +77,11 @@ public class AGPrefixMapping implements PrefixMapping {
 
     @Override
     public String getNsURIPrefix(String uri) {
-        // TODO speed this up!
-        String prefix = null;
         try {
-            RepositoryResult<Namespace> result = getGraph().getConnection().getNamespaces();
-            while (prefix == null && result.hasNext()) {
-                Namespace ns = result.next();
-                if (uri.equalsIgnoreCase(ns.getName())) {
-                    prefix = ns.getPrefix();
-                }
-            }
+            return getNamespaceCache().getPrefix(uri);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
-        return prefix;
     }
 
     @Override
@@ -97,7 +92,7 @@ public class AGPrefixMapping implements PrefixMapping {
 
     @Override
     public boolean hasNoMappings() {
-        return getNsPrefixMap().isEmpty();
+        return numPrefixes() == 0;
     }
 
     @Override
@@ -179,8 +174,12 @@ public class AGPrefixMapping implements PrefixMapping {
 
     @Override
     public String shortForm(String uri) {
-        // TODO speed this up
-        Map<String, String> map = getNsPrefixMap();
+        Map<String, String> map;
+        try {
+            map = getNamespaceCache().getNamespaces();
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
         for (Entry<String, String> s : map.entrySet()) {
             if (uri.startsWith(s.getValue())) {
                 return s.getKey() + ":" + uri.substring(s.getValue().length());
@@ -191,7 +190,11 @@ public class AGPrefixMapping implements PrefixMapping {
 
     @Override
     public int numPrefixes() {
-        return getNsPrefixMap().size();
+        try {
+            return getNamespaceCache().getNamespaces().size();
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -0,0 +1,53 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.jena;
+
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+import java.io.Closeable;
+
+/**
+ * A utility class for iterating over Jena Quads, converted from the
+ * statements of a graph query result as they are read.
+ */
+public class AGQuadIteratorGQ extends NiceIterator<Quad>
+        implements Closeable {
+
+    private final GraphQueryResult result;
+
+    AGQuadIteratorGQ(GraphQueryResult result) {
+        this.result = result;
+    }
+
+    @Override
+    public void close() {
+        try {
+            result.close();
+        } catch (QueryEvaluationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return result.hasNext();
+        } catch (QueryEvaluationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Quad next() {
+        try {
+            return AGNodeFactory.asQuad(result.next());
+        } catch (QueryEvaluationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
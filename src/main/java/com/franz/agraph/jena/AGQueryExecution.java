@@ -19,6 +19,8 @@ import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.util.Context;
@@ -28,11 +30,10 @@ import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.QueryResult;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.UpdateExecutionException;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
 
 import java.io.Closeable;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -47,10 +48,13 @@ public class AGQueryExecution implements QueryExecution, Closeable {
     private QuerySolution binding;
     private boolean closed = false;
     // When we close this execution object, we must also close
-    // the result object, but only for select queries. Ask and describe
-    // results are read completely into models and remain valid after
-    // close, as described in javadoc for QueryExecution#close()
+    // the result object, but only for select queries and the iterators
+    // of construct and describe queries. Ask results and the models of
+    // construct and describe queries are read completely and remain valid
+    // after close, as described in javadoc for QueryExecution#close()
     private QueryResult<?> resultToClose;
+    // The query evaluated last, which abort() cancels.
+    private volatile com.franz.agraph.repository.AGQuery evaluating;
 
     public AGQueryExecution(AGQuery query, AGModel model) {
         this.query = query;
@@ -58,9 +62,35 @@ public class AGQueryExecution implements QueryExecution, Closeable {
     }
 
 
+    /**
+     * Asks the server to stop the query being evaluated by this execution.
+     * <p>
+     * May be called from another thread, while a result is being read.
+     * The evaluation then fails, or its result ends early; the execution
+     * still has to be closed.
+     * </p>
+     * <p>
+     * Cancellation is off by default, since not all servers support it:
+     * unless the query is
+     * {@link com.franz.agraph.repository.AGQuery#setCancellable(boolean) cancellable},
+     * for example because it was prepared after
+     * {@link com.franz.agraph.repository.AGRepositoryConnection#setCancelQueries(boolean)},
+     * this method does nothing but log at debug level, and the query runs
+     * to completion on the server.
+     * </p>
+     *
+     * @see com.franz.agraph.repository.AGQuery#cancel()
+     */
     @Override
     public void abort() {
-        throw new UnsupportedOperationException(AGUnsupportedOperation.message);
+        final com.franz.agraph.repository.AGQuery q = evaluating;
+        if (q != null) {
+            try {
+                q.cancel();
+            } catch (QueryEvaluationException e) {
+                // The evaluation has finished already.
+            }
+        }
     }
 
     @Override
@@ -85,6 +115,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
             throw new UnsupportedOperationException(query.getLanguage().getName() + " language does not support ASK queries.");
         }
         AGBooleanQuery bq = model.getGraph().getConnection().prepareBooleanQuery(query.getLanguage(), query.getQueryString());
+        evaluating = bq;
         bq.setIncludeInferred(model.getGraph() instanceof AGInfGraph);
         bq.setEntailmentRegime(model.getGraph().getEntailmentRegime());
         bq.setCheckVariables(query.isCheckVariables());
@@ -99,7 +130,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         try {
             bq.setDataset(model.getGraph().getDataset());
             if (timeout > 0) {
-                bq.setMaxExecutionTime((int) (timeout / 1000));
+                bq.setMaxExecutionTime(timeoutSeconds());
             }
             result = bq.evaluate();
         } catch (QueryEvaluationException e) {
@@ -113,11 +144,12 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         return execConstruct(null);
     }
 
-    private GraphQueryResult getConstructResult() {
+    private AGGraphQuery prepareConstructQuery() {
         if (query.getLanguage() != QueryLanguage.SPARQL) {
             throw new UnsupportedOperationException(query.getLanguage().getName() + " language does not support CONSTRUCT queries.");
         }
         AGGraphQuery gq = model.getGraph().getConnection().prepareGraphQuery(query.getLanguage(), query.getQueryString());
+        evaluating = gq;
         gq.setIncludeInferred(model.getGraph() instanceof AGInfGraph);
         gq.setEntailmentRegime(model.getGraph().getEntailmentRegime());
         gq.setCheckVariables(query.isCheckVariables());
@@ -130,34 +162,74 @@ public class AGQueryExecution implements QueryExecution, Closeable {
                 gq.setBinding(var, model.getGraph().vf.asValue(binding.get(var).asNode()));
             }
         }
+        gq.setDataset(model.getGraph().getDataset());
+        if (timeout > 0) {
+            gq.setMaxExecutionTime(timeoutSeconds());
+        }
+        return gq;
+    }
+
+    private GraphQueryResult getConstructResult() {
         GraphQueryResult result;
         try {
-            gq.setDataset(model.getGraph().getDataset());
-            if (timeout > 0) {
-                gq.setMaxExecutionTime((int) (timeout / 1000));
-            }
-            result = gq.evaluate();
+            // Streamed whatever the streamResults setting of the connection,
+            // since the iterators are lazy.
+            result = prepareConstructQuery().evaluateStreaming();
         } catch (QueryEvaluationException e) {
             throw new QueryException(e);
         }
+        resultToClose = result;
         return result;
     }
 
     @Override
     public Model execConstruct(Model m) {
-        GraphQueryResult result = getConstructResult();
-        if (m == null) {
-            m = ModelFactory.createDefaultModel();
-        }
-        try {
-            m.setNsPrefixes(result.getNamespaces());
-            while (result.hasNext()) {
-                m.add(model.asStatement(AGNodeFactory.asTriple(result.next())));
+        final Model target = m == null ? ModelFactory.createDefaultModel() : m;
+        execConstructStream(new StreamRDFBase() {
+            @Override
+            public void triple(Triple triple) {
+                target.getGraph().add(triple);
             }
-        } catch (QueryEvaluationException e) {
+
+            @Override
+            public void quad(Quad quad) {
+                target.getGraph().add(quad.asTriple());
+            }
+
+            @Override
+            public void prefix(String prefix, String iri) {
+                target.setNsPrefix(prefix, iri);
+            }
+        });
+        return target;
+    }
+
+    /**
+     * Executes a CONSTRUCT query, sending each statement of the result
+     * to the sink while the response is parsed, so that no statements
+     * are kept in memory by this execution.
+     * <p>
+     * Statements of the default graph are sent as Triples, and statements
+     * of named graphs as Quads.
+     * </p>
+     *
+     * @param sink receives the prefixes and statements of the result
+     */
+    public void execConstructStream(StreamRDF sink) {
+        try {
+            prepareConstructQuery().evaluate(new AGStreamRDFHandler(sink));
+        } catch (QueryEvaluationException | RDFHandlerException e) {
             throw new QueryException(e);
         }
-        return m;
+    }
+
+    /**
+     * Executes a DESCRIBE query the same way as {@link #execConstructStream(StreamRDF)}.
+     *
+     * @param sink receives the prefixes and statements of the result
+     */
+    public void execDescribeStream(StreamRDF sink) {
+        execConstructStream(sink);
     }
 
     @Override
@@ -173,6 +245,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
     @Override
     public ResultSet execSelect() {
         AGTupleQuery tq = model.getGraph().getConnection().prepareTupleQuery(query.getLanguage(), query.getQueryString());
+        evaluating = tq;
         tq.setIncludeInferred(model.getGraph() instanceof AGInfGraph);
         tq.setEntailmentRegime(model.getGraph().getEntailmentRegime());
         tq.setCheckVariables(query.isCheckVariables());
@@ -189,7 +262,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         try {
             tq.setDataset(model.getGraph().getDataset());
             if (timeout > 0) {
-                tq.setMaxExecutionTime((int) (timeout / 1000));
+                tq.setMaxExecutionTime(timeoutSeconds());
             }
             result = tq.evaluate();
         } catch (QueryEvaluationException e) {
@@ -207,6 +280,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
      */
     public void execUpdate() {
         AGUpdate u = model.getGraph().getConnection().prepareUpdate(query.getLanguage(), query.getQueryString());
+        evaluating = u;
         u.setIncludeInferred(model.getGraph() instanceof AGInfGraph);
         u.setEntailmentRegime(model.getGraph().getEntailmentRegime());
         u.setCheckVariables(query.isCheckVariables());
@@ -222,7 +296,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         try {
             u.setDataset(model.getGraph().getDataset());
             if (timeout > 0) {
-                u.setMaxExecutionTime((int) (timeout / 1000));
+                u.setMaxExecutionTime(timeoutSeconds());
             }
             u.execute();
         } catch (UpdateExecutionException e) {
@@ -232,6 +306,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
 
     public long countSelect() {
         AGTupleQuery tq = model.getGraph().getConnection().prepareTupleQuery(query.getLanguage(), query.getQueryString());
+        evaluating = tq;
         tq.setIncludeInferred(model.getGraph() instanceof AGInfGraph);
         tq.setEntailmentRegime(model.getGraph().getEntailmentRegime());
         tq.setCheckVariables(query.isCheckVariables());
@@ -259,6 +334,7 @@ public class AGQueryExecution implements QueryExecution, Closeable {
             throw new UnsupportedOperationException(query.getLanguage().getName() + " language does not support CONSTRUCT queries.");
         }
         AGGraphQuery gq = model.getGraph().getConnection().prepareGraphQuery(query.getLanguage(), query.getQueryString());
+        evaluating = gq;
         gq.setIncludeInferred(model.getGraph() instanceof AGInfGraph);
         gq.setEntailmentRegime(model.getGraph().getEntailmentRegime());
         gq.setCheckVariables(query.isCheckVariables());
@@ -296,18 +372,17 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         this.binding = binding;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Triples are read from the response as the iterator is advanced.
+     * The iterator must be exhausted or closed, or this execution closed,
+     * to release the connection.
+     * </p>
+     */
     @Override
     public Iterator<Triple> execConstructTriples() {
-        try (GraphQueryResult result = getConstructResult()) {
-            List<Triple> tripleArrayList = new ArrayList<>();
-            while (result.hasNext()) {
-                tripleArrayList.add(AGNodeFactory.asTriple(result.next()));
-            }
-            //Getting Iterator from List
-            return tripleArrayList.iterator();
-        } catch (QueryEvaluationException e) {
-            throw new QueryException(e);
-        }
+        return new AGTripleIteratorGQ(model.getGraph(), getConstructResult());
     }
 
     @Override
@@ -345,6 +420,12 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         this.timeout = asMillis(timeout1, timeUnit1);
     }
 
+    // The server takes whole seconds, round up so that a timeout
+    // shorter than a second is not taken as no timeout.
+    private int timeoutSeconds() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(timeout + 999);
+    }
+
     private long asMillis(long duration, TimeUnit timeUnit) {
         return (duration < 0) ? duration : timeUnit.toMillis(duration);
     }
@@ -360,18 +441,17 @@ public class AGQueryExecution implements QueryExecution, Closeable {
         return 0;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Quads are read from the response as the iterator is advanced.
+     * The iterator must be exhausted or closed, or this execution closed,
+     * to release the connection.
+     * </p>
+     */
     @Override
     public Iterator<Quad> execConstructQuads() {
-        try (GraphQueryResult result = getConstructResult()) {
-            List<Quad> quadArrayList = new ArrayList<>();
-            while (result.hasNext()) {
-                quadArrayList.add(AGNodeFactory.asQuad(result.next()));
-            }
-            //Getting Iterator from List
-            return quadArrayList.iterator();
-        } catch (QueryEvaluationException e) {
-            throw new QueryException(e);
-        }
+        return new AGQuadIteratorGQ(getConstructResult());
     }
 
     @Override
@@ -0,0 +1,161 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.jena;
+
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.shared.DeleteDeniedException;
+import org.eclipse.rdf4j.http.protocol.UnauthorizedException;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the statements added to or deleted from the graphs of an
+ * {@link AGGraphMaker}, so that they reach the server in one streaming
+ * request rather than one request per triple.
+ * <p>
+ * Outside of a transaction the buffer is sent at the end of each Jena
+ * add or delete, so a bulk operation such as
+ * {@link org.apache.jena.graph.GraphUtil#add(org.apache.jena.graph.Graph, java.util.List)}
+ * makes a single request. Inside a transaction begun through
+ * {@link AGTransactionHandler} it is sent before the commit, before any
+ * read through the graphs of the maker, or when it holds
+ * {@link AGRepositoryConnection#getAddStatementBufferMaxSize()} statements.
+ * <p>
+ * Adding a statement cancels a pending delete of the same statement and
+ * the other way round, so only the last change of each statement is
+ * kept and deletes can be sent before adds.
+ */
+final class AGStatementBuffer {
+
+    private final AGRepositoryConnection conn;
+    // Keyed by subject, predicate, object and context, which
+    // Statement.equals does not compare.
+    private final Map<List<Value>, Statement> adds = new LinkedHashMap<>();
+    private final Map<List<Value>, Statement> deletes = new LinkedHashMap<>();
+    private boolean inTransaction;
+
+    AGStatementBuffer(AGRepositoryConnection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * @param st the statement to add, in its context (null meaning the default graph)
+     */
+    void add(Statement st) {
+        List<Value> key = key(st);
+        deletes.remove(key);
+        adds.put(key, st);
+        flushIfFull();
+    }
+
+    /**
+     * @param st the statement to delete, from its context (null meaning the default graph)
+     */
+    void delete(Statement st) {
+        List<Value> key = key(st);
+        adds.remove(key);
+        deletes.put(key, st);
+        flushIfFull();
+    }
+
+    private static List<Value> key(Statement st) {
+        return Arrays.asList(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+    }
+
+    private void flushIfFull() {
+        if (size() >= conn.getAddStatementBufferMaxSize()) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the pending statements to the server, in at most one request
+     * for deletes and one for adds. Each set is dropped once its request
+     * has been made, even if it failed; if the deletes fail, the adds are
+     * not sent and stay pending.
+     */
+    void flush() {
+        try {
+            if (!deletes.isEmpty()) {
+                try {
+                    conn.remove(deletes.values());
+                } catch (UnauthorizedException e) {
+                    throw new DeleteDeniedException(e.getMessage());
+                } finally {
+                    deletes.clear();
+                }
+            }
+            if (!adds.isEmpty()) {
+                try {
+                    conn.add(adds.values());
+                } catch (UnauthorizedException e) {
+                    throw new AddDeniedException(e.getMessage());
+                } finally {
+                    adds.clear();
+                }
+            }
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sends the pending statements unless a transaction is active,
+     * called when Jena has finished an add or delete.
+     */
+    void flushUnlessInTransaction() {
+        if (!inTransaction) {
+            flush();
+        }
+    }
+
+    /**
+     * Starts holding statements until {@link #commit()}.
+     */
+    void begin() {
+        flush();
+        inTransaction = true;
+    }
+
+    /**
+     * Sends the pending statements, so that they are part of the commit.
+     */
+    void commit() {
+        flush();
+        inTransaction = false;
+    }
+
+    /**
+     * Drops the pending statements, which would be rolled back anyway.
+     */
+    void rollback() {
+        deletes.clear();
+        adds.clear();
+        inTransaction = false;
+    }
+
+    /**
+     * @return the number of pending statements
+     */
+    int size() {
+        return adds.size() + deletes.size();
+    }
+
+    @Override
+    public String toString() {
+        return "{" + getClass().getSimpleName()
+                + " adds=" + adds.size()
+                + " deletes=" + deletes.size()
+                + " inTransaction=" + inTransaction
+                + "}";
+    }
+}
@@ -0,0 +1,49 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.jena;
+
+import org.apache.jena.riot.system.StreamRDF;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+/**
+ * Passes the statements of a graph query result to a Jena
+ * {@link StreamRDF} while the response is parsed, as Triples for the
+ * default graph and as Quads for named graphs.
+ *
+ * @see AGQueryExecution#execConstructStream(StreamRDF)
+ */
+final class AGStreamRDFHandler extends AbstractRDFHandler {
+
+    private final StreamRDF sink;
+
+    AGStreamRDFHandler(StreamRDF sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void startRDF() {
+        sink.start();
+    }
+
+    @Override
+    public void endRDF() {
+        sink.finish();
+    }
+
+    @Override
+    public void handleNamespace(String prefix, String uri) {
+        sink.prefix(prefix, uri);
+    }
+
+    @Override
+    public void handleStatement(Statement st) {
+        if (st.getContext() == null) {
+            sink.triple(AGNodeFactory.asTriple(st));
+        } else {
+            sink.quad(AGNodeFactory.asQuad(st));
+        }
+    }
+}
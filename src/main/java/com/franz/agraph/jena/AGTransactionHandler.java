@@ -11,6 +11,10 @@ import org.eclipse.rdf4j.repository.RepositoryException;
 
 /**
  * Implements the Jena TransactionHandler interface for AllegroGraph.
+ * <p>
+ * Within a transaction, triples added to or deleted from the graphs of
+ * the graph maker are buffered and sent in one request on commit (or
+ * earlier, before a read through one of those graphs).
  */
 public class AGTransactionHandler extends TransactionHandlerBase {
 
@@ -23,6 +27,7 @@ public class AGTransactionHandler extends TransactionHandlerBase {
     @Override
     public void abort() {
         try {
+            graph.getGraphMaker().getStatementBuffer().rollback();
             graph.getConnection().rollback();
             // end the transaction, return to autocommit mode
             graph.getConnection().setAutoCommit(true);
@@ -37,6 +42,7 @@ public class AGTransactionHandler extends TransactionHandlerBase {
         // TODO address multiple transactions on a graph
         try {
             graph.getConnection().setAutoCommit(false);
+            graph.getGraphMaker().getStatementBuffer().begin();
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
@@ -45,6 +51,7 @@ public class AGTransactionHandler extends TransactionHandlerBase {
     @Override
     public void commit() {
         try {
+            graph.getGraphMaker().getStatementBuffer().commit();
             graph.getConnection().commit();
             // end the transaction, return to autocommit mode
             graph.getConnection().setAutoCommit(true);
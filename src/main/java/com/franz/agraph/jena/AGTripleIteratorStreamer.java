@@ -0,0 +1,94 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.jena;
+
+import com.franz.agraph.http.handler.AGRDFStreamer;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+import java.io.Closeable;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over Jena Triples parsed one at a time from the response
+ * of a statements request, as returned by {@link AGGraph#find(Triple)}.
+ * <p>
+ * The HTTP connection is released when the iterator is exhausted or
+ * closed. Closing it before the end aborts the request, so that the
+ * rest of the response is not read just to be discarded.
+ * </p>
+ */
+public class AGTripleIteratorStreamer extends NiceIterator<Triple> implements Closeable {
+
+    private final AGGraph graph;
+    private final AGRDFStreamer streamer;
+    private final GraphQueryResult result;
+    private Triple current = null;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    AGTripleIteratorStreamer(AGGraph graph, AGRDFStreamer streamer) {
+        this.graph = graph;
+        this.streamer = streamer;
+        this.result = streamer.getResult();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (!exhausted) {
+                streamer.abort();
+            }
+            try {
+                result.close();
+            } catch (QueryEvaluationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (result.hasNext()) {
+                return true;
+            }
+        } catch (QueryEvaluationException e) {
+            close();
+            throw new RuntimeException(e);
+        }
+        exhausted = true;
+        close();
+        return false;
+    }
+
+    @Override
+    public Triple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            current = AGNodeFactory.asTriple(result.next());
+        } catch (QueryEvaluationException e) {
+            close();
+            throw new RuntimeException(e);
+        }
+        return current;
+    }
+
+    @Override
+    public void remove() {
+        if (current != null) {
+            graph.delete(current);
+            current = null;
+        }
+    }
+}
@@ -26,52 +26,117 @@ import java.net.ConnectException;
  * to the commons-pool factory interface,
  * leaving creation of the connection (and configuration)
  * to a subclass, defined by users of this library.
+ * <p>
+ * All connections created by a factory share one {@link AGServer}
+ * (and so one HTTP client, connection pool and executor), catalog
+ * and {@link AGRepository}. These objects are created, and the
+ * repository created on the server if needed, with the first
+ * connection; each further connection only has its own session
+ * state. They are closed once the factory has been closed and
+ * the last connection has been destroyed.</p>
  *
  * @since v4.3.3
  */
 public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnection>
-        implements PooledObjectFactory<AGRepositoryConnection> {
+        implements PooledObjectFactory<AGRepositoryConnection>, AutoCloseable {
 
     private final static Logger log = LoggerFactory.getLogger(AGConnFactory.class);
 
     private final AGConnConfig props;
 
+    // Shared by all connections, guarded by this.
+    private AGServer server;
+    private AGRepository repo;
+    private int liveConnections;
+    private boolean closed;
+
     public AGConnFactory(AGConnConfig props) {
         this.props = props;
     }
 
-    @Override
-    public AGRepositoryConnection create() throws Exception {
-        final HttpConnectionManagerParams params = new HttpConnectionManagerParams();
-        if (props.httpSocketTimeout != null) {
-            params.setSoTimeout(props.httpSocketTimeout);
+    /**
+     * Returns the repository shared by the connections,
+     * creating it on first use.
+     */
+    private synchronized AGRepository getRepository() throws RepositoryException {
+        if (closed) {
+            throw new IllegalStateException("Connection factory is closed");
         }
-        AGHTTPClient httpClient = new AGHTTPClient(props.serverUrl, params);
-        final AGServer server = new AGServer(props.username, props.password, httpClient);
-        final AGCatalog catalog;
-        if (props.catalog != null) {
-            catalog = server.getCatalog(props.catalog);
-        } else {
-            catalog = server.getRootCatalog();
+        if (repo == null) {
+            final HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+            if (props.httpSocketTimeout != null) {
+                params.setSoTimeout(props.httpSocketTimeout);
+            }
+            AGHTTPClient httpClient = new AGHTTPClient(props.serverUrl, params);
+            final AGServer newServer = new AGServer(props.username, props.password, httpClient);
+            try {
+                final AGCatalog catalog;
+                if (props.catalog != null) {
+                    catalog = newServer.getCatalog(props.catalog);
+                } else {
+                    catalog = newServer.getRootCatalog();
+                }
+                final AGRepository newRepo;
+                if (!catalog.hasRepository(props.repository)) {
+                    newRepo = catalog.createRepository(props.repository, false);
+                } else {
+                    // Create directly to skip a redundant check
+                    newRepo = new AGRepository(catalog, props.repository);
+                    newRepo.initialize();
+                }
+                repo = newRepo;
+            } catch (RuntimeException e) {
+                // Try again with the next connection.
+                newServer.close();
+                throw e;
+            }
+            server = newServer;
         }
+        liveConnections++;
+        return repo;
+    }
 
-        final AGRepository repo;
-        if (!catalog.hasRepository(props.repository)) {
-            // This avoids multiple connections sending create requests
-            // at the same time.
-            synchronized (this) {
-                repo = catalog.createRepository(props.repository, false);
-            }
-        } else {
-            // Create directly to skip a redundant check
-            repo = new AGRepository(catalog, props.repository);
-            repo.initialize();
+    /**
+     * Called when a connection created by this factory is gone.
+     */
+    private synchronized void releaseRepository() {
+        liveConnections--;
+        closeIfUnused();
+    }
+
+    private void closeIfUnused() {
+        if (closed && liveConnections == 0 && repo != null) {
+            repo.shutDown();
+            server.close();
+            repo = null;
+            server = null;
         }
-        AGRepositoryConnection conn = repo.getConnection();
-        if (props.sessionLifetime != null) {
-            conn.setSessionLifetime(props.sessionLifetime);
+    }
+
+    /**
+     * Closes the server and repository objects shared by the connections
+     * once all connections created by this factory have been destroyed.
+     * Called by {@link AGConnPool#close()}.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeIfUnused();
+    }
+
+    @Override
+    public AGRepositoryConnection create() throws Exception {
+        final AGRepository repository = getRepository();
+        try {
+            AGRepositoryConnection conn = repository.getConnection();
+            if (props.sessionLifetime != null) {
+                conn.setSessionLifetime(props.sessionLifetime);
+            }
+            return conn;
+        } catch (RuntimeException e) {
+            releaseRepository();
+            throw e;
         }
-        return conn;
     }
 
     @Override
@@ -83,9 +148,14 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
     public void activateObject(PooledObject<AGRepositoryConnection> pooled)
             throws RepositoryException {
         final AGRepositoryConnection conn = pooled.getObject();
-        // if autoCommit is false, then rollback to refresh this connection's view of the repository.
+        // if autoCommit is false, then rollback to refresh this connection's view of the repository,
+        // unless the transaction is unused and recent. The server rolls back when it receives
+        // the next request, which saves a round trip.
         if (!conn.isAutoCommit()) {
-            conn.rollback();
+            final AGHttpRepoClient client = conn.prepareHttpRepoClient();
+            if (client.needsRollback(props.maxTransactionAge)) {
+                client.rollbackBeforeNextRequest();
+            }
         }
 
         switch (props.session) {
@@ -126,23 +196,33 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
     // Setting TestWhileIdle to true (and associated PoolProps) will
     // trigger a rollback when the connection is not being used.
     //
-    // rollback() will always be called when a connection is borrowed
-    // from the pool.
+    // A transaction is always rolled back when a connection is borrowed
+    // from the pool, unless it is unused and younger than maxTransactionAge.
 
     /**
-     * Calls {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
+     * Pings the session of the connection, rolling back its transaction
+     * in the same request if autoCommit is false. Connections without
+     * a dedicated session are checked with
+     * {@link AGRepositoryConnection#size(org.eclipse.rdf4j.model.Resource...)}.
      */
     @Override
     public boolean validateObject(PooledObject<AGRepositoryConnection> pooled) {
         final AGRepositoryConnection conn = pooled.getObject();
         try {
-            // ping() only checks that the network is up, so we call size(),
-            // which ensures the repo exists.
-            AGHttpRepoClient client = conn.prepareHttpRepoClient();
-            // Have the server perform a rollback as part of the size request.
-            client.setSendRollbackHeader(true);
-            conn.size();
-            client.setSendRollbackHeader(false);
+            final AGHttpRepoClient client = conn.prepareHttpRepoClient();
+            if (client.isDedicatedSession()) {
+                // The session only exists as long as its repository does.
+                if (conn.isAutoCommit()) {
+                    client.ping();
+                } else {
+                    client.pingAndRollback();
+                }
+            } else {
+                // There is no session to ping, and no transaction to roll
+                // back. The server version would not tell that the repository
+                // was deleted; size() is the cheapest request that does.
+                conn.size();
+            }
             return true;
         } catch (Exception e) {
             log.debug("validateObject " + conn, e);
@@ -166,9 +246,8 @@ public class AGConnFactory extends BasePooledObjectFactory<AGRepositoryConnectio
             } else {
                 throw e;
             }
+        } finally {
+            releaseRepository();
         }
-        // Each pooled connection has dedicated server and repository objects.
-        conn.getRepository().shutDown();
-        conn.getServer().close();
     }
 }
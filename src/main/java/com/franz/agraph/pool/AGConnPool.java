@@ -93,6 +93,7 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
 
     private static final Logger log = LoggerFactory.getLogger(AGConnPool.class);
 
+    private final PooledObjectFactory<AGRepositoryConnection> factory;
     private final ObjectPool<AGRepositoryConnection> delegate;
     private final Thread shutdownHook;
 
@@ -101,6 +102,7 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
      */
     private AGConnPool(PooledObjectFactory<AGRepositoryConnection> factory,
                        AGPoolConfig poolConfig) {
+        this.factory = factory;
         delegate = new GenericObjectPool<>(factory, poolConfig);
 
         if (poolConfig.initialSize > 0) {
@@ -263,6 +265,11 @@ public class AGConnPool implements ObjectPool<AGRepositoryConnection>, AutoClose
             log.debug("close " + this);
         }
         delegate.close();
+        if (factory instanceof AGConnFactory) {
+            // Connections still borrowed keep the shared objects alive
+            // until they are returned.
+            ((AGConnFactory) factory).close();
+        }
         if (shutdownHook != null) {
             // It would be safe to close a pool multiple times,
             // but if we don't delete the hook it will keep a
@@ -4,6 +4,7 @@
 
 package com.franz.agraph.pool;
 
+import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.repository.AGCatalog;
 import com.franz.agraph.repository.AGRepositoryConnection;
 import com.franz.agraph.repository.AGServer;
@@ -66,7 +67,19 @@ public enum AGConnProp {
      * @see HttpMethodParams#SO_TIMEOUT
      * @since v4.4
      */
-    httpSocketTimeout;
+    httpSocketTimeout,
+
+    /**
+     * Milliseconds (default 0) for which a {@link Session#TX} connection
+     * that has made no request since its last commit or rollback is
+     * borrowed again without a rollback. Older or used transactions are
+     * rolled back by the server along with the first request made after
+     * the connection is borrowed, so a borrow never costs a round trip.
+     *
+     * @see AGHttpRepoClient#needsRollback(long)
+     * @see AGHttpRepoClient#rollbackBeforeNextRequest()
+     */
+    maxTransactionAge;
 
     /**
      * Property values for {@link AGConnProp#session}.
@@ -28,4 +28,12 @@ public interface AGAbstractRepository extends Repository, Closeable {
 
     AGServer getServer();
 
+    /**
+     * Gets the cache of query results used by the connections
+     * created from this repository.
+     *
+     * @return the cache, or null if query results are not cached
+     */
+    AGQueryResultCache getQueryResultCache();
+
 }
@@ -38,6 +38,14 @@ public class AGBooleanQuery extends AGQuery implements BooleanQuery {
      * Evaluates the query and returns a boolean result.
      */
     public boolean evaluate() throws QueryEvaluationException {
+        final AGQueryResultCache cache = httpCon.getQueryResultCacheForQuery();
+        if (cache != null) {
+            return cache.bool(this, httpCon.prepareHttpRepoClient().getRepositoryRoot(), this::evaluateUncached);
+        }
+        return evaluateUncached();
+    }
+
+    private boolean evaluateUncached() throws QueryEvaluationException {
         AGBQRHandler handler = new AGBQRHandler();
         evaluate(handler);
         return handler.getResult();
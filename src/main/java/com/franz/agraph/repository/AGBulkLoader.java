@@ -0,0 +1,453 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGStatementsRequestEntity;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.eclipse.rdf4j.OpenRDFUtil;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads statements with several upload requests in flight, so that
+ * encoding batches on the client overlaps with their indexing on
+ * the server.
+ * <p>
+ * Statements may be added from any number of threads. They are collected
+ * into batches of {@link BulkLoadConfig#getBatchSize() batchSize} statements;
+ * each full batch is encoded and uploaded by a worker thread while the
+ * producers go on filling the next one. The requests share the HTTP
+ * connection manager of the {@link AGRepositoryConnection} the loader
+ * was created from.
+ * </p>
+ * <p>
+ * Producers block when {@link BulkLoadConfig#getMaxInFlightRequests() maxInFlightRequests}
+ * batches are already being processed, or when the encoded batches not yet
+ * acknowledged by the server take more than
+ * {@link BulkLoadConfig#getMaxInFlightBytes() maxInFlightBytes}, so a fast
+ * producer can not exhaust the memory of the client.
+ * </p>
+ * <p>
+ * Each add method returns a future that completes when the batch holding
+ * the statements has been stored by the server, or fails with a
+ * {@link RepositoryException}. {@link #close()} uploads the last partial
+ * batch, waits for all requests and throws the first failure.
+ * </p>
+ * <p>
+ * With an autocommit connection each request is committed on its own
+ * (or every {@link BulkLoadConfig#getCommitPeriod() commitPeriod} statements).
+ * In a dedicated session, the server processes the requests of the session
+ * one at a time and they become visible when the session commits; encoding
+ * still overlaps with the upload of the previous batch.
+ * </p>
+ * <pre>{@code
+ * try (AGBulkLoader loader = conn.createBulkLoader(BulkLoadConfig.create().batchSize(50000))) {
+ *     for (Statement st : source) {
+ *         loader.add(st);
+ *     }
+ * }
+ * }</pre>
+ *
+ * @see AGRepositoryConnection#createBulkLoader(BulkLoadConfig)
+ */
+public class AGBulkLoader implements AutoCloseable {
+
+    private static final AtomicInteger loaderCount = new AtomicInteger();
+
+    private final AGHttpRepoClient client;
+    private final AGValueFactory vf;
+    private final BulkLoadConfig config;
+    private final int commitPeriod;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+
+    // Held by each batch from submission until its request completes.
+    private final Semaphore requestPermits;
+    private final Object bytesLock = new Object();
+    private long inFlightBytes = 0;
+
+    private final Object batchLock = new Object();
+    private List<Statement> batch;
+    private CompletableFuture<Integer> batchFuture;
+
+    private final Set<CompletableFuture<Integer>> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final AtomicLong statementsLoaded = new AtomicLong();
+    private final AtomicLong requestsCompleted = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Use {@link AGRepositoryConnection#createBulkLoader(BulkLoadConfig)}.
+     *
+     * @param conn   the connection whose session and HTTP client are used
+     * @param config the loader settings
+     */
+    AGBulkLoader(AGRepositoryConnection conn, BulkLoadConfig config) {
+        this.client = conn.prepareHttpRepoClient();
+        this.vf = conn.getValueFactory();
+        this.config = config;
+        this.commitPeriod = config.getCommitPeriod() < 0
+                ? client.getUploadCommitPeriod() : config.getCommitPeriod();
+        if (config.getExecutor() != null) {
+            this.executor = config.getExecutor();
+            this.ownExecutor = false;
+        } else {
+            final int id = loaderCount.incrementAndGet();
+            final AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(config.getMaxInFlightRequests(), runnable -> {
+                final Thread thread = new Thread(runnable,
+                        "agraph-bulk-loader-" + id + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ownExecutor = true;
+        }
+        this.requestPermits = new Semaphore(config.getMaxInFlightRequests());
+        newBatch();
+    }
+
+    /**
+     * @return the settings of this loader
+     */
+    public BulkLoadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Adds a statement.
+     *
+     * @param st       the statement
+     * @param contexts if not empty, the statement is added to each of these
+     *                 contexts instead of its own
+     * @return a future completed when the batch holding the statement is stored,
+     * or when all of them are if the copies for several contexts went into
+     * different batches
+     * @throws RepositoryException if the loader is closed or interrupted
+     */
+    public CompletableFuture<Integer> add(Statement st, Resource... contexts) throws RepositoryException {
+        OpenRDFUtil.verifyContextNotNull(contexts);
+        if (contexts.length == 0) {
+            return addOne(st);
+        }
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>(1);
+        for (Resource c : contexts) {
+            final CompletableFuture<Integer> future = addOne(c == null
+                    ? vf.createStatement(st.getSubject(), st.getPredicate(), st.getObject())
+                    : vf.createStatement(st.getSubject(), st.getPredicate(), st.getObject(), c));
+            if (futures.isEmpty() || futures.get(futures.size() - 1) != future) {
+                futures.add(future);
+            }
+        }
+        final CompletableFuture<Integer> last = futures.get(futures.size() - 1);
+        if (futures.size() == 1) {
+            return last;
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(v -> last.join());
+    }
+
+    /**
+     * Adds a statement.
+     *
+     * @param subject   the subject
+     * @param predicate the predicate
+     * @param object    the object
+     * @param contexts  the contexts to add the statement to, the default graph if empty
+     * @return a future completed when the batch holding the statement is stored
+     * @throws RepositoryException if the loader is closed or interrupted
+     */
+    public CompletableFuture<Integer> add(Resource subject, IRI predicate, Value object,
+                                          Resource... contexts) throws RepositoryException {
+        return add(vf.createStatement(subject, predicate, object), contexts);
+    }
+
+    /**
+     * Adds statements.
+     *
+     * @param statements the statements
+     * @param contexts   if not empty, the statements are added to each of these
+     *                   contexts instead of their own
+     * @return a future completed when all the batches holding the statements are stored
+     * @throws RepositoryException if the loader is closed or interrupted
+     */
+    public CompletableFuture<Void> add(Iterable<? extends Statement> statements,
+                                       Resource... contexts) throws RepositoryException {
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        CompletableFuture<Integer> last = null;
+        for (Statement st : statements) {
+            final CompletableFuture<Integer> future = add(st, contexts);
+            if (future != last) {
+                futures.add(future);
+                last = future;
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    private CompletableFuture<Integer> addOne(Statement st) throws RepositoryException {
+        // Fail in the producer rather than in the worker.
+        final boolean allowExternal = client.getAllowExternalBlankNodeIds();
+        AGHttpRepoClient.getStorableValue(st.getSubject(), vf, allowExternal);
+        AGHttpRepoClient.getStorableValue(st.getObject(), vf, allowExternal);
+        if (st.getContext() != null) {
+            AGHttpRepoClient.getStorableValue(st.getContext(), vf, allowExternal);
+        }
+        final List<Statement> full;
+        final CompletableFuture<Integer> future;
+        synchronized (batchLock) {
+            if (closed) {
+                throw new RepositoryException("Bulk loader is closed");
+            }
+            batch.add(st);
+            future = batchFuture;
+            if (batch.size() < config.getBatchSize()) {
+                return future;
+            }
+            full = batch;
+            pending.add(future);
+            newBatch();
+        }
+        submit(full, future);
+        return future;
+    }
+
+    // Called with batchLock held.
+    private void newBatch() {
+        batch = new ArrayList<>(Math.min(config.getBatchSize(), 100000));
+        batchFuture = new CompletableFuture<>();
+    }
+
+    /**
+     * Starts uploading the statements added so far, without waiting
+     * for a full batch.
+     *
+     * @return a future completed when all statements added so far are stored
+     * @throws RepositoryException if interrupted
+     */
+    public CompletableFuture<Void> flush() throws RepositoryException {
+        return flush(false);
+    }
+
+    /**
+     * Submits the current batch, if not empty.
+     *
+     * @param close whether to close the loader in the same step,
+     *              so no statement can be added after the last batch
+     * @return a future completed when all submitted batches are stored,
+     * or null if the loader was already closed
+     */
+    private CompletableFuture<Void> flush(boolean close) throws RepositoryException {
+        final List<Statement> partial;
+        final CompletableFuture<Integer> future;
+        synchronized (batchLock) {
+            if (close) {
+                if (closed) {
+                    return null;
+                }
+                closed = true;
+            }
+            partial = batch;
+            future = batchFuture;
+            if (!partial.isEmpty()) {
+                pending.add(future);
+            }
+            newBatch();
+        }
+        if (partial.isEmpty()) {
+            future.complete(0);
+        } else {
+            submit(partial, future);
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Waits while the in-flight limits are reached, then hands
+     * the batch to a worker. The future has been added to
+     * pending when the batch was taken.
+     */
+    private void submit(List<Statement> statements, CompletableFuture<Integer> future)
+            throws RepositoryException {
+        try {
+            requestPermits.acquire();
+            synchronized (bytesLock) {
+                // A request in flight always holds bytes, so this can not wait forever.
+                while (inFlightBytes >= config.getMaxInFlightBytes()) {
+                    bytesLock.wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(future);
+            future.completeExceptionally(e);
+            throw new RepositoryException("Interrupted while waiting to upload statements", e);
+        }
+        try {
+            executor.execute(() -> upload(statements, future));
+        } catch (RuntimeException e) {
+            requestPermits.release();
+            pending.remove(future);
+            future.completeExceptionally(e);
+            throw new RepositoryException("Could not start the upload of statements", e);
+        }
+    }
+
+    private void upload(List<Statement> statements, CompletableFuture<Integer> future) {
+        long bytes = 0;
+        try {
+            final AGStatementsRequestEntity rows = client.createStatementsEntity(out -> {
+                for (Statement st : statements) {
+                    out.write(st, (String) null);
+                }
+            }, true);
+            final EncodedBatch encoded = new EncodedBatch(statements.size() * 128, rows.getContentType());
+            rows.writeRequest(encoded);
+            bytes = encoded.size();
+            addInFlightBytes(bytes);
+            client.uploadStatements(encoded, commitPeriod);
+            statementsLoaded.addAndGet(statements.size());
+            future.complete(statements.size());
+        } catch (IOException | RuntimeException e) {
+            final RepositoryException failure = e instanceof RepositoryException
+                    ? (RepositoryException) e : new RepositoryException(e);
+            firstFailure.compareAndSet(null, failure);
+            future.completeExceptionally(failure);
+        } finally {
+            addInFlightBytes(-bytes);
+            requestsCompleted.incrementAndGet();
+            pending.remove(future);
+            requestPermits.release();
+        }
+    }
+
+    private void addInFlightBytes(long bytes) {
+        if (bytes != 0) {
+            synchronized (bytesLock) {
+                inFlightBytes += bytes;
+                bytesLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of statements stored by the server so far
+     */
+    public long getStatementsLoaded() {
+        return statementsLoaded.get();
+    }
+
+    /**
+     * @return the number of upload requests that have completed, successfully or not
+     */
+    public long getRequestsCompleted() {
+        return requestsCompleted.get();
+    }
+
+    /**
+     * @return the number of batches submitted and not yet completed
+     */
+    public int getRequestsInFlight() {
+        return pending.size();
+    }
+
+    /**
+     * @return the size of the encoded batches not yet acknowledged by the server
+     */
+    public long getInFlightBytes() {
+        synchronized (bytesLock) {
+            return inFlightBytes;
+        }
+    }
+
+    /**
+     * Uploads the remaining statements, waits for all requests
+     * to complete and releases the worker threads owned by the loader.
+     *
+     * @throws RepositoryException the first upload failure, if any
+     */
+    @Override
+    public void close() throws RepositoryException {
+        final CompletableFuture<Void> all;
+        try {
+            all = flush(true);
+        } catch (RepositoryException e) {
+            shutdownExecutor();
+            throw e;
+        }
+        if (all == null) {
+            // Closed already, or by another thread.
+            return;
+        }
+        try {
+            all.join();
+        } catch (CompletionException e) {
+            // Reported below.
+        } finally {
+            shutdownExecutor();
+        }
+        final Throwable failure = firstFailure.get();
+        if (failure != null) {
+            throw (RepositoryException) failure;
+        }
+    }
+
+    private void shutdownExecutor() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * An encoded batch, sent from the buffer it was encoded into.
+     */
+    private static final class EncodedBatch extends ByteArrayOutputStream implements RequestEntity {
+        private final String contentType;
+
+        EncodedBatch(int size, String contentType) {
+            super(size);
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            out.write(buf, 0, count);
+        }
+
+        @Override
+        public long getContentLength() {
+            return count;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.AGGzipRequestEntity;
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.exception.AGMalformedDataException;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.UnsupportedRDFormatException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Loads a file with several concurrent upload requests.
+ * <p>
+ * Files in a line based format (N-Triples, N-Quads, NQX) are memory
+ * mapped and split on line boundaries into chunks of about
+ * {@link BulkLoadConfig#getChunkSize() chunkSize} bytes; the entries of
+ * a zip archive are sent as they are. Each part is sent in its own
+ * request, at most {@link BulkLoadConfig#getMaxInFlightRequests()} at a time.
+ * </p>
+ *
+ * @see AGRepositoryConnection#addChunked(File, String, RDFFormat, BulkLoadConfig, Resource...)
+ */
+final class AGChunkedFileLoader {
+    private static final Logger logger = LoggerFactory.getLogger(AGChunkedFileLoader.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final AtomicInteger loaderCount = new AtomicInteger();
+
+    /**
+     * One request of the load.
+     */
+    private interface Part {
+        String getName();
+
+        long getSize();
+
+        void upload() throws Exception;
+    }
+
+    private final AGHttpRepoClient client;
+    private final BulkLoadConfig config;
+    private final int commitPeriod;
+
+    AGChunkedFileLoader(AGHttpRepoClient client, BulkLoadConfig config) {
+        this.client = client;
+        this.config = config;
+        this.commitPeriod = config.getCommitPeriod() < 0
+                ? client.getUploadCommitPeriod() : config.getCommitPeriod();
+    }
+
+    /**
+     * @param format an RDF format
+     * @return true if statements of the format never span lines
+     */
+    static boolean isLineBased(RDFFormat format) {
+        return RDFFormat.NTRIPLES.equals(format)
+                || RDFFormat.NQUADS.equals(format)
+                || AGRDFFormat.NQX.equals(format);
+    }
+
+    AGLoadProgress loadLines(File file, String baseURI, RDFFormat format, Resource... contexts)
+            throws IOException, RDFParseException, RepositoryException {
+        final List<Part> parts = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = Math.min(start + config.getChunkSize(), size);
+                if (end < size) {
+                    end = nextLineStart(channel, end - 1, size);
+                }
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long to be split at offset " + start + " in " + file);
+                }
+                final long chunkStart = start;
+                final long chunkEnd = end;
+                parts.add(new Part() {
+                    @Override
+                    public String getName() {
+                        return file.getName() + " bytes " + chunkStart + "-" + chunkEnd;
+                    }
+
+                    @Override
+                    public long getSize() {
+                        return chunkEnd - chunkStart;
+                    }
+
+                    @Override
+                    public void upload() throws Exception {
+                        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                chunkStart, chunkEnd - chunkStart);
+                        send(new MappedEntity(buffer, format.getDefaultMIMEType()), baseURI, format, contexts);
+                    }
+                });
+                start = end;
+            }
+            // The channel must stay open while the chunks are mapped.
+            return run(parts, size);
+        }
+    }
+
+    AGLoadProgress loadZip(File file, String baseURI, RDFFormat defaultFormat, Resource... contexts)
+            throws IOException, RDFParseException, RepositoryException {
+        try (ZipFile zip = new ZipFile(file)) {
+            final List<Part> parts = new ArrayList<>();
+            long total = 0;
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                final ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final RDFFormat format = Rio.getParserFormatForFileName(entry.getName()).orElse(defaultFormat);
+                if (format == null) {
+                    throw new UnsupportedRDFormatException("Unknown RDF format of zip entry " + entry.getName());
+                }
+                final long entrySize = Math.max(0, entry.getSize());
+                total += entrySize;
+                parts.add(new Part() {
+                    @Override
+                    public String getName() {
+                        return entry.getName();
+                    }
+
+                    @Override
+                    public long getSize() {
+                        return entrySize;
+                    }
+
+                    @Override
+                    public void upload() throws Exception {
+                        // ZipFile allows several entries to be read at the same time.
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            send(new StreamEntity(in, entry.getSize(), format.getDefaultMIMEType()),
+                                    baseURI, format, contexts);
+                        }
+                    }
+                });
+            }
+            return run(parts, total);
+        }
+    }
+
+    private void send(RequestEntity entity, String baseURI, RDFFormat format, Resource... contexts)
+            throws Exception {
+        if (config.getGzipChunks()) {
+            client.upload(new AGGzipRequestEntity(entity), baseURI, format, "gzip", commitPeriod, null, contexts);
+        } else {
+            client.upload(entity, baseURI, format, null, commitPeriod, null, contexts);
+        }
+    }
+
+    /**
+     * Finds the start of the line following position pos.
+     */
+    private static long nextLineStart(FileChannel channel, long pos, long size) throws IOException {
+        final ByteBuffer window = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        while (pos < size) {
+            window.clear();
+            final int n = channel.read(window, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private AGLoadProgress run(List<Part> parts, long totalBytes)
+            throws IOException, RDFParseException, RepositoryException {
+        final int maxInFlight = config.getMaxInFlightRequests();
+        final ExecutorService executor;
+        if (config.getExecutor() != null) {
+            executor = config.getExecutor();
+        } else {
+            final int id = loaderCount.incrementAndGet();
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maxInFlight, parts.size())), runnable -> {
+                final Thread thread = new Thread(runnable,
+                        "agraph-chunked-loader-" + id + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        final Semaphore permits = new Semaphore(maxInFlight);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicReference<String> failedPart = new AtomicReference<>();
+        final AtomicLong bytesLoaded = new AtomicLong();
+        final AtomicInteger partsLoaded = new AtomicInteger();
+        final Consumer<AGLoadProgress> listener = config.getProgressListener();
+        final long startNanos = System.nanoTime();
+        try {
+            for (Part part : parts) {
+                if (failure.get() != null) {
+                    break;
+                }
+                permits.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            if (failure.get() == null) {
+                                part.upload();
+                                final AGLoadProgress progress = new AGLoadProgress(
+                                        bytesLoaded.addAndGet(part.getSize()), totalBytes,
+                                        partsLoaded.incrementAndGet(), parts.size(),
+                                        System.nanoTime() - startNanos);
+                                if (listener != null) {
+                                    listener.accept(progress);
+                                }
+                            }
+                        } catch (Exception e) {
+                            if (failure.compareAndSet(null, e)) {
+                                failedPart.set(part.getName());
+                            }
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+            // Wait for the requests in flight.
+            permits.acquire(maxInFlight);
+            permits.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while loading " + parts.size() + " parts", e);
+        } finally {
+            if (config.getExecutor() == null) {
+                executor.shutdown();
+            }
+        }
+        final Exception e = failure.get();
+        if (e != null) {
+            rethrow(e, failedPart.get());
+        }
+        final AGLoadProgress progress = new AGLoadProgress(bytesLoaded.get(), totalBytes,
+                partsLoaded.get(), parts.size(), System.nanoTime() - startNanos);
+        logger.debug("Loaded {}", progress);
+        return progress;
+    }
+
+    private static void rethrow(Exception e, String partName)
+            throws IOException, RDFParseException, RepositoryException {
+        if (e instanceof AGMalformedDataException) {
+            final RDFParseException pe = new RDFParseException(e.getMessage() + " in " + partName);
+            pe.initCause(e);
+            throw pe;
+        } else if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RepositoryException) {
+            throw (RepositoryException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        throw new RepositoryException("Error loading " + partName, e);
+    }
+
+    /**
+     * Sends a memory mapped region of a file.
+     */
+    private static final class MappedEntity implements RequestEntity {
+        private final ByteBuffer buffer;
+        private final String contentType;
+
+        MappedEntity(ByteBuffer buffer, String contentType) {
+            this.buffer = buffer;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            final ByteBuffer source = buffer.duplicate();
+            final byte[] bytes = new byte[Math.min(COPY_BUFFER_SIZE, source.remaining())];
+            while (source.hasRemaining()) {
+                final int n = Math.min(bytes.length, source.remaining());
+                source.get(bytes, 0, n);
+                out.write(bytes, 0, n);
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Sends a stream, which can only be read once.
+     */
+    private static final class StreamEntity implements RequestEntity {
+        private final InputStream in;
+        private final long length;
+        private final String contentType;
+
+        StreamEntity(InputStream in, long length, String contentType) {
+            this.in = in;
+            this.length = length;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            final byte[] bytes = new byte[COPY_BUFFER_SIZE];
+            for (int n = in.read(bytes); n >= 0; n = in.read(bytes)) {
+                out.write(bytes, 0, n);
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
@@ -5,9 +5,12 @@
 package com.franz.agraph.repository;
 
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGAbortingIteration;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
+import com.franz.agraph.http.handler.AGPrefetchIteration;
 import com.franz.agraph.http.handler.AGRDFHandler;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.http.handler.AGRawStreamer;
 import org.eclipse.rdf4j.query.GraphQuery;
 import org.eclipse.rdf4j.query.GraphQueryResult;
@@ -42,10 +45,19 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
 
     /**
      * Evaluates the query and returns a GraphQueryResult.
+     * <p>
+     * If {@link #isStreamResults() streamResults} is enabled,
+     * statements are parsed from the http response while the application
+     * consumes them, and the result must be exhausted or closed to release
+     * the HTTP connection.
+     * Otherwise all statements are collected before this method returns.
+     * </p>
      */
     public GraphQueryResult evaluate() throws QueryEvaluationException {
+        if (streamResults) {
+            return evaluateStreaming();
+        }
         try {
-            // TODO: make this efficient for large result sets
             StatementCollector collector = new StatementCollector();
             evaluate(collector);
             return new IteratingGraphQueryResult(collector.getNamespaces(),
@@ -56,6 +68,35 @@ public class AGGraphQuery extends AGQuery implements GraphQuery {
         }
     }
 
+    /**
+     * Evaluates the query and returns a result that pulls statements
+     * from the http response as they are requested.
+     * <p>
+     * The preferred RDF format of the connection is used if it can be
+     * streamed (N-Triples, N-Quads or binary RDF), otherwise N-Quads.
+     * Unless {@link #getPrefetchSize() prefetchSize} is zero, a background
+     * reader parses up to prefetchSize statements ahead of the application.
+     * Closing the result before it is exhausted aborts the request, after
+     * cancelling the query on the server if it is {@link #setCancellable(boolean) cancellable}.
+     * </p>
+     *
+     * @return a streaming result; it MUST be exhausted or closed to release the connection
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    public GraphQueryResult evaluateStreaming() throws QueryEvaluationException {
+        RDFFormat format = AGRDFStreamer.getStreamingFormat(httpCon.prepareHttpRepoClient().getPreferredRDFFormat());
+        AGRDFStreamer handler = AGRDFStreamer.createStreamer(format, httpCon.getValueFactory());
+        evaluate(handler);
+        GraphQueryResult result = handler.getResult();
+        Runnable abort = cancelAndAbort(handler::abort);
+        if (prefetchSize > 0) {
+            result = AGPrefetchIteration.prefetch(result, prefetchSize, abort);
+        } else {
+            result = AGAbortingIteration.abortOnClose(result, abort);
+        }
+        return result;
+    }
+
     /**
      * Evaluates the query and uses handler to process the result.
      */
@@ -0,0 +1,78 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the progress of a chunked load.
+ *
+ * @see AGRepositoryConnection#addChunked(java.io.File, String, org.eclipse.rdf4j.rio.RDFFormat, BulkLoadConfig, org.eclipse.rdf4j.model.Resource...)
+ * @see BulkLoadConfig#progressListener(java.util.function.Consumer)
+ */
+public final class AGLoadProgress {
+    private final long bytesLoaded;
+    private final long totalBytes;
+    private final int partsLoaded;
+    private final int totalParts;
+    private final long elapsedNanos;
+
+    AGLoadProgress(long bytesLoaded, long totalBytes, int partsLoaded, int totalParts, long elapsedNanos) {
+        this.bytesLoaded = bytesLoaded;
+        this.totalBytes = totalBytes;
+        this.partsLoaded = partsLoaded;
+        this.totalParts = totalParts;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return number of bytes of the source (before compression) stored by the server
+     */
+    public long getBytesLoaded() {
+        return bytesLoaded;
+    }
+
+    /**
+     * @return size of the source in bytes (before compression)
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return number of chunks or zip entries stored by the server
+     */
+    public int getPartsLoaded() {
+        return partsLoaded;
+    }
+
+    /**
+     * @return number of chunks or zip entries to load
+     */
+    public int getTotalParts() {
+        return totalParts;
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return time since the load started
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return average number of source bytes loaded per second so far
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytesLoaded * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d parts, %d/%d bytes, %.1f MB/s",
+                partsLoaded, totalParts, bytesLoaded, totalBytes, getBytesPerSecond() / (1024 * 1024));
+    }
+}
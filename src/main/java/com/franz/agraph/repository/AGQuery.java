@@ -7,6 +7,7 @@ package com.franz.agraph.repository;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.exception.AGQueryTimeoutException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
+import com.franz.agraph.http.handler.AGPrefetchIteration;
 import com.franz.agraph.http.handler.AGRawStreamer;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import com.franz.agraph.http.handler.AGStringHandler;
@@ -18,10 +19,13 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryInterruptedException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.impl.AbstractQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.InputStream;
 import java.util.Iterator;
+import java.util.UUID;
 
 /**
  * An abstract query class common to Boolean, Graph and Tuple Queries.
@@ -51,6 +55,8 @@ public abstract class AGQuery extends AbstractQuery {
      */
     public static final String RESTRICTION = "restriction";
 
+    private static final Logger logger = LoggerFactory.getLogger(AGQuery.class);
+
     //private static long prepareId = 0L;
 
     protected AGRepositoryConnection httpCon;
@@ -70,7 +76,11 @@ public abstract class AGQuery extends AbstractQuery {
     protected int limit = -1;
     protected int offset = -1;
     protected boolean loggingEnabled = false;
+    protected boolean streamResults;
+    protected int prefetchSize = AGPrefetchIteration.DEFAULT_PREFETCH_SIZE;
+    protected boolean cancellable;
     private String engine;
+    private volatile String queryId;
 
 
     public AGQuery(AGRepositoryConnection con, QueryLanguage ql, String queryString, String baseURI) {
@@ -79,6 +89,8 @@ public abstract class AGQuery extends AbstractQuery {
         this.queryLanguage = ql;
         this.queryString = queryString;
         this.baseURI = baseURI;
+        this.streamResults = con.isStreamResults();
+        this.cancellable = con.isCancelQueries();
         // AG queries exclude inferences by default
         super.includeInferred = false;
     }
@@ -177,6 +189,93 @@ public abstract class AGQuery extends AbstractQuery {
         this.loggingEnabled = loggingEnabled;
     }
 
+    /**
+     * Gets the streamResults setting for this query.
+     *
+     * @return true if results are parsed from the response as they are consumed
+     * @see #setStreamResults(boolean)
+     */
+    public boolean isStreamResults() {
+        return streamResults;
+    }
+
+    /**
+     * Sets whether the results of evaluating this query are streamed.
+     * <p>
+     * Streamed results are parsed from the http response by a background
+     * reader while the application consumes them, up to
+     * {@link #getPrefetchSize() prefetchSize} results ahead.
+     * They hold an HTTP connection until they are exhausted or closed.
+     * Otherwise all results are collected before evaluate returns.
+     * <p>
+     * Defaults to the {@link AGRepositoryConnection#isStreamResults() streamResults}
+     * setting of the connection when the query was prepared, or for tuple
+     * queries to its {@link AGRepositoryConnection#isStreamTupleResults() streamTupleResults}
+     * setting.
+     *
+     * @param streamResults true to stream the results
+     */
+    public void setStreamResults(boolean streamResults) {
+        this.streamResults = streamResults;
+    }
+
+    /**
+     * Gets the number of results read ahead of the application
+     * when results are streamed.
+     *
+     * @return the prefetch size
+     * @see #setPrefetchSize(int)
+     */
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Sets the maximum number of results read ahead of the application
+     * when results are {@link #setStreamResults(boolean) streamed}.
+     * <p>
+     * The background reader blocks when this many parsed results are
+     * waiting to be consumed. Zero disables the background reader,
+     * so results are parsed by the consuming thread as they are requested.
+     * <p>
+     * Default is {@value AGPrefetchIteration#DEFAULT_PREFETCH_SIZE}.
+     *
+     * @param prefetchSize the prefetch size, zero or more
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        if (prefetchSize < 0) {
+            throw new IllegalArgumentException("prefetchSize must not be negative: " + prefetchSize);
+        }
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * Gets the cancellable setting for this query.
+     *
+     * @return true if evaluations of this query can be cancelled on the server
+     * @see #setCancellable(boolean)
+     */
+    public boolean isCancellable() {
+        return cancellable;
+    }
+
+    /**
+     * Sets whether evaluations of this query can be cancelled on the server.
+     * <p>
+     * A cancellable evaluation is sent with an ID, by which {@link #cancel()}
+     * asks the server to stop it; a streaming result closed before it is
+     * exhausted does the same. Otherwise closing such a result only aborts
+     * its request. The server must support cancelling queries by ID.
+     * <p>
+     * Defaults to the {@link AGRepositoryConnection#isCancelQueries() cancelQueries}
+     * setting of the connection when the query was prepared.
+     *
+     * @param cancellable true to make evaluations cancellable
+     */
+    public void setCancellable(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
     /**
      * Gets the baseURI for this query.
      *
@@ -226,8 +325,10 @@ public abstract class AGQuery extends AbstractQuery {
     /**
      * Schedules the query to be prepared.
      * <p>
-     * Note: this is a no-op pending further cost-benefit analysis of
-     * the server's saved query service.
+     * Note: this is a no-op. Queries run repeatedly by a dedicated session
+     * are saved on the server by the session's
+     * {@link com.franz.agraph.http.AGSavedQueryCache saved query cache},
+     * whichever query object runs them.
      */
     synchronized void prepare() {
         //setSaveName(String.valueOf(prepareId++));
@@ -236,6 +337,13 @@ public abstract class AGQuery extends AbstractQuery {
     /**
      * Sets the name to use when saving this query with the
      * server's saved query service.
+     * <p>
+     * A query saved under an explicit name is not managed by the
+     * {@link com.franz.agraph.http.AGSavedQueryCache saved query cache}: it
+     * stays on the server until deleted with
+     * {@link com.franz.agraph.http.AGHttpRepoClient#deleteSavedQuery(String)}
+     * or until the session ends.
+     * </p>
      *
      * @param name the saved name
      */
@@ -293,6 +401,7 @@ public abstract class AGQuery extends AbstractQuery {
      */
     protected void evaluate(boolean analyzeOnly, AGResponseHandler handler)
             throws QueryEvaluationException {
+        queryId = cancellable ? UUID.randomUUID().toString() : null;
         try {
             httpCon.prepareHttpRepoClient().query(this, analyzeOnly, handler);
         } catch (AGQueryTimeoutException e) {
@@ -302,6 +411,74 @@ public abstract class AGQuery extends AbstractQuery {
         }
     }
 
+    /**
+     * Returns the ID the latest evaluation of this query was sent with.
+     * <p>
+     * Each {@link #setCancellable(boolean) cancellable} evaluation gets
+     * a new ID, generated by the client, by which the server can be asked
+     * to stop it.
+     * </p>
+     *
+     * @return the ID of the latest evaluation, or null if the query has
+     * not been evaluated or the evaluation was not cancellable
+     * @see #cancel()
+     */
+    public String getQueryId() {
+        return queryId;
+    }
+
+    /**
+     * Asks the server to stop the latest evaluation of this query, which
+     * then fails or returns a truncated result.
+     * <p>
+     * May be called from another thread than the one evaluating the query
+     * or reading its result. Streaming results closed before they are
+     * exhausted cancel their evaluation the same way.
+     * Does nothing (but log at debug level) if the query has not been
+     * evaluated, or if the latest evaluation was not
+     * {@link #setCancellable(boolean) cancellable}.
+     * </p>
+     *
+     * @throws QueryEvaluationException if the request fails, for example
+     *                                  because the evaluation has finished
+     */
+    public void cancel() throws QueryEvaluationException {
+        final String id = queryId;
+        if (id != null) {
+            try {
+                httpCon.prepareHttpRepoClient().cancelQuery(id);
+            } catch (AGHttpException e) {
+                throw new QueryEvaluationException(e);
+            }
+        } else {
+            logger.debug("Query not cancelled: its latest evaluation, if any, was not cancellable");
+        }
+    }
+
+    /**
+     * Returns the action that a streaming result of the latest evaluation
+     * runs when it is closed before the whole response was read: ask the
+     * server to stop the query if it is cancellable, then abort the request.
+     *
+     * @param abortRequest closes the HTTP connection of the result
+     * @return the action to run on an early close
+     */
+    Runnable cancelAndAbort(Runnable abortRequest) {
+        final String id = queryId;
+        if (id == null) {
+            return abortRequest;
+        }
+        return () -> {
+            try {
+                httpCon.prepareHttpRepoClient().cancelQuery(id);
+            } catch (AGHttpException e) {
+                // The query may have finished meanwhile.
+                logger.debug("Cancelling query {} failed", id, e);
+            }
+            abortRequest.run();
+        };
+    }
+
     /**
      * Evaluates the query and saves the results to a file.
      * <p>
@@ -438,14 +615,6 @@ public abstract class AGQuery extends AbstractQuery {
         return queryString;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        if (saveName != null) {
-            httpCon.prepareHttpRepoClient().savedQueryDeleteQueue.add(saveName);
-        }
-        super.finalize();
-    }
-
     /**
      * Gets the limit on the number of solutions for this query.
      *
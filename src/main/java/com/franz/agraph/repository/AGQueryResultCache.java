@@ -0,0 +1,504 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpRepoClient;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResultHandlerException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of SELECT and ASK queries on the client.
+ * <p>
+ * Results are keyed by repository, query text and everything else that
+ * determines the result: query language, base URI, bindings, dataset,
+ * whether inferences are included and with which entailment regime,
+ * limit and offset, and who is asking: the credentials, the user
+ * masqueraded as and the user attributes of the connection, since the
+ * server filters results by them. The least recently used results are evicted when
+ * either the number of results or their estimated heap size exceeds its
+ * maximum. A result larger than a quarter of the maximum size is not cached.
+ * </p>
+ * <p>
+ * The results of a repository are dropped whenever a connection of this
+ * client commits changes to it, either explicitly or in autocommit mode.
+ * Changes committed by other clients are only seen once the cached results
+ * are older than the time to live. Queries of a connection holding
+ * uncommitted changes are not cached, since they see those changes.
+ * </p>
+ * <p>
+ * Caching is off by default. A cache is set on a repository, for all
+ * connections created afterwards, or on a single connection:
+ * </p>
+ * <pre>{@code
+ * AGQueryResultCache cache = new AGQueryResultCache(10000, 64 << 20, 60000);
+ * cache.registerMBean("lookups");
+ * repository.setQueryResultCache(cache);
+ * }</pre>
+ * <p>
+ * Streamed results are cached once the application has read them to the
+ * end; results closed early are not cached.
+ * </p>
+ *
+ * @see AGRepository#setQueryResultCache(AGQueryResultCache)
+ * @see AGRepositoryConnection#setQueryResultCache(AGQueryResultCache)
+ */
+public class AGQueryResultCache implements AGQueryResultCacheMBean {
+
+    /**
+     * Approximate heap size of a cached solution and of each of its values,
+     * not counting the characters of the values.
+     */
+    private static final int SOLUTION_OVERHEAD_BYTES = 32;
+    private static final int VALUE_OVERHEAD_BYTES = 64;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    // Guarded by this.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Number of invalidations of each repository, guarded by this.
+    private final Map<String, Long> generations = new HashMap<>();
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile ObjectName mbeanName;
+
+    /**
+     * @param maxEntries      maximum number of results in the cache
+     * @param maxBytes        maximum estimated heap size of the results in the cache
+     * @param timeToLiveMillis how long a result may be used after it was received,
+     *                         0 for no limit
+     */
+    public AGQueryResultCache(int maxEntries, long maxBytes, long timeToLiveMillis) {
+        if (maxEntries <= 0 || maxBytes <= 0 || timeToLiveMillis < 0) {
+            throw new IllegalArgumentException("Invalid query result cache limits: "
+                    + maxEntries + ", " + maxBytes + ", " + timeToLiveMillis);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public long getTimeToLiveMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Drops the cached results of a repository. This is done automatically
+     * when changes are committed through this client.
+     *
+     * @param repositoryURL the URL of the repository
+     */
+    public synchronized void invalidate(String repositoryURL) {
+        generations.merge(repositoryURL, 1L, Long::sum);
+        invalidations.incrementAndGet();
+        final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().repositoryURL.equals(repositoryURL)) {
+                bytes -= e.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Registers this cache with the platform MBean server.
+     *
+     * @param name distinguishes this cache from others
+     * @return the name under which the cache was registered
+     * @throws JMException if the cache could not be registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        final ObjectName objectName = new ObjectName("com.franz.agraph:type=AGQueryResultCache,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters this cache from the platform MBean server, if registered.
+     *
+     * @throws JMException if the cache could not be unregistered
+     */
+    public void unregisterMBean() throws JMException {
+        final ObjectName objectName = mbeanName;
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            mbeanName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{AGQueryResultCache size=" + getSize()
+                + " bytes=" + getEstimatedBytes()
+                + " hits=" + getHits()
+                + " misses=" + getMisses()
+                + "}";
+    }
+
+    /**
+     * Returns the result of a tuple query, reading it from the cache or from
+     * evaluator. A result read from evaluator is cached once consumed.
+     */
+    TupleQueryResult tuples(AGQuery query, String repositoryURL, TupleEvaluator evaluator)
+            throws QueryEvaluationException {
+        final Key key = new Key(query, repositoryURL);
+        final Tuples cached = (Tuples) get(key);
+        if (cached != null) {
+            return new IteratingTupleQueryResult(cached.names, cached.solutions);
+        }
+        final long generation = generation(repositoryURL);
+        return new RecordingResult(evaluator.evaluate(), key, generation);
+    }
+
+    /**
+     * Passes the result of a tuple query to handler, reading it from the
+     * cache or with evaluator. A result read with evaluator is cached.
+     */
+    void tuples(AGQuery query, String repositoryURL, TupleQueryResultHandler handler,
+                HandlerEvaluator evaluator) throws QueryEvaluationException, TupleQueryResultHandlerException {
+        final Key key = new Key(query, repositoryURL);
+        final Tuples cached = (Tuples) get(key);
+        if (cached != null) {
+            handler.startQueryResult(cached.names);
+            for (BindingSet solution : cached.solutions) {
+                handler.handleSolution(solution);
+            }
+            handler.endQueryResult();
+            return;
+        }
+        final long generation = generation(repositoryURL);
+        evaluator.evaluate(new RecordingHandler(handler, key, generation));
+    }
+
+    /**
+     * Returns the result of a boolean query, from the cache or evaluator.
+     */
+    boolean bool(AGQuery query, String repositoryURL, BooleanEvaluator evaluator)
+            throws QueryEvaluationException {
+        final Key key = new Key(query, repositoryURL);
+        final Boolean cached = (Boolean) get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final long generation = generation(repositoryURL);
+        final boolean result = evaluator.evaluate();
+        put(key, generation, result, VALUE_OVERHEAD_BYTES);
+        return result;
+    }
+
+    private synchronized Object get(Key key) {
+        final Entry entry = entries.get(key);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.received > ttlNanos) {
+            entries.remove(key);
+            bytes -= entry.bytes;
+            expirations.incrementAndGet();
+        } else if (entry != null) {
+            hits.incrementAndGet();
+            return entry.result;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private synchronized long generation(String repositoryURL) {
+        return generations.getOrDefault(repositoryURL, 0L);
+    }
+
+    /**
+     * Caches a result, unless the repository was invalidated
+     * since the query was sent.
+     */
+    private synchronized void put(Key key, long generation, Object result, long size) {
+        if (generation != generation(key.repositoryURL) || size > maxBytes / 4) {
+            return;
+        }
+        final Entry old = entries.put(key, new Entry(result, size));
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += size;
+        final Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long sizeOf(BindingSet solution) {
+        long size = SOLUTION_OVERHEAD_BYTES;
+        for (Binding binding : solution) {
+            size += VALUE_OVERHEAD_BYTES + 2L * binding.getValue().stringValue().length();
+        }
+        return size;
+    }
+
+    interface TupleEvaluator {
+        TupleQueryResult evaluate() throws QueryEvaluationException;
+    }
+
+    interface HandlerEvaluator {
+        void evaluate(TupleQueryResultHandler handler)
+                throws QueryEvaluationException, TupleQueryResultHandlerException;
+    }
+
+    interface BooleanEvaluator {
+        boolean evaluate() throws QueryEvaluationException;
+    }
+
+    private static final class Key {
+        private final String repositoryURL;
+        private final List<Object> parts;
+        private final int hash;
+
+        Key(AGQuery query, String repositoryURL) {
+            this.repositoryURL = repositoryURL;
+            final AGHttpRepoClient client = query.httpCon.prepareHttpRepoClient();
+            final AGHTTPClient httpClient = client.getHTTPClient();
+            final Dataset dataset = query.getDataset();
+            final Set<Binding> bindings = new HashSet<>();
+            for (Binding binding : query.getBindings()) {
+                bindings.add(binding);
+            }
+            final Set<IRI> defaultGraphs = dataset == null ? null : new HashSet<>(dataset.getDefaultGraphs());
+            final Set<IRI> namedGraphs = dataset == null ? null : new HashSet<>(dataset.getNamedGraphs());
+            this.parts = Arrays.asList(query.getClass(), query.getLanguage(),
+                    query.getQueryString(), query.getBaseURI(), bindings, defaultGraphs, namedGraphs,
+                    query.getIncludeInferred(), query.getEntailmentRegime(),
+                    query.getLimit(), query.getOffset(),
+                    httpClient.getCredentials(), httpClient.getMasqueradeAsUser(), client.getUserAttributes());
+            this.hash = Objects.hash(repositoryURL, parts);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && repositoryURL.equals(other.repositoryURL) && parts.equals(other.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Object result;
+        private final long bytes;
+        private final long received = System.nanoTime();
+
+        Entry(Object result, long bytes) {
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Tuples {
+        private final List<String> names;
+        private final List<BindingSet> solutions;
+
+        Tuples(List<String> names, List<BindingSet> solutions) {
+            this.names = Collections.unmodifiableList(new ArrayList<>(names));
+            this.solutions = Collections.unmodifiableList(solutions);
+        }
+    }
+
+    /**
+     * Collects the solutions of a result as they are handed out,
+     * until the result is too large to cache.
+     */
+    private final class Recorder {
+        private final Key key;
+        private final long generation;
+        private List<BindingSet> solutions = new ArrayList<>();
+        private long size;
+
+        Recorder(Key key, long generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        void record(BindingSet solution) {
+            if (solutions != null) {
+                size += sizeOf(solution);
+                if (size > maxBytes / 4) {
+                    solutions = null;
+                } else {
+                    solutions.add(solution);
+                }
+            }
+        }
+
+        void done(List<String> names) {
+            if (solutions != null) {
+                put(key, generation, new Tuples(names, solutions), size);
+                solutions = null;
+            }
+        }
+    }
+
+    private final class RecordingResult extends IteratingTupleQueryResult {
+        private final TupleQueryResult result;
+        private final Recorder recorder;
+
+        RecordingResult(TupleQueryResult result, Key key, long generation) {
+            super(result.getBindingNames(), result);
+            this.result = result;
+            this.recorder = new Recorder(key, generation);
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            // A result closed early is not complete.
+            final boolean closed = isClosed();
+            final boolean more = super.hasNext();
+            if (!more && !closed) {
+                recorder.done(result.getBindingNames());
+            }
+            return more;
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            final BindingSet solution = super.next();
+            recorder.record(solution);
+            return solution;
+        }
+    }
+
+    private final class RecordingHandler implements TupleQueryResultHandler {
+        private final TupleQueryResultHandler handler;
+        private final Recorder recorder;
+        private List<String> names = Collections.emptyList();
+
+        RecordingHandler(TupleQueryResultHandler handler, Key key, long generation) {
+            this.handler = handler;
+            this.recorder = new Recorder(key, generation);
+        }
+
+        @Override
+        public void handleBoolean(boolean value) throws QueryResultHandlerException {
+            handler.handleBoolean(value);
+        }
+
+        @Override
+        public void handleLinks(List<String> linkUrls) throws QueryResultHandlerException {
+            handler.handleLinks(linkUrls);
+        }
+
+        @Override
+        public void startQueryResult(List<String> bindingNames) throws TupleQueryResultHandlerException {
+            names = bindingNames;
+            handler.startQueryResult(bindingNames);
+        }
+
+        @Override
+        public void endQueryResult() throws TupleQueryResultHandlerException {
+            handler.endQueryResult();
+            recorder.done(names);
+        }
+
+        @Override
+        public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+            recorder.record(bindingSet);
+            handler.handleSolution(bindingSet);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+/**
+ * JMX view of an {@link AGQueryResultCache}.
+ *
+ * @see AGQueryResultCache#registerMBean(String)
+ */
+public interface AGQueryResultCacheMBean {
+
+    /**
+     * @return the number of results found in the cache
+     */
+    long getHits();
+
+    /**
+     * @return the number of results not found in the cache
+     */
+    long getMisses();
+
+    /**
+     * @return the fraction of lookups that found a result, 0 if none was made
+     */
+    double getHitRate();
+
+    /**
+     * @return the number of results removed to make room for others
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of results removed because they were older than the TTL
+     */
+    long getExpirations();
+
+    /**
+     * @return the number of times the results of a repository were dropped
+     *         because of a commit
+     */
+    long getInvalidations();
+
+    /**
+     * @return the number of results in the cache
+     */
+    int getSize();
+
+    /**
+     * @return the estimated heap size of the results in the cache, in bytes
+     */
+    long getEstimatedBytes();
+
+    /**
+     * @return the maximum number of results in the cache
+     */
+    int getMaxEntries();
+
+    /**
+     * @return the maximum estimated heap size of the results in the cache
+     */
+    long getMaxBytes();
+
+    /**
+     * @return how long a result is used after it was received, in milliseconds,
+     *         0 if there is no limit
+     */
+    long getTimeToLiveMillis();
+
+    /**
+     * Removes all results from the cache.
+     */
+    void clear();
+}
@@ -36,6 +36,7 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
     private final String repositoryURL;
     private final AGValueFactory vf;
     private AGConnPool pool;
+    private volatile AGQueryResultCache queryResultCache;
 
     /**
      * Creates an AGRepository instance for a repository having the given
@@ -142,6 +143,29 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
         return vf;
     }
 
+    /**
+     * Gets the cache of query results used by the connections
+     * created from this repository.
+     *
+     * @return the cache, or null if query results are not cached (the default)
+     */
+    @Override
+    public AGQueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Sets the cache of query results used by the connections created
+     * from this repository from now on. The cache can be shared with
+     * other repositories.
+     *
+     * @param queryResultCache the cache, or null not to cache query results
+     * @see AGRepositoryConnection#setQueryResultCache(AGQueryResultCache)
+     */
+    public void setQueryResultCache(AGQueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
     /**
      * @return {@link AGHTTPClient}  The http connection to AllegroGraph server
      */
@@ -178,9 +202,7 @@ public class AGRepository extends AbstractRepository implements AGAbstractReposi
      * Create a connection to the repository.
      */
     public AGRepositoryConnection getConnection() throws RepositoryException {
-        AGRepositoryConnection conn = getConnection(catalog.getServer().getExecutor());
-        conn.setStreamResults(true);
-        return conn;
+        return getConnection(catalog.getServer().getExecutor());
     }
 
     /**
@@ -6,11 +6,14 @@ package com.franz.agraph.repository;
 
 import com.franz.agraph.http.AGHttpRepoClient;
 import com.franz.agraph.http.AGHttpRepoClient.CommitPhase;
+import com.franz.agraph.http.AGStatementsRequestEntity;
 import com.franz.agraph.http.exception.AGCustomStoredProcException;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.exception.AGMalformedDataException;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGRDFHandler;
+import com.franz.agraph.http.handler.AGPrefetchIteration;
+import com.franz.agraph.http.handler.AGRDFStreamer;
 import com.franz.agraph.http.handler.AGRawStreamer;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import com.franz.agraph.pool.AGConnPool;
@@ -22,6 +25,7 @@ import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.common.io.GZipUtil;
 import org.eclipse.rdf4j.common.io.ZipUtil;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.ExceptionConvertingIteration;
 import org.eclipse.rdf4j.common.iteration.Iteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
@@ -33,6 +37,7 @@ import org.eclipse.rdf4j.model.impl.SimpleNamespace;
 import org.eclipse.rdf4j.model.impl.StatementImpl;
 import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQueryResult;
@@ -182,6 +187,9 @@ public class AGRepositoryConnection
         implements RepositoryConnection, AutoCloseable {
 
     public static final String PROP_STREAM_RESULTS = "com.franz.agraph.repository.AGRepositoryConnection.streamResults";
+    public static final String PROP_STREAM_TUPLE_RESULTS = "com.franz.agraph.repository.AGRepositoryConnection.streamTupleResults";
+
+    public static final String PROP_CANCEL_QUERIES = "com.franz.agraph.repository.AGRepositoryConnection.cancelQueries";
 
     public static final String PROP_USE_ADD_STATEMENT_BUFFER = "com.franz.agraph.repository.AGRepositoryConnection.useAddStatementBuffer";
     public static final String PROP_ADD_STATEMENT_BUFFER_MAX_SIZE = "com.franz.agraph.repository.AGRepositoryConnection.addStatementBufferMaxSize";
@@ -190,8 +198,10 @@ public class AGRepositoryConnection
     private final AGAbstractRepository repository;
     private final AGHttpRepoClient repoclient;
     private final AGValueFactory vf;
-    private final List<JSONArray> addStatementBuffer; // never null
+    private final List<BufferedAdd> addStatementBuffer; // never null
     private boolean streamResults;
+    private boolean streamTupleResults = true;
+    private boolean cancelQueries;
     // If not null close will return the connection to this pool instead of closing.
     private AGConnPool pool;
     /**
@@ -199,6 +209,7 @@ public class AGRepositoryConnection
      */
     private boolean addStatementBufferEnabled;
     private int addStatementBufferMaxSize;
+    private volatile AGQueryResultCache queryResultCache;
 
     /**
      * @param repository a repository name
@@ -219,12 +230,22 @@ public class AGRepositoryConnection
         this.repository = repository;
         this.repoclient = client;
         // use system property so this can be tested from build.xml
-        setStreamResults(Boolean.parseBoolean(System.getProperty(PROP_STREAM_RESULTS)));
+        String streamResultsProperty = System.getProperty(PROP_STREAM_RESULTS);
+        if (streamResultsProperty != null) {
+            setStreamResults(Boolean.parseBoolean(streamResultsProperty));
+        }
+        String streamTupleResultsProperty = System.getProperty(PROP_STREAM_TUPLE_RESULTS);
+        if (streamTupleResultsProperty != null) {
+            setStreamTupleResults(Boolean.parseBoolean(streamTupleResultsProperty));
+        }
+        cancelQueries = Boolean.parseBoolean(System.getProperty(PROP_CANCEL_QUERIES));
         vf = new AGValueFactory(realRepo, this);
 
         addStatementBufferEnabled = Boolean.parseBoolean(System.getProperty(PROP_USE_ADD_STATEMENT_BUFFER));
         addStatementBufferMaxSize = Integer.parseInt(System.getProperty(PROP_ADD_STATEMENT_BUFFER_MAX_SIZE, "" + DEFAULT_ADD_STATEMENT_BUFFER_SIZE));
         addStatementBuffer = new ArrayList<>();
+        queryResultCache = repository.getQueryResultCache();
+        client.setQueryResultCache(queryResultCache);
     }
 
     @Override
@@ -313,10 +334,12 @@ public class AGRepositoryConnection
     }
 
     /**
-     * Arrange for the JSON to be buffered and then later sent in a batch.
+     * Arrange for the statement to be buffered and then later sent in a batch.
      */
-    private void bufferAddStatement(JSONArray rows) {
-        addStatementBuffer.add(rows);
+    private void bufferAddStatement(Statement st, JSONObject attributes, Resource... contexts) {
+        // Fail now rather than when the buffer is sent.
+        checkStorable(st, contexts);
+        addStatementBuffer.add(new BufferedAdd(st, attributes, contexts));
         if (addStatementBuffer.size() >= addStatementBufferMaxSize) {
             forwardBufferedAddStatements();
         }
@@ -344,18 +367,18 @@ public class AGRepositoryConnection
     }
 
     /**
-     * Forward the buffered statements to the repo, by sending the JSON over the HTTP connection.
+     * Forward the buffered statements to the repo, by streaming them as JSON over the HTTP connection.
      * Afterwards the buffer will be empty (even if the upload failed: those statements are lost).
      */
     private void forwardBufferedAddStatements() throws RepositoryException {
         if (!addStatementBuffer.isEmpty()) {
-            // System.out.println("Now uploading " + addStatementBuffer.size()+ " pending \"Add Statement\"");
-            JSONArray totalArray = new JSONArray();
-            for (JSONArray addStmtJson : addStatementBuffer) {
-                append(totalArray, addStmtJson);
-            }
+            AGHttpRepoClient client = getHttpRepoClientInternal();
             try {
-                getHttpRepoClientInternal().uploadJSON(totalArray);
+                client.uploadStatements(client.createStatementsEntity(out -> {
+                    for (BufferedAdd add : addStatementBuffer) {
+                        out.write(add.statement, add.attributes, add.contexts);
+                    }
+                }, true));
             } catch (AGHttpException e) {
                 throw new RepositoryException(e);
             } finally {
@@ -379,30 +402,21 @@ public class AGRepositoryConnection
     @Override
     protected void addWithoutCommit(Resource subject, IRI predicate,
                                     Value object, Resource... contexts) throws RepositoryException {
-        Statement st = new StatementImpl(subject, predicate, object);
-        JSONArray rows = encodeJSON(st, null, contexts);
-
-        if (isUseAddStatementBuffer()) {
-            bufferAddStatement(rows);
-        } else {
-            try {
-                prepareHttpRepoClient().uploadJSON(rows);
-            } catch (AGHttpException e) {
-                throw new RepositoryException(e);
-            }
-        }
+        addWithoutCommit(subject, predicate, object, null, contexts);
     }
 
     protected void addWithoutCommit(Resource subject, IRI predicate,
                                     Value object, JSONObject attributes, Resource... contexts) throws RepositoryException {
         Statement st = new StatementImpl(subject, predicate, object);
-        JSONArray rows = encodeJSON(st, attributes, contexts);
 
         if (isUseAddStatementBuffer()) {
-            bufferAddStatement(rows);
+            bufferAddStatement(st, attributes, contexts);
         } else {
+            checkStorable(st, contexts);
+            AGHttpRepoClient client = prepareHttpRepoClient();
             try {
-                prepareHttpRepoClient().uploadJSON(rows);
+                client.uploadStatements(client.createStatementsEntity(
+                        out -> out.write(st, attributes, contexts), true));
             } catch (AGHttpException e) {
                 throw new RepositoryException(e);
             }
@@ -416,124 +430,146 @@ public class AGRepositoryConnection
                 contexts);
     }
 
+    /**
+     * Adds the supplied statements to this repository, optionally to one or more named contexts.
+     * <p>
+     * The statements are written to the request while iterating over them,
+     * so memory use does not depend on their number.
+     * </p>
+     *
+     * @param statements the statements to add; iterated again if the request is retried
+     * @param contexts   the contexts to add the statements to, overriding those of the statements
+     * @throws RepositoryException if the statements could not be added
+     */
     public void add(Iterable<? extends Statement> statements,
                     Resource... contexts) throws RepositoryException {
-        OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            JSONArray rows_st = encodeJSON(st, null, contexts);
-            append(rows, rows_st);
-        }
-        try {
-            prepareHttpRepoClient().uploadJSON(rows, contexts);
-        } catch (AGHttpException e) {
-            throw new RepositoryException(e);
-        }
+        add(statements, null, contexts);
     }
 
+    /**
+     * Adds the supplied statements with attributes to this repository,
+     * optionally to one or more named contexts.
+     * <p>
+     * The statements are written to the request while iterating over them,
+     * so memory use does not depend on their number.
+     * </p>
+     *
+     * @param statements the statements to add; iterated again if the request is retried
+     * @param attributes attributes added to each statement, may be null
+     * @param contexts   the contexts to add the statements to, overriding those of the statements
+     * @throws RepositoryException if the statements could not be added
+     */
     public void add(Iterable<? extends Statement> statements,
                     JSONObject attributes,
                     Resource... contexts) throws RepositoryException {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            JSONArray rows_st = encodeJSON(st, attributes, contexts);
-            append(rows, rows_st);
-        }
+        AGHttpRepoClient client = prepareHttpRepoClient();
+        // Encode once rather than for every statement.
+        String attrs = attributes == null ? null : attributes.toString();
+        // Fail before the request is sent rather than in the middle of it.
+        checkStorable(statements, contexts);
         try {
-            prepareHttpRepoClient().uploadJSON(rows, contexts);
+            client.uploadStatements(client.createStatementsEntity(out -> {
+                for (Statement st : statements) {
+                    out.write(st, attrs, contexts);
+                }
+            }, true), contexts);
         } catch (AGHttpException e) {
             throw new RepositoryException(e);
         }
     }
 
-    private void append(JSONArray rows, JSONArray rowsSt) {
-        for (int i = 0; i < rowsSt.length(); i++) {
-            try {
-                rows.put(rowsSt.get(i));
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
-        }
-    }
-
     public <E extends Exception> void add(
             Iteration<? extends Statement, E> statementIter,
             Resource... contexts) throws RepositoryException, E {
-        OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statementIter.hasNext()) {
-            append(rows, encodeJSON(statementIter.next(), null, contexts));
-        }
-        try {
-            prepareHttpRepoClient().uploadJSON(rows);
-        } catch (AGHttpException e) {
-            throw new RepositoryException(e);
-        }
+        add(statementIter, null, contexts);
     }
 
+    /**
+     * Adds the supplied statements with attributes to this repository,
+     * optionally to one or more named contexts.
+     * <p>
+     * The statements are written to the request while iterating over them,
+     * so memory use does not depend on their number. The request can not
+     * be retried since the iteration can only be consumed once.
+     * </p>
+     *
+     * @param statementIter the statements to add
+     * @param attributes    attributes added to each statement, may be null
+     * @param contexts      the contexts to add the statements to, overriding those of the statements
+     * @param <E>           the exception thrown by the iteration
+     * @throws RepositoryException if the statements could not be added
+     * @throws E                   if the iteration fails
+     */
+    @SuppressWarnings("unchecked")
     public <E extends Exception> void add(
             Iteration<? extends Statement, E> statementIter,
             JSONObject attributes,
             Resource... contexts) throws RepositoryException, E {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statementIter.hasNext()) {
-            append(rows, encodeJSON(statementIter.next(), attributes, contexts));
-        }
+        AGHttpRepoClient client = prepareHttpRepoClient();
+        String attrs = attributes == null ? null : attributes.toString();
+        AGStatementsRequestEntity entity = client.createStatementsEntity(out -> {
+            while (statementIter.hasNext()) {
+                out.write(statementIter.next(), attrs, contexts);
+            }
+        }, false);
         try {
-            prepareHttpRepoClient().uploadJSON(rows);
+            client.uploadStatements(entity);
         } catch (AGHttpException e) {
+            if (entity.getSourceException() != null) {
+                // Only the iteration can have thrown a checked exception.
+                throw (E) entity.getSourceException();
+            }
             throw new RepositoryException(e);
         }
     }
 
-    private JSONArray encodeJSON(Statement st, JSONObject attributes, Resource... contexts) {
-        JSONArray rows = new JSONArray();
-        String attrs = null;
+    /**
+     * Throws IllegalArgumentException if the statement contains
+     * values that can not be stored with the current settings.
+     */
+    private void checkStorable(Statement st, Resource... contexts) {
+        checkStorable(st, getHttpRepoClientInternal().getAllowExternalBlankNodeIds(), contexts);
+    }
 
-        if (attributes != null) {
-            attrs = attributes.toString();
+    /**
+     * Throws IllegalArgumentException if any of the statements contains
+     * values that can not be stored with the current settings.
+     */
+    private void checkStorable(Iterable<? extends Statement> statements, Resource... contexts) {
+        boolean allowExternal = getHttpRepoClientInternal().getAllowExternalBlankNodeIds();
+        for (Statement st : statements) {
+            checkStorable(st, allowExternal, contexts);
         }
+    }
 
-        if (contexts.length == 0) {
-            JSONArray row = new JSONArray().put(encodeValueForStorageJSON(st.getSubject()))
-                    .put(encodeValueForStorageJSON(st.getPredicate()))
-                    .put(encodeValueForStorageJSON(st.getObject()));
-            // there are no contexts passed in, but a context may be encoded in the row.
-            if (st.getContext() != null) {
-                row.put(encodeValueForStorageJSON(st.getContext()));
-            } else {
-                row.put((Object) null);
-            }
-            if (attrs != null) {
-                row.put(attrs);
-            }
-            rows.put(row);
-        } else {
-            for (Resource c : contexts) {
-                JSONArray row = new JSONArray().put(encodeValueForStorageJSON(st.getSubject()))
-                        .put(encodeValueForStorageJSON(st.getPredicate()))
-                        .put(encodeValueForStorageJSON(st.getObject()));
-                // contexts passed in as argument to encodeJSON supersede any context that may
-                // be specified in the row itself. A context of null refers to the default Graph.
-                if (c != null) {
-                    row.put(encodeValueForStorageJSON(c));
-                } else {
-                    row.put((Object) null);
-                }
-                if (attrs != null) {
-                    row.put(attrs);
-                }
-                rows.put(row);
+    private void checkStorable(Statement st, boolean allowExternal, Resource... contexts) {
+        AGHttpRepoClient.getStorableValue(st.getSubject(), vf, allowExternal);
+        AGHttpRepoClient.getStorableValue(st.getObject(), vf, allowExternal);
+        if (contexts.length == 0 && st.getContext() != null) {
+            AGHttpRepoClient.getStorableValue(st.getContext(), vf, allowExternal);
+        }
+        for (Resource c : contexts) {
+            if (c != null) {
+                AGHttpRepoClient.getStorableValue(c, vf, allowExternal);
             }
         }
-        return rows;
     }
 
-    private String encodeValueForStorageJSON(Value v) {
-        Value storableValue = AGHttpRepoClient.getStorableValue(v, vf, getHttpRepoClientInternal().getAllowExternalBlankNodeIds());
-        return NTriplesUtil.toNTriplesString(storableValue);
+    /**
+     * An "Add" request waiting in the addStatementBuffer.
+     */
+    private static final class BufferedAdd {
+        private final Statement statement;
+        private final String attributes;
+        private final Resource[] contexts;
+
+        private BufferedAdd(Statement statement, JSONObject attributes, Resource[] contexts) {
+            this.statement = statement;
+            this.attributes = attributes == null ? null : attributes.toString();
+            this.contexts = contexts;
+        }
     }
 
     /**
@@ -605,6 +641,70 @@ public class AGRepositoryConnection
         }
     }
 
+    /**
+     * Adds RDF data from the specified file with several concurrent requests.
+     * <p>
+     * Files in a line based format (N-Triples, N-Quads and NQX) are memory
+     * mapped and split on line boundaries into chunks of about
+     * {@link BulkLoadConfig#getChunkSize() chunkSize} bytes, optionally
+     * compressed with gzip. The entries of a zip archive are sent in
+     * separate requests. Up to {@link BulkLoadConfig#getMaxInFlightRequests()}
+     * requests are in flight at the same time. Other files are added as by
+     * {@link #add(File, String, RDFFormat, Resource...)}.
+     * </p>
+     * <p>
+     * Unlike {@link #add(File, String, RDFFormat, Resource...)}, the load is not
+     * atomic: outside of a transaction, each request is committed on its own
+     * (or every {@link BulkLoadConfig#getCommitPeriod() commitPeriod} statements),
+     * and if a part fails the parts already sent remain. Within a transaction the
+     * server processes the requests of the session one at a time.
+     * Blank node labels are scoped to a part, so a label used in two chunks
+     * or two zip entries denotes two different blank nodes.
+     * </p>
+     *
+     * @param file       a file containing RDF data
+     * @param baseURI    the base URI against which any relative URIs in the data are
+     *                   resolved. This defaults to the value of
+     *                   {@link java.io.File#toURI() file.toURI()} if the value is set to
+     *                   <tt>null</tt>
+     * @param dataFormat the serialization format of the data, or of the zip entries whose
+     *                   format can not be determined from their name
+     * @param config     concurrency, chunk size, compression and progress listener
+     * @param contexts   the contexts to add the data to, ignoring any context
+     *                   information in the data itself
+     * @return the final progress, with the number of bytes and parts loaded and the throughput
+     * @throws IOException         if an I/O error occurred while reading from the file
+     * @throws RDFParseException   if an error occurred while parsing the RDF data
+     * @throws RepositoryException if the data could not be added to the repository
+     */
+    public AGLoadProgress addChunked(File file, String baseURI, RDFFormat dataFormat,
+                                     BulkLoadConfig config, Resource... contexts)
+            throws IOException, RDFParseException, RepositoryException {
+        OpenRDFUtil.verifyContextNotNull(contexts);
+        if (baseURI == null) {
+            baseURI = file.toURI().toString();
+        }
+        if (dataFormat == null) {
+            dataFormat = Rio.getParserFormatForFileName(file.getName()).orElse(null);
+        }
+        final boolean zip;
+        final boolean gzip;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1024)) {
+            zip = ZipUtil.isZipStream(in);
+            gzip = GZipUtil.isGZipStream(in);
+        }
+        AGChunkedFileLoader loader = new AGChunkedFileLoader(prepareHttpRepoClient(), config);
+        if (zip) {
+            return loader.loadZip(file, baseURI, dataFormat, contexts);
+        } else if (!gzip && AGChunkedFileLoader.isLineBased(dataFormat)) {
+            return loader.loadLines(file, baseURI, dataFormat, contexts);
+        } else {
+            long start = System.nanoTime();
+            add(file, baseURI, dataFormat, contexts);
+            return new AGLoadProgress(file.length(), file.length(), 1, 1, System.nanoTime() - start);
+        }
+    }
+
     /**
      * Adds the RDF data that can be found at the specified URL to the
      * repository, optionally to one or more named contexts.
@@ -988,22 +1088,34 @@ public class AGRepositoryConnection
     public void remove(Iterable<? extends Statement> statements,
                        Resource... contexts) throws RepositoryException {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        for (Statement st : statements) {
-            append(rows, encodeJSON(st, null, contexts));
-        }
-        prepareHttpRepoClient().deleteJSON(rows);
+        AGHttpRepoClient client = prepareHttpRepoClient();
+        checkStorable(statements, contexts);
+        client.deleteStatements(client.createStatementsEntity(out -> {
+            for (Statement st : statements) {
+                out.write(st, (String) null, contexts);
+            }
+        }, true));
     }
 
+    @SuppressWarnings("unchecked")
     public <E extends Exception> void remove(
             Iteration<? extends Statement, E> statements, Resource... contexts)
             throws RepositoryException, E {
         OpenRDFUtil.verifyContextNotNull(contexts);
-        JSONArray rows = new JSONArray();
-        while (statements.hasNext()) {
-            append(rows, encodeJSON(statements.next(), null, contexts));
+        AGHttpRepoClient client = prepareHttpRepoClient();
+        AGStatementsRequestEntity entity = client.createStatementsEntity(out -> {
+            while (statements.hasNext()) {
+                out.write(statements.next(), (String) null, contexts);
+            }
+        }, false);
+        try {
+            client.deleteStatements(entity);
+        } catch (AGHttpException e) {
+            if (entity.getSourceException() != null) {
+                throw (E) entity.getSourceException();
+            }
+            throw e;
         }
-        prepareHttpRepoClient().deleteJSON(rows);
     }
 
     /**
@@ -1120,8 +1232,51 @@ public class AGRepositoryConnection
     }
 
     /**
-     * If true, automatically use {@link AGStreamTupleQuery}.
-     * Default is false.
+     * Gets the cache of the results of SELECT and ASK queries
+     * prepared on this connection.
+     *
+     * @return the cache, or null if query results are not cached
+     * @see #setQueryResultCache(AGQueryResultCache)
+     */
+    public AGQueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Sets the cache of the results of SELECT and ASK queries prepared
+     * on this connection. Defaults to the cache of the repository
+     * when the connection was created.
+     * <p>
+     * While this connection holds uncommitted changes, its queries
+     * bypass the cache. Its commits invalidate the results cached for the
+     * repository in this cache and in the cache of the repository.
+     * </p>
+     *
+     * @param queryResultCache the cache, or null not to cache query results
+     * @see AGRepository#setQueryResultCache(AGQueryResultCache)
+     */
+    public void setQueryResultCache(AGQueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+        getHttpRepoClientInternal().setQueryResultCache(queryResultCache);
+    }
+
+    /**
+     * @return the cache to use for a query now, or null
+     */
+    AGQueryResultCache getQueryResultCacheForQuery() {
+        final AGQueryResultCache cache = queryResultCache;
+        if (cache == null || prepareHttpRepoClient().hasUncommittedWrites()) {
+            return null;
+        }
+        return cache;
+    }
+
+    /**
+     * If true, stream the results of graph queries prepared on this connection
+     * and of {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}.
+     * Default is false, unless the {@value #PROP_STREAM_RESULTS}
+     * system property is set to true.
+     * Tuple query results have their own setting, see {@link #isStreamTupleResults()}.
      *
      * @return boolean the value of the <code>streamResults</code> parameter
      * @see #setStreamResults(boolean)
@@ -1131,14 +1286,79 @@ public class AGRepositoryConnection
     }
 
     /**
-     * Set to true to automatically use {@link AGStreamTupleQuery}
-     * for {@link #prepareTupleQuery(QueryLanguage, String, String)}.
+     * Set to true to stream the results of all queries prepared afterwards,
+     * and the statements returned by
+     * {@link #getStatements(Resource, IRI, Value, boolean, Resource...)}.
+     * This sets {@link #setStreamTupleResults(boolean) streamTupleResults} too.
+     * Each query can override this setting with
+     * {@link AGQuery#setStreamResults(boolean)}.
+     * <p>
+     * Streaming results are read by a background thread, a bounded number
+     * of results ahead of the application (see {@link AGQuery#setPrefetchSize(int)}),
+     * and hold an HTTP connection until they are exhausted or closed.
+     * </p>
      *
      * @param streamResults new setting for the streamResults parameter
      * @see #isStreamResults()
      */
     public void setStreamResults(boolean streamResults) {
         this.streamResults = streamResults;
+        this.streamTupleResults = streamResults;
+    }
+
+    /**
+     * If true, stream the results of tuple queries prepared on this connection.
+     * Default is true, unless the {@value #PROP_STREAM_TUPLE_RESULTS}
+     * system property is set to false.
+     *
+     * @return the default of {@link AGQuery#isStreamResults()} for tuple queries
+     * @see #setStreamTupleResults(boolean)
+     */
+    public boolean isStreamTupleResults() {
+        return streamTupleResults;
+    }
+
+    /**
+     * Set to false to collect the results of tuple queries prepared
+     * afterwards before {@link AGTupleQuery#evaluate()} returns.
+     * Each query can override this setting with
+     * {@link AGQuery#setStreamResults(boolean)}.
+     *
+     * @param streamTupleResults new setting for the streamTupleResults parameter
+     * @see #isStreamTupleResults()
+     */
+    public void setStreamTupleResults(boolean streamTupleResults) {
+        this.streamTupleResults = streamTupleResults;
+    }
+
+    /**
+     * If true, queries prepared on this connection can be cancelled on
+     * the server, see {@link AGQuery#setCancellable(boolean)}.
+     * Default is false, unless the {@value #PROP_CANCEL_QUERIES}
+     * system property is set to true.
+     *
+     * @return the default of {@link AGQuery#isCancellable()}
+     * @see #setCancelQueries(boolean)
+     */
+    public boolean isCancelQueries() {
+        return cancelQueries;
+    }
+
+    /**
+     * Set to true to make queries prepared afterwards cancellable on the
+     * server. Each query can override this setting with
+     * {@link AGQuery#setCancellable(boolean)}.
+     * <p>
+     * Only enable this for servers that support cancelling queries by ID,
+     * see {@link AGHttpRepoClient#cancelQuery(String)}: other servers
+     * may reject the queries or the cancel requests.
+     * </p>
+     *
+     * @param cancelQueries new setting for the cancelQueries parameter
+     * @see #isCancelQueries()
+     */
+    public void setCancelQueries(boolean cancelQueries) {
+        this.cancelQueries = cancelQueries;
     }
 
     @Override
@@ -1216,6 +1436,35 @@ public class AGRepositoryConnection
                         .iterator()));
     }
 
+    /**
+     * Creates a RepositoryResult that pulls statements from a streaming result,
+     * read ahead in the background by an {@link AGPrefetchIteration}.
+     * Closing the RepositoryResult releases the HTTP connection.
+     */
+    private RepositoryResult<Statement> createRepositoryResult(AGRDFStreamer handler)
+            throws RepositoryException {
+        GraphQueryResult result;
+        try {
+            result = AGPrefetchIteration.prefetch(handler.getResult(),
+                    AGPrefetchIteration.DEFAULT_PREFETCH_SIZE, handler);
+        } catch (QueryEvaluationException e) {
+            throw new RepositoryException(e);
+        }
+        return new RepositoryResult<>(
+                new ExceptionConvertingIteration<Statement, RepositoryException>(result) {
+                    @Override
+                    protected RepositoryException convert(Exception e) {
+                        return new RepositoryException(e);
+                    }
+                });
+    }
+
+    private AGRDFStreamer createStatementStreamer() {
+        RDFFormat format = AGRDFStreamer.getStreamingFormat(
+                getHttpRepoClientInternal().getPreferredRDFFormat());
+        return AGRDFStreamer.createStreamer(format, vf);
+    }
+
     public String getNamespace(String prefix) throws RepositoryException {
         return prepareHttpRepoClient().getNamespace(prefix);
     }
@@ -1247,9 +1496,25 @@ public class AGRepositoryConnection
         }
     }
 
+    /**
+     * Returns statements matching the given pattern.
+     * <p>
+     * If {@link #isStreamResults() streamResults} is enabled, the
+     * statements are parsed lazily from the http response and the
+     * result holds on to the HTTP connection until it is closed or
+     * exhausted. Otherwise all matching statements are collected
+     * in memory before this method returns.
+     * </p>
+     */
     public RepositoryResult<Statement> getStatements(Resource subj, IRI pred,
                                                      Value obj, boolean includeInferred, Resource... contexts)
             throws RepositoryException {
+        if (isStreamResults()) {
+            AGRDFStreamer handler = createStatementStreamer();
+            prepareHttpRepoClient().getStatements(subj, pred, obj, Boolean.toString(includeInferred),
+                    handler, contexts);
+            return createRepositoryResult(handler);
+        }
         try {
             StatementCollector collector = new StatementCollector();
             exportStatements(subj, pred, obj, includeInferred, collector,
@@ -1496,6 +1761,11 @@ public class AGRepositoryConnection
      */
     public RepositoryResult<Statement> getStatements(String... ids)
             throws RepositoryException {
+        if (isStreamResults()) {
+            AGRDFStreamer handler = createStatementStreamer();
+            prepareHttpRepoClient().getStatements(handler, ids);
+            return createRepositoryResult(handler);
+        }
         try {
             StatementCollector collector = new StatementCollector();
             exportStatements(collector, ids);
@@ -1687,9 +1957,6 @@ public class AGRepositoryConnection
         // throw MalformedQueryException, etc.
         AGTupleQuery q = new AGTupleQuery(this, ql, queryString, baseURI);
         q.prepare();
-        if (streamResults) {
-            q = new AGStreamTupleQuery(q);
-        }
         return q;
     }
 
@@ -2686,6 +2953,58 @@ public class AGRepositoryConnection
         prepareHttpRepoClient().disableTripleCache();
     }
 
+    /**
+     * Gets the size above which uploaded request bodies are compressed.
+     *
+     * @return the current threshold in bytes, negative if compression is disabled
+     * @throws RepositoryException if there is an error with this request
+     * @see AGHttpRepoClient#getUploadCompressionThreshold()
+     */
+    public long getUploadCompressionThreshold() throws RepositoryException {
+        return prepareHttpRepoClient().getUploadCompressionThreshold();
+    }
+
+    /**
+     * Sets the size above which uploaded request bodies are compressed with gzip.
+     *
+     * @param threshold {@link AGHttpRepoClient#UPLOAD_COMPRESSION_NEVER},
+     *                  {@link AGHttpRepoClient#UPLOAD_COMPRESSION_ALWAYS}
+     *                  or a size in bytes
+     * @throws RepositoryException if there is an error with this request
+     * @see AGHttpRepoClient#setUploadCompressionThreshold(long)
+     */
+    public void setUploadCompressionThreshold(long threshold) throws RepositoryException {
+        prepareHttpRepoClient().setUploadCompressionThreshold(threshold);
+    }
+
+    /**
+     * Creates a loader that uploads statements added from any number of
+     * threads with several requests in flight.
+     * <p>
+     * The loader uses this connection, which must stay open until the
+     * loader is closed.
+     * </p>
+     *
+     * @param config the loader settings
+     * @return a new loader, to be closed when all statements are added
+     * @throws RepositoryException if there is an error with this request
+     * @see AGBulkLoader
+     */
+    public AGBulkLoader createBulkLoader(BulkLoadConfig config) throws RepositoryException {
+        return new AGBulkLoader(this, config);
+    }
+
+    /**
+     * Creates a loader with the default settings.
+     *
+     * @return a new loader, to be closed when all statements are added
+     * @throws RepositoryException if there is an error with this request
+     * @see #createBulkLoader(BulkLoadConfig)
+     */
+    public AGBulkLoader createBulkLoader() throws RepositoryException {
+        return createBulkLoader(BulkLoadConfig.create());
+    }
+
     /**
      * Gets the commit period used within large add/load operations.
      *
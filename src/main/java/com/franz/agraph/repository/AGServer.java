@@ -6,6 +6,7 @@ package com.franz.agraph.repository;
 
 import com.franz.agraph.http.AGHTTPClient;
 import com.franz.agraph.http.AGProtocol;
+import com.franz.agraph.http.AGSessionHeartbeat;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGJSONArrayHandler;
 import com.franz.agraph.http.handler.AGRawStreamer;
@@ -26,7 +27,10 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -63,6 +67,9 @@ public class AGServer implements Closeable {
     // A default, global executor service used to create pinger threads.
     // Created lazily in getSharedExecutorService().
     private static ScheduledThreadPoolExecutor sharedExecutor;
+    // Keeps alive the sessions of connections using the shared executor,
+    // whatever their server. Created with the shared executor.
+    private static AGSessionHeartbeat sharedHeartbeat;
 
     private final String serverURL;
     private final String user;
@@ -70,6 +77,8 @@ public class AGServer implements Closeable {
     private final AGHTTPClient httpClient;
     private final AGCatalog rootCatalog;
     private ScheduledExecutorService executor = getSharedExecutor();
+    // Heartbeats of the other executors used by connections of this server.
+    private final Map<ScheduledExecutorService, AGSessionHeartbeat> heartbeats = new HashMap<>();
     private AGServerVersion cachedServerVersion;
 
     /**
@@ -201,10 +210,15 @@ public class AGServer implements Closeable {
             });
             // Note this requires Java 7
             sharedExecutor.setRemoveOnCancelPolicy(true);
+            sharedHeartbeat = new AGSessionHeartbeat(sharedExecutor);
         }
         return sharedExecutor;
     }
 
+    private static synchronized AGSessionHeartbeat getSharedHeartbeat(ScheduledExecutorService executor) {
+        return executor == sharedExecutor ? sharedHeartbeat : null;
+    }
+
     /**
      * Creates or opens a repository in the specified catalog.
      *
@@ -1026,6 +1040,40 @@ public class AGServer implements Closeable {
         return executor;
     }
 
+    /**
+     * Gets the heartbeat keeping alive the dedicated sessions of
+     * connections that use the {@link #getExecutor() executor}
+     * of this server. It can be used to monitor the sessions.
+     *
+     * @return A heartbeat instance, shared by all servers using the
+     * default shared executor
+     */
+    public AGSessionHeartbeat getSessionHeartbeat() {
+        return getSessionHeartbeat(executor);
+    }
+
+    /**
+     * Gets the heartbeat keeping alive the dedicated sessions of
+     * connections of this server that use an executor.
+     * <p>
+     * The heartbeat of an executor is dropped once the executor
+     * has been shut down.
+     * </p>
+     *
+     * @param executor An executor instance
+     * @return A heartbeat instance running on the executor
+     */
+    public AGSessionHeartbeat getSessionHeartbeat(ScheduledExecutorService executor) {
+        final AGSessionHeartbeat shared = getSharedHeartbeat(executor);
+        if (shared != null) {
+            return shared;
+        }
+        synchronized (heartbeats) {
+            heartbeats.keySet().removeIf(ExecutorService::isShutdown);
+            return heartbeats.computeIfAbsent(executor, AGSessionHeartbeat::new);
+        }
+    }
+
     /**
      * Changes the default executor object that will be used by connections
      * to schedule maintenance operations.
@@ -5,10 +5,13 @@
 package com.franz.agraph.repository;
 
 import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.http.handler.AGAbortingIteration;
 import com.franz.agraph.http.handler.AGDownloadHandler;
 import com.franz.agraph.http.handler.AGLongHandler;
+import com.franz.agraph.http.handler.AGPrefetchIteration;
 import com.franz.agraph.http.handler.AGRawStreamer;
 import com.franz.agraph.http.handler.AGTQRHandler;
+import com.franz.agraph.http.handler.AGTQRStreamer;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
@@ -29,13 +32,38 @@ public class AGTupleQuery extends AGQuery implements TupleQuery {
     public AGTupleQuery(AGRepositoryConnection con, QueryLanguage ql,
                         String queryString, String baseURI) {
         super(con, ql, queryString, baseURI);
+        this.streamResults = con.isStreamTupleResults();
     }
 
+    /**
+     * Evaluates the query and returns a TupleQueryResult.
+     * <p>
+     * If {@link #isStreamResults() streamResults} is enabled (the default),
+     * solutions are parsed from the http response while the application
+     * consumes them, and the result must be exhausted or closed to release
+     * the HTTP connection.
+     * Otherwise all solutions are collected before this method returns.
+     * </p>
+     * <p>
+     * If the connection has a {@link AGRepositoryConnection#getQueryResultCache()
+     * query result cache}, the result may come from the cache.
+     * </p>
+     */
     public TupleQueryResult evaluate() throws QueryEvaluationException {
+        final AGQueryResultCache cache = httpCon.getQueryResultCacheForQuery();
+        if (cache != null) {
+            return cache.tuples(this, httpCon.prepareHttpRepoClient().getRepositoryRoot(), this::evaluateUncached);
+        }
+        return evaluateUncached();
+    }
+
+    private TupleQueryResult evaluateUncached() throws QueryEvaluationException {
+        if (streamResults) {
+            return evaluateStreaming();
+        }
         try {
-            // TODO: make this efficient for large result sets
             TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
-            evaluate(builder);
+            evaluateUncached(builder);
             return builder.getQueryResult();
         } catch (TupleQueryResultHandlerException e) {
             // Found a bug in TupleQueryResultBuilder?
@@ -43,8 +71,44 @@ public class AGTupleQuery extends AGQuery implements TupleQuery {
         }
     }
 
+    /**
+     * Evaluates the query and returns a result that is read from
+     * the http response as solutions are requested.
+     * <p>
+     * Unless {@link #getPrefetchSize() prefetchSize} is zero, a background
+     * reader parses up to prefetchSize solutions ahead of the application.
+     * Closing the result before it is exhausted aborts the request, after
+     * cancelling the query on the server if it is {@link #setCancellable(boolean) cancellable}.
+     * </p>
+     *
+     * @return a streaming result; it MUST be exhausted or closed to release the connection
+     * @throws QueryEvaluationException if there is an error while evaluating query
+     */
+    public TupleQueryResult evaluateStreaming() throws QueryEvaluationException {
+        AGTQRStreamer handler = AGTQRStreamer.createStreamer(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), httpCon.getValueFactory());
+        evaluate(handler);
+        TupleQueryResult result = handler.getResult();
+        Runnable abort = cancelAndAbort(handler::abort);
+        if (prefetchSize > 0) {
+            result = AGPrefetchIteration.prefetch(result, prefetchSize, abort);
+        } else {
+            result = AGAbortingIteration.abortOnClose(result, abort);
+        }
+        return result;
+    }
+
     public void evaluate(TupleQueryResultHandler handler)
             throws QueryEvaluationException, TupleQueryResultHandlerException {
+        final AGQueryResultCache cache = httpCon.getQueryResultCacheForQuery();
+        if (cache != null) {
+            cache.tuples(this, httpCon.prepareHttpRepoClient().getRepositoryRoot(), handler, this::evaluateUncached);
+        } else {
+            evaluateUncached(handler);
+        }
+    }
+
+    private void evaluateUncached(TupleQueryResultHandler handler)
+            throws QueryEvaluationException, TupleQueryResultHandlerException {
         evaluate(new AGTQRHandler(httpCon.prepareHttpRepoClient().getPreferredTQRFormat(), handler, httpCon.getValueFactory(), httpCon.prepareHttpRepoClient().getAllowExternalBlankNodeIds()));
     }
 
@@ -0,0 +1,338 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the values created while parsing query results,
+ * so that the IRIs and short literals that appear in many rows are
+ * represented by a single object.
+ * <p>
+ * Lookups are keyed on the characters of a value as they appear in the
+ * response, and do not allocate: a parser can look up a value directly
+ * in its input buffer and only create a String and a Value on a miss.
+ * The cache is a fixed-size table indexed by the hash of the key. A new
+ * value replaces the value in its slot, so frequently seen values stay
+ * cached while one-off values come and go. The cache may be used by any
+ * number of threads and shared between value factories.
+ * </p>
+ * <p>
+ * Caching is off by default. Either set a cache on a value factory:
+ * </p>
+ * <pre>{@code
+ * conn.getValueFactory().setValueCache(new AGValueCache(4096));
+ * }</pre>
+ * <p>
+ * or give all value factories a shared cache of the specified size with
+ * <code>-Dcom.franz.agraph.repository.valueCacheSize=4096</code>.
+ * </p>
+ *
+ * @see AGValueFactory#setValueCache(AGValueCache)
+ */
+public final class AGValueCache {
+
+    /**
+     * Name of the system property holding the size of the cache shared by
+     * all value factories, 0 (the default) for no cache.
+     */
+    public static final String PROP_VALUE_CACHE_SIZE = "com.franz.agraph.repository.valueCacheSize";
+
+    /**
+     * Default length of the longest literal label cached.
+     */
+    public static final int DEFAULT_MAX_LITERAL_LENGTH = 64;
+
+    /**
+     * Approximate heap size of a value object and its String, not counting
+     * the characters, used to estimate the memory saved by cache hits.
+     */
+    private static final int VALUE_OVERHEAD_BYTES = 64;
+
+    // Kinds of keys, so that the same characters can name different values.
+    private static final int TERM = 0;
+    private static final int IRI_STRING = 1;
+    private static final int LITERAL_LABEL = 2;
+
+    private static AGValueCache shared;
+    private static boolean sharedInitialized;
+
+    private final Entry[] table;
+    private final int mask;
+    private final int maxLiteralLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * Creates a cache caching literals of up to
+     * {@link #DEFAULT_MAX_LITERAL_LENGTH} characters.
+     *
+     * @param capacity the number of values cached, rounded up to a power of two
+     */
+    public AGValueCache(int capacity) {
+        this(capacity, DEFAULT_MAX_LITERAL_LENGTH);
+    }
+
+    /**
+     * @param capacity         the number of values cached, rounded up to a power of two
+     * @param maxLiteralLength length of the longest literal label cached
+     */
+    public AGValueCache(int capacity, int maxLiteralLength) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid value cache capacity: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity
+                ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.table = new Entry[size];
+        this.mask = size - 1;
+        this.maxLiteralLength = maxLiteralLength;
+    }
+
+    /**
+     * Returns the cache shared by value factories that have not been given
+     * one, sized by the {@link #PROP_VALUE_CACHE_SIZE} system property.
+     *
+     * @return the shared cache, or null if the property is not set
+     */
+    public static synchronized AGValueCache getShared() {
+        if (!sharedInitialized) {
+            final int size = Integer.getInteger(PROP_VALUE_CACHE_SIZE, 0);
+            shared = size > 0 ? new AGValueCache(size) : null;
+            sharedInitialized = true;
+        }
+        return shared;
+    }
+
+    /**
+     * @return the number of values the cache can hold
+     */
+    public int getCapacity() {
+        return table.length;
+    }
+
+    /**
+     * @return length of the longest literal label cached
+     */
+    public int getMaxLiteralLength() {
+        return maxLiteralLength;
+    }
+
+    /**
+     * Looks up a value by its N-Triples form, as it appears in
+     * the TSV and N-Triples formats (<code>&lt;iri&gt;</code>,
+     * <code>"label"@lang</code>, <code>"label"^^&lt;iri&gt;</code>,
+     * and the unquoted numbers of TSV).
+     *
+     * @param chars characters holding the term
+     * @param start index of the first character of the term
+     * @param end   index after the last character of the term
+     * @return the cached value, or null
+     */
+    public Value getTerm(char[] chars, int start, int end) {
+        return get(TERM, chars, start, end);
+    }
+
+    /**
+     * Caches a value under its N-Triples form. Blank nodes and long
+     * literals are not cached.
+     *
+     * @param chars characters holding the term
+     * @param start index of the first character of the term
+     * @param end   index after the last character of the term
+     * @param value the value parsed from the term
+     */
+    public void putTerm(char[] chars, int start, int end, Value value) {
+        if (value instanceof IRI || value instanceof Literal
+                && value.stringValue().length() <= maxLiteralLength) {
+            put(TERM, new String(chars, start, end - start), value);
+        }
+    }
+
+    /**
+     * @param iri the string form of an IRI
+     * @return the cached IRI, or null
+     */
+    public IRI getIRI(String iri) {
+        return (IRI) get(IRI_STRING, iri);
+    }
+
+    /**
+     * Looks up an IRI by the two parts of its string form, as binary
+     * results send it, without concatenating them.
+     *
+     * @param namespace the start of the IRI
+     * @param localName the rest of the IRI
+     * @return the cached IRI, or null
+     */
+    public IRI getIRI(String namespace, String localName) {
+        int h = namespace.hashCode();
+        for (int i = 0; i < localName.length(); i++) {
+            h = 31 * h + localName.charAt(i);
+        }
+        final Entry entry = table[index(h)];
+        if (entry != null && entry.hash == h && entry.kind == IRI_STRING
+                && entry.key.length() == namespace.length() + localName.length()
+                && entry.key.startsWith(namespace) && entry.key.endsWith(localName)) {
+            hit(entry);
+            return (IRI) entry.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param iri the IRI to cache under its string form
+     */
+    public void putIRI(IRI iri) {
+        put(IRI_STRING, iri.stringValue(), iri);
+    }
+
+    /**
+     * @param label the label of a literal with datatype xsd:string
+     * @return the cached literal, or null
+     */
+    public Literal getLiteral(String label) {
+        return label.length() <= maxLiteralLength ? (Literal) get(LITERAL_LABEL, label) : null;
+    }
+
+    /**
+     * @param literal the literal with datatype xsd:string to cache under its label
+     */
+    public void putLiteral(Literal literal) {
+        final String label = literal.getLabel();
+        if (label.length() <= maxLiteralLength) {
+            put(LITERAL_LABEL, label, literal);
+        }
+    }
+
+    /**
+     * Removes all values from the cache. Statistics are kept.
+     */
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = null;
+        }
+    }
+
+    /**
+     * @return the number of lookups that found a value
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that found no value
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found a value, 0 if none was made
+     */
+    public double getHitRate() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Estimates the heap not allocated thanks to cache hits. Each hit counts
+     * an approximate object overhead plus two bytes per character.
+     *
+     * @return the estimated number of bytes saved
+     */
+    public long getEstimatedBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    private Value get(int kind, char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        final Entry entry = table[index(h)];
+        if (entry != null && entry.hash == h && entry.kind == kind && entry.matches(chars, start, end)) {
+            hit(entry);
+            return entry.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    private Value get(int kind, String key) {
+        final int h = key.hashCode();
+        final Entry entry = table[index(h)];
+        if (entry != null && entry.hash == h && entry.kind == kind && entry.key.equals(key)) {
+            hit(entry);
+            return entry.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void put(int kind, String key, Value value) {
+        final int h = key.hashCode();
+        table[index(h)] = new Entry(kind, key, h, value);
+    }
+
+    private void hit(Entry entry) {
+        hits.increment();
+        bytesSaved.add(VALUE_OVERHEAD_BYTES + 2L * entry.key.length());
+    }
+
+    /**
+     * The hash of a key is the hash of its characters as a String, whatever
+     * its kind, so that char ranges and Strings can be looked up alike.
+     */
+    private int index(int h) {
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    @Override
+    public String toString() {
+        return "{AGValueCache capacity=" + getCapacity()
+                + " hits=" + getHits()
+                + " misses=" + getMisses()
+                + " saved=" + getEstimatedBytesSaved()
+                + "}";
+    }
+
+    /**
+     * Immutable, so entries can be published through the
+     * unsynchronized table.
+     */
+    private static final class Entry {
+        private final int kind;
+        private final String key;
+        private final int hash;
+        private final Value value;
+
+        Entry(int kind, String key, int hash, Value value) {
+            this.kind = kind;
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        boolean matches(char[] chars, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
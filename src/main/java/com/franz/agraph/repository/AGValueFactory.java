@@ -11,12 +11,16 @@ import org.apache.jena.graph.Node;
 import org.apache.jena.vocabulary.RDF;
 import org.eclipse.rdf4j.model.BNode;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 /**
@@ -37,20 +41,20 @@ public class AGValueFactory extends SimpleValueFactory {
     private final AGRepository repository;
     private final AGRepositoryConnection conn;
     public String PREFIX_FOR_EXTERNAL_BNODES = "urn:x-bnode:";
-    private int blankNodesPerRequest = Integer.parseInt(System.getProperty("com.franz.agraph.repository.blankNodesPerRequest", "100"));
-    private String[] blankNodeIds;
-    private int index = -1;
+    private final IdBlockAllocator blankNodeIds;
+    private final Map<String, IdBlockAllocator> encodedIds = new ConcurrentHashMap<>();
+    private volatile AGValueCache valueCache = AGValueCache.getShared();
 
     public AGValueFactory(AGRepository repository) {
-        super();
-        this.repository = repository;
-        this.conn = null;
+        this(repository, null);
     }
 
     public AGValueFactory(AGRepository repository, AGRepositoryConnection conn) {
         super();
         this.repository = repository;
         this.conn = conn;
+        this.blankNodeIds = new IdBlockAllocator(this::requestBlankNodeIds, this::getRefillExecutor,
+                Integer.parseInt(System.getProperty("com.franz.agraph.repository.blankNodesPerRequest", "100")));
     }
 
     public AGRepository getRepository() {
@@ -61,35 +65,41 @@ public class AGValueFactory extends SimpleValueFactory {
         return getRepository().getHTTPClient();
     }
 
-    private void requestBlankNodeIds() {
-        try {
-            if (conn == null) {
-                blankNodeIds = getHTTPClient().getBlankNodes(getRepository().getRepositoryURL(), blankNodesPerRequest);
-            } else {
-                blankNodeIds = conn.prepareHttpRepoClient().getBlankNodes(blankNodesPerRequest);
-            }
-            index = blankNodeIds.length - 1;
-        } catch (AGHttpException e) {
-            // TODO: server's out of blank nodes?
-            throw new RuntimeException(e);
+    private String[] requestBlankNodeIds(int amount) throws AGHttpException {
+        if (conn == null) {
+            return getHTTPClient().getBlankNodes(getRepository().getRepositoryURL(), amount);
+        } else {
+            return conn.prepareHttpRepoClient().getBlankNodes(amount);
         }
     }
 
     /**
-     * Gets the number of blank nodes fetched per request.
+     * Ids are fetched ahead of time on the executor of the server,
+     * which also runs the session heartbeat.
+     */
+    private Executor getRefillExecutor() {
+        return repository == null ? null : repository.getServer().getExecutor();
+    }
+
+    /**
+     * Gets the smallest number of blank nodes fetched per request.
      *
-     * @return int  the number of blank nodes fetched per request
+     * @return int  the smallest number of blank nodes fetched per request
      */
     public int getBlankNodesPerRequest() {
-        return blankNodesPerRequest;
+        return blankNodeIds.getMinBlockSize();
     }
 
     /**
-     * Sets the number of blank nodes to fetch per request.
+     * Sets the smallest number of blank nodes to fetch per request.
      * <p>
      * This can be used to control the number and frequency of
      * HTTP requests made when automatically obtaining new sets
-     * of blank node ids from the server.
+     * of blank node ids from the server. The first request fetches
+     * this amount; later requests fetch enough ids to last about
+     * a second at the rate blank nodes are being created, up to
+     * 10000. New ids are fetched in the background when three quarters
+     * of the current set have been used.
      * <p>
      * Defaults to the value of System property
      * com.franz.agraph.repository.blankNodesPerRequest
@@ -98,26 +108,32 @@ public class AGValueFactory extends SimpleValueFactory {
      * @param amount a positive integer
      */
     public void setBlankNodesPerRequest(int amount) {
-        blankNodesPerRequest = amount;
+        blankNodeIds.setMinBlockSize(amount);
     }
 
     /**
-     * Returns the array of fetched blank node ids
+     * Returns the array of fetched blank node ids currently in use.
      * <p>
      * Primarily for testing purposes, not for use in apps.
      *
      * @return the array of fetched blank node ids
      */
     public String[] getBlankNodeIds() {
-        return blankNodeIds;
+        return blankNodeIds.getCurrentBlock();
     }
 
+    /**
+     * Returns a new AG-allocated blank node id. Safe to call from
+     * several threads at once.
+     */
     String getNextBNodeId() {
-        if (index == -1) {
-            requestBlankNodeIds();
+        final String id;
+        try {
+            id = blankNodeIds.next();
+        } catch (AGHttpException e) {
+            // TODO: server's out of blank nodes?
+            throw new RuntimeException(e);
         }
-        String id = blankNodeIds[index];
-        index--;
         // TODO: parse using NTriplesUtil here to create BNode?
         return id.substring(2);   // strip off leading '_:';
     }
@@ -165,6 +181,85 @@ public class AGValueFactory extends SimpleValueFactory {
         }
     }
 
+    /**
+     * Returns the cache of values created by this factory.
+     *
+     * @return the cache, or null if values are not cached
+     * @see #setValueCache(AGValueCache)
+     */
+    public AGValueCache getValueCache() {
+        return valueCache;
+    }
+
+    /**
+     * Sets the cache of IRIs and short literals created by this factory,
+     * mostly while parsing query results. A cache can be shared by the
+     * factories of several connections.
+     * <p>
+     * Defaults to the cache sized by the System property
+     * com.franz.agraph.repository.valueCacheSize, or to none
+     * if that property has not been set.
+     *
+     * @param valueCache the cache, or null not to cache values
+     * @see AGValueCache#PROP_VALUE_CACHE_SIZE
+     */
+    public void setValueCache(AGValueCache valueCache) {
+        this.valueCache = valueCache;
+    }
+
+    /**
+     * Returns an IRI, from the value cache if there is one.
+     */
+    @Override
+    public IRI createIRI(String iri) {
+        final AGValueCache cache = valueCache;
+        if (cache == null) {
+            return super.createIRI(iri);
+        }
+        IRI value = cache.getIRI(iri);
+        if (value == null) {
+            value = super.createIRI(iri);
+            cache.putIRI(value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns an IRI, from the value cache if there is one. Binary
+     * results send IRIs this way, as a namespace and a local name.
+     */
+    @Override
+    public IRI createIRI(String namespace, String localName) {
+        final AGValueCache cache = valueCache;
+        if (cache == null) {
+            return super.createIRI(namespace, localName);
+        }
+        IRI value = cache.getIRI(namespace, localName);
+        if (value == null) {
+            value = super.createIRI(namespace + localName);
+            cache.putIRI(value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns a literal of type xsd:string, from the value cache
+     * if there is one and the label is short.
+     */
+    @Override
+    public Literal createLiteral(String label) {
+        final AGValueCache cache = valueCache;
+        if (cache == null) {
+            return super.createLiteral(label);
+        }
+        Literal value = cache.getLiteral(label);
+        if (value == null) {
+            value = super.createLiteral(label);
+            cache.putLiteral(value);
+        }
+        return value;
+    }
+
     /**
      * Creates an OpenRDF Value from a concrete Jena Node.
      *
@@ -277,6 +372,10 @@ public class AGValueFactory extends SimpleValueFactory {
      * involve this namespace, however.</p>
      * <p>If amount cannot be generated, up to amount URIs will be returned,
      * or an exception will be thrown if none are available.</p>
+     * <p>Like blank node ids, the ids of a namespace are fetched from the
+     * server in blocks, ahead of time, so that repeated calls seldom wait
+     * for the server. Blocks start at amount ids and at most double in size
+     * each time, so that few ids are wasted if the factory is discarded.</p>
      *
      * @param namespace encodable namespace from which the URIs will be generated
      * @param amount    the number of URIs to generate
@@ -289,7 +388,10 @@ public class AGValueFactory extends SimpleValueFactory {
         String[] uri_strs;
         IRI[] uris;
         try {
-            uri_strs = getHTTPClient().generateURIs(getRepository().getRepositoryURL(), namespace, amount);
+            uri_strs = encodedIds.computeIfAbsent(namespace, ns -> new IdBlockAllocator(
+                    n -> getHTTPClient().generateURIs(getRepository().getRepositoryURL(), ns, n),
+                    this::getRefillExecutor, Math.max(1, amount)))
+                    .next(amount);
             uris = new IRI[uri_strs.length];
             for (int i = 0; i < uri_strs.length; i++) {
                 uris[i] = NTriplesUtil.parseURI(uri_strs[i], this);
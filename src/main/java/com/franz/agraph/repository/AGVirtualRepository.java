@@ -31,6 +31,7 @@ public class AGVirtualRepository extends AbstractRepository implements AGAbstrac
     private final AGServer server;
     private final String spec;
     private final AGValueFactory vf;
+    private volatile AGQueryResultCache queryResultCache;
 
     /**
      * Applications normally create a virtual repository via an AGServer instance.
@@ -123,6 +124,26 @@ public class AGVirtualRepository extends AbstractRepository implements AGAbstrac
         return vf;
     }
 
+    /**
+     * @return the cache of query results used by the connections
+     *         created from this repository, or null (the default)
+     */
+    @Override
+    public AGQueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Sets the cache of query results used by the connections created
+     * from this repository from now on.
+     *
+     * @param queryResultCache the cache, or null not to cache query results
+     * @see AGRepository#setQueryResultCache(AGQueryResultCache)
+     */
+    public void setQueryResultCache(AGQueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
     public AGRepositoryConnection getConnection(final ScheduledExecutorService executor)
             throws RepositoryException {
         AGHTTPClient client = server.getHTTPClient();
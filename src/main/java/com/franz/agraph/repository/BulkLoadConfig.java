@@ -0,0 +1,262 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Provides configuration for a {@link AGBulkLoader}.
+ *
+ * Config objects are immutable. New instances can be created
+ * using a fluid interface:
+ *
+ * <pre>{@code
+ *   BulkLoadConfig.create().batchSize(50000).maxInFlightRequests(8);
+ * }</pre>
+ *
+ * The config stores values for a set of parameters:
+ * <dl>
+ *     <dt>batchSize (int, default: 10000)</dt>
+ *     <dd>Number of statements sent in each upload request.</dd>
+ *     <dt>maxInFlightRequests (int, default: 4)</dt>
+ *     <dd>Maximum number of batches being encoded or uploaded at the same time.</dd>
+ *     <dt>maxInFlightBytes (long, default: 64MB)</dt>
+ *     <dd>Producers block while the encoded batches that have not been
+ *         acknowledged by the server take more than this many bytes.</dd>
+ *     <dt>commitPeriod (int, default: -1)</dt>
+ *     <dd>Commit after this many statements within each upload, see
+ *         {@link AGRepositoryConnection#setUploadCommitPeriod(int)}.
+ *         A negative value uses the period of the connection.</dd>
+ *     <dt>executor (ExecutorService, default: null)</dt>
+ *     <dd>Runs the encoding and upload of batches. If null, the loader
+ *         creates a pool of maxInFlightRequests threads and shuts it
+ *         down when closed.</dd>
+ *     <dt>chunkSize (int, default: 32MB)</dt>
+ *     <dd>Approximate number of bytes of a file sent in each request
+ *         by {@link AGRepositoryConnection#addChunked}.</dd>
+ *     <dt>gzipChunks (boolean, default: false)</dt>
+ *     <dd>Should file chunks be compressed before they are sent?</dd>
+ *     <dt>progressListener (Consumer, default: null)</dt>
+ *     <dd>Called from the worker threads each time a chunk of a file
+ *         has been loaded.</dd>
+ * </dl>
+ *
+ * @see AGRepositoryConnection#createBulkLoader(BulkLoadConfig)
+ * @see AGRepositoryConnection#addChunked(java.io.File, String, org.eclipse.rdf4j.rio.RDFFormat, BulkLoadConfig, org.eclipse.rdf4j.model.Resource...)
+ */
+public final class BulkLoadConfig {
+    private int batchSize;
+    private int maxInFlightRequests;
+    private long maxInFlightBytes;
+    private int commitPeriod;
+    private ExecutorService executor;
+    private int chunkSize;
+    private boolean gzipChunks;
+    private Consumer<AGLoadProgress> progressListener;
+
+    /**
+     * Creates a fresh config with default values.
+     *
+     * @return a new config object.
+     */
+    public static BulkLoadConfig create() {
+        return new BulkLoadConfig();
+    }
+
+    /**
+     * Creates a fresh config with default values.
+     */
+    private BulkLoadConfig() {
+        batchSize = 10000;
+        maxInFlightRequests = 4;
+        maxInFlightBytes = 64L * 1024 * 1024;
+        commitPeriod = -1;
+        executor = null;
+        chunkSize = 32 * 1024 * 1024;
+        gzipChunks = false;
+        progressListener = null;
+    }
+
+    /**
+     * Clones another config object.
+     *
+     * @param other Object to be cloned.
+     */
+    private BulkLoadConfig(final BulkLoadConfig other) {
+        batchSize = other.batchSize;
+        maxInFlightRequests = other.maxInFlightRequests;
+        maxInFlightBytes = other.maxInFlightBytes;
+        commitPeriod = other.commitPeriod;
+        executor = other.executor;
+        chunkSize = other.chunkSize;
+        gzipChunks = other.gzipChunks;
+        progressListener = other.progressListener;
+    }
+
+    /**
+     * @return Value of the batchSize parameter.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return Value of the maxInFlightRequests parameter.
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * @return Value of the maxInFlightBytes parameter.
+     */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * @return Value of the commitPeriod parameter.
+     */
+    public int getCommitPeriod() {
+        return commitPeriod;
+    }
+
+    /**
+     * @return Value of the executor parameter, may be null.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return Value of the chunkSize parameter.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return Value of the gzipChunks parameter.
+     */
+    public boolean getGzipChunks() {
+        return gzipChunks;
+    }
+
+    /**
+     * @return Value of the progressListener parameter, may be null.
+     */
+    public Consumer<AGLoadProgress> getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Creates a config with a modified batchSize value.
+     *
+     * @param batchSize New value, must be positive.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig batchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.batchSize = batchSize;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified maxInFlightRequests value.
+     *
+     * @param maxInFlightRequests New value, must be positive.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig maxInFlightRequests(final int maxInFlightRequests) {
+        if (maxInFlightRequests <= 0) {
+            throw new IllegalArgumentException("maxInFlightRequests must be positive: " + maxInFlightRequests);
+        }
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.maxInFlightRequests = maxInFlightRequests;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified maxInFlightBytes value.
+     *
+     * @param maxInFlightBytes New value, must be positive.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig maxInFlightBytes(final long maxInFlightBytes) {
+        if (maxInFlightBytes <= 0) {
+            throw new IllegalArgumentException("maxInFlightBytes must be positive: " + maxInFlightBytes);
+        }
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.maxInFlightBytes = maxInFlightBytes;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified commitPeriod value.
+     *
+     * @param commitPeriod New value, a negative value uses the period of the connection.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig commitPeriod(final int commitPeriod) {
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.commitPeriod = commitPeriod;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified executor value.
+     *
+     * @param executor New value, or null for a pool owned by the loader.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig executor(final ExecutorService executor) {
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.executor = executor;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified chunkSize value.
+     *
+     * @param chunkSize New value, must be positive.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig chunkSize(final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.chunkSize = chunkSize;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified gzipChunks value.
+     *
+     * @param gzipChunks New value.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig gzipChunks(final boolean gzipChunks) {
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.gzipChunks = gzipChunks;
+        return result;
+    }
+
+    /**
+     * Creates a config with a modified progressListener value.
+     *
+     * @param progressListener New value, may be null.
+     * @return A fresh config object with the new value.
+     */
+    public BulkLoadConfig progressListener(final Consumer<AGLoadProgress> progressListener) {
+        final BulkLoadConfig result = new BulkLoadConfig(this);
+        result.progressListener = progressListener;
+        return result;
+    }
+}
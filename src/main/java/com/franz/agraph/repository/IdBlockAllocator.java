@@ -0,0 +1,251 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package com.franz.agraph.repository;
+
+import com.franz.agraph.http.exception.AGHttpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hands out server-allocated ids (blank node ids, encoded ids)
+ * from blocks fetched ahead of time.
+ * <p>
+ * Taking an id from the current block is lock-free. When a block
+ * reaches its low-water mark the next block is fetched in the background,
+ * so that callers only wait for the server when ids are consumed faster
+ * than they can be fetched. Block sizes follow the consumption rate: a
+ * block is sized to last about {@link #TARGET_BLOCK_NANOS}, growing or
+ * shrinking by at most a factor of two per block, between the minimum
+ * block size and {@link #MAX_BLOCK_SIZE}.
+ * </p>
+ */
+final class IdBlockAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(IdBlockAllocator.class);
+
+    /**
+     * Largest number of ids fetched in one request.
+     */
+    static final int MAX_BLOCK_SIZE = 10000;
+
+    /**
+     * Time a block should last at the current consumption rate.
+     */
+    static final long TARGET_BLOCK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Fetches a block of ids from the server.
+     */
+    interface Source {
+        /**
+         * @param amount number of ids wanted
+         * @return between one and amount new ids
+         * @throws AGHttpException if no id can be allocated
+         */
+        String[] fetch(int amount) throws AGHttpException;
+    }
+
+    private static final Block EMPTY = new Block(new String[0]);
+
+    private final Source source;
+    private final Supplier<Executor> executor;
+    private final AtomicReference<Block> current = new AtomicReference<>(EMPTY);
+    private final Queue<Block> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    // Serializes the requests to the server, so that a caller running out
+    // of ids waits for a background refill instead of racing it.
+    private final Object fetchLock = new Object();
+    private volatile int minBlockSize;
+    private volatile int blockSize;
+
+    /**
+     * @param source       fetches the ids
+     * @param executor     supplies the executor running background refills;
+     *                     refills are synchronous if it supplies null
+     * @param minBlockSize size of the first block, and smallest block size
+     */
+    IdBlockAllocator(Source source, Supplier<Executor> executor, int minBlockSize) {
+        this.source = source;
+        this.executor = executor;
+        setMinBlockSize(minBlockSize);
+    }
+
+    int getMinBlockSize() {
+        return minBlockSize;
+    }
+
+    /**
+     * Sets the smallest block size and restarts the adaptation from it.
+     */
+    void setMinBlockSize(int minBlockSize) {
+        if (minBlockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + minBlockSize);
+        }
+        this.minBlockSize = minBlockSize;
+        this.blockSize = minBlockSize;
+    }
+
+    /**
+     * @return the size of the next block to fetch
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the ids of the block currently handed out
+     */
+    String[] getCurrentBlock() {
+        return current.get().ids;
+    }
+
+    /**
+     * Returns a new id, fetching one from the server if none is left.
+     *
+     * @return an id not returned before
+     * @throws AGHttpException if the server allocates no more ids
+     */
+    String next() throws AGHttpException {
+        while (true) {
+            final Block block = current.get();
+            final int i = block.next.getAndIncrement();
+            if (i < block.ids.length) {
+                if (i == block.lowWater) {
+                    adapt(block, i + 1);
+                    refillInBackground();
+                }
+                return block.ids[i];
+            }
+            install(block, fetchBlock(1));
+        }
+    }
+
+    /**
+     * Returns up to amount new ids. Fewer ids are returned if the
+     * server runs out of them after at least one has been allocated.
+     *
+     * @param amount number of ids wanted
+     * @return between one and amount ids not returned before
+     * @throws AGHttpException if the server allocates no more ids
+     */
+    String[] next(int amount) throws AGHttpException {
+        final String[] ids = new String[amount];
+        int n = 0;
+        try {
+            for (; n < amount; n++) {
+                final Block block = current.get();
+                final int i = block.next.getAndIncrement();
+                if (i < block.ids.length) {
+                    if (i == block.lowWater) {
+                        adapt(block, i + 1);
+                        refillInBackground();
+                    }
+                    ids[n] = block.ids[i];
+                } else {
+                    install(block, fetchBlock(amount - n));
+                    n--;
+                }
+            }
+        } catch (AGHttpException e) {
+            if (n == 0) {
+                throw e;
+            }
+            final String[] some = new String[n];
+            System.arraycopy(ids, 0, some, 0, n);
+            return some;
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces an exhausted block. If another thread replaced it
+     * first, the new block is kept for later.
+     */
+    private void install(Block exhausted, Block block) {
+        block.start = System.nanoTime();
+        if (!current.compareAndSet(exhausted, block)) {
+            ready.add(block);
+        }
+    }
+
+    /**
+     * Returns a block fetched in the background, or fetches one now.
+     */
+    private Block fetchBlock(int atLeast) throws AGHttpException {
+        Block block = ready.poll();
+        if (block != null) {
+            return block;
+        }
+        synchronized (fetchLock) {
+            block = ready.poll();
+            if (block != null) {
+                return block;
+            }
+            return new Block(source.fetch(Math.max(atLeast, blockSize)));
+        }
+    }
+
+    /**
+     * Sizes the next block from the time taken to consume a block.
+     */
+    private void adapt(Block block, int consumed) {
+        final long elapsed = Math.max(1, System.nanoTime() - block.start);
+        final double perBlock = (double) consumed * TARGET_BLOCK_NANOS / elapsed;
+        final int size = blockSize;
+        final long lower = Math.max(minBlockSize, size / 2);
+        final long upper = Math.max(lower, Math.min(MAX_BLOCK_SIZE, (long) size * 2));
+        blockSize = (int) Math.max(lower, Math.min(upper, (long) Math.ceil(perBlock)));
+    }
+
+    private void refillInBackground() {
+        final Executor refiller = executor.get();
+        if (refiller == null || !ready.isEmpty() || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refiller.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Refill executor shut down", e);
+            refilling.set(false);
+        }
+    }
+
+    private void refill() {
+        try {
+            synchronized (fetchLock) {
+                if (ready.isEmpty()) {
+                    ready.add(new Block(source.fetch(blockSize)));
+                }
+            }
+        } catch (RuntimeException e) {
+            // The next caller running out of ids will get the error.
+            logger.debug("Background id refill failed", e);
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private static final class Block {
+        private final String[] ids;
+        private final AtomicInteger next = new AtomicInteger();
+        // Index of the id whose use triggers the next refill.
+        private final int lowWater;
+        private volatile long start = System.nanoTime();
+
+        Block(String[] ids) {
+            this.ids = ids;
+            this.lowWater = ids.length - Math.max(1, ids.length / 4);
+        }
+    }
+}
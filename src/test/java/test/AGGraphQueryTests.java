@@ -6,6 +6,8 @@ package test;
 
 import com.franz.agraph.repository.AGGraphQuery;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.Test;
@@ -41,4 +43,23 @@ public class AGGraphQueryTests extends AGAbstractTest {
         Assert.assertEquals("expected size 7", 7, q.count());
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void graphQuery_streaming() throws Exception {
+        Util.add(conn, "/test/example.nq", null, RDFFormat.NQUADS);
+        String queryString =
+                "construct {?s ?p ?o} where " +
+                        "{GRAPH <http://example.org/alice/foaf.rdf> {?s ?p ?o}}";
+        AGGraphQuery q = conn.prepareGraphQuery(QueryLanguage.SPARQL, queryString);
+        GraphQueryResult result = q.evaluateStreaming();
+        Assert.assertEquals("expected size 7", 7, Iterations.asList(result).size());
+        q.setStreamResults(true);
+        q.setPrefetchSize(2);
+        result = q.evaluate();
+        Assert.assertEquals("expected size 7", 7, Iterations.asList(result).size());
+        q.setStreamResults(false);
+        result = q.evaluate();
+        Assert.assertEquals("expected size 7", 7, Iterations.asList(result).size());
+    }
+
 }
@@ -1,6 +1,7 @@
 package test;
 
 import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpTransport;
 import com.franz.agraph.http.exception.AGHttpException;
 import com.franz.agraph.http.handler.AGResponseHandler;
 import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
@@ -12,6 +13,7 @@ import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -46,6 +48,27 @@ public class AGHTTPClientTests {
         Assert.assertEquals(connectionsBefore, manager.getConnectionCount());
     }
 
+    @Test
+    public void testJdkTransport() throws Exception {
+        // Not compiled when the client is built with Java 8.
+        Assume.assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+        final AGHttpTransport transport = AGHTTPClient.createJdkTransport();
+        try (AGHTTPClient jdkClient = new AGHTTPClient(serverUrl, transport)) {
+            jdkClient.setUsernameAndPassword(
+                    AGAbstractTest.username(),
+                    AGAbstractTest.password());
+            Assert.assertEquals(client.getString(serverUrl + "/version"),
+                    jdkClient.getString(serverUrl + "/version"));
+            try {
+                jdkClient.get(serverUrl + "/PleaseRespondWith404", null, null, new NullStreamer());
+                Assert.fail("Expected a 404 error");
+            } catch (AGHttpException e) {
+                // expected
+            }
+            Assert.assertEquals(0, transport.getClass().getMethod("getRequestsInFlight").invoke(transport));
+        }
+    }
+
     private static final class NullStreamer extends AGResponseHandler {
         public NullStreamer() {
             super("who/cares/and/why/is/this/required");
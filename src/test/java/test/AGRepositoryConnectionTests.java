@@ -4,17 +4,30 @@
 
 package test;
 
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpMetrics;
+import com.franz.agraph.http.AGHttpOperation;
+import com.franz.agraph.http.AGHttpRepoClient;
+import com.franz.agraph.http.AGSavedQueryCache;
+import com.franz.agraph.http.AGSessionHeartbeat;
 import com.franz.agraph.pool.AGConnPool;
 import com.franz.agraph.pool.AGConnProp;
 import com.franz.agraph.pool.AGPoolProp;
+import com.franz.agraph.repository.AGBulkLoader;
 import com.franz.agraph.repository.AGCatalog;
+import com.franz.agraph.repository.AGLoadProgress;
 import com.franz.agraph.repository.AGRDFFormat;
 import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGQueryResultCache;
 import com.franz.agraph.repository.AGRepositoryConnection;
 import com.franz.agraph.repository.AGServer;
 import com.franz.agraph.repository.AGServerVersion;
+import com.franz.agraph.repository.AGValueCache;
 import com.franz.agraph.repository.AGXid;
+import com.franz.agraph.repository.BulkLoadConfig;
 
+import org.eclipse.rdf4j.common.iteration.Iteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.URI;
@@ -44,13 +57,28 @@ import test.TestSuites.NonPrepushTest;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -58,6 +86,7 @@ import javax.transaction.xa.Xid;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -705,6 +734,245 @@ public class AGRepositoryConnectionTests extends RepositoryConnectionTests {
         conn.rollback();
     }
 
+    @Test
+    public void testSessionHeartbeat() throws Exception {
+        AGRepository repo = (AGRepository) createRepository();
+        AGSessionHeartbeat heartbeat = repo.getCatalog().getServer().getSessionHeartbeat();
+        int before = heartbeat.getLiveSessions();
+        try (AGRepositoryConnection conn = repo.getConnection()) {
+            conn.setAutoCommit(false);
+            assertEquals(before + 1, heartbeat.getLiveSessions());
+        }
+        assertEquals(before, heartbeat.getLiveSessions());
+    }
+
+    @Test
+    public void testAddIterableStreamed() throws Exception {
+        final int count = 20000;
+        // Generated while the request is written, never held in a collection.
+        Iterable<Statement> statements = () -> IntStream.range(0, count)
+                .mapToObj(i -> vf.createStatement(bob, mbox, vf.createLiteral("bob" + i + "@example.org")))
+                .iterator();
+        testCon.add(statements, context1);
+        assertEquals(count, testCon.size(context1));
+        assertEquals(0, testCon.size(context2));
+
+        testCon.remove(statements, context1);
+        assertEquals(0, testCon.size(context1));
+    }
+
+    @Test
+    public void testAddIterationFailureAddsNothing() throws Exception {
+        Iterator<Statement> source = IntStream.range(0, 100)
+                .mapToObj(i -> vf.createStatement(bob, mbox, vf.createLiteral("bob" + i + "@example.org")))
+                .iterator();
+        Iteration<Statement, IOException> iter = new Iteration<Statement, IOException>() {
+            private int n = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Statement next() throws IOException {
+                if (n++ == 50) {
+                    throw new IOException("source failed");
+                }
+                return source.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try {
+            ((AGRepositoryConnection) testCon).add(iter);
+            fail("expected the exception of the iteration");
+        } catch (IOException e) {
+            assertEquals("source failed", e.getMessage());
+        }
+        assertEquals(0, testCon.size());
+    }
+
+    @Test
+    public void testBulkLoaderFromSeveralThreads() throws Exception {
+        final int threads = 4;
+        final int perThread = 5000;
+        AGRepositoryConnection conn = (AGRepositoryConnection) testCon;
+        BulkLoadConfig config = BulkLoadConfig.create().batchSize(1000).maxInFlightRequests(3);
+        try (AGBulkLoader loader = conn.createBulkLoader(config)) {
+            ExecutorService producers = Executors.newFixedThreadPool(threads);
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(producers.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        loader.add(bob, mbox, vf.createLiteral("bob" + thread + "-" + i + "@example.org"), context1);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            producers.shutdown();
+            loader.flush().get();
+            assertEquals(threads * perThread, loader.getStatementsLoaded());
+            assertEquals(0, loader.getInFlightBytes());
+        }
+        assertEquals(threads * perThread, testCon.size(context1));
+    }
+
+    @Test
+    public void testAddChunked() throws Exception {
+        final int count = 10000;
+        File file = File.createTempFile("chunked", ".nt");
+        file.deleteOnExit();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                out.write("<http://example.org/s" + i + "> <http://example.org/p> \"value " + i + "\" .\n");
+            }
+        }
+        List<AGLoadProgress> progress = new CopyOnWriteArrayList<>();
+        BulkLoadConfig config = BulkLoadConfig.create()
+                .chunkSize(64 * 1024).gzipChunks(true).maxInFlightRequests(3)
+                .progressListener(progress::add);
+        AGLoadProgress result = ((AGRepositoryConnection) testCon).addChunked(
+                file, null, RDFFormat.NTRIPLES, config, context1);
+        assertTrue("file should be split", result.getTotalParts() > 1);
+        assertEquals(result.getTotalParts(), result.getPartsLoaded());
+        assertEquals(file.length(), result.getBytesLoaded());
+        assertEquals(result.getTotalParts(), progress.size());
+        assertEquals(count, testCon.size(context1));
+    }
+
+    @Test
+    public void testAddChunkedZip() throws Exception {
+        File file = File.createTempFile("chunked", ".zip");
+        file.deleteOnExit();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int e = 0; e < 5; e++) {
+                zip.putNextEntry(new ZipEntry("part" + e + ".nt"));
+                for (int i = 0; i < 100; i++) {
+                    zip.write(("<http://example.org/s" + e + "-" + i + "> <http://example.org/p> \"v\" .\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                zip.closeEntry();
+            }
+        }
+        AGLoadProgress result = ((AGRepositoryConnection) testCon).addChunked(
+                file, null, null, BulkLoadConfig.create());
+        assertEquals(5, result.getPartsLoaded());
+        assertEquals(500, testCon.size());
+    }
+
+    @Test
+    public void testCompressedUpload() throws Exception {
+        AGRepositoryConnection conn = (AGRepositoryConnection) testCon;
+        conn.setUploadCompressionThreshold(AGHttpRepoClient.UPLOAD_COMPRESSION_ALWAYS);
+        List<Statement> statements = IntStream.range(0, 100)
+                .mapToObj(i -> vf.createStatement(vf.createIRI("http://example.org/s" + i), name,
+                        vf.createLiteral("name " + i)))
+                .collect(Collectors.toList());
+        testCon.add(statements);
+        testCon.add(new StringReader("<http://example.org/s> <http://example.org/p> \"v\" ."),
+                null, RDFFormat.NTRIPLES);
+        assertEquals(101, testCon.size());
+        testCon.remove(statements);
+        assertEquals(1, testCon.size());
+    }
+
+    @Test
+    public void testValueCache() throws Exception {
+        AGRepositoryConnection conn = (AGRepositoryConnection) testCon;
+        AGValueCache cache = new AGValueCache(1024);
+        conn.getValueFactory().setValueCache(cache);
+        testCon.add(bob, name, nameBob);
+        testCon.add(bob, mbox, mboxBob);
+        String query = "SELECT ?s ?p ?o WHERE { ?s ?p ?o } ORDER BY ?p";
+        List<BindingSet> first = Iterations.asList(
+                testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+        List<BindingSet> second = Iterations.asList(
+                testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+        assertEquals(first, second);
+        assertTrue("expected cache hits: " + cache, cache.getHits() > 0);
+        assertTrue(cache.getEstimatedBytesSaved() > 0);
+        assertSame(first.get(0).getValue("s"), second.get(0).getValue("s"));
+    }
+
+    @Test
+    public void testQueryResultCache() throws Exception {
+        AGRepositoryConnection conn = (AGRepositoryConnection) testCon;
+        AGQueryResultCache cache = new AGQueryResultCache(100, 1 << 20, 0);
+        conn.setQueryResultCache(cache);
+        testCon.add(bob, name, nameBob);
+        String query = "SELECT ?s WHERE { ?s ?p ?o }";
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, Iterations.asList(testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()).size());
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        // Autocommitted changes invalidate the cached results.
+        testCon.add(alice, name, nameAlice);
+        assertEquals(2, Iterations.asList(testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()).size());
+        // Uncommitted changes bypass the cache, commits invalidate it.
+        testCon.begin();
+        testCon.add(bob, mbox, mboxBob);
+        assertEquals(3, Iterations.asList(testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()).size());
+        testCon.commit();
+        assertEquals(3, Iterations.asList(testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()).size());
+        assertTrue(testCon.prepareBooleanQuery(QueryLanguage.SPARQL, "ASK { ?s ?p ?o }").evaluate());
+        assertTrue(cache.getInvalidations() >= 2);
+    }
+
+    @Test
+    public void testSavedQueryCache() throws Exception {
+        AGRepositoryConnection conn = (AGRepositoryConnection) testCon;
+        testCon.begin();
+        testCon.add(bob, name, nameBob);
+        testCon.add(alice, name, nameAlice);
+        AGSavedQueryCache saved = conn.prepareHttpRepoClient().getSavedQueryCache();
+        String query = "SELECT ?o WHERE { ?s ?p ?o }";
+        for (int i = 0; i < 4; i++) {
+            TupleQuery tq = testCon.prepareTupleQuery(QueryLanguage.SPARQL, query);
+            Resource subject = i % 2 == 0 ? bob : alice;
+            tq.setBinding("s", subject);
+            List<BindingSet> result = Iterations.asList(tq.evaluate());
+            assertEquals(1, result.size());
+            assertEquals(subject == bob ? nameBob : nameAlice, result.get(0).getValue("o"));
+        }
+        // Saved on the second run, run from the saved plan afterwards.
+        assertEquals(1, saved.getSaves());
+        assertEquals(2, saved.getHits());
+        assertEquals(1, saved.getSize());
+        conn.prepareHttpRepoClient().setSavedQueryCacheSize(0);
+        assertEquals(0, saved.getSize());
+        assertEquals(1, saved.getEvictions());
+        testCon.rollback();
+    }
+
+    @Test
+    public void testHttpMetrics() throws Exception {
+        AGHTTPClient client = ((AGRepositoryConnection) testCon).prepareHttpRepoClient().getHTTPClient();
+        AGHttpMetrics metrics = new AGHttpMetrics();
+        client.addListener(metrics);
+        try {
+            testCon.add(bob, name, nameBob);
+            String query = "SELECT ?s WHERE { ?s ?p ?o }";
+            assertEquals(1, Iterations.asList(testCon.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate()).size());
+        } finally {
+            client.removeListener(metrics);
+        }
+        assertEquals(1, metrics.getCount(AGHttpOperation.ADD));
+        assertEquals(1, metrics.getCount(AGHttpOperation.QUERY));
+        assertEquals(0, metrics.getFailures());
+        assertTrue(metrics.getBytesSent() > 0);
+        assertTrue(metrics.getBytesReceived() > 0);
+        assertTrue(metrics.getPercentileNanos(AGHttpOperation.QUERY, 50) > 0);
+    }
+
     @Test
     public void testNoBufferedAddStatementsInTransactionByDefault()
             throws Exception {
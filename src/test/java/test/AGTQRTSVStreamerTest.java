@@ -0,0 +1,68 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test;
+
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.junit.Assert;
+import org.junit.Test;
+import test.perf.StubMethod;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses TSV tuple results without a server.
+ */
+public class AGTQRTSVStreamerTest {
+
+    private List<BindingSet> parse(String tsv) throws Exception {
+        AGTQRTSVStreamer streamer = new AGTQRTSVStreamer(new AGValueFactory(null));
+        streamer.handleResponse(new StubMethod(tsv.getBytes(StandardCharsets.UTF_8)));
+        try (TupleQueryResult result = streamer.getResult()) {
+            Assert.assertEquals(Arrays.asList("s", "o"), result.getBindingNames());
+            return QueryResults.asList(result);
+        }
+    }
+
+    private void assertRows(List<BindingSet> rows) {
+        Assert.assertEquals(3, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals("http://example.org/s" + i, rows.get(i).getValue("s").stringValue());
+            Assert.assertEquals(Integer.toString(i), rows.get(i).getValue("o").stringValue());
+        }
+    }
+
+    @Test
+    public void testLineEnds() throws Exception {
+        String[] rows = {"?s\t?o", "<http://example.org/s0>\t0", "<http://example.org/s1>\t1",
+                "<http://example.org/s2>\t2"};
+        for (String lineEnd : new String[] {"\n", "\r\n", "\r"}) {
+            assertRows(parse(String.join(lineEnd, rows) + lineEnd));
+            assertRows(parse(String.join(lineEnd, rows)));
+        }
+        assertRows(parse("?s\t?o\r<http://example.org/s0>\t0\r\n<http://example.org/s1>\t1\n"
+                + "<http://example.org/s2>\t2\r"));
+    }
+
+    @Test
+    public void testLoneCarriageReturnAtBufferEnd() throws Exception {
+        // Lines long enough that a line end falls on the end of the read buffer.
+        StringBuilder tsv = new StringBuilder("?s\t?o\r");
+        for (int i = 0; i < 2000; i++) {
+            tsv.append("<http://example.org/").append(i % 7 == 0 ? "long/path/" : "").append("s")
+                    .append(i).append(">\t").append(i).append(i % 2 == 0 ? "\r" : "\r\n");
+        }
+        List<BindingSet> rows = parse(tsv.toString());
+        Assert.assertEquals(2000, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals(Integer.toString(i), rows.get(i).getValue("o").stringValue());
+        }
+    }
+}
@@ -25,6 +25,14 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class BlankNodeTests extends AGAbstractTest {
 
     @Test
@@ -115,4 +123,31 @@ public class BlankNodeTests extends AGAbstractTest {
         vf.createBNode();
         Assert.assertEquals(vf.getBlankNodesPerRequest(), vf.getBlankNodeIds().length);
     }
+
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void concurrentBlankNodes() throws Exception {
+        final int threads = 8;
+        final int perThread = 5000;
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        ids.add(vf.createBNode().getID());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertEquals("duplicate blank node ids", threads * perThread, ids.size());
+        Assert.assertTrue("blocks should grow with the rate of use",
+                vf.getBlankNodeIds().length > vf.getBlankNodesPerRequest());
+    }
 }
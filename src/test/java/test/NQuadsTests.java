@@ -8,7 +8,10 @@ import com.franz.agraph.jena.AGGraph;
 import com.franz.agraph.jena.AGGraphMaker;
 import com.franz.agraph.jena.AGModel;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -44,6 +47,30 @@ public class NQuadsTests extends AGAbstractTest {
         Assert.assertEquals("expected size 10", 10, model.size());
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void nquads_streamGetStatements() throws Exception {
+        Util.add(conn, "/test/example.nq", null, RDFFormat.NQUADS);
+        IRI alice = vf.createIRI("http://example.org/alice/foaf.rdf");
+        conn.setStreamResults(true);
+        try {
+            int count = 0;
+            try (RepositoryResult<Statement> result = conn.getStatements(null, null, null, false)) {
+                while (result.hasNext()) {
+                    Statement st = result.next();
+                    Assert.assertNotNull(st.getContext());
+                    count++;
+                }
+            }
+            Assert.assertEquals("expected size 10", 10, count);
+            try (RepositoryResult<Statement> result = conn.getStatements(null, null, null, false, alice)) {
+                Assert.assertEquals("expected size 7", 7, Iterations.asList(result).size());
+            }
+        } finally {
+            conn.setStreamResults(false);
+        }
+    }
+
     @Test
     @Category(TestSuites.Broken.class)
     public void sesameAddContextOverridesNQuadsContext() throws Exception {
@@ -12,7 +12,9 @@ import com.franz.agraph.jena.AGQueryExecutionFactory;
 import com.franz.agraph.jena.AGQueryFactory;
 import com.franz.agraph.repository.AGTupleQuery;
 import junit.framework.Assert;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -37,6 +39,30 @@ public class QueryLimitOffsetTests extends AGAbstractTest {
         Assert.assertEquals("expected 16 results", 16, tupleQuery.count());
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void sesameQueryStreaming_tests() throws Exception {
+        Util.add(conn, "/tutorial/java-vcards.rdf", null, RDFFormat.RDFXML);
+        String queryString = "SELECT ?s ?p ?o  WHERE {?s ?p ?o .}";
+        AGTupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, queryString);
+        Assert.assertTrue("expected streaming by default", tupleQuery.isStreamResults());
+        Assert.assertEquals("expected 16 results", 16, Iterations.asList(tupleQuery.evaluate()).size());
+        // Smaller than the result, so the reader has to wait for the application.
+        tupleQuery.setPrefetchSize(2);
+        Assert.assertEquals("expected 16 results", 16, Iterations.asList(tupleQuery.evaluate()).size());
+        TupleQueryResult result = tupleQuery.evaluate();
+        Assert.assertTrue("expected results", result.hasNext());
+        result.next();
+        result.close();
+        Assert.assertFalse("expected no results after close", result.hasNext());
+        // The connection is still usable after cancelling the result.
+        Assert.assertEquals("expected 16 statements", 16, conn.size());
+        tupleQuery.setPrefetchSize(0);
+        Assert.assertEquals("expected 16 results", 16, Iterations.asList(tupleQuery.evaluate()).size());
+        tupleQuery.setStreamResults(false);
+        Assert.assertEquals("expected 16 results", 16, Iterations.asList(tupleQuery.evaluate()).size());
+    }
+
     @Test
     @Category(TestSuites.Prepush.class)
     public void jenaQueryLimitOffset_tests() throws Exception {
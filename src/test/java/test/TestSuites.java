@@ -12,6 +12,14 @@ import org.junit.runners.Suite.SuiteClasses;
 import test.pool.AGConnPoolClosingTest;
 import test.pool.AGConnPoolSessionTest;
 import test.pool.AGConnPoolWarmupTest;
+import test.server.AGConnPoolValidationTest;
+import test.server.AGGraphBatchingTest;
+import test.server.AGGraphFindTest;
+import test.server.AGMemoryServerTest;
+import test.server.AGPrefixMappingCacheTest;
+import test.server.AGQueryCancelTest;
+import test.server.AGQueryExecutionStreamTest;
+import test.server.AGSessionHeartbeatTest;
 import test.stress.TransactionStressTest;
 
 public class TestSuites {
@@ -80,7 +88,16 @@ public class TestSuites {
             ReplHeaderTest.class,
             AGServerVersionTests.class,
             AGHTTPClientTests.class,
+            AGTQRTSVStreamerTest.class,
             WarmupTests.class,
+            AGMemoryServerTest.class,
+            AGGraphBatchingTest.class,
+            AGGraphFindTest.class,
+            AGPrefixMappingCacheTest.class,
+            AGQueryExecutionStreamTest.class,
+            AGQueryCancelTest.class,
+            AGConnPoolValidationTest.class,
+            AGSessionHeartbeatTest.class,
     })
     public static class Prepush {
     }
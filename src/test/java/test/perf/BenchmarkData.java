@@ -0,0 +1,112 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Synthetic data shared by the benchmarks: resources with names,
+ * ages, blank node addresses and links, as found in typical results.
+ */
+public final class BenchmarkData {
+
+    public static final List<String> BINDING_NAMES = Arrays.asList("s", "p", "o", "n");
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param name TSV, JSON, XML or BINARY
+     * @return the tuple result format of that name
+     */
+    public static TupleQueryResultFormat tupleFormat(String name) {
+        switch (name) {
+            case "TSV":
+                return TupleQueryResultFormat.TSV;
+            case "JSON":
+                return TupleQueryResultFormat.JSON;
+            case "XML":
+                return TupleQueryResultFormat.SPARQL;
+            case "BINARY":
+                return TupleQueryResultFormat.BINARY;
+            default:
+                throw new IllegalArgumentException("Unknown tuple result format: " + name);
+        }
+    }
+
+    /**
+     * @param name NQUADS or BINARY
+     * @return the RDF format of that name
+     */
+    public static RDFFormat rdfFormat(String name) {
+        switch (name) {
+            case "NQUADS":
+                return RDFFormat.NQUADS;
+            case "BINARY":
+                return RDFFormat.BINARY;
+            default:
+                throw new IllegalArgumentException("Unknown RDF format: " + name);
+        }
+    }
+
+    /**
+     * @return a result of rows solutions for ?s ?p ?o ?n
+     */
+    public static TupleQueryResult tuples(ValueFactory vf, int rows) {
+        List<BindingSet> solutions = new ArrayList<>(rows);
+        for (Statement st : statements(vf, rows)) {
+            Value n = vf.createLiteral(solutions.size() % 1000);
+            solutions.add(new ListBindingSet(BINDING_NAMES,
+                    st.getSubject(), st.getPredicate(), st.getObject(), n));
+        }
+        return new IteratingTupleQueryResult(BINDING_NAMES, solutions);
+    }
+
+    /**
+     * @return count statements, in the default graph
+     */
+    public static List<Statement> statements(ValueFactory vf, int count) {
+        IRI name = vf.createIRI("http://xmlns.com/foaf/0.1/name");
+        IRI age = vf.createIRI("http://xmlns.com/foaf/0.1/age");
+        IRI address = vf.createIRI("http://example.org/address");
+        IRI knows = vf.createIRI("http://xmlns.com/foaf/0.1/knows");
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            IRI subject = vf.createIRI("http://example.org/person/" + i / 4);
+            switch (i % 4) {
+                case 0:
+                    statements.add(vf.createStatement(subject, name,
+                            vf.createLiteral("Person number " + i / 4, "en")));
+                    break;
+                case 1:
+                    statements.add(vf.createStatement(subject, age,
+                            vf.createLiteral(Integer.toString(20 + i % 50), XMLSchema.INT)));
+                    break;
+                case 2:
+                    statements.add(vf.createStatement(subject, address, vf.createBNode("a" + i)));
+                    break;
+                default:
+                    statements.add(vf.createStatement(subject, knows,
+                            vf.createIRI("http://example.org/person/" + (i * 31) % count / 4)));
+                    break;
+            }
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,85 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.http.handler.AGRDFStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the streaming parser of each RDF format used for CONSTRUCT
+ * and DESCRIBE results and for getting statements, on the same
+ * in-memory statements.
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.GraphResultParserBenchmark -p format=BINARY
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphResultParserBenchmark {
+
+    @Param({"10000"})
+    public int statements;
+
+    @Param({"NQUADS", "BINARY"})
+    public String format;
+
+    private RDFFormat rdfFormat;
+    private byte[] body;
+    private AGValueFactory vf;
+
+    @Setup
+    public void setup() throws Exception {
+        rdfFormat = BenchmarkData.rdfFormat(format);
+        vf = new AGValueFactory(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Rio.write(BenchmarkData.statements(vf, statements), out, rdfFormat);
+        body = out.toByteArray();
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws Exception {
+        AGRDFStreamer streamer = AGRDFStreamer.createStreamer(rdfFormat, vf);
+        streamer.handleResponse(new StubMethod(body));
+        GraphQueryResult result = streamer.getResult();
+        while (result.hasNext()) {
+            bh.consume(result.next());
+        }
+        result.close();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(GraphResultParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import test.server.AGMemoryServer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a SELECT query and an add of statements through
+ * {@link AGServer}, {@link AGRepository} and {@link AGRepositoryConnection},
+ * against an {@link AGMemoryServer} on the loopback interface, so that
+ * the HTTP transport, request encoding and result parsing are all
+ * included without an AllegroGraph server. The latency and bandwidth
+ * parameters throttle the server as if it was across a network.
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.RoundTripBenchmark -p format=TSV -p latencyMillis=2
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"1000"})
+    public int rows;
+
+    @Param({"TSV", "JSON", "XML", "BINARY"})
+    public String format;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    /**
+     * In bytes per second, 0 for unlimited.
+     */
+    @Param({"0"})
+    public long bandwidth;
+
+    private AGMemoryServer stub;
+    private AGServer server;
+    private AGRepository repo;
+    private AGRepositoryConnection conn;
+    private List<Statement> statements;
+
+    @Setup
+    public void setup() throws Exception {
+        stub = new AGMemoryServer();
+        server = new AGServer(stub.getURL(), "test", "xyzzy");
+        repo = server.getRootCatalog().createRepository("benchmark");
+        repo.initialize();
+        conn = repo.getConnection();
+        conn.prepareHttpRepoClient().setPreferredTQRFormat(BenchmarkData.tupleFormat(format));
+        conn.prepareHttpRepoClient().setAllowExternalBlankNodeIds(true);
+        statements = BenchmarkData.statements(conn.getValueFactory(), rows);
+        conn.add(statements);
+        stub.setLatency(latencyMillis, TimeUnit.MILLISECONDS);
+        stub.setBandwidth(bandwidth);
+    }
+
+    @TearDown
+    public void tearDown() {
+        conn.close();
+        repo.shutDown();
+        server.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public void query(Blackhole bh) {
+        try (TupleQueryResult result = conn.prepareTupleQuery(QueryLanguage.SPARQL,
+                "select ?s ?p ?o { ?s ?p ?o }").evaluate()) {
+            while (result.hasNext()) {
+                bh.consume(result.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public void add() {
+        conn.add(statements);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(RoundTripBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.http.AGStatementsRequestEntity;
+import com.franz.agraph.repository.AGValueFactory;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding of statements added with
+ * {@link org.eclipse.rdf4j.repository.RepositoryConnection#add(Iterable, org.eclipse.rdf4j.model.Resource...)}
+ * as JSON rows by {@link AGStatementsRequestEntity}, against writing the
+ * same statements as N-Triples with Rio.
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.StatementEncoderBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementEncoderBenchmark {
+
+    @Param({"10000"})
+    public int statements;
+
+    private AGValueFactory vf;
+    private List<Statement> data;
+
+    @Setup
+    public void setup() {
+        vf = new AGValueFactory(null);
+        data = BenchmarkData.statements(vf, statements);
+    }
+
+    @Benchmark
+    public long json() throws Exception {
+        CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+        new AGStatementsRequestEntity(rows -> {
+            for (Statement st : data) {
+                rows.write(st, (String) null);
+            }
+        }, false, vf, true).writeRequest(out);
+        return out.getByteCount();
+    }
+
+    @Benchmark
+    public long ntriples() throws Exception {
+        CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+        Rio.write(data, out, RDFFormat.NTRIPLES);
+        return out.getByteCount();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(StatementEncoderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
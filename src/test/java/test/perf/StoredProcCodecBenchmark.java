@@ -0,0 +1,94 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.http.storedproc.AGDeserializer;
+import com.franz.agraph.http.storedproc.AGSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the codec of stored procedure arguments and results
+ * ({@link AGSerializer}, {@link AGDeserializer}) on a vector of
+ * strings, integers, byte vectors and nested lists.
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.StoredProcCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoredProcCodecBenchmark {
+
+    @Param({"1000"})
+    public int elements;
+
+    private Object[] data;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        data = new Object[elements];
+        for (int i = 0; i < elements; i++) {
+            switch (i % 4) {
+                case 0:
+                    data[i] = "string number " + i;
+                    break;
+                case 1:
+                    data[i] = i % 2 == 0 ? i * 1000 : -i * 1000;
+                    break;
+                case 2:
+                    data[i] = new byte[]{(byte) i, (byte) (i >> 8), 0, 127, -128};
+                    break;
+                default:
+                    List<Object> list = new ArrayList<>();
+                    list.add("nested " + i);
+                    list.add(i);
+                    list.add(null);
+                    data[i] = list;
+                    break;
+            }
+        }
+        encoded = AGSerializer.serializeAndEncode(data);
+    }
+
+    @Benchmark
+    public String encode() {
+        return AGSerializer.serializeAndEncode(data);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return AGDeserializer.decodeAndDeserialize(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(StoredProcCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
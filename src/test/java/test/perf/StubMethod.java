@@ -0,0 +1,39 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * An HTTP method whose response body is a fixed byte array,
+ * so response handlers can be benchmarked without a server.
+ */
+public class StubMethod extends GetMethod {
+    private final byte[] body;
+
+    public StubMethod(byte[] body) {
+        super("http://localhost/");
+        this.body = body;
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() {
+        return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public Header getResponseHeader(String headerName) {
+        return null;
+    }
+
+    @Override
+    public void releaseConnection() {
+        // Nothing to release.
+    }
+}
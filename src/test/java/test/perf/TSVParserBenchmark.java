@@ -0,0 +1,102 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.http.handler.AGTQRTSVStreamer;
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link AGTQRTSVStreamer} with the previous TSV parser
+ * ({@link LegacyTSVStreamer}) on an in-memory SELECT result mixing
+ * IRIs, blank nodes, numbers and quoted literals, with and without
+ * an {@link AGValueCache}.
+ * <p>
+ * Run with <code>-prof gc</code> to compare allocation rates as well:
+ * </p>
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.TSVParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TSVParserBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"0", "4096"})
+    public int valueCacheSize;
+
+    private byte[] body;
+    private AGValueFactory vf;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder("?s\t?p\t?o\t?n\t?d\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("<http://example.org/resource/").append(i).append(">\t")
+                    .append("<http://xmlns.com/foaf/0.1/name>\t")
+                    .append(i % 3 == 0 ? "_:b" + i : "\"Name number " + i + "\"@en").append('\t')
+                    .append(i % 2 == 0 ? i : -i).append('\t')
+                    .append(i).append('.').append(i % 100).append('\n');
+        }
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        vf = new AGValueFactory(null);
+        vf.setValueCache(valueCacheSize > 0 ? new AGValueCache(valueCacheSize) : null);
+    }
+
+    @Benchmark
+    public void scanner(Blackhole bh) throws Exception {
+        parse(new AGTQRTSVStreamer(vf), bh);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) throws Exception {
+        parse(new LegacyTSVStreamer(vf), bh);
+    }
+
+    private void parse(AGTQRStreamer streamer, Blackhole bh) throws Exception {
+        streamer.handleResponse(new StubMethod(body));
+        TupleQueryResult result = streamer.getResult();
+        while (result.hasNext()) {
+            bh.consume(result.next());
+        }
+        result.close();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(TSVParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.http.handler.AGTQRStreamer;
+import com.franz.agraph.repository.AGValueFactory;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the streaming parser of each tuple result format on the
+ * same in-memory SELECT result.
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.TupleResultParserBenchmark -p format=TSV,BINARY
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleResultParserBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"TSV", "JSON", "XML", "BINARY"})
+    public String format;
+
+    private TupleQueryResultFormat resultFormat;
+    private byte[] body;
+    private AGValueFactory vf;
+
+    @Setup
+    public void setup() throws Exception {
+        resultFormat = BenchmarkData.tupleFormat(format);
+        vf = new AGValueFactory(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QueryResultIO.writeTuple(BenchmarkData.tuples(vf, rows), resultFormat, out);
+        body = out.toByteArray();
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws Exception {
+        AGTQRStreamer streamer = AGTQRStreamer.createStreamer(resultFormat, vf);
+        streamer.handleResponse(new StubMethod(body));
+        TupleQueryResult result = streamer.getResult();
+        while (result.hasNext()) {
+            bh.consume(result.next());
+        }
+        result.close();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(TupleResultParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,129 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.http.AGGzipRequestEntity;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the time needed to send an N-Triples upload body over a link
+ * of limited bandwidth, with and without {@link AGGzipRequestEntity}.
+ * <p>
+ * The link is simulated by an output stream that sleeps as long as the
+ * bytes written would take to transfer, so the results show at which
+ * bandwidth the compression CPU time starts to pay off:
+ * </p>
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.UploadCompressionBenchmark -p mbitPerSecond=100,1000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadCompressionBenchmark {
+
+    @Param({"20000"})
+    public int statements;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int mbitPerSecond;
+
+    private RequestEntity plain;
+    private RequestEntity gzip;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("<http://example.org/resource/").append(i).append("> ")
+                    .append("<http://xmlns.com/foaf/0.1/name> ")
+                    .append("\"Name number ").append(i).append("\"@en .\n");
+            sb.append("<http://example.org/resource/").append(i).append("> ")
+                    .append("<http://xmlns.com/foaf/0.1/knows> ")
+                    .append("<http://example.org/resource/").append((i * 31) % statements).append("> .\n");
+        }
+        plain = new ByteArrayRequestEntity(sb.toString().getBytes(StandardCharsets.UTF_8),
+                "text/plain");
+        gzip = new AGGzipRequestEntity(plain);
+    }
+
+    @Benchmark
+    public long uncompressed() throws Exception {
+        return send(plain);
+    }
+
+    @Benchmark
+    public long gzip() throws Exception {
+        return send(gzip);
+    }
+
+    private long send(RequestEntity entity) throws Exception {
+        ThrottledStream out = new ThrottledStream(mbitPerSecond * 1_000_000L / 8);
+        entity.writeRequest(out);
+        out.close();
+        return out.bytes;
+    }
+
+    /**
+     * Discards the data written, blocking as long as it would take to
+     * send it at a fixed rate.
+     */
+    private static final class ThrottledStream extends OutputStream {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+
+        ThrottledStream(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(int b) {
+            write(null, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            long due = start + bytes * 1_000_000_000L / bytesPerSecond;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(UploadCompressionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
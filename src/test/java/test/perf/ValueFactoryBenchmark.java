@@ -0,0 +1,87 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.perf;
+
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AGValueFactory} creating IRIs and literals drawn
+ * from a working set of distinct terms, with and without an
+ * {@link AGValueCache} (valueCacheSize=0).
+ * <pre>
+ * java -cp target/test-classes:target/classes:... test.perf.ValueFactoryBenchmark -p valueCacheSize=0,4096
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueFactoryBenchmark {
+
+    @Param({"0", "4096"})
+    public int valueCacheSize;
+
+    @Param({"1000"})
+    public int distinctTerms;
+
+    private AGValueFactory vf;
+    private String[] iris;
+    private String[] labels;
+
+    @Setup
+    public void setup() {
+        vf = new AGValueFactory(null);
+        vf.setValueCache(valueCacheSize == 0 ? null : new AGValueCache(valueCacheSize));
+        iris = new String[distinctTerms];
+        labels = new String[distinctTerms];
+        for (int i = 0; i < distinctTerms; i++) {
+            iris[i] = "http://example.org/person/" + i;
+            labels[i] = "Person number " + i;
+        }
+    }
+
+    @Benchmark
+    public void createIRI(Blackhole bh) {
+        for (String iri : iris) {
+            bh.consume(vf.createIRI(iri));
+        }
+    }
+
+    @Benchmark
+    public void createLiteral(Blackhole bh) {
+        for (String label : labels) {
+            bh.consume(vf.createLiteral(label));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ValueFactoryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
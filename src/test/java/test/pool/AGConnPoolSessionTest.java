@@ -13,6 +13,8 @@ import com.franz.agraph.repository.AGRepositoryConnection;
 import com.franz.agraph.repository.AGServer;
 import com.franz.agraph.repository.AGValueFactory;
 import com.franz.util.Closer;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.junit.After;
@@ -96,6 +98,30 @@ public class AGConnPoolSessionTest {
         Assert.assertEquals(0, conn.size());
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void testPoolSharesServer() throws Exception {
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        AGCatalog catalog = server.getCatalog(AGAbstractTest.CATALOG_ID);
+        deleteLater(catalog.createRepository("pool.testPoolSharesServer"));
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testPoolSharesServer",
+                AGConnProp.session, AGConnProp.Session.DEDICATED,
+                AGPoolProp.shutdownHook, false
+        ));
+        AGRepositoryConnection conn1 = closeLater(pool.borrowObject());
+        AGRepositoryConnection conn2 = closeLater(pool.borrowObject());
+        Assert.assertSame(conn1.getRepository(), conn2.getRepository());
+        Assert.assertSame(conn1.getServer().getHTTPClient(), conn2.getServer().getHTTPClient());
+        Assert.assertNotEquals(conn1.prepareHttpRepoClient().getRoot(), conn2.prepareHttpRepoClient().getRoot());
+        Assert.assertEquals(0, conn1.size());
+        Assert.assertEquals(0, conn2.size());
+    }
+
     @Test
     @Category(TestSuites.Prepush.class)
     public void testPoolDedicated() throws Exception {
@@ -161,6 +187,42 @@ public class AGConnPoolSessionTest {
         }
     }
 
+    @Test
+    @Category(TestSuites.Prepush.class)
+    public void testPoolTxRollbackOnBorrow() throws Exception {
+        AGServer server = closeLater(AGAbstractTest.newAGServer());
+        AGCatalog catalog = server.getCatalog(AGAbstractTest.CATALOG_ID);
+        deleteLater(catalog.createRepository("pool.testPoolTxRollbackOnBorrow"));
+        AGConnPool pool = closeLater(AGConnPool.create(
+                AGConnProp.serverUrl, AGAbstractTest.findServerUrl(),
+                AGConnProp.username, AGAbstractTest.username(),
+                AGConnProp.password, AGAbstractTest.password(),
+                AGConnProp.catalog, AGAbstractTest.CATALOG_ID,
+                AGConnProp.repository, "pool.testPoolTxRollbackOnBorrow",
+                AGConnProp.session, AGConnProp.Session.TX,
+                AGConnProp.maxTransactionAge, TimeUnit.MINUTES.toMillis(1),
+                AGPoolProp.maxActive, 1,
+                AGPoolProp.shutdownHook, false
+        ));
+        try (AGRepositoryConnection conn = pool.borrowObject()) {
+            conn.add(conn.getValueFactory().createIRI(ns, "s"), RDF.TYPE, RDFS.RESOURCE);
+            Assert.assertEquals(1, conn.size());
+            // Not committed.
+        }
+        try (AGRepositoryConnection conn = pool.borrowObject()) {
+            // Rolled back along with this request.
+            Assert.assertEquals(0, conn.size());
+            conn.add(conn.getValueFactory().createIRI(ns, "s"), RDF.TYPE, RDFS.RESOURCE);
+            conn.commit();
+            Assert.assertFalse(conn.prepareHttpRepoClient().needsRollback(TimeUnit.MINUTES.toMillis(1)));
+        }
+        try (AGRepositoryConnection conn = pool.borrowObject()) {
+            // An unused, recent transaction is not rolled back.
+            Assert.assertFalse(conn.prepareHttpRepoClient().needsRollback(TimeUnit.MINUTES.toMillis(1)));
+            Assert.assertEquals(1, conn.size());
+        }
+    }
+
     /**
      * Tests there is no problem calling deleteDatatypeMapping
      * in many concurrent threads.
@@ -0,0 +1,83 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.pool.AGConnPool;
+import com.franz.agraph.pool.AGConnProp;
+import com.franz.agraph.pool.AGPoolProp;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks how pooled connections are validated, using {@link AGMemoryServer}.
+ */
+public class AGConnPoolValidationTest {
+
+    private AGMemoryServer stub;
+    private AGServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new AGMemoryServer();
+        server = new AGServer(stub.getURL(), "test", "xyzzy");
+        server.getRootCatalog().createRepository("memory").shutDown();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        stub.close();
+    }
+
+    private AGConnPool createPool(AGConnProp.Session session) {
+        return AGConnPool.create(
+                AGConnProp.serverUrl, stub.getURL(),
+                AGConnProp.username, "test",
+                AGConnProp.password, "xyzzy",
+                AGConnProp.repository, "memory",
+                AGConnProp.session, session,
+                AGConnProp.maxTransactionAge, 60000,
+                AGPoolProp.maxActive, 1,
+                AGPoolProp.testOnReturn, true,
+                AGPoolProp.shutdownHook, false);
+    }
+
+    @Test
+    public void testRollbackOnReturn() throws Exception {
+        try (AGConnPool pool = createPool(AGConnProp.Session.TX)) {
+            AGRepositoryConnection conn = pool.borrowObject();
+            conn.add(conn.getValueFactory().createIRI("http://example.org/s"), RDF.TYPE, RDFS.RESOURCE);
+            Assert.assertEquals(1, conn.size());
+            // Not committed.
+            long requests = stub.getRequests();
+            // Only the session is pinged.
+            stub.setFailingPath("/size");
+            conn.close();
+            stub.setFailingPath(null);
+            Assert.assertEquals("rolled back on return", 1, stub.getRollbackHeaders());
+            Assert.assertEquals(1, stub.getRequests() - requests);
+            Assert.assertEquals("still valid", 1, pool.getNumIdle());
+            try (AGRepositoryConnection again = pool.borrowObject()) {
+                Assert.assertEquals(0, again.size());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedRepositoryDeleted() throws Exception {
+        try (AGConnPool pool = createPool(AGConnProp.Session.SHARED)) {
+            AGRepositoryConnection conn = pool.borrowObject();
+            server.getRootCatalog().deleteRepository("memory");
+            conn.close();
+            Assert.assertEquals("invalid connection destroyed", 0, pool.getNumIdle());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.jena.AGModel;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Checks that adds and deletes through the Jena adapter are sent in
+ * one request per operation or transaction, using {@link AGMemoryServer}.
+ */
+public class AGGraphBatchingTest extends AGMemoryServerTestBase {
+
+    private List<Statement> statements;
+
+    @Before
+    public void setUp() {
+        statements = createStatements(1000);
+    }
+
+    @Test
+    public void testBulkAddAndRemove() {
+        long requests = stub.getRequests();
+        model.add(statements);
+        Assert.assertEquals("add", 1, stub.getRequests() - requests);
+        Assert.assertEquals(1000, conn.size());
+
+        requests = stub.getRequests();
+        model.remove(statements.subList(0, 400).toArray(new Statement[0]));
+        Assert.assertEquals("remove", 1, stub.getRequests() - requests);
+        Assert.assertEquals(600, model.size());
+    }
+
+    @Test
+    public void testAddModel() {
+        model.add(statements);
+        AGModel named = new AGModel(maker.createGraph("http://example.org/graph"));
+        long requests = stub.getRequests();
+        named.add(model);
+        // Reading the statements and prefixes of model and adding them,
+        // however many statements there are.
+        Assert.assertTrue(stub.getRequests() - requests <= 4);
+        Assert.assertEquals(1000, named.size());
+        Assert.assertEquals(2000, conn.size());
+        requests = stub.getRequests();
+        named.remove(model);
+        Assert.assertTrue(stub.getRequests() - requests <= 2);
+        Assert.assertTrue(named.isEmpty());
+    }
+
+    @Test
+    public void testRemoveModel() {
+        model.add(statements);
+        AGModel named = new AGModel(maker.createGraph("http://example.org/graph"));
+        named.add(model);
+        named.add(named.createResource("http://example.org/kept"), p, "kept");
+        long requests = stub.getRequests();
+        named.remove(model);
+        // Reading the statements of model and deleting them,
+        // however many statements there are.
+        Assert.assertTrue(stub.getRequests() - requests <= 2);
+        Assert.assertEquals(1, named.size());
+        Assert.assertEquals(1000, model.size());
+    }
+
+    @Test
+    public void testTransaction() {
+        model.begin();
+        long requests = stub.getRequests();
+        for (Statement st : statements) {
+            model.add(st);
+        }
+        model.remove(statements.get(0));
+        Assert.assertEquals("buffered", 0, stub.getRequests() - requests);
+        model.commit();
+        Assert.assertEquals(999, conn.size());
+
+        model.begin();
+        model.add(model.createResource("http://example.org/x"), p, "x");
+        Assert.assertTrue("read your writes", model.contains(model.createResource("http://example.org/x"), p));
+        model.add(model.createResource("http://example.org/y"), p, "y");
+        model.abort();
+        Assert.assertEquals(999, model.size());
+    }
+
+    @Test
+    public void testFailedDeleteKeepsAdds() {
+        model.add(statements.get(0));
+        model.begin();
+        model.add(statements.subList(1, statements.size()));
+        model.remove(statements.get(0));
+        stub.setFailingPath("/statements/delete");
+        try {
+            model.commit();
+            Assert.fail("commit with a failed delete");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        stub.setFailingPath(null);
+        Assert.assertEquals("adds not sent", 1, conn.size());
+        model.commit();
+        Assert.assertEquals("adds sent with the next commit", 1000, conn.size());
+    }
+}
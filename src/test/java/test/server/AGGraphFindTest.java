@@ -0,0 +1,78 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.jena.AGGraph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that {@link AGGraph#find(Triple)} streams its results, using
+ * {@link AGMemoryServer}.
+ */
+public class AGGraphFindTest extends AGMemoryServerTestBase {
+
+    @Before
+    public void setUp() {
+        List<Statement> statements = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Resource s = model.createResource("http://example.org/s" + i);
+            statements.add(model.createStatement(s, p, "v" + i));
+            statements.add(model.createStatement(s, p, model.createResource()));
+        }
+        model.add(statements);
+    }
+
+    @Test
+    public void testIterate() {
+        Assert.assertEquals(2000, model.listStatements().toList().size());
+        Assert.assertEquals(1000, model.listSubjects().toList().size());
+        Assert.assertEquals(1000, model.listObjectsOfProperty(p).filterKeep(o -> o.isAnon()).toList().size());
+        Assert.assertEquals(2, model.listStatements(model.createResource("http://example.org/s7"), null,
+                (Resource) null).toList().size());
+    }
+
+    @Test
+    public void testCloseEarly() {
+        for (int i = 0; i < 100; i++) {
+            ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+            Assert.assertTrue(it.hasNext());
+            it.next();
+            it.close();
+            Assert.assertFalse(it.hasNext());
+        }
+        Assert.assertEquals(2000, model.size());
+    }
+
+    @Test
+    public void testContains() {
+        Node s = NodeFactory.createURI("http://example.org/s1");
+        Assert.assertTrue(model.getGraph().contains(s, p.asNode(), NodeFactory.createLiteral("v1")));
+        Assert.assertFalse(model.getGraph().contains(s, p.asNode(), NodeFactory.createLiteral("v2")));
+        Assert.assertTrue(model.contains(null, p));
+        Assert.assertFalse(model.contains(p, null));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, p.asNode(), Node.ANY);
+        while (it.hasNext()) {
+            if (it.next().getObject().isBlank()) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(1000, model.size());
+    }
+}
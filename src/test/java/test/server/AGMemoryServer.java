@@ -0,0 +1,1195 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.http.AGProtocol;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.FilterIteration;
+import org.eclipse.rdf4j.common.iteration.LimitIteration;
+import org.eclipse.rdf4j.common.iteration.OffsetIteration;
+import org.eclipse.rdf4j.common.lang.FileFormat;
+import org.eclipse.rdf4j.http.protocol.Protocol;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.Operation;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.Update;
+import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.impl.SimpleDataset;
+import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.BooleanQueryResultWriterRegistry;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterRegistry;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParserRegistry;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.RDFWriterRegistry;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.json.JSONArray;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in for an AllegroGraph server, implementing the
+ * subset of the HTTP protocol used by
+ * {@link com.franz.agraph.http.AGHttpRepoClient} on top of RDF4J
+ * {@link MemoryStore}s, so that client code can be load and
+ * regression tested without a live server.
+ * <p>
+ * Supported are the repositories of the root catalog and of named
+ * catalogs (listed, created and deleted on demand), adding, getting
+ * and deleting statements (JSON rows or any RDF format known to Rio,
+ * gzip encoded or not), SPARQL queries and updates with bindings,
+ * datasets, limit and offset, saved queries, cancelling running
+ * queries by their ID, size, contexts,
+ * namespaces, blank node allocation, and sessions with commit,
+ * rollback (also by the x-rollback header) and auto-commit.
+ * Everything else is answered with 404.
+ * Session lifetimes are not enforced: sessions last until closed.
+ * <p>
+ * Every response can be delayed by a fixed {@link #setLatency latency},
+ * and request and response bodies can be limited to a
+ * {@link #setBandwidth bandwidth}, so that client features sensitive
+ * to the network (batching, pipelining, streaming) can be measured
+ * repeatably:
+ * <pre>{@code
+ * try (AGMemoryServer stub = new AGMemoryServer()) {
+ *     stub.setLatency(2, TimeUnit.MILLISECONDS);
+ *     stub.setBandwidth(10 * 1024 * 1024);
+ *     AGServer server = new AGServer(stub.getURL(), "test", "xyzzy");
+ *     AGRepository repo = server.getRootCatalog().createRepository("test");
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class AGMemoryServer implements AutoCloseable {
+
+    /**
+     * Reported by /version, recent enough for the client to use all
+     * the features above.
+     */
+    public static final String VERSION = "6.4.0";
+
+    private static final Pattern REPOSITORY_PATH =
+            Pattern.compile("\\A((?:/catalogs/[^/]+)?)/repositories(?:/([^/]+)(/.*)?)?\\z");
+    private static final Pattern SESSION_PATH =
+            Pattern.compile("\\A/session/(\\d+)(/.*)?\\z");
+    private static final String TEXT = "text/plain";
+    private static final String INTEGER = "text/integer";
+
+    static {
+        // Otherwise Nagle's algorithm holds back small responses until
+        // the client's delayed ACK, some 40 ms per request on Linux.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "AGMemoryServer");
+        t.setDaemon(true);
+        return t;
+    });
+    // Keyed by catalog path ("" for the root catalog) and repository id.
+    private final Map<String, Map<String, Repository>> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSessionId = new AtomicLong();
+    private final AtomicLong lastBlankNodeId = new AtomicLong();
+    private final String blankNodePrefix = String.format("b%08X", new Random().nextInt());
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rollbackHeaders = new AtomicLong();
+    // Set to cancel the queries being evaluated, by query ID.
+    private final Map<String, AtomicBoolean> runningQueries = new ConcurrentHashMap<>();
+    private final List<String> cancelledQueries = new CopyOnWriteArrayList<>();
+    private volatile long latencyNanos;
+    private volatile long bandwidth;
+    private volatile String failingPath;
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public AGMemoryServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port the port, or 0 for an ephemeral port
+     * @throws IOException if the server cannot be started
+     */
+    public AGMemoryServer(int port) throws IOException {
+        catalogs.put("", new ConcurrentHashMap<>());
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the URL of the server, to pass to
+     * {@link com.franz.agraph.repository.AGServer#AGServer(String, String, String)}
+     * (any user name and password are accepted)
+     */
+    public String getURL() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the store behind a repository of the root catalog,
+     * to set up or check its contents directly.
+     *
+     * @param repositoryID the id of the repository, created if needed
+     * @return the repository
+     */
+    public Repository getRepository(String repositoryID) {
+        return catalogs.get("").computeIfAbsent(repositoryID, id -> newRepository());
+    }
+
+    /**
+     * @return the time each response is delayed by, in nanoseconds
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * Sets the time each response is delayed by, as if it was the
+     * round trip time of the network.
+     *
+     * @param latency the delay, 0 for none
+     * @param unit    the unit of latency
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * @return the bandwidth request and response bodies are limited to,
+     * in bytes per second, or 0 if unlimited
+     */
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Limits the rate at which each request body is read and each
+     * response body is written, as if it went through a network link
+     * of that bandwidth. Compressed bodies are limited before decoding.
+     *
+     * @param bytesPerSecond the bandwidth, 0 for unlimited
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Negative bandwidth: " + bytesPerSecond);
+        }
+        bandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Answers the requests whose path ends with a suffix with a server
+     * error, to check how the client recovers from failed requests.
+     *
+     * @param pathSuffix the suffix, such as "/statements/delete",
+     *                   or null to answer all requests normally
+     */
+    public void setFailingPath(String pathSuffix) {
+        failingPath = pathSuffix;
+    }
+
+    /**
+     * @return the number of requests received so far
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the IDs of the running queries cancelled so far, in order
+     */
+    public List<String> getCancelledQueryIds() {
+        return new ArrayList<>(cancelledQueries);
+    }
+
+    /**
+     * @return the number of session requests received with an
+     * x-rollback header so far
+     */
+    public long getRollbackHeaders() {
+        return rollbackHeaders.get();
+    }
+
+    /**
+     * @return the number of sessions currently open
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops the server, closing all sessions (uncommitted changes
+     * are rolled back) and repositories.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+        for (Map<String, Repository> repositories : catalogs.values()) {
+            for (Repository repository : repositories.values()) {
+                repository.shutDown();
+            }
+        }
+    }
+
+    private static Repository newRepository() {
+        Repository repository = new SailRepository(new MemoryStore());
+        repository.initialize();
+        return repository;
+    }
+
+    private void handle(HttpExchange http) throws IOException {
+        requests.incrementAndGet();
+        Exchange exchange = new Exchange(http);
+        try {
+            long latency = latencyNanos;
+            if (latency > 0) {
+                TimeUnit.NANOSECONDS.sleep(latency);
+            }
+            String failing = failingPath;
+            if (failing != null && http.getRequestURI().getPath().endsWith(failing)) {
+                throw new ProtocolException(500, "Failing path: " + failing);
+            }
+            dispatch(exchange);
+        } catch (ProtocolException e) {
+            exchange.error(e.status, e.getMessage());
+        } catch (MalformedQueryException e) {
+            exchange.error(400, "MALFORMED QUERY: " + e.getMessage());
+        } catch (RDFParseException e) {
+            exchange.error(400, "MALFORMED DATA: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            exchange.error(500, String.valueOf(e));
+        } finally {
+            http.close();
+        }
+    }
+
+    private void dispatch(Exchange exchange) throws IOException {
+        String path = exchange.http.getRequestURI().getPath();
+        if (path.equals("/version")) {
+            exchange.text(TEXT, VERSION);
+            return;
+        }
+        Matcher m = SESSION_PATH.matcher(path);
+        if (m.matches()) {
+            Session session = sessions.get(m.group(1));
+            if (session == null) {
+                throw new ProtocolException(404, "No session " + m.group(1));
+            }
+            synchronized (session) {
+                if (exchange.http.getRequestHeaders().containsKey(AGProtocol.X_ROLLBACK_HEADER)) {
+                    rollbackHeaders.incrementAndGet();
+                    session.rollback();
+                }
+                repository(exchange, session.repository, session, rest(m.group(2)));
+            }
+            return;
+        }
+        m = REPOSITORY_PATH.matcher(path);
+        if (!m.matches()) {
+            throw new ProtocolException(404, "Not found: " + path);
+        }
+        String catalog = m.group(1);
+        String id = m.group(2) == null ? null : decode(m.group(2));
+        Map<String, Repository> repositories = catalog.isEmpty() ? catalogs.get("")
+                : catalogs.computeIfAbsent(catalog, c -> new ConcurrentHashMap<>());
+        if (id == null) {
+            exchange.method("GET");
+            List<BindingSet> rows = new ArrayList<>();
+            List<String> names = Arrays.asList("id", "uri", "readable", "writable");
+            ValueFactory vf = SimpleValueFactory.getInstance();
+            for (String repositoryID : repositories.keySet()) {
+                rows.add(new ListBindingSet(names, vf.createLiteral(repositoryID),
+                        vf.createIRI(getURL() + catalog + "/repositories/" + repositoryID),
+                        vf.createLiteral(true), vf.createLiteral(true)));
+            }
+            exchange.tuples(new IteratingTupleQueryResult(names, rows));
+        } else if (m.group(3) == null && exchange.is("PUT")) {
+            repositories.computeIfAbsent(id, i -> newRepository());
+            exchange.ok();
+        } else if (m.group(3) == null && exchange.is("DELETE")) {
+            Repository repository = repositories.remove(id);
+            if (repository != null) {
+                repository.shutDown();
+            }
+            exchange.ok();
+        } else {
+            Repository repository = repositories.get(id);
+            if (repository == null) {
+                throw new ProtocolException(404, "There is no repository named '" + id + "'.");
+            }
+            repository(exchange, repository, null, rest(m.group(3)));
+        }
+    }
+
+    private static String rest(String path) {
+        return path == null || path.equals("/") ? "" : path;
+    }
+
+    /**
+     * Handles a request to a repository, or to a session if not null.
+     */
+    private void repository(Exchange exchange, Repository repository, Session session, String path)
+            throws IOException {
+        switch (path) {
+            case "":
+                query(exchange, repository, session, exchange.params());
+                return;
+            case "/statements":
+                statements(exchange, repository, session);
+                return;
+            case "/statements/delete":
+                exchange.method("POST");
+                write(repository, session, conn -> {
+                    for (Value[] row : exchange.rows()) {
+                        conn.remove((Resource) row[0], (IRI) row[1], row[2], (Resource) row[3]);
+                    }
+                });
+                exchange.ok();
+                return;
+            case "/size": {
+                exchange.method("GET");
+                Resource[] contexts = exchange.contexts();
+                long[] size = new long[1];
+                read(repository, session, conn -> size[0] = conn.size(contexts));
+                exchange.text(INTEGER, Long.toString(size[0]));
+                return;
+            }
+            case "/contexts": {
+                exchange.method("GET");
+                List<String> names = Collections.singletonList("contextID");
+                List<BindingSet> rows = new ArrayList<>();
+                read(repository, session, conn -> {
+                    try (RepositoryResult<Resource> contexts = conn.getContextIDs()) {
+                        while (contexts.hasNext()) {
+                            rows.add(new ListBindingSet(names, contexts.next()));
+                        }
+                    }
+                });
+                exchange.tuples(new IteratingTupleQueryResult(names, rows));
+                return;
+            }
+            case "/namespaces":
+                if (exchange.is("DELETE")) {
+                    write(repository, session, RepositoryConnection::clearNamespaces);
+                    exchange.ok();
+                } else {
+                    exchange.method("GET");
+                    ValueFactory vf = repository.getValueFactory();
+                    List<String> names = Arrays.asList("prefix", "namespace");
+                    List<BindingSet> rows = new ArrayList<>();
+                    read(repository, session, conn -> {
+                        try (RepositoryResult<Namespace> namespaces = conn.getNamespaces()) {
+                            while (namespaces.hasNext()) {
+                                Namespace ns = namespaces.next();
+                                rows.add(new ListBindingSet(names,
+                                        vf.createLiteral(ns.getPrefix()), vf.createLiteral(ns.getName())));
+                            }
+                        }
+                    });
+                    exchange.tuples(new IteratingTupleQueryResult(names, rows));
+                }
+                return;
+            case "/blankNodes": {
+                exchange.method("POST");
+                int amount = Integer.parseInt(exchange.param(AGProtocol.AMOUNT_PARAM_NAME, "1"));
+                StringBuilder ids = new StringBuilder();
+                for (int i = 0; i < amount; i++) {
+                    ids.append(i == 0 ? "" : "\n").append("_:").append(blankNodePrefix)
+                            .append('x').append(lastBlankNodeId.incrementAndGet());
+                }
+                exchange.text(TEXT, ids.toString());
+                return;
+            }
+            case "/" + AGProtocol.COMMIT:
+                exchange.method("POST");
+                if (session != null) {
+                    session.commit();
+                }
+                exchange.ok();
+                return;
+            case "/" + AGProtocol.ROLLBACK:
+                exchange.method("POST");
+                if (session != null) {
+                    session.rollback();
+                }
+                exchange.ok();
+                return;
+            case "/" + AGProtocol.QUERIES + "/" + AGProtocol.RUNNING: {
+                exchange.method("DELETE");
+                String queryId = exchange.param(AGProtocol.QUERY_ID_PARAM_NAME, "");
+                AtomicBoolean cancelled = runningQueries.get(queryId);
+                if (cancelled == null) {
+                    throw new ProtocolException(404, "No running query " + queryId);
+                }
+                cancelled.set(true);
+                cancelledQueries.add(queryId);
+                exchange.ok();
+                return;
+            }
+            case "/" + AGProtocol.SESSION:
+                exchange.method("POST");
+                if (session != null) {
+                    throw new ProtocolException(400, "Already in a session");
+                }
+                Session opened = new Session(Long.toString(lastSessionId.incrementAndGet()), repository,
+                        Boolean.parseBoolean(exchange.param(AGProtocol.AUTOCOMMIT_PARAM_NAME, "false")));
+                sessions.put(opened.id, opened);
+                exchange.text(TEXT, getURL() + "/session/" + opened.id);
+                return;
+            default:
+                break;
+        }
+        if (path.startsWith("/namespaces/")) {
+            namespace(exchange, repository, session, decode(path.substring("/namespaces/".length())));
+        } else if (session != null && path.startsWith("/" + AGProtocol.QUERIES + "/")) {
+            String name = decode(path.substring(AGProtocol.QUERIES.length() + 2));
+            Map<String, List<String>> saved = session.savedQueries.get(name);
+            if (exchange.is("DELETE")) {
+                session.savedQueries.remove(name);
+                exchange.ok();
+            } else if (saved == null) {
+                throw new ProtocolException(404, "No saved query named " + name);
+            } else {
+                Map<String, List<String>> params = new LinkedHashMap<>(saved);
+                params.putAll(exchange.params());
+                query(exchange, repository, session, params);
+            }
+        } else if (session != null && path.equals("/session/" + AGProtocol.CLOSE)) {
+            sessions.remove(session.id);
+            session.close();
+            exchange.ok();
+        } else if (session != null && path.equals("/session/" + AGProtocol.PING)) {
+            exchange.ok();
+        } else if (session != null && path.equals("/session/" + AGProtocol.AUTOCOMMIT)) {
+            exchange.method("POST");
+            session.setAutoCommit(Boolean.parseBoolean(exchange.param(AGProtocol.ON_PARAM_NAME, "true")));
+            exchange.ok();
+        } else {
+            throw new ProtocolException(404, "Not found: " + path);
+        }
+    }
+
+    private void statements(Exchange exchange, Repository repository, Session session) throws IOException {
+        if (exchange.is("GET")) {
+            Resource subj = (Resource) exchange.value(Protocol.SUBJECT_PARAM_NAME);
+            IRI pred = (IRI) exchange.value(Protocol.PREDICATE_PARAM_NAME);
+            Value obj = exchange.value(Protocol.OBJECT_PARAM_NAME);
+            boolean infer = Boolean.parseBoolean(exchange.param(Protocol.INCLUDE_INFERRED_PARAM_NAME, "false"));
+            Resource[] contexts = exchange.contexts();
+            long limit = limit(exchange.param(AGProtocol.LIMIT_PARAM_NAME, "-1"));
+            RDFFormat format = exchange.accept(RDFWriterRegistry.getInstance().getKeys(), RDFFormat.NQUADS);
+            read(repository, session, conn -> {
+                try (OutputStream out = exchange.send(format.getDefaultMIMEType());
+                     RepositoryResult<Statement> result = conn.getStatements(subj, pred, obj, infer, contexts)) {
+                    RDFWriter writer = Rio.createWriter(format, out);
+                    writer.startRDF();
+                    for (long i = 0; i < limit && result.hasNext(); i++) {
+                        writer.handleStatement(result.next());
+                    }
+                    writer.endRDF();
+                }
+            });
+        } else if (exchange.is("DELETE")) {
+            Resource subj = (Resource) exchange.value(Protocol.SUBJECT_PARAM_NAME);
+            IRI pred = (IRI) exchange.value(Protocol.PREDICATE_PARAM_NAME);
+            Value obj = exchange.value(Protocol.OBJECT_PARAM_NAME);
+            Resource[] contexts = exchange.contexts();
+            write(repository, session, conn -> conn.remove(subj, pred, obj, contexts));
+            exchange.ok();
+        } else {
+            exchange.method("POST", "PUT");
+            Resource[] contexts = exchange.contexts();
+            String type = exchange.contentType();
+            long[] added = new long[1];
+            if ("application/json".equals(type)) {
+                List<Value[]> rows = exchange.rows();
+                write(repository, session, conn -> {
+                    if (exchange.is("PUT")) {
+                        conn.clear(contexts);
+                    }
+                    for (Value[] row : rows) {
+                        Resource[] rowContexts = row[3] != null || contexts.length == 0
+                                ? new Resource[]{(Resource) row[3]} : contexts;
+                        conn.add((Resource) row[0], (IRI) row[1], row[2], rowContexts);
+                    }
+                });
+                added[0] = rows.size();
+            } else {
+                Optional<RDFFormat> format = RDFParserRegistry.getInstance().getFileFormatForMIMEType(type);
+                if (!format.isPresent()) {
+                    throw new ProtocolException(400, "UNSUPPORTED FILE FORMAT: " + type);
+                }
+                Value base = exchange.value(Protocol.BASEURI_PARAM_NAME);
+                write(repository, session, conn -> {
+                    if (exchange.is("PUT")) {
+                        conn.clear(contexts);
+                    }
+                    long before = conn.size();
+                    conn.add(exchange.body(), base == null ? "" : base.stringValue(), format.get(), contexts);
+                    added[0] = conn.size() - before;
+                });
+            }
+            exchange.text(INTEGER, Long.toString(added[0]));
+        }
+    }
+
+    private void namespace(Exchange exchange, Repository repository, Session session, String prefix)
+            throws IOException {
+        if (exchange.is("GET")) {
+            String[] name = new String[1];
+            read(repository, session, conn -> name[0] = conn.getNamespace(prefix));
+            if (name[0] == null) {
+                throw new ProtocolException(404, "Not found.");
+            }
+            exchange.text(TEXT, name[0]);
+        } else if (exchange.is("DELETE")) {
+            write(repository, session, conn -> conn.removeNamespace(prefix));
+            exchange.ok();
+        } else {
+            exchange.method("PUT", "POST");
+            String name = IOUtils.toString(exchange.body(), StandardCharsets.UTF_8).trim();
+            write(repository, session, conn -> conn.setNamespace(prefix, name));
+            exchange.ok();
+        }
+    }
+
+    private void query(Exchange exchange, Repository repository, Session session,
+                       Map<String, List<String>> params) throws IOException {
+        String query = first(params, Protocol.QUERY_PARAM_NAME);
+        String update = first(params, Protocol.UPDATE_PARAM_NAME);
+        if (query == null && update == null) {
+            throw new ProtocolException(400, "Missing parameter: query");
+        }
+        String language = first(params, Protocol.QUERY_LANGUAGE_PARAM_NAME);
+        if (language != null && !language.equalsIgnoreCase(QueryLanguage.SPARQL.getName())) {
+            throw new ProtocolException(400, "UNSUPPORTED QUERY LANGUAGE: " + language);
+        }
+        String save = first(params, AGProtocol.SAVE_PARAM_NAME);
+        if (save != null && session != null && query != null) {
+            Map<String, List<String>> saved = new LinkedHashMap<>(params);
+            saved.keySet().removeIf(name -> name.startsWith(Protocol.BINDING_PREFIX));
+            saved.remove(AGProtocol.SAVE_PARAM_NAME);
+            saved.remove(AGProtocol.QUERY_ID_PARAM_NAME);
+            session.savedQueries.put(save, saved);
+        }
+        String base = first(params, Protocol.BASEURI_PARAM_NAME);
+        long limit = limit(orElse(first(params, AGProtocol.LIMIT_PARAM_NAME), "-1"));
+        long offset = Math.max(0, Long.parseLong(orElse(first(params, "offset"), "0")));
+        String queryId = first(params, AGProtocol.QUERY_ID_PARAM_NAME);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ConnectionTask task = conn -> {
+            Operation operation = update != null ? conn.prepareUpdate(QueryLanguage.SPARQL, update, base)
+                    : conn.prepareQuery(QueryLanguage.SPARQL, query, base);
+            prepare(operation, repository.getValueFactory(), params);
+            if (operation instanceof Update) {
+                // Answered once committed, see below.
+                ((Update) operation).execute();
+            } else if (operation instanceof TupleQuery) {
+                TupleQueryResultFormat format = exchange.accept(
+                        TupleQueryResultWriterRegistry.getInstance().getKeys(), TupleQueryResultFormat.SPARQL);
+                try (TupleQueryResult result = ((TupleQuery) operation).evaluate();
+                     OutputStream out = exchange.send(format.getDefaultMIMEType())) {
+                    QueryResults.report(new IteratingTupleQueryResult(result.getBindingNames(),
+                            cancellable(new LimitIteration<>(new OffsetIteration<>(result, offset), limit),
+                                    cancelled)),
+                            QueryResultIO.createTupleWriter(format, out));
+                }
+            } else if (operation instanceof GraphQuery) {
+                RDFFormat format = exchange.accept(RDFWriterRegistry.getInstance().getKeys(), RDFFormat.NQUADS);
+                try (GraphQueryResult result = ((GraphQuery) operation).evaluate();
+                     OutputStream out = exchange.send(format.getDefaultMIMEType())) {
+                    QueryResults.report(new IteratingGraphQueryResult(result.getNamespaces(),
+                            cancellable(new LimitIteration<>(new OffsetIteration<>(result, offset), limit),
+                                    cancelled)),
+                            Rio.createWriter(format, out));
+                }
+            } else {
+                BooleanQueryResultFormat format = exchange.accept(
+                        BooleanQueryResultWriterRegistry.getInstance().getKeys(), BooleanQueryResultFormat.TEXT);
+                boolean result = ((BooleanQuery) operation).evaluate();
+                try (OutputStream out = exchange.send(format.getDefaultMIMEType())) {
+                    QueryResultIO.writeBoolean(result, format, out);
+                }
+            }
+        };
+        if (queryId != null) {
+            runningQueries.put(queryId, cancelled);
+        }
+        try {
+            if (update != null) {
+                write(repository, session, task);
+                // Like AllegroGraph, answers whether the update has been run.
+                BooleanQueryResultFormat format = exchange.accept(
+                        BooleanQueryResultWriterRegistry.getInstance().getKeys(), BooleanQueryResultFormat.TEXT);
+                try (OutputStream out = exchange.send(format.getDefaultMIMEType())) {
+                    QueryResultIO.writeBoolean(true, format, out);
+                }
+            } else {
+                read(repository, session, task);
+            }
+        } finally {
+            if (queryId != null) {
+                runningQueries.remove(queryId);
+            }
+        }
+    }
+
+    /**
+     * Stops sending a result once its query is cancelled.
+     */
+    private static <E> CloseableIteration<E, QueryEvaluationException> cancellable(
+            CloseableIteration<E, QueryEvaluationException> iteration, AtomicBoolean cancelled) {
+        return new FilterIteration<E, QueryEvaluationException>(iteration) {
+            @Override
+            protected boolean accept(E object) {
+                if (cancelled.get()) {
+                    throw new QueryInterruptedException("Query cancelled");
+                }
+                return true;
+            }
+        };
+    }
+
+    private static void prepare(Operation operation, ValueFactory vf, Map<String, List<String>> params) {
+        operation.setIncludeInferred(Boolean.parseBoolean(
+                orElse(first(params, Protocol.INCLUDE_INFERRED_PARAM_NAME), "false")));
+        String timeout = first(params, Protocol.TIMEOUT_PARAM_NAME);
+        if (timeout != null) {
+            operation.setMaxExecutionTime(Integer.parseInt(timeout));
+        }
+        SimpleDataset dataset = new SimpleDataset();
+        for (Map.Entry<String, List<String>> param : params.entrySet()) {
+            String name = param.getKey();
+            for (String value : param.getValue()) {
+                if (name.startsWith(Protocol.BINDING_PREFIX)) {
+                    operation.setBinding(name.substring(Protocol.BINDING_PREFIX.length()),
+                            NTriplesUtil.parseValue(value, vf));
+                    continue;
+                }
+                switch (name) {
+                    case Protocol.DEFAULT_GRAPH_PARAM_NAME:
+                    case Protocol.USING_GRAPH_PARAM_NAME:
+                        dataset.addDefaultGraph(vf.createIRI(value));
+                        break;
+                    case Protocol.CONTEXT_PARAM_NAME:
+                        dataset.addDefaultGraph(Protocol.NULL_PARAM_VALUE.equals(value)
+                                ? null : (IRI) NTriplesUtil.parseResource(value, vf));
+                        break;
+                    case Protocol.NAMED_GRAPH_PARAM_NAME:
+                    case Protocol.USING_NAMED_GRAPH_PARAM_NAME:
+                        dataset.addNamedGraph(vf.createIRI(value));
+                        break;
+                    case Protocol.REMOVE_GRAPH_PARAM_NAME:
+                        dataset.addDefaultRemoveGraph(vf.createIRI(value));
+                        break;
+                    case Protocol.INSERT_GRAPH_PARAM_NAME:
+                        dataset.setDefaultInsertGraph(vf.createIRI(value));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        if (!dataset.getDefaultGraphs().isEmpty() || !dataset.getNamedGraphs().isEmpty()
+                || !dataset.getDefaultRemoveGraphs().isEmpty() || dataset.getDefaultInsertGraph() != null) {
+            operation.setDataset(dataset);
+        }
+    }
+
+    private static String first(Map<String, List<String>> params, String name) {
+        List<String> values = params.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static String orElse(String value, String otherwise) {
+        return value == null ? otherwise : value;
+    }
+
+    /**
+     * @return the value of a limit parameter, negative meaning no limit
+     */
+    private static long limit(String value) {
+        long limit = Long.parseLong(value);
+        return limit < 0 ? Long.MAX_VALUE : limit;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs a task that only reads, on the session connection or on
+     * a connection of its own.
+     */
+    private static void read(Repository repository, Session session, ConnectionTask task) throws IOException {
+        if (session != null) {
+            task.run(session.conn);
+        } else {
+            try (RepositoryConnection conn = repository.getConnection()) {
+                task.run(conn);
+            }
+        }
+    }
+
+    /**
+     * Runs a task that writes, in the session transaction if there is
+     * one, otherwise in a transaction of its own.
+     */
+    private static void write(Repository repository, Session session, ConnectionTask task) throws IOException {
+        if (session != null) {
+            task.run(session.conn);
+        } else {
+            try (RepositoryConnection conn = repository.getConnection()) {
+                conn.begin();
+                task.run(conn);
+                conn.commit();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionTask {
+        void run(RepositoryConnection conn) throws IOException;
+    }
+
+    /**
+     * A dedicated session: a connection kept open, with a transaction
+     * unless in auto-commit mode.
+     */
+    private static final class Session {
+        final String id;
+        final Repository repository;
+        final RepositoryConnection conn;
+        final Map<String, Map<String, List<String>>> savedQueries = new ConcurrentHashMap<>();
+        boolean autoCommit;
+
+        Session(String id, Repository repository, boolean autoCommit) {
+            this.id = id;
+            this.repository = repository;
+            this.conn = repository.getConnection();
+            setAutoCommit(autoCommit);
+        }
+
+        void setAutoCommit(boolean on) {
+            if (on && conn.isActive()) {
+                conn.commit();
+            } else if (!on && !conn.isActive()) {
+                conn.begin();
+            }
+            autoCommit = on;
+        }
+
+        void commit() {
+            if (conn.isActive()) {
+                conn.commit();
+            }
+            if (!autoCommit) {
+                conn.begin();
+            }
+        }
+
+        void rollback() {
+            if (conn.isActive()) {
+                conn.rollback();
+            }
+            if (!autoCommit) {
+                conn.begin();
+            }
+        }
+
+        synchronized void close() {
+            if (conn.isOpen()) {
+                if (conn.isActive()) {
+                    conn.rollback();
+                }
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * An error answered with an HTTP status and a message, which the
+     * client turns into an exception.
+     */
+    private static final class ProtocolException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ProtocolException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * A request being handled: its parameters and body, and the
+     * response, throttled to the bandwidth of the server.
+     */
+    private final class Exchange {
+        final HttpExchange http;
+        private Map<String, List<String>> params;
+        private InputStream body;
+        private boolean sent;
+
+        Exchange(HttpExchange http) {
+            this.http = http;
+        }
+
+        boolean is(String method) {
+            return http.getRequestMethod().equalsIgnoreCase(method);
+        }
+
+        void method(String... allowed) {
+            for (String method : allowed) {
+                if (is(method)) {
+                    return;
+                }
+            }
+            throw new ProtocolException(405, "Method not allowed: " + http.getRequestMethod());
+        }
+
+        String contentType() {
+            String type = http.getRequestHeaders().getFirst("Content-Type");
+            if (type == null) {
+                return null;
+            }
+            int semi = type.indexOf(';');
+            return (semi < 0 ? type : type.substring(0, semi)).trim();
+        }
+
+        /**
+         * @return the request body, decoded if it is compressed
+         */
+        InputStream body() throws IOException {
+            if (body == null) {
+                body = http.getRequestBody();
+                long rate = bandwidth;
+                if (rate > 0) {
+                    body = new ThrottledInputStream(body, rate);
+                }
+                if ("gzip".equals(http.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    body = new GZIPInputStream(body);
+                }
+            }
+            return body;
+        }
+
+        /**
+         * @return the parameters of the URL and of a form body
+         */
+        Map<String, List<String>> params() throws IOException {
+            if (params == null) {
+                params = new LinkedHashMap<>();
+                parse(http.getRequestURI().getRawQuery());
+                if (Protocol.FORM_MIME_TYPE.equals(contentType())) {
+                    parse(IOUtils.toString(body(), StandardCharsets.UTF_8));
+                }
+            }
+            return params;
+        }
+
+        private void parse(String query) {
+            if (query == null || query.isEmpty()) {
+                return;
+            }
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = decode(eq < 0 ? pair : pair.substring(0, eq));
+                String value = eq < 0 ? "" : decode(pair.substring(eq + 1));
+                params.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+            }
+        }
+
+        String param(String name, String otherwise) throws IOException {
+            return orElse(first(params(), name), otherwise);
+        }
+
+        /**
+         * @return a parameter holding a value in N-Triples, or null
+         */
+        Value value(String name) throws IOException {
+            String value = first(params(), name);
+            return value == null ? null : NTriplesUtil.parseValue(value, valueFactory());
+        }
+
+        /**
+         * @return the context parameters, "null" meaning the default graph
+         */
+        Resource[] contexts() throws IOException {
+            List<String> values = params().getOrDefault(Protocol.CONTEXT_PARAM_NAME, Collections.emptyList());
+            Resource[] contexts = new Resource[values.size()];
+            for (int i = 0; i < contexts.length; i++) {
+                String value = values.get(i);
+                contexts[i] = Protocol.NULL_PARAM_VALUE.equals(value) ? null
+                        : NTriplesUtil.parseResource(value, valueFactory());
+            }
+            return contexts;
+        }
+
+        /**
+         * @return the JSON rows of the body: subject, predicate, object
+         * and context (null for the default graph); attributes are ignored
+         */
+        List<Value[]> rows() throws IOException {
+            params();
+            JSONArray json = new JSONArray(IOUtils.toString(body(), StandardCharsets.UTF_8));
+            List<Value[]> rows = new ArrayList<>(json.length());
+            for (int i = 0; i < json.length(); i++) {
+                JSONArray row = json.getJSONArray(i);
+                Value[] values = new Value[4];
+                for (int j = 0; j < 4 && j < row.length(); j++) {
+                    if (!row.isNull(j)) {
+                        values[j] = NTriplesUtil.parseValue(row.getString(j), valueFactory());
+                    }
+                }
+                rows.add(values);
+            }
+            return rows;
+        }
+
+        private ValueFactory valueFactory() {
+            return SimpleValueFactory.getInstance();
+        }
+
+        /**
+         * @return the first format of the Accept header that can be
+         * written, or otherwise if there is none
+         */
+        <F extends FileFormat> F accept(Iterable<? extends FileFormat> formats, F otherwise) {
+            String accept = http.getRequestHeaders().getFirst("Accept");
+            if (accept != null) {
+                for (String range : accept.split(",")) {
+                    int semi = range.indexOf(';');
+                    String type = (semi < 0 ? range : range.substring(0, semi)).trim();
+                    for (FileFormat format : formats) {
+                        if (format.hasMIMEType(type) && otherwise.getClass().isInstance(format)) {
+                            @SuppressWarnings("unchecked")
+                            F f = (F) format;
+                            return f;
+                        }
+                    }
+                }
+            }
+            return otherwise;
+        }
+
+        /**
+         * Sends 200 and returns the stream to write the body of that type to.
+         */
+        OutputStream send(String contentType) throws IOException {
+            http.getResponseHeaders().add("Content-Type", contentType);
+            sendHeaders(200, 0);
+            OutputStream out = http.getResponseBody();
+            long rate = bandwidth;
+            return rate > 0 ? new ThrottledOutputStream(out, rate) : out;
+        }
+
+        void text(String contentType, String text) throws IOException {
+            try (OutputStream out = send(contentType)) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void tuples(TupleQueryResult result) throws IOException {
+            TupleQueryResultFormat format = accept(
+                    TupleQueryResultWriterRegistry.getInstance().getKeys(), TupleQueryResultFormat.SPARQL);
+            try (OutputStream out = send(format.getDefaultMIMEType())) {
+                QueryResultIO.writeTuple(result, format, out);
+            }
+        }
+
+        void ok() throws IOException {
+            if (!sent) {
+                http.getResponseHeaders().add("Content-Type", TEXT);
+                sendHeaders(200, -1);
+            }
+        }
+
+        void error(int status, String message) throws IOException {
+            if (sent) {
+                // Too late, the client will see a truncated body.
+                return;
+            }
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            http.getResponseHeaders().add("Content-Type", TEXT);
+            sendHeaders(status, bytes.length);
+            try (OutputStream out = http.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        /**
+         * Reads what is left of the request body, then sends the status
+         * and headers. The HTTP server closes a connection whose request
+         * was not read to the end, which the client only notices when it
+         * reuses the connection for its next request.
+         */
+        private void sendHeaders(int status, long length) throws IOException {
+            IOUtils.copy(http.getRequestBody(), NullOutputStream.NULL_OUTPUT_STREAM);
+            http.sendResponseHeaders(status, length);
+            sent = true;
+        }
+    }
+
+    /**
+     * Paces a transfer so that it does not go faster than a bandwidth.
+     */
+    private static final class Pacer {
+        private static final int CHUNK = 8192;
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+
+        Pacer(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void transferred(long count) throws InterruptedIOException {
+            bytes += count;
+            long wait = start + bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private final Pacer pacer;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            pacer = new Pacer(bytesPerSecond);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                pacer.transferred(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, Math.min(len, Pacer.CHUNK));
+            if (n > 0) {
+                pacer.transferred(n);
+            }
+            return n;
+        }
+    }
+
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final Pacer pacer;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            pacer = new Pacer(bytesPerSecond);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            pacer.transferred(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, Pacer.CHUNK);
+                out.write(b, off, n);
+                pacer.transferred(n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+}
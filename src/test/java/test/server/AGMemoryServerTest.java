@@ -0,0 +1,329 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.http.AGHTTPClient;
+import com.franz.agraph.http.AGHttpExchange;
+import com.franz.agraph.http.AGHttpListener;
+import com.franz.agraph.http.AGHttpOperation;
+import com.franz.agraph.http.exception.AGHttpException;
+import com.franz.agraph.repository.AGBulkLoader;
+import com.franz.agraph.repository.AGQueryResultCache;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import com.franz.agraph.repository.AGTupleQuery;
+import com.franz.agraph.repository.AGValueCache;
+import com.franz.agraph.repository.AGValueFactory;
+import com.franz.agraph.repository.BulkLoadConfig;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the client against {@link AGMemoryServer}; unlike the other
+ * tests, no AllegroGraph server is needed.
+ */
+public class AGMemoryServerTest {
+
+    private AGMemoryServer stub;
+    private AGServer server;
+    private AGRepository repo;
+    private AGRepositoryConnection conn;
+    private AGValueFactory vf;
+    private IRI alice;
+    private IRI name;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new AGMemoryServer();
+        server = new AGServer(stub.getURL(), "test", "xyzzy");
+        repo = server.getRootCatalog().createRepository("memory");
+        repo.initialize();
+        conn = repo.getConnection();
+        vf = conn.getValueFactory();
+        alice = vf.createIRI("http://example.org/people/alice");
+        name = vf.createIRI("http://example.org/ontology/name");
+    }
+
+    @After
+    public void tearDown() {
+        conn.close();
+        repo.shutDown();
+        server.close();
+        stub.close();
+    }
+
+    @Test
+    public void testAddQueryRemove() {
+        Literal nameAlice = vf.createLiteral("Alice");
+        IRI graph = vf.createIRI("http://example.org/graph");
+        conn.add(alice, name, nameAlice);
+        conn.add(alice, name, vf.createLiteral("Alicia"), graph);
+        Assert.assertEquals(2, conn.size());
+        Assert.assertEquals(1, conn.size(graph));
+        Assert.assertEquals(2, QueryResults.asList(conn.getStatements(alice, name, null, false)).size());
+        Assert.assertEquals(1, QueryResults.asList(conn.getContextIDs()).size());
+
+        AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL,
+                "select ?n { ?s ?p ?n } order by ?n");
+        query.setBinding("p", name);
+        Assert.assertEquals(nameAlice, QueryResults.asList(query.evaluate()).get(0).getValue("n"));
+        Assert.assertTrue(conn.prepareBooleanQuery(QueryLanguage.SPARQL,
+                "ask { ?s ?p 'Alicia' }").evaluate());
+        Assert.assertEquals(1, QueryResults.asModel(conn.prepareGraphQuery(QueryLanguage.SPARQL,
+                "construct { ?s ?p ?o } where { graph ?g { ?s ?p ?o } }").evaluate()).size());
+
+        conn.prepareUpdate(QueryLanguage.SPARQL, "delete data { graph <" + graph + "> { <"
+                + alice + "> <" + name + "> 'Alicia' } }").execute();
+        Assert.assertEquals(1, conn.size());
+        conn.remove(alice, null, null);
+        Assert.assertTrue(conn.isEmpty());
+    }
+
+    @Test
+    public void testBulkAddAndBlankNodes() {
+        List<Statement> statements = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            BNode address = vf.createBNode();
+            statements.add(vf.createStatement(vf.createIRI("http://example.org/people/" + i), name, address));
+            statements.add(vf.createStatement(address, name, vf.createLiteral(i)));
+        }
+        conn.add(statements);
+        Assert.assertEquals(2000, conn.size());
+        Assert.assertEquals(1000, QueryResults.asList(conn.prepareTupleQuery(QueryLanguage.SPARQL,
+                "select ?s ?n { ?s ?p ?a . ?a ?p ?n }").evaluate()).size());
+        conn.remove(statements.subList(0, 10));
+        Assert.assertEquals(1990, conn.size());
+    }
+
+    @Test
+    public void testBulkLoader() throws Exception {
+        IRI c1 = vf.createIRI("http://example.org/c1");
+        IRI c2 = vf.createIRI("http://example.org/c2");
+        CompletableFuture<Integer> copies;
+        try (AGBulkLoader loader = conn.createBulkLoader(BulkLoadConfig.create().batchSize(2))) {
+            loader.add(alice, name, vf.createLiteral("Alice"));
+            // The first copy completes a batch, the second starts the next one.
+            copies = loader.add(alice, name, vf.createLiteral("Alicia"), c1, c2);
+        }
+        Assert.assertEquals("size of the last batch", Integer.valueOf(1), copies.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, conn.size(c1));
+        Assert.assertEquals(1, conn.size(c2));
+
+        // Statements added while the loader is being closed are stored or rejected.
+        AGBulkLoader loader = conn.createBulkLoader(BulkLoadConfig.create().batchSize(10));
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; ; i++) {
+                    futures.add(loader.add(vf.createIRI("http://example.org/people/" + i), name,
+                            vf.createLiteral(i)));
+                }
+            } catch (RepositoryException e) {
+                // closed
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+        loader.close();
+        producer.join();
+        for (CompletableFuture<Integer> future : futures) {
+            Assert.assertTrue(future.get(10, TimeUnit.SECONDS) > 0);
+        }
+        Assert.assertEquals(3 + futures.size(), conn.size());
+    }
+
+    @Test
+    public void testExternalBlankNodesRejectedBeforeRequest() {
+        List<Statement> statements = new ArrayList<>();
+        statements.add(vf.createStatement(alice, name, vf.createLiteral("Alice")));
+        statements.add(vf.createStatement(alice, name, vf.createBNode("external")));
+        long requests = stub.getRequests();
+        try {
+            conn.add(statements);
+            Assert.fail("added an external blank node");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            conn.remove(statements);
+            Assert.fail("removed an external blank node");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertEquals("requests sent", requests, stub.getRequests());
+        Assert.assertTrue(conn.isEmpty());
+    }
+
+    @Test
+    public void testSessionCommitRollback() {
+        conn.begin();
+        conn.add(alice, name, vf.createLiteral("Alice"));
+        try (RepositoryConnection store = stub.getRepository("memory").getConnection()) {
+            Assert.assertTrue("uncommitted", store.isEmpty());
+            conn.rollback();
+            Assert.assertTrue(conn.isEmpty());
+            conn.begin();
+            conn.add(alice, name, vf.createLiteral("Alice"));
+            conn.commit();
+            Assert.assertEquals(1, store.size());
+        }
+        Assert.assertEquals(1, stub.getSessionCount());
+        conn.close();
+        Assert.assertEquals(0, stub.getSessionCount());
+    }
+
+    @Test
+    public void testNamespaces() {
+        conn.setNamespace("ex", "http://example.org/");
+        Assert.assertEquals("http://example.org/", conn.getNamespace("ex"));
+        Assert.assertEquals(1, QueryResults.asList(conn.getNamespaces()).size());
+        conn.removeNamespace("ex");
+        Assert.assertNull(conn.getNamespace("ex"));
+    }
+
+    @Test
+    public void testQueryResultCacheUsers() {
+        AGQueryResultCache cache = new AGQueryResultCache(100, 1 << 20, 0);
+        repo.setQueryResultCache(cache);
+        conn.add(alice, name, vf.createLiteral("Alice"));
+        String query = "select ?n { ?s ?p ?n }";
+        try (AGRepositoryConnection other = repo.getConnection()) {
+            QueryResults.asList(other.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+            QueryResults.asList(other.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+            Assert.assertEquals(1, cache.getHits());
+            other.setUserAttributes("{\"level\": \"low\"}");
+            QueryResults.asList(other.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+            other.prepareHttpRepoClient().getHTTPClient().setMasqueradeAsUser("bob");
+            QueryResults.asList(other.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate());
+        }
+        Assert.assertEquals("user attributes and users are part of the key", 1, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testListenerStreamedResponse() {
+        List<Statement> statements = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            statements.add(vf.createStatement(alice, name, vf.createLiteral(i)));
+        }
+        conn.add(statements);
+        List<AGHttpExchange> completed = new CopyOnWriteArrayList<>();
+        AGHttpListener listener = completed::add;
+        server.getHTTPClient().addListener(listener);
+        try {
+            AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, "select ?n { ?s ?p ?n }");
+            query.setPrefetchSize(0);
+            try (TupleQueryResult result = query.evaluate()) {
+                Assert.assertTrue(result.hasNext());
+                for (AGHttpExchange exchange : completed) {
+                    Assert.assertNotEquals("completed when the result is released",
+                            AGHttpOperation.QUERY, exchange.getOperation());
+                }
+            }
+            AGHttpExchange last = completed.get(completed.size() - 1);
+            Assert.assertEquals(AGHttpOperation.QUERY, last.getOperation());
+            Assert.assertTrue(last.getBytesReceived() > 0);
+        } finally {
+            server.getHTTPClient().removeListener(listener);
+        }
+    }
+
+    @Test
+    public void testStreamResultsDefaults() {
+        Assert.assertFalse(conn.isStreamResults());
+        Assert.assertTrue(conn.isStreamTupleResults());
+        Assert.assertTrue(conn.prepareTupleQuery(QueryLanguage.SPARQL, "select ?s { ?s ?p ?o }").isStreamResults());
+        Assert.assertFalse(conn.prepareGraphQuery(QueryLanguage.SPARQL,
+                "construct { ?s ?p ?o } where { ?s ?p ?o }").isStreamResults());
+        conn.setStreamTupleResults(false);
+        Assert.assertFalse(conn.prepareTupleQuery(QueryLanguage.SPARQL, "select ?s { ?s ?p ?o }").isStreamResults());
+        conn.setStreamResults(true);
+        Assert.assertTrue(conn.isStreamTupleResults());
+        Assert.assertTrue(conn.prepareGraphQuery(QueryLanguage.SPARQL,
+                "construct { ?s ?p ?o } where { ?s ?p ?o }").isStreamResults());
+    }
+
+    @Test
+    public void testValueCacheNamespaceAndLocalName() {
+        AGValueCache cache = new AGValueCache(64);
+        vf.setValueCache(cache);
+        IRI first = vf.createIRI("http://example.org/people/", "alice");
+        Assert.assertEquals(alice, first);
+        Assert.assertSame(first, vf.createIRI("http://example.org/people/", "alice"));
+        Assert.assertSame(first, vf.createIRI("http://example.org/people/alice"));
+        Assert.assertSame("split elsewhere", first, vf.createIRI("http://example.org/", "people/alice"));
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertNotEquals(first, vf.createIRI("http://example.org/people/", "alicia"));
+    }
+
+    @Test
+    public void testLatency() {
+        stub.setLatency(50, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        conn.size();
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testJdkTransportRetriesConnections() throws Exception {
+        // Not compiled when the client is built with Java 8.
+        Assume.assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+        String url;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            url = "http://127.0.0.1:" + socket.getLocalPort();
+        }
+        List<AGHttpExchange> exchanges = new CopyOnWriteArrayList<>();
+        try (AGHTTPClient jdkClient = new AGHTTPClient(url, AGHTTPClient.createJdkTransport())) {
+            jdkClient.addListener(exchanges::add);
+            try {
+                jdkClient.getString(url + "/version");
+                Assert.fail("connected to a closed port");
+            } catch (AGHttpException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, exchanges.size());
+        Assert.assertEquals("as many retries as commons-httpclient", 3, exchanges.get(0).getRetries());
+    }
+
+    @Test
+    public void testJdkTransportWithoutConnectionManager() {
+        Assume.assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+        String previous = System.setProperty(AGHTTPClient.PROP_HTTP_TRANSPORT, "jdk");
+        try (AGHTTPClient jdkClient = new AGHTTPClient(stub.getURL())) {
+            Assert.assertFalse(jdkClient.getHttpClient().getHttpConnectionManager()
+                    instanceof MultiThreadedHttpConnectionManager);
+            Assert.assertEquals(AGMemoryServer.VERSION, jdkClient.getString(stub.getURL() + "/version"));
+        } finally {
+            if (previous == null) {
+                System.clearProperty(AGHTTPClient.PROP_HTTP_TRANSPORT);
+            } else {
+                System.setProperty(AGHTTPClient.PROP_HTTP_TRANSPORT, previous);
+            }
+        }
+    }
+}
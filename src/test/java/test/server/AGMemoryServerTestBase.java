@@ -0,0 +1,72 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.jena.AGGraphMaker;
+import com.franz.agraph.jena.AGModel;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base of the tests run against {@link AGMemoryServer}: each test gets
+ * a new server with an empty repository, a connection to it, and a
+ * Jena model of its default graph. Subclasses add their own data.
+ */
+public abstract class AGMemoryServerTestBase {
+
+    protected AGMemoryServer stub;
+    protected AGServer server;
+    protected AGRepository repo;
+    protected AGRepositoryConnection conn;
+    protected AGGraphMaker maker;
+    protected AGModel model;
+    protected Property p;
+
+    @Before
+    public void setUpServer() throws Exception {
+        stub = new AGMemoryServer();
+        server = new AGServer(stub.getURL(), "test", "xyzzy");
+        repo = server.getRootCatalog().createRepository("memory");
+        repo.initialize();
+        conn = repo.getConnection();
+        maker = new AGGraphMaker(conn);
+        model = new AGModel(maker.getGraph());
+        p = model.createProperty("http://example.org/ontology/p");
+    }
+
+    @After
+    public void tearDownServer() {
+        model.close();
+        maker.close();
+        conn.close();
+        repo.shutDown();
+        server.close();
+        stub.close();
+    }
+
+    /**
+     * Creates statements with property {@link #p}, subjects
+     * http://example.org/s0, s1... and literals "v0", "v1"...
+     * The statements are not added to the model.
+     *
+     * @param count the number of statements
+     * @return the statements, one per subject
+     */
+    protected List<Statement> createStatements(int count) {
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(model.createStatement(model.createResource("http://example.org/s" + i), p, "v" + i));
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,95 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.http.AGNamespaceCache;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Statement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the Jena prefix mapping looks up namespaces in the
+ * namespace cache of the connection, using {@link AGMemoryServer}.
+ */
+public class AGPrefixMappingCacheTest extends AGMemoryServerTestBase {
+
+    private AGNamespaceCache cache;
+
+    @Before
+    public void setUp() {
+        cache = conn.prepareHttpRepoClient().getNamespaceCache();
+        model.setNsPrefix("ex", "http://example.org/ontology/");
+        model.setNsPrefix("people", "http://example.org/people/");
+    }
+
+    @Test
+    public void testLookups() {
+        long loads = cache.getLoadCount();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("people:p" + i, model.qnameFor("http://example.org/people/p" + i));
+        }
+        Assert.assertNull(model.qnameFor("http://example.com/x"));
+        Assert.assertEquals("ex", model.getNsURIPrefix("HTTP://EXAMPLE.ORG/ONTOLOGY/"));
+        Assert.assertEquals("http://example.org/ontology/", model.getNsPrefixURI("ex"));
+        Assert.assertNull(model.getNsPrefixURI("none"));
+        Assert.assertEquals(2, model.numPrefixes());
+        Assert.assertFalse(model.hasNoMappings());
+        Assert.assertEquals(1, cache.getLoadCount() - loads);
+    }
+
+    @Test
+    public void testChangesThroughConnection() {
+        Assert.assertEquals("ex:p", model.qnameFor("http://example.org/ontology/p"));
+        model.removeNsPrefix("ex");
+        Assert.assertNull(model.qnameFor("http://example.org/ontology/p"));
+        model.setNsPrefix("ont", "http://example.org/ontology/");
+        Assert.assertEquals("ont:p", model.qnameFor("http://example.org/ontology/p"));
+        model.clearNsPrefixMap();
+        Assert.assertTrue(model.hasNoMappings());
+    }
+
+    @Test
+    public void testChangesElsewhere() throws Exception {
+        cache.setTimeToLiveMillis(0);
+        Assert.assertEquals(2, model.numPrefixes());
+        try (AGRepositoryConnection other = repo.getConnection()) {
+            other.setNamespace("other", "http://example.org/other/");
+        }
+        Assert.assertEquals("kept until invalidated", 2, model.numPrefixes());
+        cache.invalidate();
+        Assert.assertEquals(3, model.numPrefixes());
+
+        cache.setTimeToLiveMillis(1);
+        try (AGRepositoryConnection other = repo.getConnection()) {
+            other.removeNamespace("other");
+        }
+        Thread.sleep(10);
+        Assert.assertEquals("expired", 2, model.numPrefixes());
+    }
+
+    @Test
+    public void testWrite() {
+        Property name = model.createProperty("http://example.org/ontology/name");
+        List<Statement> statements = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            statements.add(model.createStatement(model.createResource("http://example.org/people/p" + i),
+                    name, "p" + i));
+        }
+        model.add(statements);
+        long loads = cache.getLoadCount();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.write(out, "TURTLE");
+        Assert.assertTrue(out.toString().contains("people:p42"));
+        Assert.assertTrue("namespaces downloaded " + (cache.getLoadCount() - loads) + " times",
+                cache.getLoadCount() - loads <= 1);
+    }
+}
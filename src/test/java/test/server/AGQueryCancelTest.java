@@ -0,0 +1,144 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.http.AGHttpListener;
+import com.franz.agraph.http.AGProtocol;
+import com.franz.agraph.jena.AGQueryExecution;
+import com.franz.agraph.jena.AGQueryExecutionFactory;
+import com.franz.agraph.jena.AGQueryFactory;
+import com.franz.agraph.repository.AGGraphQuery;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGTupleQuery;
+import org.apache.jena.query.ResultSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Checks that cancellable queries closed or aborted before their result
+ * has been read are cancelled on the server, using {@link AGMemoryServer}.
+ */
+public class AGQueryCancelTest extends AGMemoryServerTestBase {
+
+    private static final String ALL = "select ?s ?p ?o { ?s ?p ?o }";
+
+    @Before
+    public void setUp() {
+        conn.setCancelQueries(true);
+        model.add(createStatements(20000));
+        // Slow enough that no result is sent completely before it is closed.
+        stub.setBandwidth(100 * 1024);
+    }
+
+    @Test
+    public void testCloseEarly() {
+        for (int prefetchSize : new int[] {1000, 0}) {
+            AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, ALL);
+            query.setPrefetchSize(prefetchSize);
+            try (TupleQueryResult result = query.evaluate()) {
+                result.next();
+            }
+            Assert.assertNotNull(query.getQueryId());
+            Assert.assertEquals("prefetch " + prefetchSize, query.getQueryId(),
+                    stub.getCancelledQueryIds().get(stub.getCancelledQueryIds().size() - 1));
+        }
+        AGGraphQuery query = conn.prepareGraphQuery(QueryLanguage.SPARQL,
+                "construct { ?s ?p ?o } where { ?s ?p ?o }");
+        query.setStreamResults(true);
+        try (GraphQueryResult result = query.evaluate()) {
+            result.next();
+        }
+        Assert.assertEquals(3, stub.getCancelledQueryIds().size());
+        Assert.assertTrue(stub.getCancelledQueryIds().contains(query.getQueryId()));
+        stub.setBandwidth(0);
+        Assert.assertEquals(20000, conn.size());
+    }
+
+    @Test
+    public void testNotCancellableByDefault() {
+        try (AGRepositoryConnection other = repo.getConnection()) {
+            AGTupleQuery query = other.prepareTupleQuery(QueryLanguage.SPARQL, ALL);
+            Assert.assertFalse(query.isCancellable());
+            // The first query may probe for the result formats of the server.
+            QueryResults.asList(other.prepareTupleQuery(QueryLanguage.SPARQL, ALL + " limit 1").evaluate());
+            long requests = stub.getRequests();
+            try (TupleQueryResult result = query.evaluate()) {
+                result.next();
+            }
+            Assert.assertNull(query.getQueryId());
+            Assert.assertEquals("only the query, no cancel", 1, stub.getRequests() - requests);
+            query.cancel();
+            Assert.assertEquals(Collections.emptyList(), stub.getCancelledQueryIds());
+        }
+    }
+
+    @Test
+    public void testCloseEarlyInSession() {
+        conn.begin();
+        List<String> cancels = new CopyOnWriteArrayList<>();
+        AGHttpListener listener = exchange -> {
+            if (exchange.getMethod().equals("DELETE")) {
+                cancels.add(exchange.getURL());
+            }
+        };
+        server.getHTTPClient().addListener(listener);
+        try {
+            AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, ALL);
+            try (TupleQueryResult result = query.evaluate()) {
+                result.next();
+            }
+            Assert.assertEquals(Collections.singletonList(query.getQueryId()), stub.getCancelledQueryIds());
+            Assert.assertEquals(1, cancels.size());
+            String session = conn.prepareHttpRepoClient().getRoot();
+            Assert.assertFalse("sent to the session", cancels.get(0).startsWith(session));
+            Assert.assertTrue("sent to the repository", cancels.get(0).startsWith(
+                    conn.prepareHttpRepoClient().getRepositoryRoot() + "/" + AGProtocol.QUERIES));
+        } finally {
+            server.getHTTPClient().removeListener(listener);
+        }
+        conn.rollback();
+    }
+
+    @Test
+    public void testFinished() {
+        stub.setBandwidth(0);
+        AGTupleQuery query = conn.prepareTupleQuery(QueryLanguage.SPARQL, ALL);
+        query.setLimit(10);
+        String first;
+        try (TupleQueryResult result = query.evaluate()) {
+            Assert.assertEquals(10, QueryResults.asList(result).size());
+        }
+        first = query.getQueryId();
+        Assert.assertEquals(Collections.emptyList(), stub.getCancelledQueryIds());
+        try {
+            query.cancel();
+            Assert.fail("cancelled a finished query");
+        } catch (QueryEvaluationException e) {
+            // expected
+        }
+        QueryResults.asList(query.evaluate());
+        Assert.assertNotEquals("a new ID for each evaluation", first, query.getQueryId());
+    }
+
+    @Test
+    public void testJenaAbort() {
+        try (AGQueryExecution qe = AGQueryExecutionFactory.create(AGQueryFactory.create(ALL), model)) {
+            ResultSet results = qe.execSelect();
+            results.next();
+            qe.abort();
+            Assert.assertEquals(1, stub.getCancelledQueryIds().size());
+        }
+    }
+}
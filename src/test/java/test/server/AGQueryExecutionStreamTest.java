@@ -0,0 +1,143 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.http.AGHttpExchange;
+import com.franz.agraph.http.AGHttpListener;
+import com.franz.agraph.http.AGHttpOperation;
+import com.franz.agraph.jena.AGQueryExecution;
+import com.franz.agraph.jena.AGQueryExecutionFactory;
+import com.franz.agraph.jena.AGQueryFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Checks that CONSTRUCT results of the Jena adapter are streamed to
+ * sinks and iterators, using {@link AGMemoryServer}.
+ */
+public class AGQueryExecutionStreamTest extends AGMemoryServerTestBase {
+
+    private static final String CONSTRUCT = "construct { ?s ?p ?o } where { ?s ?p ?o }";
+
+    @Before
+    public void setUp() {
+        model.add(createStatements(1000));
+    }
+
+    private AGQueryExecution execution() {
+        return AGQueryExecutionFactory.create(AGQueryFactory.create(CONSTRUCT), model);
+    }
+
+    @Test
+    public void testSink() {
+        final int[] counts = new int[3];
+        try (AGQueryExecution qe = execution()) {
+            qe.execConstructStream(new StreamRDFBase() {
+                @Override
+                public void triple(Triple triple) {
+                    counts[0]++;
+                }
+
+                @Override
+                public void quad(Quad quad) {
+                    counts[1]++;
+                }
+
+                @Override
+                public void finish() {
+                    counts[2]++;
+                }
+            });
+        }
+        Assert.assertEquals(1000, counts[0]);
+        Assert.assertEquals(0, counts[1]);
+        Assert.assertEquals("finished", 1, counts[2]);
+    }
+
+    @Test
+    public void testModel() {
+        try (AGQueryExecution qe = execution()) {
+            Model m = qe.execConstruct();
+            Assert.assertEquals(1000, m.size());
+        }
+    }
+
+    @Test
+    public void testIterators() {
+        try (AGQueryExecution qe = execution()) {
+            Iterator<Triple> triples = qe.execConstructTriples();
+            int count = 0;
+            while (triples.hasNext()) {
+                Assert.assertTrue(triples.next().getObject().isLiteral());
+                count++;
+            }
+            Assert.assertEquals(1000, count);
+        }
+        try (AGQueryExecution qe = execution()) {
+            Iterator<Quad> quads = qe.execConstructQuads();
+            int count = 0;
+            while (quads.hasNext()) {
+                quads.next();
+                count++;
+            }
+            Assert.assertEquals(1000, count);
+        }
+    }
+
+    @Test
+    public void testCloseEarly() {
+        for (int i = 0; i < 20; i++) {
+            try (AGQueryExecution qe = execution()) {
+                Iterator<Triple> triples = qe.execConstructTriples();
+                Assert.assertTrue(triples.hasNext());
+                triples.next();
+            }
+        }
+        Assert.assertEquals(1000, model.size());
+    }
+
+    @Test
+    public void testIteratorNotMaterialised() throws Exception {
+        model.add(createStatements(20000));
+        List<AGHttpExchange> queries = new CopyOnWriteArrayList<>();
+        AGHttpListener listener = exchange -> {
+            if (exchange.getOperation() == AGHttpOperation.QUERY) {
+                queries.add(exchange);
+            }
+        };
+        server.getHTTPClient().addListener(listener);
+        try {
+            try (AGQueryExecution qe = execution()) {
+                qe.execConstructTriples().forEachRemaining(t -> { });
+            }
+            long full = queries.get(0).getBytesReceived();
+            // Slow enough that the response cannot have been read when closed.
+            stub.setBandwidth(100 * 1024);
+            try (AGQueryExecution qe = execution()) {
+                Iterator<Triple> triples = qe.execConstructTriples();
+                Assert.assertTrue(triples.hasNext());
+                triples.next();
+            }
+            // The background reader releases the aborted response.
+            for (int i = 0; i < 100 && queries.size() < 2; i++) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(2, queries.size());
+            long early = queries.get(1).getBytesReceived();
+            Assert.assertTrue("read " + early + " of " + full + " bytes", early < full / 4);
+        } finally {
+            server.getHTTPClient().removeListener(listener);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/******************************************************************************
+ ** See the file LICENSE for the full license governing this code.
+ ******************************************************************************/
+
+package test.server;
+
+import com.franz.agraph.http.AGSessionHeartbeat;
+import com.franz.agraph.repository.AGRepository;
+import com.franz.agraph.repository.AGRepositoryConnection;
+import com.franz.agraph.repository.AGServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks how the session heartbeat schedules its checks, using {@link AGMemoryServer}.
+ */
+public class AGSessionHeartbeatTest {
+
+    private AGMemoryServer stub;
+    private AGServer server;
+    private AGRepository repo;
+    private ScheduledThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new AGMemoryServer();
+        server = new AGServer(stub.getURL(), "test", "xyzzy");
+        repo = server.getRootCatalog().createRepository("memory");
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        repo.shutDown();
+        server.close();
+        stub.close();
+    }
+
+    /**
+     * @return the delay of the scheduled check in milliseconds, -1 if
+     * none is scheduled, after waiting for a running check to finish
+     */
+    private long checkDelay() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (executor.getActiveCount() == 0) {
+                for (Runnable task : executor.getQueue()) {
+                    RunnableScheduledFuture<?> future = (RunnableScheduledFuture<?>) task;
+                    if (future.isPeriodic()) {
+                        return future.getDelay(TimeUnit.MILLISECONDS);
+                    }
+                }
+                return -1;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("check still running");
+    }
+
+    private AGRepositoryConnection openSession(int lifetime) {
+        AGRepositoryConnection conn = repo.getConnection(executor);
+        conn.setSessionLifetime(lifetime);
+        conn.begin();
+        return conn;
+    }
+
+    @Test
+    public void testCheckFollowsSessions() throws Exception {
+        AGSessionHeartbeat heartbeat = server.getSessionHeartbeat(executor);
+        Assert.assertEquals("nothing to check", -1, checkDelay());
+        AGRepositoryConnection longLived = openSession(3600);
+        Assert.assertTrue(checkDelay() > TimeUnit.SECONDS.toMillis(10));
+        AGRepositoryConnection shortLived = openSession(1);
+        Assert.assertEquals(2, heartbeat.getLiveSessions());
+        Assert.assertTrue("shrinks", checkDelay() <= 250);
+        shortLived.close();
+        long delay = checkDelay();
+        for (int i = 0; i < 100 && delay <= 250; i++) {
+            Thread.sleep(10);
+            delay = checkDelay();
+        }
+        Assert.assertTrue("grows back: " + delay, delay > TimeUnit.SECONDS.toMillis(10));
+        longLived.close();
+        Assert.assertEquals(0, heartbeat.getLiveSessions());
+        Assert.assertEquals("cancelled", -1, checkDelay());
+    }
+
+    @Test
+    public void testHeartbeatPerExecutor() {
+        AGSessionHeartbeat heartbeat = server.getSessionHeartbeat(executor);
+        Assert.assertSame(heartbeat, server.getSessionHeartbeat(executor));
+        Assert.assertNotSame(heartbeat, server.getSessionHeartbeat());
+        try (AGServer other = new AGServer(stub.getURL(), "test", "xyzzy")) {
+            Assert.assertSame("shared executor", server.getSessionHeartbeat(), other.getSessionHeartbeat());
+        }
+        executor.shutdown();
+        Assert.assertNotSame("dropped after shutdown", heartbeat, server.getSessionHeartbeat(executor));
+    }
+}